@@ -47,3 +47,156 @@ values
 -- insert into public.badges (code, name, description, icon_url, criteria_type, criteria_value)
 -- values ('master_clima', 'Maestría en Clima', 'Alcanza 80% en el tema Clima', null, 'TOPIC_MASTERY', '{"topic":"Clima","threshold":80}');
 
+
+-- 5) Contadores de actividades por usuario y tipo (evita contar user_activities en cada lectura)
+create table if not exists public.user_activity_counters (
+  user_id uuid not null references auth.users(id) on delete cascade,
+  type text not null,
+  count bigint not null default 0,
+  updated_at timestamptz not null default now(),
+  primary key (user_id, type)
+);
+
+-- Incremento atómico. En régimen normal es un solo UPDATE sobre la fila del contador.
+-- La primera vez que aparece (usuario, tipo) se siembra con el conteo real de user_activities
+-- (que ya incluye las actividades recién insertadas en esta transacción, por eso no se suma
+-- p_delta), así el histórico previo a la tabla de contadores queda incluido. Si otra
+-- transacción siembra a la vez, su INSERT gana, el nuestro no hace nada y se vuelve al UPDATE.
+create or replace function public.increment_activity_counter(p_user_id uuid, p_type text, p_delta integer default 1)
+returns bigint
+language plpgsql
+as $$
+declare
+  v_count bigint;
+begin
+  update public.user_activity_counters
+     set count = count + p_delta, updated_at = now()
+   where user_id = p_user_id and type = p_type
+  returning count into v_count;
+  if found then
+    return v_count;
+  end if;
+
+  insert into public.user_activity_counters (user_id, type, count, updated_at)
+  values (
+    p_user_id,
+    p_type,
+    (select count(*) from public.user_activities where user_id = p_user_id and type = p_type),
+    now()
+  )
+  on conflict (user_id, type) do nothing
+  returning count into v_count;
+  if found then
+    return v_count;
+  end if;
+
+  update public.user_activity_counters
+     set count = count + p_delta, updated_at = now()
+   where user_id = p_user_id and type = p_type
+  returning count into v_count;
+  return v_count;
+end;
+$$;
+
+
+-- 6) Dominio por tema y usuario (lo mantiene el backend de forma incremental al calificar)
+create table if not exists public.user_topic_mastery (
+  user_id uuid not null references auth.users(id) on delete cascade,
+  topic text not null,
+  answered integer not null default 0,
+  correct integer not null default 0,
+  updated_at timestamptz not null default now(),
+  primary key (user_id, topic)
+);
+
+-- Lotes de deltas ya aplicados (apply_topic_mastery, apply_daily_scores). El backend reenvía un
+-- lote con el mismo id cuando no recibe respuesta; si el primer envío sí llegó, el segundo no suma.
+create table if not exists public.applied_delta_batches (
+  batch_id uuid primary key,
+  applied_at timestamptz not null default now()
+);
+
+-- Aplica deltas acumulados de varios usuarios en una sola llamada, una vez por lote.
+-- p_rows: [{"user_id":"...","topic":"Clima","answered":3,"correct":2}, ...]
+drop function if exists public.apply_topic_mastery(jsonb);
+create or replace function public.apply_topic_mastery(p_batch_id uuid, p_rows jsonb)
+returns void
+language plpgsql
+as $$
+begin
+  insert into public.applied_delta_batches (batch_id) values (p_batch_id)
+  on conflict (batch_id) do nothing;
+  if not found then
+    return;
+  end if;
+
+  insert into public.user_topic_mastery (user_id, topic, answered, correct, updated_at)
+  select r.user_id, r.topic, r.answered, r.correct, now()
+  from jsonb_to_recordset(p_rows) as r(user_id uuid, topic text, answered integer, correct integer)
+  on conflict (user_id, topic)
+  do update set answered = public.user_topic_mastery.answered + excluded.answered,
+                correct = public.user_topic_mastery.correct + excluded.correct,
+                updated_at = now();
+end;
+$$;
+
+-- Siembra única con el histórico existente (ejecutar al crear la tabla, antes de desplegar)
+insert into public.user_topic_mastery (user_id, topic, answered, correct)
+select user_id, topic, sum(answered)::int, sum(correct)::int
+from (
+  select ta.user_id, tq.topic, count(*) as answered, count(*) filter (where a.is_correct) as correct
+  from public.trivia_answers a
+  join public.trivia_attempts ta on ta.id = a.attempt_id
+  join public.trivia_questions tq on tq.id = a.question_id
+  where tq.topic is not null
+  group by ta.user_id, tq.topic
+  union all
+  select da.user_id, dq.topic, count(*), count(*) filter (where a.is_correct)
+  from public.diagnostic_answers a
+  join public.diagnostic_attempts da on da.id = a.attempt_id
+  join public.diagnostic_questions dq on dq.id = a.question_id
+  where dq.topic is not null
+  group by da.user_id, dq.topic
+) h
+group by user_id, topic
+on conflict (user_id, topic) do nothing;
+
+
+-- 7) Deduplicación de actividades enviadas desde el outbox del backend (entrega al menos una vez).
+-- dedupe_key = "<tipo>:<attemptId>" o el id de la entrada del diario; las filas antiguas quedan en null.
+alter table public.user_activities add column if not exists dedupe_key text;
+create unique index if not exists uq_user_activities_dedupe on public.user_activities(dedupe_key);
+
+-- Entrega de una tanda del outbox: inserta las actividades nuevas y avanza sus contadores en la
+-- misma transacción. Si la llamada falla no queda nada aplicado; si se repite, las filas ya
+-- insertadas se ignoran y no vuelven a contar. Devuelve el valor de cada contador tocado.
+-- p_rows: [{"user_id":"...","type":"TRIVIA_COMPLETED","metadata":{...},"dedupe_key":"...","created_at":"..."}, ...]
+create or replace function public.record_activities(p_rows jsonb)
+returns table (user_id uuid, type text, count bigint)
+language plpgsql
+as $$
+#variable_conflict use_column
+declare
+  v_groups jsonb;
+  g record;
+begin
+  with ins as (
+    insert into public.user_activities (user_id, type, metadata, dedupe_key, created_at)
+    select r.user_id, r.type, r.metadata, r.dedupe_key, coalesce(r.created_at, now())
+    from jsonb_to_recordset(p_rows) as r(user_id uuid, type text, metadata jsonb, dedupe_key text, created_at timestamptz)
+    on conflict (dedupe_key) do nothing
+    returning user_activities.user_id, user_activities.type
+  )
+  select coalesce(jsonb_agg(jsonb_build_object('user_id', s.user_id, 'type', s.type, 'n', s.n)), '[]'::jsonb)
+    into v_groups
+  from (select ins.user_id, ins.type, count(*)::int as n from ins group by ins.user_id, ins.type) s;
+
+  -- Los contadores se siembran con user_activities, que ya incluye las filas de arriba
+  for g in select * from jsonb_to_recordset(v_groups) as x(user_id uuid, type text, n integer) loop
+    user_id := g.user_id;
+    type := g.type;
+    count := public.increment_activity_counter(g.user_id, g.type, g.n);
+    return next;
+  end loop;
+end;
+$$;
@@ -97,3 +97,65 @@ create index if not exists idx_trivia_answers_attempt on public.trivia_answers(a
 --     exists(select 1 from public.trivia_attempts a where a.id = attempt_id and a.user_id = auth.uid())
 --   );
 
+
+-- Precisión agregada por usuario para los reportes de cohorte (una llamada por tramo de usuarios)
+create or replace function public.trivia_accuracy(p_user_ids uuid[])
+returns table (user_id uuid, answered bigint, correct bigint)
+language sql
+stable
+as $$
+  select ta.user_id, count(a.id) as answered, count(a.id) filter (where a.is_correct) as correct
+  from public.trivia_attempts ta
+  join public.trivia_answers a on a.attempt_id = ta.id
+  where ta.user_id = any(p_user_ids)
+  group by ta.user_id;
+$$;
+
+-- Serie diaria de puntajes por usuario (la mantiene el backend al finalizar cada intento).
+-- "day" es la fecha local en la zona supabase.daily-scores.zone.
+create table if not exists public.user_daily_scores (
+  user_id uuid not null references auth.users(id) on delete cascade,
+  day date not null,
+  attempts integer not null default 0,
+  score_sum double precision not null default 0,
+  primary key (user_id, day)
+);
+
+-- Lotes ya aplicados (compartida con apply_topic_mastery, ver docs/progress-schema.sql)
+create table if not exists public.applied_delta_batches (
+  batch_id uuid primary key,
+  applied_at timestamptz not null default now()
+);
+
+-- Aplica deltas acumulados de varios usuarios en una sola llamada, una vez por lote: un
+-- reenvío del mismo p_batch_id (respuesta perdida) no vuelve a sumar.
+-- p_rows: [{"user_id":"...","day":"2025-03-14","attempts":1,"score_sum":80}, ...]
+drop function if exists public.apply_daily_scores(jsonb);
+create or replace function public.apply_daily_scores(p_batch_id uuid, p_rows jsonb)
+returns void
+language plpgsql
+as $$
+begin
+  insert into public.applied_delta_batches (batch_id) values (p_batch_id)
+  on conflict (batch_id) do nothing;
+  if not found then
+    return;
+  end if;
+
+  insert into public.user_daily_scores (user_id, day, attempts, score_sum)
+  select r.user_id, r.day, r.attempts, r.score_sum
+  from jsonb_to_recordset(p_rows) as r(user_id uuid, day date, attempts integer, score_sum double precision)
+  on conflict (user_id, day)
+  do update set attempts = public.user_daily_scores.attempts + excluded.attempts,
+                score_sum = public.user_daily_scores.score_sum + excluded.score_sum;
+end;
+$$;
+
+-- Siembra única con el histórico existente. 'UTC' es el valor por defecto de
+-- supabase.daily-scores.zone; si se configura otra zona, cambiarla también aquí.
+insert into public.user_daily_scores (user_id, day, attempts, score_sum)
+select user_id, (completed_at at time zone 'UTC')::date, count(*), coalesce(sum(score_percent), 0)
+from public.trivia_attempts
+where completed_at is not null
+group by user_id, (completed_at at time zone 'UTC')::date
+on conflict (user_id, day) do nothing;
@@ -0,0 +1,89 @@
+package org.uniproject.SaviaU.security.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara la validación HS256 anterior (Mac, clave y ObjectMapper nuevos en cada llamada,
+ * split por regex y comparación de firma como String) con {@link Hs256Jwt}.
+ * <p>
+ * Ejecutar con {@code mvn -Pjmh test-compile exec:exec}; el perfil activa {@code -prof gc},
+ * cuya métrica {@code gc.alloc.rate.norm} son los bytes asignados por validación.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtUtilBenchmark {
+
+    private static final String SECRET = "benchmark-secret-with-enough-entropy-0123456789";
+
+    private String token;
+    private Hs256Jwt codec;
+
+    @Setup
+    public void setUp() {
+        codec = new Hs256Jwt(SECRET);
+        token = codec.sign("6f1c2d9e-8a7b-4c3d-9e8f-0a1b2c3d4e5f", "admin@saviau.edu", "admin", "savia-u-admin", 7200);
+    }
+
+    @Benchmark
+    public Map<String, Object> validateBefore() {
+        return LegacyJwt.validate(token, SECRET);
+    }
+
+    @Benchmark
+    public Map<String, Object> validateAfter() {
+        return JwtUtil.validateHs256AndGetClaims(token, SECRET);
+    }
+
+    @Benchmark
+    public String signAfter() {
+        return codec.sign("6f1c2d9e-8a7b-4c3d-9e8f-0a1b2c3d4e5f", "admin@saviau.edu", "admin", "savia-u-admin", 7200);
+    }
+
+    /** Implementación previa de JwtUtil.validateHs256AndGetClaims, conservada como línea base. */
+    static final class LegacyJwt {
+
+        @SuppressWarnings("unchecked")
+        static Map<String, Object> validate(String token, String secret) {
+            try {
+                String[] parts = token.split("\\.");
+                if (parts.length != 3) throw new RuntimeException("Formato de token inválido");
+                String signingInput = parts[0] + "." + parts[1];
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                String expectedSig = Base64.getUrlEncoder().withoutPadding()
+                        .encodeToString(mac.doFinal(signingInput.getBytes(StandardCharsets.UTF_8)));
+                if (!constantTimeEquals(parts[2], expectedSig)) throw new RuntimeException("Firma inválida");
+                Map<String, Object> claims = new ObjectMapper().readValue(Base64.getUrlDecoder().decode(parts[1]), Map.class);
+                Object exp = claims.get("exp");
+                if (exp instanceof Number n && Instant.now().getEpochSecond() > n.longValue()) {
+                    throw new RuntimeException("Token expirado");
+                }
+                return claims;
+            } catch (RuntimeException re) {
+                throw re;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static boolean constantTimeEquals(String a, String b) {
+            if (a.length() != b.length()) return false;
+            int result = 0;
+            for (int i = 0; i < a.length(); i++) result |= a.charAt(i) ^ b.charAt(i);
+            return result == 0;
+        }
+    }
+}
@@ -3,10 +3,12 @@ package org.uniproject.SaviaU;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.uniproject.SaviaU.config.SupabaseProperties;
 
 @SpringBootApplication
 @EnableConfigurationProperties(SupabaseProperties.class)
+@EnableScheduling
 public class SaviaUApplication {
 
 	public static void main(String[] args) {
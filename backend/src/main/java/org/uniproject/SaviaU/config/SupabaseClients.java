@@ -2,10 +2,13 @@ package org.uniproject.SaviaU.config;
 
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.function.Consumer;
+
 @Component
 public class SupabaseClients {
 
@@ -16,32 +19,35 @@ public class SupabaseClients {
     private final WebClient authAdmin;
     private final WebClient storageAdmin;
 
-    public SupabaseClients(@Qualifier("supabaseProperties") SupabaseProperties props) {
+    public SupabaseClients(@Qualifier("supabaseProperties") SupabaseProperties props,
+                           ReactorClientHttpConnector supabaseConnector) {
         this.props = props;
-        this.dbAnon = WebClient.builder()
+        // Todos los clientes comparten el mismo pool de conexiones (ver SupabaseHttpConfig)
+        WebClient.Builder base = WebClient.builder().clientConnector(supabaseConnector);
+        this.dbAnon = base.clone()
                 .baseUrl(props.getUrl() + "/rest/v1")
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader("apikey", props.getAnonKey())
                 .defaultHeader("Authorization", "Bearer " + props.getAnonKey())
                 .build();
-        this.authPublic = WebClient.builder()
+        this.authPublic = base.clone()
                 .baseUrl(props.getUrl() + "/auth/v1")
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader("apikey", props.getAnonKey())
                 .build();
-        this.dbAdmin = WebClient.builder()
+        this.dbAdmin = base.clone()
                 .baseUrl(props.getUrl() + "/rest/v1")
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader("apikey", props.getServiceRoleKey())
                 .defaultHeader("Authorization", "Bearer " + props.getServiceRoleKey())
                 .build();
-        this.authAdmin = WebClient.builder()
+        this.authAdmin = base.clone()
                 .baseUrl(props.getUrl() + "/auth/v1")
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader("apikey", props.getServiceRoleKey())
                 .defaultHeader("Authorization", "Bearer " + props.getServiceRoleKey())
                 .build();
-        this.storageAdmin = WebClient.builder()
+        this.storageAdmin = base.clone()
                 .baseUrl(props.getUrl() + "/storage/v1")
                 .defaultHeader("apikey", props.getServiceRoleKey())
                 .defaultHeader("Authorization", "Bearer " + props.getServiceRoleKey())
@@ -55,12 +61,11 @@ public class SupabaseClients {
     public WebClient getAuthAdmin() { return authAdmin; }
     public WebClient getStorageAdmin() { return storageAdmin; }
 
-    public WebClient buildUserAuthClient(String accessToken) {
-        return WebClient.builder()
-                .baseUrl(props.getUrl() + "/auth/v1")
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .defaultHeader("apikey", props.getAnonKey())
-                .defaultHeader("Authorization", "Bearer " + accessToken)
-                .build();
+    /**
+     * Cabecera Authorization con el access token del usuario, para usar sobre {@link #getAuthPublic()}
+     * en lugar de construir un WebClient nuevo por petición.
+     */
+    public Consumer<HttpHeaders> userBearer(String accessToken) {
+        return headers -> headers.setBearerAuth(accessToken);
     }
 }
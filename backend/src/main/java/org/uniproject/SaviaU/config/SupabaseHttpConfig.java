@@ -0,0 +1,71 @@
+package org.uniproject.SaviaU.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Pool de conexiones único y afinado para todas las llamadas a Supabase.
+ * Con {@code supabase.http.metrics=true} Reactor Netty publica en Micrometer
+ * {@code reactor.netty.connection.provider.*} (conexiones activas/ociosas/pendientes y
+ * tiempo de adquisición) y {@code reactor.netty.http.client.*} (tiempos de respuesta).
+ */
+@Configuration
+public class SupabaseHttpConfig {
+
+    public static final String POOL_NAME = "supabase";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider supabaseConnectionProvider(@Qualifier("supabaseProperties") SupabaseProperties props) {
+        return connectionProvider(props.getHttp());
+    }
+
+    @Bean
+    public ReactorClientHttpConnector supabaseConnector(@Qualifier("supabaseProperties") SupabaseProperties props,
+                                                        ConnectionProvider supabaseConnectionProvider) {
+        return connector(props.getHttp(), supabaseConnectionProvider);
+    }
+
+    static ConnectionProvider connectionProvider(SupabaseProperties.Http cfg) {
+        return ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(cfg.getMaxConnections())
+                .pendingAcquireMaxCount(cfg.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(cfg.getPendingAcquireTimeoutMs()))
+                .maxIdleTime(Duration.ofSeconds(cfg.getMaxIdleTimeSeconds()))
+                .maxLifeTime(Duration.ofSeconds(cfg.getMaxLifeTimeSeconds()))
+                .evictInBackground(Duration.ofSeconds(cfg.getEvictInBackgroundSeconds()))
+                .metrics(cfg.isMetrics())
+                .build();
+    }
+
+    public static ReactorClientHttpConnector connector(SupabaseProperties.Http cfg, ConnectionProvider provider) {
+        HttpClient http = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, cfg.getConnectTimeoutMs())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .compress(cfg.isCompress())
+                .responseTimeout(Duration.ofSeconds(cfg.getResponseTimeoutSeconds()));
+        if (cfg.isHttp2()) {
+            http = http.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        if (cfg.isMetrics()) {
+            http = http.metrics(true, SupabaseHttpConfig::uriTag);
+        }
+        return new ReactorClientHttpConnector(http);
+    }
+
+    // Etiqueta de baja cardinalidad: ruta sin query y sin ids de objetos de Storage
+    static String uriTag(String uri) {
+        int q = uri.indexOf('?');
+        String path = q >= 0 ? uri.substring(0, q) : uri;
+        int storage = path.indexOf("/storage/v1/object");
+        return storage >= 0 ? path.substring(0, storage) + "/storage/v1/object" : path;
+    }
+}
@@ -18,4 +18,231 @@ public class SupabaseProperties {
     // Nuevo: bucket para fotos de perfil (por defecto "profile-photos" si no se especifica)
     private String profileBucket = "profile-photos";
 
-}
\ No newline at end of file
+    // Caché de identidades resueltas a partir del access token de Supabase
+    private IdentityCache identityCache = new IdentityCache();
+    // Transporte HTTP compartido por todos los WebClient de Supabase
+    private Http http = new Http();
+    // Sesiones de administrador verificadas contra admin_users
+    private AdminSession adminSession = new AdminSession();
+    // Copia en memoria de admin_users para decidir el rol en los logins
+    private AdminDirectory adminDirectory = new AdminDirectory();
+    // Intentos de trivia en curso mantenidos en memoria
+    private TriviaSession triviaSession = new TriviaSession();
+    // Escritura por lotes de trivia_answers
+    private AnswerWriter answerWriter = new AnswerWriter();
+    // Contadores de actividades por usuario (estadísticas de interacción)
+    private ActivityCounters activityCounters = new ActivityCounters();
+    // Motor de insignias: catálogo compilado e insignias obtenidas por usuario
+    private Badges badges = new Badges();
+    // Dominio por tema incremental (user_topic_mastery)
+    private TopicMastery topicMastery = new TopicMastery();
+    // Lectura paginada del historial (intentos por keyset, respuestas por tramos de ids)
+    private HistoryPaging historyPaging = new HistoryPaging();
+    // Diario local de actividades y su drenado a user_activities
+    private ActivityOutbox activityOutbox = new ActivityOutbox();
+    // Resumen de progreso por usuario en memoria
+    private OverviewCache overviewCache = new OverviewCache();
+    // Ranking global en memoria
+    private Ranking ranking = new Ranking();
+    // Fotos del leaderboard compartidas por ranking y tableros admin
+    private Leaderboard leaderboard = new Leaderboard();
+    // Serie diaria de puntajes por usuario (user_daily_scores)
+    private DailyScores dailyScores = new DailyScores();
+    // Contenido de temáticas en memoria
+    private Tematicas tematicas = new Tematicas();
+    // Respuestas de catálogo ya serializadas (JSON y gzip)
+    private ResponseCache responseCache = new ResponseCache();
+    // Banco de preguntas del diagnóstico en memoria
+    private DiagnosticBank diagnosticBank = new DiagnosticBank();
+
+    @Setter
+    @Getter
+    public static class IdentityCache {
+        // Número máximo de tokens distintos que se mantienen en memoria
+        private long maxSize = 10_000;
+        // Vida máxima de una entrada; nunca supera el "exp" del propio token
+        private long ttlSeconds = 300;
+    }
+
+    @Setter
+    @Getter
+    public static class Http {
+        // Conexiones simultáneas máximas hacia Supabase (todas las APIs comparten pool)
+        private int maxConnections = 200;
+        // Peticiones que pueden esperar conexión libre antes de rechazar con error
+        private int pendingAcquireMaxCount = 1_000;
+        private long pendingAcquireTimeoutMs = 5_000;
+        // Conexiones ociosas o demasiado viejas se cierran (el proxy de Supabase corta las inactivas)
+        private long maxIdleTimeSeconds = 30;
+        private long maxLifeTimeSeconds = 300;
+        private long evictInBackgroundSeconds = 30;
+        private int connectTimeoutMs = 5_000;
+        private long responseTimeoutSeconds = 20;
+        // HTTP/2 se negocia por ALPN cuando la URL es https; si no, HTTP/1.1 con keep-alive
+        private boolean http2 = true;
+        private boolean compress = true;
+        // Publica ocupación del pool, tiempo de adquisición y cola pendiente en Micrometer
+        private boolean metrics = true;
+    }
+
+    @Setter
+    @Getter
+    public static class AdminSession {
+        // Tiempo máximo que una desactivación en admin_users tarda en surtir efecto
+        private long ttlSeconds = 60;
+        private long maxSize = 1_000;
+        // Intervalo de escritura diferida de last_login_at (una vez por admin como mucho)
+        private long lastLoginFlushMs = 60_000;
+        // Ciclos fallidos tras los que se descarta una marca de last_login_at
+        private int lastLoginMaxRetries = 5;
+        // Tokens de administrador ya verificados (firma + claims) que se recuerdan hasta su exp
+        private long verifiedTokenCacheSize = 10_000;
+    }
+
+    @Setter
+    @Getter
+    public static class AdminDirectory {
+        // Intervalo de recarga completa de admin_users
+        private long refreshMs = 60_000;
+        // Separación mínima entre recargas forzadas por un email desconocido en el login admin
+        private long missRefreshIntervalMs = 5_000;
+    }
+
+    @Setter
+    @Getter
+    public static class TriviaSession {
+        // Intentos recordados; al expulsar uno se reconstruye desde la base de datos
+        private long maxSize = 50_000;
+        // Inactividad tras la cual un intento sale de memoria
+        private long ttlMinutes = 120;
+    }
+
+    @Setter
+    @Getter
+    public static class AnswerWriter {
+        // Filas por upsert masivo; al alcanzarlas se vacía sin esperar la ventana
+        private int batchSize = 200;
+        // Ventana máxima que una respuesta espera en cola antes de escribirse
+        private long flushWindowMs = 200;
+        // Respuestas pendientes admitidas; con la cola llena quien responde espera
+        private int queueCapacity = 10_000;
+        private long enqueueTimeoutMs = 2_000;
+        // Reintentos con backoff ante errores transitorios (5xx, 429, red); agotados, el lote
+        // sigue en cola para el siguiente vaciado
+        private int maxRetries = 3;
+        // Espera máxima de finish() a que sus respuestas estén escritas; si vence, finish() falla
+        private long barrierTimeoutMs = 5_000;
+    }
+
+    @Setter
+    @Getter
+    public static class ActivityCounters {
+        private long maxSize = 50_000;
+        // Red de seguridad frente a escrituras hechas por otros nodos o directamente en la base
+        private long ttlSeconds = 600;
+    }
+
+    @Setter
+    @Getter
+    public static class Badges {
+        // Vencido el catálogo se sigue sirviendo mientras se recarga en segundo plano
+        private long catalogTtlSeconds = 300;
+        private long ownedCacheSize = 50_000;
+        private long ownedTtlSeconds = 1_800;
+    }
+
+    @Setter
+    @Getter
+    public static class TopicMastery {
+        private long maxSize = 50_000;
+        // Las copias en memoria se releen de la tabla pasado este tiempo
+        private long ttlSeconds = 1_800;
+        // Ventana para agrupar deltas antes de llamar a apply_topic_mastery
+        private long flushMs = 1_000;
+    }
+
+    @Setter
+    @Getter
+    public static class HistoryPaging {
+        private int pageSize = 500;
+        // Ids por filtro in.(...): mantiene las URLs por debajo de los límites del proxy
+        private int chunkSize = 100;
+        private int concurrency = 4;
+    }
+
+    @Setter
+    @Getter
+    public static class ActivityOutbox {
+        // Directorio del diario; debe sobrevivir a reinicios del proceso
+        private String dir = "data/activity-outbox";
+        private long drainMs = 1_000;
+        // Actividades por insert masivo
+        private int batchSize = 200;
+        private long appendTimeoutMs = 2_000;
+    }
+
+    @Setter
+    @Getter
+    public static class OverviewCache {
+        private long maxSize = 20_000;
+        // Red de seguridad: las invalidaciones explícitas cubren los cambios conocidos
+        private long ttlSeconds = 300;
+    }
+
+    @Setter
+    @Getter
+    public static class Ranking {
+        // Filas por página en la carga inicial de trivia_attempts
+        private int pageSize = 1_000;
+        // Separación mínima entre reescalas (reconstrucción completa al cambiar el máximo de quizzes)
+        private long rescaleMs = 15_000;
+    }
+
+    @Setter
+    @Getter
+    public static class Leaderboard {
+        // Cada cuánto se reconstruye la foto si hubo intentos nuevos
+        private long rebuildMs = 15_000;
+        // Cada cuánto se releen todos los perfiles (cambios de nombre o correo)
+        private long profileRefreshMs = 600_000;
+    }
+
+    @Setter
+    @Getter
+    public static class DailyScores {
+        private long maxSize = 20_000;
+        // Las series en memoria se releen de la tabla pasado este tiempo
+        private long ttlSeconds = 1_800;
+        // Ventana para agrupar deltas antes de llamar a apply_daily_scores
+        private long flushMs = 1_000;
+        // Días que guarda el buffer de cada usuario (máximo de la ventana consultable)
+        private int retentionDays = 400;
+        // Zona para asignar cada intento a su día; debe coincidir con la de la siembra en docs/trivia-schema.sql
+        private String zone = "UTC";
+    }
+
+    @Setter
+    @Getter
+    public static class Tematicas {
+        // Pasado este tiempo el contenido se revalida en segundo plano
+        private long ttlSeconds = 300;
+    }
+
+    @Setter
+    @Getter
+    public static class ResponseCache {
+        private long maxSize = 2_000;
+        // Límite para cambios hechos fuera del panel de administración
+        private long ttlSeconds = 300;
+        // max-age enviado a los clientes; 0 = guardar pero revalidar siempre con If-None-Match
+        private long clientMaxAgeSeconds = 0;
+    }
+
+    @Setter
+    @Getter
+    public static class DiagnosticBank {
+        // Pasado este tiempo el banco se revalida en segundo plano
+        private long ttlSeconds = 600;
+    }
+
+}
@@ -0,0 +1,164 @@
+package org.uniproject.SaviaU.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Respuestas JSON ya serializadas para los catálogos de solo lectura (sets y preguntas de
+ * trivia, preguntas del diagnóstico, temáticas).
+ * <p>
+ * Cada entrada guarda los bytes UTF-8, su versión gzip y un ETag fuerte sacado del hash del
+ * contenido, bajo la versión del catálogo del que salió. Mientras la versión no cambie, la
+ * respuesta se escribe tal cual sin construir DTOs ni pasar por Jackson; cuando un cambio de
+ * administración sube la versión, la siguiente petición vuelve a serializar.
+ * <p>
+ * Las peticiones condicionales con un ETag vigente reciben {@code 304} sin cuerpo.
+ */
+@Component
+public class EncodedResponseCache {
+
+    /** Cuerpo serializado con su variante comprimida (null si gzip no reduce el tamaño). */
+    public record Encoded(byte[] identity, byte[] gzip, String etag) {}
+
+    private record Entry(long version, Mono<Encoded> body) {}
+
+    private final ObjectMapper mapper;
+    private final Cache<String, Entry> cache;
+    private final Counter hits;
+    private final Counter misses;
+    private final CacheControl cacheControl;
+
+    public EncodedResponseCache(ObjectMapper mapper, SupabaseClients clients, MeterRegistry registry) {
+        this.mapper = mapper;
+        SupabaseProperties.ResponseCache cfg = clients.getProps().getResponseCache();
+        // El TTL cubre cambios hechos fuera del panel, que no suben ninguna versión
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, cfg.getTtlSeconds())))
+                .build();
+        // Con max-age 0 el cliente guarda la respuesta pero revalida siempre (no-cache)
+        this.cacheControl = cfg.getClientMaxAgeSeconds() <= 0
+                ? CacheControl.noCache().cachePublic()
+                : CacheControl.maxAge(Duration.ofSeconds(cfg.getClientMaxAgeSeconds())).cachePublic().mustRevalidate();
+        this.hits = Counter.builder("http.encoded.cache")
+                .tag("result", "hit")
+                .description("Respuestas de catálogo servidas ya serializadas")
+                .register(registry);
+        this.misses = Counter.builder("http.encoded.cache")
+                .tag("result", "miss")
+                .description("Respuestas de catálogo serializadas de nuevo")
+                .register(registry);
+    }
+
+    /**
+     * Cuerpo serializado de {@code key} para {@code version}; si no está, lo construye con
+     * {@code body} una sola vez para todas las peticiones concurrentes. Los errores no se guardan.
+     */
+    public Mono<Encoded> get(String key, long version, Supplier<Mono<?>> body) {
+        Entry current = cache.getIfPresent(key);
+        if (current != null && current.version() == version) {
+            hits.increment();
+            return current.body();
+        }
+        Entry fresh = cache.asMap().compute(key, (k, prev) -> {
+            if (prev != null && prev.version() == version) return prev;
+            misses.increment();
+            return new Entry(version, Mono.defer(body).map(this::encode).cache());
+        });
+        return fresh.body().doOnError(ex -> cache.asMap().remove(key, fresh));
+    }
+
+    /**
+     * Respuesta para la petición: 304 si {@code If-None-Match} ya trae el ETag vigente, o 200
+     * con la variante que acepta el cliente. La variante gzip lleva su propio ETag fuerte
+     * (sufijo {@code -gz}); cualquiera de los dos valida la otra.
+     */
+    public ResponseEntity<Object> toResponse(Encoded encoded, HttpHeaders request) {
+        String acceptEncoding = request.getFirst(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = encoded.gzip() != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        String etag = gzip ? gzipTag(encoded.etag()) : encoded.etag();
+        if (matches(request.getIfNoneMatch(), encoded.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return builder.body(gzip ? encoded.gzip() : encoded.identity());
+    }
+
+    private static boolean matches(List<String> ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch) {
+            if ("*".equals(candidate)) return true;
+            // Comparación débil (RFC 9110): se ignora el prefijo W/ que añaden algunos proxies
+            String tag = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if (tag.equals(etag) || tag.equals(gzipTag(etag))) return true;
+        }
+        return false;
+    }
+
+    private static String gzipTag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
+
+    private Encoded encode(Object value) {
+        byte[] identity;
+        try {
+            identity = mapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] gzip = gzip(identity);
+        return new Encoded(identity, gzip.length < identity.length ? gzip : null, etag(identity));
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String etag(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,14 +1,13 @@
 package org.uniproject.SaviaU.controller.admin;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.server.ResponseStatusException;
 import org.uniproject.SaviaU.dto.TematicaAreaDto;
 import org.uniproject.SaviaU.dto.TematicaAreaSummaryDto;
 import org.uniproject.SaviaU.dto.TematicaResourceDto;
 import org.uniproject.SaviaU.dto.admin.AdminTematicaAreaUpsertRequest;
 import org.uniproject.SaviaU.dto.admin.AdminTematicaResourceUpsertRequest;
+import org.uniproject.SaviaU.security.admin.AdminPrincipal;
 import org.uniproject.SaviaU.service.admin.AdminTematicaManagementService;
 import reactor.core.publisher.Mono;
 
@@ -23,44 +22,38 @@ public class AdminTematicaController {
     private final AdminTematicaManagementService tematicaService;
 
     @GetMapping("/areas")
-    public Mono<List<TematicaAreaSummaryDto>> listAreas(@RequestHeader("Authorization") String authorization) {
-        return tematicaService.listAreas(extractToken(authorization));
+    public Mono<List<TematicaAreaSummaryDto>> listAreas(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin) {
+        return tematicaService.listAreas(admin);
     }
 
     @GetMapping("/areas/{areaId}")
-    public Mono<TematicaAreaDto> getArea(@RequestHeader("Authorization") String authorization,
+    public Mono<TematicaAreaDto> getArea(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                          @PathVariable String areaId) {
-        return tematicaService.getArea(extractToken(authorization), areaId);
+        return tematicaService.getArea(admin, areaId);
     }
 
     @PostMapping("/areas")
-    public Mono<TematicaAreaDto> upsertArea(@RequestHeader("Authorization") String authorization,
+    public Mono<TematicaAreaDto> upsertArea(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                             @RequestBody AdminTematicaAreaUpsertRequest request) {
-        return tematicaService.upsertArea(extractToken(authorization), request);
+        return tematicaService.upsertArea(admin, request);
     }
 
     @DeleteMapping("/areas/{areaId}")
-    public Mono<Void> deleteArea(@RequestHeader("Authorization") String authorization,
+    public Mono<Void> deleteArea(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                  @PathVariable String areaId) {
-        return tematicaService.deleteArea(extractToken(authorization), areaId);
+        return tematicaService.deleteArea(admin, areaId);
     }
 
     @PostMapping("/resources")
-    public Mono<TematicaResourceDto> upsertResource(@RequestHeader("Authorization") String authorization,
+    public Mono<TematicaResourceDto> upsertResource(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                                     @RequestBody AdminTematicaResourceUpsertRequest request) {
-        return tematicaService.upsertResource(extractToken(authorization), request);
+        return tematicaService.upsertResource(admin, request);
     }
 
     @DeleteMapping("/resources/{resourceId}")
-    public Mono<Void> deleteResource(@RequestHeader("Authorization") String authorization,
+    public Mono<Void> deleteResource(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                      @PathVariable String resourceId) {
-        return tematicaService.deleteResource(extractToken(authorization), resourceId);
+        return tematicaService.deleteResource(admin, resourceId);
     }
 
-    private String extractToken(String header) {
-        if (header == null || !header.startsWith("Bearer ")) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authorization inválido");
-        }
-        return header.substring("Bearer ".length()).trim();
-    }
 }
@@ -1,11 +1,10 @@
 package org.uniproject.SaviaU.controller.admin;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.server.ResponseStatusException;
 import org.uniproject.SaviaU.dto.TriviaSetDto;
 import org.uniproject.SaviaU.dto.admin.*;
+import org.uniproject.SaviaU.security.admin.AdminPrincipal;
 import org.uniproject.SaviaU.service.admin.AdminTriviaManagementService;
 import reactor.core.publisher.Mono;
 
@@ -20,70 +19,64 @@ public class AdminTriviaController {
     private final AdminTriviaManagementService triviaService;
 
     @GetMapping("/sets")
-    public Mono<List<TriviaSetDto>> listSets(@RequestHeader("Authorization") String authorization) {
-        return triviaService.listSets(extractToken(authorization));
+    public Mono<List<TriviaSetDto>> listSets(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin) {
+        return triviaService.listSets(admin);
     }
 
     @PostMapping("/sets")
-    public Mono<TriviaSetDto> upsertSet(@RequestHeader("Authorization") String authorization,
+    public Mono<TriviaSetDto> upsertSet(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                         @RequestBody AdminTriviaSetUpsertRequest request) {
-        return triviaService.upsertSet(extractToken(authorization), request);
+        return triviaService.upsertSet(admin, request);
     }
 
     @GetMapping("/questions")
-    public Mono<List<AdminTriviaQuestionDto>> listQuestions(@RequestHeader("Authorization") String authorization,
+    public Mono<List<AdminTriviaQuestionDto>> listQuestions(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                                             @RequestParam(value = "setId", required = false) String setId) {
-        return triviaService.listQuestions(extractToken(authorization), setId);
+        return triviaService.listQuestions(admin, setId);
     }
 
     @PostMapping("/questions")
-    public Mono<AdminTriviaQuestionDto> createQuestion(@RequestHeader("Authorization") String authorization,
+    public Mono<AdminTriviaQuestionDto> createQuestion(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                                        @RequestBody AdminTriviaQuestionUpsertRequest request) {
-        return triviaService.createQuestion(extractToken(authorization), request);
+        return triviaService.createQuestion(admin, request);
     }
 
     @PutMapping("/questions/{questionId}")
-    public Mono<AdminTriviaQuestionDto> updateQuestion(@RequestHeader("Authorization") String authorization,
+    public Mono<AdminTriviaQuestionDto> updateQuestion(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                                        @PathVariable String questionId,
                                                        @RequestBody AdminTriviaQuestionUpsertRequest request) {
-        return triviaService.updateQuestion(extractToken(authorization), questionId, request);
+        return triviaService.updateQuestion(admin, questionId, request);
     }
 
     @DeleteMapping("/questions/{questionId}")
-    public Mono<Void> deleteQuestion(@RequestHeader("Authorization") String authorization,
+    public Mono<Void> deleteQuestion(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                      @PathVariable String questionId) {
-        return triviaService.deleteQuestion(extractToken(authorization), questionId);
+        return triviaService.deleteQuestion(admin, questionId);
     }
 
     @GetMapping("/leaderboard")
-    public Mono<List<AdminLeaderboardRowDto>> leaderboard(@RequestHeader("Authorization") String authorization,
+    public Mono<List<AdminLeaderboardRowDto>> leaderboard(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                                           @RequestParam(value = "limit", defaultValue = "20") int limit) {
-        return triviaService.getLeaderboard(extractToken(authorization), limit);
+        return triviaService.getLeaderboard(admin, limit);
     }
 
     @GetMapping("/progress/{userId}")
-    public Mono<AdminUserProgressDto> userProgress(@RequestHeader("Authorization") String authorization,
+    public Mono<AdminUserProgressDto> userProgress(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                                    @PathVariable String userId) {
-        return triviaService.getUserProgress(extractToken(authorization), userId);
+        return triviaService.getUserProgress(admin, userId);
     }
 
     @GetMapping("/progress")
-    public Mono<List<AdminUserProgressDto>> cohortProgress(@RequestHeader("Authorization") String authorization,
+    public Mono<List<AdminUserProgressDto>> cohortProgress(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                                            @RequestParam(value = "limit", defaultValue = "40") int limit) {
-        return triviaService.getCohortProgress(extractToken(authorization), limit);
+        return triviaService.getCohortProgress(admin, limit);
     }
 
     @GetMapping("/history/{userId}")
-    public Mono<List<AdminTriviaHistoryDto>> userHistory(@RequestHeader("Authorization") String authorization,
+    public Mono<List<AdminTriviaHistoryDto>> userHistory(@RequestAttribute(AdminPrincipal.REQUEST_ATTRIBUTE) AdminPrincipal admin,
                                                          @PathVariable String userId,
                                                          @RequestParam(value = "days", defaultValue = "30") int days) {
-        return triviaService.getUserHistory(extractToken(authorization), userId, days);
+        return triviaService.getUserHistory(admin, userId, days);
     }
 
-    private String extractToken(String header) {
-        if (header == null || !header.startsWith("Bearer ")) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authorization inválido");
-        }
-        return header.substring("Bearer ".length()).trim();
-    }
 }
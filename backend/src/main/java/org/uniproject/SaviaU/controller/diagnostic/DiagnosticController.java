@@ -2,9 +2,10 @@ package org.uniproject.SaviaU.controller.diagnostic;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.uniproject.SaviaU.dto.DiagnosticQuestionDto;
+import org.uniproject.SaviaU.controller.EncodedResponseCache;
 import org.uniproject.SaviaU.dto.DiagnosticResultDto;
 import org.uniproject.SaviaU.dto.DiagnosticSubmitRequest;
 import org.uniproject.SaviaU.service.diagnostic.DiagnosticService;
@@ -21,11 +22,13 @@ import java.util.Map;
 public class DiagnosticController {
 
     private final DiagnosticService diagnosticService;
+    private final EncodedResponseCache responseCache;
 
     @GetMapping("/questions")
-    public Mono<ResponseEntity<List<DiagnosticQuestionDto>>> getDiagnosticQuestions() {
-        return diagnosticService.getQuestions()
-                .map(ResponseEntity::ok)
+    public Mono<ResponseEntity<Object>> getDiagnosticQuestions(@RequestHeader HttpHeaders headers) {
+        return diagnosticService.catalogVersion()
+                .flatMap(version -> responseCache.get("diagnostic:questions", version, diagnosticService::getQuestions))
+                .map(body -> responseCache.toResponse(body, headers))
                 .onErrorReturn(ResponseEntity.status(500).build());
     }
 
@@ -48,4 +48,24 @@ public class ProfileController {
                 .map(ResponseEntity::ok)
                 .onErrorReturn(ResponseEntity.status(400).build());
     }
+
+    @GetMapping("/ranking/position")
+    public Mono<ResponseEntity<UserRankingDto>> getRankingPosition(
+            @RequestParam String accessToken,
+            @RequestParam(required = false) String userId) {
+        return onboardingService.getUserPosition(accessToken, userId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorReturn(ResponseEntity.status(400).build());
+    }
+
+    @GetMapping("/ranking/around")
+    public Mono<ResponseEntity<List<UserRankingDto>>> getRankingAround(
+            @RequestParam String accessToken,
+            @RequestParam(required = false) String userId,
+            @RequestParam(defaultValue = "5") int radius) {
+        return onboardingService.getRankingAround(accessToken, userId, radius)
+                .map(ResponseEntity::ok)
+                .onErrorReturn(ResponseEntity.status(400).build());
+    }
 }
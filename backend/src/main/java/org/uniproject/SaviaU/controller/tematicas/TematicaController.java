@@ -1,14 +1,16 @@
 package org.uniproject.SaviaU.controller.tematicas;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.uniproject.SaviaU.dto.TematicaAreaSummaryDto;
+import org.uniproject.SaviaU.controller.EncodedResponseCache;
 import org.uniproject.SaviaU.service.tematicas.TematicaContentService;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/tematicas")
@@ -17,25 +19,32 @@ import java.util.Map;
 public class TematicaController {
 
     private final TematicaContentService tematicaContentService;
+    private final EncodedResponseCache responseCache;
 
     @GetMapping("/areas")
-    public Mono<ResponseEntity<List<TematicaAreaSummaryDto>>> listAreas() {
-        return tematicaContentService.listAreas()
-                .map(ResponseEntity::ok)
+    public Mono<ResponseEntity<Object>> listAreas(@RequestHeader HttpHeaders headers) {
+        return cached("tematicas:areas", tematicaContentService::listAreas, headers)
                 .onErrorResume(ex -> Mono.just(ResponseEntity.status(500).body(List.of())));
     }
 
     @GetMapping("/areas/{areaId}")
-    public Mono<ResponseEntity<Object>> getArea(@PathVariable String areaId) {
-        return tematicaContentService.getArea(areaId)
-                .map(area -> ResponseEntity.ok().body((Object) area))
+    public Mono<ResponseEntity<Object>> getArea(@PathVariable String areaId,
+                                                @RequestHeader HttpHeaders headers) {
+        return cached("tematicas:area:" + areaId, () -> tematicaContentService.getArea(areaId), headers)
                 .onErrorResume(ex -> Mono.just(ResponseEntity.status(404).body((Object) Map.of("message", ex.getMessage()))));
     }
 
     @GetMapping("/areas/{areaId}/resources/{resourceId}")
-    public Mono<ResponseEntity<Object>> getResource(@PathVariable String areaId, @PathVariable String resourceId) {
-        return tematicaContentService.getResource(areaId, resourceId)
-                .map(resource -> ResponseEntity.ok().body((Object) resource))
+    public Mono<ResponseEntity<Object>> getResource(@PathVariable String areaId, @PathVariable String resourceId,
+                                                    @RequestHeader HttpHeaders headers) {
+        return cached("tematicas:resource:" + areaId + ":" + resourceId,
+                () -> tematicaContentService.getResource(areaId, resourceId), headers)
                 .onErrorResume(ex -> Mono.just(ResponseEntity.status(404).body((Object) Map.of("message", ex.getMessage()))));
     }
+
+    private Mono<ResponseEntity<Object>> cached(String key, Supplier<Mono<?>> body, HttpHeaders headers) {
+        return tematicaContentService.version()
+                .flatMap(version -> responseCache.get(key, version, body))
+                .map(encoded -> responseCache.toResponse(encoded, headers));
+    }
 }
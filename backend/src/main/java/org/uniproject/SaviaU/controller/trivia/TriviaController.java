@@ -1,8 +1,10 @@
 package org.uniproject.SaviaU.controller.trivia;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.uniproject.SaviaU.controller.EncodedResponseCache;
 import org.uniproject.SaviaU.dto.*;
 import org.uniproject.SaviaU.service.trivia.TriviaService;
 import reactor.core.publisher.Mono;
@@ -17,20 +19,22 @@ import java.util.Map;
 public class TriviaController {
 
     private final TriviaService triviaService;
+    private final EncodedResponseCache responseCache;
 
     // Listar trivias disponibles (sets)
     @GetMapping("/sets")
-    public Mono<ResponseEntity<List<TriviaSetDto>>> getSets() {
-        return triviaService.getSets()
-                .map(ResponseEntity::ok)
+    public Mono<ResponseEntity<Object>> getSets(@RequestHeader HttpHeaders headers) {
+        return responseCache.get("trivia:sets", triviaService.catalogVersion(), triviaService::getSets)
+                .map(body -> responseCache.toResponse(body, headers))
                 .onErrorReturn(ResponseEntity.status(500).build());
     }
 
     // Obtener preguntas de un set (sin revelar respuestas correctas)
     @GetMapping("/{setId}/questions")
-    public Mono<ResponseEntity<List<TriviaQuestionDto>>> getQuestions(@PathVariable String setId) {
-        return triviaService.getQuestions(setId)
-                .map(ResponseEntity::ok)
+    public Mono<ResponseEntity<Object>> getQuestions(@PathVariable String setId,
+                                                     @RequestHeader HttpHeaders headers) {
+        return responseCache.get("trivia:questions:" + setId, triviaService.catalogVersion(), () -> triviaService.getQuestions(setId))
+                .map(body -> responseCache.toResponse(body, headers))
                 .onErrorReturn(ResponseEntity.status(500).build());
     }
 
@@ -50,6 +54,14 @@ public class TriviaController {
                 .onErrorResume(ex -> Mono.just(ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()))));
     }
 
+    // Responder varias preguntas de un intento en una sola petición
+    @PostMapping("/answers")
+    public Mono<ResponseEntity<Object>> answerBatch(@RequestBody TriviaBatchAnswerRequest request) {
+        return triviaService.answerBatch(request)
+                .map(body -> ResponseEntity.ok().body((Object) body))
+                .onErrorResume(ex -> Mono.just(ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()))));
+    }
+
     // Finalizar intento y obtener resultado
     @PostMapping("/finish")
     public Mono<ResponseEntity<Object>> finish(@RequestBody TriviaFinishRequest request) {
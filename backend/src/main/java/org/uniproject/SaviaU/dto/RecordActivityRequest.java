@@ -9,5 +9,7 @@ public class RecordActivityRequest {
     private String accessToken;
     private String type; // e.g., NEWS_READ, TRIVIA_COMPLETED
     private Map<String, Object> metadata;
+    // Id del evento generado por el cliente; los reintentos con el mismo id cuentan una vez
+    private String eventId;
 }
 
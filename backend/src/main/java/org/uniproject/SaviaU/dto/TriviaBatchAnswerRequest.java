@@ -0,0 +1,25 @@
+package org.uniproject.SaviaU.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TriviaBatchAnswerRequest {
+    private String accessToken;
+    private String attemptId;
+    // Todas las respuestas del intento o un tramo de ellas
+    private List<Answer> answers;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Answer {
+        private String questionId;
+        private String selectedOptionId;
+    }
+}
@@ -0,0 +1,48 @@
+package org.uniproject.SaviaU.security.admin;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Identidad de administrador ya verificada por {@link org.uniproject.SaviaU.security.config.AdminJwtFilter}.
+ * Se publica como atributo de la petición para que controladores y servicios no vuelvan a
+ * validar la firma ni parsear los claims.
+ */
+public record AdminPrincipal(String subject,
+                             String email,
+                             String role,
+                             String issuer,
+                             Instant expiresAt,
+                             Map<String, Object> claims) {
+
+    public static final String REQUEST_ATTRIBUTE = "adminPrincipal";
+
+    public static AdminPrincipal fromClaims(Map<String, Object> claims) {
+        Object exp = claims.get("exp");
+        return new AdminPrincipal(
+                stringOrNull(claims.get("sub")),
+                stringOrNull(claims.get("email")),
+                stringOrNull(claims.get("role")),
+                stringOrNull(claims.get("iss")),
+                exp instanceof Number n ? Instant.ofEpochSecond(n.longValue()) : null,
+                Map.copyOf(withoutNulls(claims)));
+    }
+
+    public boolean isAdmin() {
+        return "admin".equals(role);
+    }
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && now.isAfter(expiresAt);
+    }
+
+    private static String stringOrNull(Object v) {
+        return v == null ? null : String.valueOf(v);
+    }
+
+    private static Map<String, Object> withoutNulls(Map<String, Object> claims) {
+        Map<String, Object> copy = new java.util.HashMap<>(claims);
+        copy.values().removeIf(java.util.Objects::isNull);
+        return copy;
+    }
+}
@@ -0,0 +1,73 @@
+package org.uniproject.SaviaU.security.admin;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.security.util.JwtUtil;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Verifica tokens de administrador y recuerda los ya verificados hasta su {@code exp}.
+ * <p>
+ * La clave de la caché es el segmento de firma del token (un HMAC-SHA256 del resto, por lo que
+ * ya actúa como hash del token); en un acierto se compara además el token completo, así que
+ * una firma reutilizada con otro contenido nunca devuelve la identidad cacheada.
+ */
+@Component
+public class AdminTokenVerifier {
+
+    // Tope para tokens sin "exp"
+    private static final Duration MAX_ENTRY_LIFE = Duration.ofHours(2);
+
+    private final SupabaseProperties props;
+    private final Cache<String, Verified> verified;
+
+    public AdminTokenVerifier(@Qualifier("supabaseProperties") SupabaseProperties props) {
+        this.props = props;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, props.getAdminSession().getVerifiedTokenCacheSize()))
+                .expireAfter(Expiry.creating((String key, Verified v) -> lifeOf(v.principal())))
+                .build();
+    }
+
+    /**
+     * Devuelve el principal del token o lanza RuntimeException si la firma no es válida o expiró.
+     * No comprueba el rol: eso queda a cargo del llamador.
+     */
+    public AdminPrincipal verify(String token) {
+        if (token == null || token.isBlank()) throw new RuntimeException("Token de administrador requerido");
+        String key = signatureOf(token);
+        Instant now = Instant.now();
+
+        Verified hit = key == null ? null : verified.getIfPresent(key);
+        if (hit != null && hit.token().equals(token)) {
+            if (!hit.principal().isExpired(now)) return hit.principal();
+            verified.invalidate(key);
+            throw new RuntimeException("Token expirado");
+        }
+
+        AdminPrincipal principal = AdminPrincipal.fromClaims(
+                JwtUtil.validateHs256AndGetClaims(token, props.getJwtSecret()));
+        if (key != null) verified.put(key, new Verified(token, principal));
+        return principal;
+    }
+
+    private static Duration lifeOf(AdminPrincipal principal) {
+        if (principal.expiresAt() == null) return MAX_ENTRY_LIFE;
+        Duration left = Duration.between(Instant.now(), principal.expiresAt());
+        if (left.isNegative()) return Duration.ZERO;
+        return left.compareTo(MAX_ENTRY_LIFE) > 0 ? MAX_ENTRY_LIFE : left;
+    }
+
+    private static String signatureOf(String token) {
+        int dot = token.lastIndexOf('.');
+        return dot < 0 || dot == token.length() - 1 ? null : token.substring(dot + 1);
+    }
+
+    private record Verified(String token, AdminPrincipal principal) {}
+}
@@ -7,21 +7,19 @@ import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
-import org.uniproject.SaviaU.config.SupabaseProperties;
-import org.uniproject.SaviaU.security.util.JwtUtil;
+import org.uniproject.SaviaU.security.admin.AdminPrincipal;
+import org.uniproject.SaviaU.security.admin.AdminTokenVerifier;
 
 import java.io.IOException;
-import java.util.Map;
 
 @Component
 public class AdminJwtFilter implements Filter {
 
-    private final SupabaseProperties props;
+    private final AdminTokenVerifier tokenVerifier;
 
-    public AdminJwtFilter(@Qualifier("supabaseProperties") SupabaseProperties props) {
-        this.props = props;
+    public AdminJwtFilter(AdminTokenVerifier tokenVerifier) {
+        this.tokenVerifier = tokenVerifier;
     }
 
     @Override
@@ -48,14 +46,15 @@ public class AdminJwtFilter implements Filter {
             }
             String token = authHeader.substring("Bearer ".length()).trim();
             try {
-                Map<String, Object> claims = JwtUtil.validateHs256AndGetClaims(token, props.getJwtSecret());
-                Object role = claims.get("role");
-                if (role == null || !"admin".equals(String.valueOf(role))) {
+                // Única verificación de firma de la petición (ninguna si el token ya está en caché)
+                AdminPrincipal principal = tokenVerifier.verify(token);
+                if (!principal.isAdmin()) {
                     unauthorized(res, "forbidden_role");
                     return;
                 }
-                // Opcionalmente propagar claims para capas posteriores
-                req.setAttribute("adminClaims", claims);
+                // Propagar la identidad verificada a controladores y servicios
+                req.setAttribute(AdminPrincipal.REQUEST_ATTRIBUTE, principal);
+                req.setAttribute("adminClaims", principal.claims());
             } catch (RuntimeException ex) {
                 unauthorized(res, ex.getMessage());
                 return;
@@ -0,0 +1,185 @@
+package org.uniproject.SaviaU.security.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Firmador/verificador HS256 ligado a un secreto.
+ * <p>
+ * Reutiliza una instancia de {@link Mac} por hilo, un {@link ObjectReader} compartido y
+ * búferes por hilo para la firma, de modo que validar un token no crea Mac, claves ni
+ * ObjectMapper, no usa expresiones regulares y compara la firma decodificada byte a byte
+ * en tiempo constante. Es seguro para uso concurrente.
+ */
+public final class Hs256Jwt {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_BYTES = 32;
+    private static final ObjectReader CLAIMS_READER = new ObjectMapper().readerFor(Map.class);
+    private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final String HEADER_B64 = URL_ENCODER.encodeToString(
+            "{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        java.util.Arrays.fill(DECODE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        for (int i = 0; i < alphabet.length(); i++) DECODE[alphabet.charAt(i)] = (byte) i;
+        // Solo base64url (RFC 7515): cada firma tiene una única representación textual
+        DECODE['-'] = 62;
+        DECODE['_'] = 63;
+    }
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+    private final ThreadLocal<byte[][]> sigBuffers = ThreadLocal.withInitial(
+            () -> new byte[][]{new byte[SIGNATURE_BYTES], new byte[SIGNATURE_BYTES]});
+
+    public Hs256Jwt(String secret) {
+        if (secret == null) throw new IllegalArgumentException("Secreto JWT requerido");
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public String sign(String subject, String email, String role, String issuer, long ttlSeconds) {
+        long now = Instant.now().getEpochSecond();
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("sub", subject);
+        payload.put("iss", issuer);
+        payload.put("iat", now);
+        payload.put("exp", now + ttlSeconds);
+        if (email != null) payload.put("email", email);
+        if (role != null) payload.put("role", role);
+        return sign(payload);
+    }
+
+    /** Firma un payload con claims simples (texto, números o booleanos) tal cual. */
+    public String sign(Map<String, Object> payload) {
+        String signingInput = HEADER_B64 + "." + URL_ENCODER.encodeToString(toJson(payload).getBytes(StandardCharsets.UTF_8));
+        Mac m = mac.get();
+        byte[] sig = m.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + URL_ENCODER.encodeToString(sig);
+    }
+
+    /**
+     * Valida firma y {@code exp}; retorna los claims. Lanza RuntimeException si el token no es válido.
+     */
+    public Map<String, Object> verify(String token) {
+        if (token == null) throw new RuntimeException("Formato de token inválido");
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        if (first <= 0 || second < 0 || token.indexOf('.', second + 1) >= 0 || second == first + 1) {
+            throw new RuntimeException("Formato de token inválido");
+        }
+
+        byte[] ascii = token.getBytes(StandardCharsets.US_ASCII);
+        byte[][] bufs = sigBuffers.get();
+        byte[] expected = bufs[0];
+        byte[] provided = bufs[1];
+
+        Mac m = mac.get();
+        m.update(ascii, 0, second);
+        try {
+            m.doFinal(expected, 0);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error validando JWT: " + e.getMessage(), e);
+        }
+        int sigLen = decodeInto(ascii, second + 1, ascii.length, provided);
+        if (sigLen != SIGNATURE_BYTES || !MessageDigest.isEqual(expected, provided)) {
+            throw new RuntimeException("Firma inválida");
+        }
+
+        byte[] payload = new byte[decodedLength(ascii, first + 1, second)];
+        decodeInto(ascii, first + 1, second, payload);
+        Map<String, Object> claims;
+        try {
+            claims = CLAIMS_READER.readValue(payload);
+        } catch (Exception e) {
+            throw new RuntimeException("Error validando JWT: " + e.getMessage(), e);
+        }
+
+        if (claims.get("exp") instanceof Number exp && Instant.now().getEpochSecond() > exp.longValue()) {
+            throw new RuntimeException("Token expirado");
+        }
+        return claims;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac m = Mac.getInstance(ALGORITHM);
+            m.init(key);
+            return m;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 no disponible", e);
+        }
+    }
+
+    private static int decodedLength(byte[] src, int from, int to) {
+        int len = to - from;
+        int rem = len % 4;
+        if (rem == 1) throw new RuntimeException("Formato de token inválido");
+        return len / 4 * 3 + (rem == 0 ? 0 : rem - 1);
+    }
+
+    /**
+     * Decodifica base64url sin relleno en {@code dst}; retorna los bytes escritos o -1 si no caben.
+     * Como {@code Base64.getUrlDecoder()}, rechaza {@code =} y bits sobrantes distintos de cero
+     * en el último carácter.
+     */
+    private static int decodeInto(byte[] src, int from, int to, byte[] dst) {
+        int outLen = decodedLength(src, from, to);
+        if (outLen > dst.length) return -1;
+        int bits = 0;
+        int acc = 0;
+        int out = 0;
+        for (int i = from; i < to; i++) {
+            int c = src[i];
+            int v = c >= 0 && c < DECODE.length ? DECODE[c] : -1;
+            if (v < 0) throw new RuntimeException("Formato de token inválido");
+            acc = ((acc << 6) | v) & 0xFFFFFF;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                dst[out++] = (byte) (acc >> bits);
+            }
+        }
+        if ((acc & ((1 << bits) - 1)) != 0) throw new RuntimeException("Formato de token inválido");
+        return out;
+    }
+
+    // JSON mínimo sin dependencias (para valores simples)
+    private static String toJson(Map<String, Object> map) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('"').append(escape(e.getKey())).append('"').append(':');
+            Object v = e.getValue();
+            if (v == null) {
+                sb.append("null");
+            } else if (v instanceof Number || v instanceof Boolean) {
+                sb.append(v);
+            } else {
+                sb.append('"').append(escape(String.valueOf(v))).append('"');
+            }
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
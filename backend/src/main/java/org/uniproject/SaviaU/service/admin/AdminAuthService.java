@@ -1,32 +1,53 @@
 package org.uniproject.SaviaU.service.admin;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
 import org.uniproject.SaviaU.dto.AdminLoginRequest;
 import org.uniproject.SaviaU.dto.AdminLoginResponse;
 import org.uniproject.SaviaU.dto.AdminPasswordResetRequest;
 import org.uniproject.SaviaU.dto.PasswordApplyRequest;
 import org.uniproject.SaviaU.dto.admin.AdminUserDto;
+import org.uniproject.SaviaU.security.admin.AdminPrincipal;
+import org.uniproject.SaviaU.security.admin.AdminTokenVerifier;
 import org.uniproject.SaviaU.security.util.JwtUtil;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class AdminAuthService {
 
     private final SupabaseClients clients;
+    private final AdminLastLoginWriter lastLoginWriter;
+    private final AdminTokenVerifier tokenVerifier;
+    private final AdminDirectory adminDirectory;
+    // Admins verificados contra admin_users, por subject del token; el TTL acota cuánto tarda
+    // en notarse una desactivación
+    private final Cache<String, AdminUserDto> verifiedAdmins;
+
+    public AdminAuthService(SupabaseClients clients, AdminLastLoginWriter lastLoginWriter, AdminTokenVerifier tokenVerifier,
+                            AdminDirectory adminDirectory) {
+        this.clients = clients;
+        this.lastLoginWriter = lastLoginWriter;
+        this.tokenVerifier = tokenVerifier;
+        this.adminDirectory = adminDirectory;
+        SupabaseProperties.AdminSession cfg = clients.getProps().getAdminSession();
+        this.verifiedAdmins = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, cfg.getTtlSeconds())))
+                .build();
+    }
 
     public Mono<AdminLoginResponse> login(AdminLoginRequest request) {
         // 1) Validar credenciales con Supabase Auth (password grant)
@@ -44,40 +65,25 @@ public class AdminAuthService {
                     return Mono.error(new RuntimeException("Credenciales inválidas"));
                 });
 
-        // 2) Autorización: verificar que el email esté en admin_users y activo
-        Mono<List<Map<String, Object>>> adminRowsMono = clients.getDbAdmin().get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/admin_users")
-                        .queryParam("select", "id,email,full_name,is_active")
-                        .queryParam("email", "eq." + request.getEmail())
-                        .build())
-                .retrieve()
-                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+        // 2) Autorización: verificar que el email esté en admin_users y activo (directorio en memoria,
+        //    resuelto en paralelo al password grant)
+        Mono<Optional<AdminDirectory.AdminEntry>> adminMono = adminDirectory.findByEmailFresh(request.getEmail());
 
-        return Mono.zip(tokenMono, adminRowsMono).flatMap(tuple -> {
-            List<Map<String, Object>> rows = tuple.getT2();
-            if (rows.isEmpty()) {
+        return Mono.zip(tokenMono, adminMono).flatMap(tuple -> {
+            Optional<AdminDirectory.AdminEntry> admin = tuple.getT2();
+            if (admin.isEmpty()) {
                 return Mono.error(new RuntimeException("No autorizado"));
             }
-            Map<String, Object> row = rows.get(0);
-            Boolean isActive = row.get("is_active") == null ? Boolean.TRUE : Boolean.valueOf(String.valueOf(row.get("is_active")));
-            if (!isActive) return Mono.error(new RuntimeException("Cuenta deshabilitada"));
-
-            String adminId = (String) row.get("id");
-            String email = (String) row.get("email");
-            String fullName = row.get("full_name") == null ? null : String.valueOf(row.get("full_name"));
-
-            // 3) Actualizar last_login_at encadenado
-            Mono<Void> updateLastLogin = clients.getDbAdmin().patch()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/admin_users")
-                            .queryParam("id", "eq." + adminId)
-                            .build())
-                    .header("Prefer", "return=minimal")
-                    .bodyValue(Map.of("last_login_at", Instant.now().toString()))
-                    .retrieve()
-                    .toBodilessEntity()
-                    .then();
+            if (!admin.get().active()) return Mono.error(new RuntimeException("Cuenta deshabilitada"));
+
+            String adminId = admin.get().id();
+            String email = admin.get().email();
+            String fullName = admin.get().fullName();
+            // Un login nuevo fuerza a releer admin_users en la siguiente petición protegida
+            if (adminId != null) verifiedAdmins.invalidate(adminId);
+
+            // 3) last_login_at se persiste en diferido, igual que en las peticiones protegidas
+            lastLoginWriter.touch(adminId);
 
             // 4) Generar adminToken con rol=admin
             String adminToken = JwtUtil.generateHs256Token(
@@ -95,7 +101,7 @@ public class AdminAuthService {
                     .fullName(fullName)
                     .build();
 
-            return updateLastLogin.thenReturn(response);
+            return Mono.just(response);
         });
     }
 
@@ -112,15 +118,9 @@ public class AdminAuthService {
 
     public Mono<String> applyPassword(PasswordApplyRequest request) {
         // Usar access_token del enlace de Supabase para actualizar password
-        WebClient tokenClient = WebClient.builder()
-                .baseUrl(clients.getProps().getUrl() + "/auth/v1")
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .defaultHeader("apikey", clients.getProps().getAnonKey())
-                .defaultHeader("Authorization", "Bearer " + request.getAccessToken())
-                .build();
-
-        return tokenClient.put()
+        return clients.getAuthPublic().put()
                 .uri("/user")
+                .headers(clients.userBearer(request.getAccessToken()))
                 .bodyValue(Map.of("password", request.getNewPassword()))
                 .retrieve()
                 .bodyToMono(String.class)
@@ -138,25 +138,44 @@ public class AdminAuthService {
                         return Mono.error(new RuntimeException("Token de administrador requerido"));
                 }
 
-                final Map<String, Object> claims;
+                final AdminPrincipal principal;
                 try {
-                        claims = JwtUtil.validateHs256AndGetClaims(adminToken, clients.getProps().getJwtSecret());
+                        principal = tokenVerifier.verify(adminToken);
                 } catch (RuntimeException ex) {
                         return Mono.error(new RuntimeException("Token inválido"));
                 }
+                return requireAdmin(principal);
+        }
 
-                Object role = claims.get("role");
-                if (role == null || !"admin".equals(String.valueOf(role))) {
+        /**
+         * Variante para identidades ya verificadas por {@code AdminJwtFilter}: no vuelve a validar
+         * la firma, solo confirma que el admin sigue activo (con caché acotada por TTL).
+         */
+        public Mono<AdminUserDto> requireAdmin(AdminPrincipal principal) {
+                if (principal == null) {
+                        return Mono.error(new RuntimeException("Token de administrador requerido"));
+                }
+                if (principal.isExpired(Instant.now())) {
+                        return Mono.error(new RuntimeException("Token inválido"));
+                }
+                if (!principal.isAdmin()) {
                         return Mono.error(new RuntimeException("Rol no autorizado"));
                 }
 
-                String adminId = claims.get("sub") != null ? String.valueOf(claims.get("sub")) : null;
-                String emailClaim = claims.get("email") != null ? String.valueOf(claims.get("email")) : null;
+                String adminId = principal.subject();
+                String emailClaim = principal.email();
 
                 if ((adminId == null || adminId.isBlank()) && (emailClaim == null || emailClaim.isBlank())) {
                         return Mono.error(new RuntimeException("Claim de identidad faltante"));
                 }
 
+                String sessionKey = adminId != null && !adminId.isBlank() ? adminId : "email:" + emailClaim;
+                AdminUserDto cached = verifiedAdmins.getIfPresent(sessionKey);
+                if (cached != null) {
+                        lastLoginWriter.touch(cached.getId());
+                        return Mono.just(cached);
+                }
+
                 Mono<List<Map<String, Object>>> adminLookup = clients.getDbAdmin().get()
                                 .uri(uriBuilder -> {
                                         var builder = uriBuilder
@@ -174,10 +193,13 @@ public class AdminAuthService {
 
                 return adminLookup.flatMap(rows -> {
                         if (rows.isEmpty()) {
+                                // Un token vigente de un admin borrado indica que el directorio está desfasado
+                                adminDirectory.invalidate().subscribe(v -> {}, ex -> {});
                                 return Mono.error(new RuntimeException("No estás autorizado"));
                         }
                         Map<String, Object> row = rows.get(0);
                         if (!Boolean.TRUE.equals(row.get("is_active"))) {
+                                adminDirectory.invalidate().subscribe(v -> {}, ex -> {});
                                 return Mono.error(new RuntimeException("Cuenta de administrador inactiva"));
                         }
 
@@ -196,19 +218,10 @@ public class AdminAuthService {
                                         .role("admin")
                                         .build();
 
-                        Mono<String> touch = clients.getDbAdmin().patch()
-                                        .uri(uriBuilder -> uriBuilder
-                                                        .path("/admin_users")
-                                                        .queryParam("id", "eq." + dto.getId())
-                                                        .build())
-                                        .header("Prefer", "return=minimal")
-                                        .bodyValue(Map.of("last_login_at", Instant.now().toString()))
-                                        .retrieve()
-                                        .bodyToMono(String.class)
-                                        .onErrorResume(WebClientResponseException.class, ex -> Mono.empty())
-                                        .onErrorResume(ex -> Mono.empty());
-
-                        return touch.thenReturn(dto);
+                        verifiedAdmins.put(sessionKey, dto);
+                        // last_login_at se persiste en diferido, fuera del camino de la petición
+                        lastLoginWriter.touch(dto.getId());
+                        return Mono.just(dto);
                 });
         }
 }
@@ -0,0 +1,138 @@
+package org.uniproject.SaviaU.service.admin;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copia en memoria de {@code admin_users}.
+ * <p>
+ * La tabla tiene pocas filas y cambia muy poco, así que se carga completa al arrancar y se
+ * refresca periódicamente; los logins deciden el rol consultando el mapa en memoria en vez
+ * de lanzar un {@code /admin_users?email=eq.} por cada inicio de sesión. Las recargas
+ * concurrentes se funden en una sola petición.
+ */
+@Slf4j
+@Component
+public class AdminDirectory {
+
+    private static final Snapshot EMPTY = new Snapshot(Map.of(), null);
+
+    private final SupabaseClients clients;
+    private final long missRefreshIntervalMs;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(EMPTY);
+    private final AtomicReference<Mono<Snapshot>> inFlight = new AtomicReference<>();
+
+    public AdminDirectory(SupabaseClients clients) {
+        this.clients = clients;
+        SupabaseProperties.AdminDirectory cfg = clients.getProps().getAdminDirectory();
+        this.missRefreshIntervalMs = Math.max(0, cfg.getMissRefreshIntervalMs());
+    }
+
+    public record AdminEntry(String id, String email, String fullName, boolean active) {}
+
+    private record Snapshot(Map<String, AdminEntry> byEmail, Instant loadedAt) {}
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        refresh().subscribe(s -> log.info("Directorio de administradores cargado: {} entradas", s.byEmail().size()),
+                ex -> log.warn("No se pudo cargar el directorio de administradores: {}", ex.getMessage()));
+    }
+
+    @Scheduled(fixedDelayString = "${supabase.admin-directory.refresh-ms:60000}",
+            initialDelayString = "${supabase.admin-directory.refresh-ms:60000}")
+    public void scheduledRefresh() {
+        refresh().subscribe(s -> {}, ex -> log.warn("Error refrescando directorio de administradores: {}", ex.getMessage()));
+    }
+
+    /**
+     * Busca un admin por email (sin distinguir mayúsculas). Si el directorio aún no se ha
+     * cargado, espera a la primera carga; después responde siempre desde memoria.
+     */
+    public Mono<Optional<AdminEntry>> findByEmail(String email) {
+        String key = normalize(email);
+        if (key == null) return Mono.just(Optional.empty());
+        Snapshot current = snapshot.get();
+        if (current.loadedAt() != null) {
+            return Mono.just(Optional.ofNullable(current.byEmail().get(key)));
+        }
+        return refresh().map(s -> Optional.ofNullable(s.byEmail().get(key)));
+    }
+
+    /**
+     * Como {@link #findByEmail(String)}, pero si el email no aparece recarga el directorio
+     * (como mucho una vez por intervalo) para reconocer admins recién dados de alta.
+     * Pensado para el login del panel, donde un falso negativo deniega el acceso.
+     */
+    public Mono<Optional<AdminEntry>> findByEmailFresh(String email) {
+        String key = normalize(email);
+        return findByEmail(email).flatMap(found -> {
+            if (found.isPresent() || key == null) return Mono.just(found);
+            Instant loadedAt = snapshot.get().loadedAt();
+            if (loadedAt != null && loadedAt.plusMillis(missRefreshIntervalMs).isAfter(Instant.now())) {
+                return Mono.just(found);
+            }
+            return refresh().map(s -> Optional.ofNullable(s.byEmail().get(key)));
+        });
+    }
+
+    /** Fuerza una recarga de la tabla (p. ej. tras altas o bajas de administradores). */
+    public Mono<Void> invalidate() {
+        return refresh().then();
+    }
+
+    private Mono<Snapshot> refresh() {
+        while (true) {
+            Mono<Snapshot> running = inFlight.get();
+            if (running != null) return running;
+            Mono<Snapshot> load = fetchAll()
+                    .doOnNext(snapshot::set)
+                    .doFinally(sig -> inFlight.set(null))
+                    .cache();
+            if (inFlight.compareAndSet(null, load)) return load;
+        }
+    }
+
+    private Mono<Snapshot> fetchAll() {
+        // defer: errores al construir la petición (p. ej. URL sin configurar) llegan como señal
+        return Mono.defer(() -> clients.getDbAdmin().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/admin_users")
+                        .queryParam("select", "id,email,full_name,is_active")
+                        .build())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                .map(rows -> {
+                    Map<String, AdminEntry> byEmail = new HashMap<>();
+                    for (Map<String, Object> row : rows) {
+                        String email = row.get("email") == null ? null : String.valueOf(row.get("email"));
+                        String key = normalize(email);
+                        if (key == null) continue;
+                        // Misma regla que antes en los logins: is_active nulo cuenta como activo
+                        boolean active = row.get("is_active") == null || Boolean.parseBoolean(String.valueOf(row.get("is_active")));
+                        String fullName = row.get("full_name") == null ? null : String.valueOf(row.get("full_name"));
+                        byEmail.put(key, new AdminEntry((String) row.get("id"), email, fullName, active));
+                    }
+                    return new Snapshot(Map.copyOf(byEmail), Instant.now());
+                }));
+    }
+
+    private static String normalize(String email) {
+        if (email == null || email.isBlank()) return null;
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,107 @@
+package org.uniproject.SaviaU.service.admin;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Escritura diferida de {@code admin_users.last_login_at}.
+ * Cada petición admin solo anota la marca de tiempo en memoria; varias marcas del mismo admin
+ * dentro de un intervalo se funden en una y se persisten fuera del camino de la petición.
+ * Solo hay un vaciado en curso a la vez; una marca que falla se reintenta en los ciclos
+ * siguientes hasta {@code supabase.admin-session.last-login-max-retries} veces.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdminLastLoginWriter {
+
+    private static final int FLUSH_CONCURRENCY = 4;
+
+    private final SupabaseClients clients;
+    private final Map<String, Mark> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    // failures: ciclos fallidos acumulados por esta marca (una marca más reciente empieza de cero)
+    private record Mark(Instant at, int failures) {}
+
+    public void touch(String adminId) {
+        if (adminId == null || adminId.isBlank()) return;
+        pending.merge(adminId, new Mark(Instant.now(), 0), AdminLastLoginWriter::latest);
+    }
+
+    @Scheduled(fixedDelayString = "${supabase.admin-session.last-login-flush-ms:60000}")
+    public void flush() {
+        if (pending.isEmpty() || !flushing.compareAndSet(false, true)) return;
+        drain()
+                .doFinally(sig -> flushing.set(false))
+                .subscribe(v -> {}, ex -> log.warn("Error persistiendo last_login_at: {}", ex.getMessage()));
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        try {
+            // Esperar a que termine el vaciado en curso antes del último
+            Mono.defer(() -> flushing.compareAndSet(false, true) ? Mono.just(Boolean.TRUE) : Mono.<Boolean>empty())
+                    .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(50)))
+                    .then(Mono.defer(this::drain))
+                    .doFinally(sig -> flushing.set(false))
+                    .block(Duration.ofSeconds(5));
+        } catch (RuntimeException ex) {
+            log.warn("No se pudo persistir last_login_at al apagar: {}", ex.getMessage());
+        }
+    }
+
+    private Mono<Void> drain() {
+        if (pending.isEmpty()) return Mono.empty();
+        List<Map.Entry<String, Mark>> batch = new ArrayList<>();
+        for (String adminId : new ArrayList<>(pending.keySet())) {
+            Mark mark = pending.remove(adminId);
+            if (mark != null) batch.add(Map.entry(adminId, mark));
+        }
+        return Flux.fromIterable(batch)
+                .flatMap(e -> patch(e.getKey(), e.getValue()), FLUSH_CONCURRENCY)
+                .then();
+    }
+
+    private Mono<Void> patch(String adminId, Mark mark) {
+        return clients.getDbAdmin().patch()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/admin_users")
+                        .queryParam("id", "eq." + adminId)
+                        .build())
+                .header("Prefer", "return=minimal")
+                .bodyValue(Map.of("last_login_at", mark.at().toString()))
+                .retrieve()
+                .toBodilessEntity()
+                .then()
+                .onErrorResume(ex -> {
+                    int failures = mark.failures() + 1;
+                    if (failures > Math.max(0, clients.getProps().getAdminSession().getLastLoginMaxRetries())) {
+                        log.error("Se descarta last_login_at de {} tras {} intentos: {}", adminId, failures, ex.getMessage());
+                        return Mono.empty();
+                    }
+                    // Reencolar sin pisar una marca más reciente; se reintenta en el próximo ciclo
+                    log.warn("Error actualizando last_login_at de {}: {}", adminId, ex.getMessage());
+                    pending.merge(adminId, new Mark(mark.at(), failures), AdminLastLoginWriter::latest);
+                    return Mono.empty();
+                });
+    }
+
+    private static Mark latest(Mark a, Mark b) {
+        return a.at().isAfter(b.at()) ? a : b;
+    }
+}
@@ -14,6 +14,7 @@ import org.uniproject.SaviaU.dto.TematicaResourceDto;
 import org.uniproject.SaviaU.dto.admin.AdminTematicaAreaUpsertRequest;
 import org.uniproject.SaviaU.dto.admin.AdminTematicaResourceUpsertRequest;
 import org.uniproject.SaviaU.service.tematicas.TematicaContentService;
+import org.uniproject.SaviaU.security.admin.AdminPrincipal;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -35,52 +36,52 @@ public class AdminTematicaManagementService {
     private final AdminAuthService adminAuthService;
     private final TematicaContentService tematicaContentService;
 
-    public Mono<List<TematicaAreaSummaryDto>> listAreas(String adminToken) {
-        return adminAuthService.requireAdmin(adminToken)
-                .then(tematicaContentService.listAreas());
+    public Mono<List<TematicaAreaSummaryDto>> listAreas(AdminPrincipal admin) {
+        return adminAuthService.requireAdmin(admin)
+                .then(Mono.defer(tematicaContentService::listAreas));
     }
 
-    public Mono<TematicaAreaDto> getArea(String adminToken, String areaId) {
+    public Mono<TematicaAreaDto> getArea(AdminPrincipal admin, String areaId) {
         if (areaId == null || areaId.isBlank()) {
             return Mono.error(new RuntimeException("areaId es obligatorio"));
         }
-        return adminAuthService.requireAdmin(adminToken)
-                .then(tematicaContentService.getArea(areaId));
+        return adminAuthService.requireAdmin(admin)
+                .then(Mono.defer(() -> tematicaContentService.getArea(areaId)));
     }
 
-    public Mono<TematicaAreaDto> upsertArea(String adminToken, AdminTematicaAreaUpsertRequest request) {
+    public Mono<TematicaAreaDto> upsertArea(AdminPrincipal admin, AdminTematicaAreaUpsertRequest request) {
         if (request == null || request.getName() == null || request.getName().isBlank()) {
             return Mono.error(new RuntimeException("El nombre de la temática es obligatorio"));
         }
-        return adminAuthService.requireAdmin(adminToken)
+        return adminAuthService.requireAdmin(admin)
                 .then(Mono.defer(() -> upsertAreaInternal(request)));
     }
 
-    public Mono<TematicaResourceDto> upsertResource(String adminToken, AdminTematicaResourceUpsertRequest request) {
+    public Mono<TematicaResourceDto> upsertResource(AdminPrincipal admin, AdminTematicaResourceUpsertRequest request) {
         if (request == null || request.getAreaId() == null || request.getAreaId().isBlank()) {
             return Mono.error(new RuntimeException("Debes seleccionar una temática"));
         }
         if (request.getTitle() == null || request.getTitle().isBlank()) {
             return Mono.error(new RuntimeException("El título del recurso es obligatorio"));
         }
-        return adminAuthService.requireAdmin(adminToken)
+        return adminAuthService.requireAdmin(admin)
                 .then(Mono.defer(() -> upsertResourceInternal(request)));
     }
 
-    public Mono<Void> deleteResource(String adminToken, String resourceId) {
+    public Mono<Void> deleteResource(AdminPrincipal admin, String resourceId) {
         if (resourceId == null || resourceId.isBlank()) {
             return Mono.error(new RuntimeException("resourceId es obligatorio"));
         }
-        return adminAuthService.requireAdmin(adminToken)
-                .then(deleteResourceCascade(resourceId));
+        return adminAuthService.requireAdmin(admin)
+                .then(Mono.defer(() -> invalidatingContent(deleteResourceCascade(resourceId))));
     }
 
-    public Mono<Void> deleteArea(String adminToken, String areaId) {
+    public Mono<Void> deleteArea(AdminPrincipal admin, String areaId) {
         if (areaId == null || areaId.isBlank()) {
             return Mono.error(new RuntimeException("areaId es obligatorio"));
         }
-        return adminAuthService.requireAdmin(adminToken)
-                .then(deleteAreaCascade(areaId));
+        return adminAuthService.requireAdmin(admin)
+                .then(Mono.defer(() -> invalidatingContent(deleteAreaCascade(areaId))));
     }
 
     private Mono<TematicaAreaDto> upsertAreaInternal(AdminTematicaAreaUpsertRequest request) {
@@ -131,8 +132,8 @@ public class AdminTematicaManagementService {
                         return Mono.error(new RuntimeException("No se pudo obtener la temática"));
                     }
                     List<String> focus = Optional.ofNullable(request.getLearningFocus()).orElse(List.of());
-                    return syncLearningFocus(areaId, focus)
-                            .then(tematicaContentService.getArea(areaId));
+                    return invalidatingContent(syncLearningFocus(areaId, focus))
+                            .then(Mono.defer(() -> tematicaContentService.getArea(areaId)));
                 });
     }
 
@@ -190,11 +191,23 @@ public class AdminTematicaManagementService {
                         return Mono.error(new RuntimeException("No se pudo obtener el recurso"));
                     }
                     List<String> sources = Optional.ofNullable(request.getSources()).orElse(List.of());
-                    return syncResourceSources(resourceId, sources)
-                            .then(tematicaContentService.getResource(request.getAreaId(), resourceId));
+                    return invalidatingContent(syncResourceSources(resourceId, sources))
+                            // Solo el recurso guardado, sin recargar toda la temática
+                            .then(Mono.defer(() -> tematicaContentService.fetchResource(resourceId)));
                 });
     }
 
+    /**
+     * Invalida el contenido en memoria cuando termina la escritura, antes de que se emita
+     * su resultado: la respuesta y cualquier lectura posterior ya ven la edición. También
+     * invalida si la escritura falla a medias.
+     */
+    private Mono<Void> invalidatingContent(Mono<Void> write) {
+        return write
+                .doOnError(ex -> tematicaContentService.invalidate())
+                .then(Mono.fromRunnable(tematicaContentService::invalidate));
+    }
+
     private Mono<Void> syncLearningFocus(String areaId, List<String> labels) {
         Mono<Void> deleteExisting = adminDb().method(HttpMethod.DELETE)
                 .uri(uriBuilder -> uriBuilder
@@ -1,5 +1,7 @@
 package org.uniproject.SaviaU.service.admin;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
@@ -7,8 +9,14 @@ import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
 import org.uniproject.SaviaU.dto.TriviaSetDto;
 import org.uniproject.SaviaU.dto.admin.*;
+import org.uniproject.SaviaU.security.admin.AdminPrincipal;
+import org.uniproject.SaviaU.service.profile.LeaderboardSnapshots;
+import org.uniproject.SaviaU.service.progress.DailyScoreStore;
+import org.uniproject.SaviaU.service.progress.HistoryStreams;
+import org.uniproject.SaviaU.service.trivia.TriviaAnswerKey;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -23,9 +31,14 @@ public class AdminTriviaManagementService {
 
     private final SupabaseClients clients;
     private final AdminAuthService adminAuthService;
-
-    public Mono<List<TriviaSetDto>> listSets(String accessToken) {
-	return adminAuthService.requireAdmin(accessToken)
+    private final TriviaAnswerKey answerKey;
+    private final HistoryStreams historyStreams;
+    private final LeaderboardSnapshots leaderboard;
+    private final MeterRegistry meterRegistry;
+    private final DailyScoreStore dailyScores;
+
+    public Mono<List<TriviaSetDto>> listSets(AdminPrincipal admin) {
+	return adminAuthService.requireAdmin(admin)
 		.then(clients.getDbAdmin().get()
 			.uri(uriBuilder -> uriBuilder
 				.path("/trivia_sets")
@@ -44,8 +57,8 @@ public class AdminTriviaManagementService {
 				.build()).collect(Collectors.toList())));
     }
 
-    public Mono<TriviaSetDto> upsertSet(String accessToken, AdminTriviaSetUpsertRequest request) {
-	return adminAuthService.requireAdmin(accessToken)
+    public Mono<TriviaSetDto> upsertSet(AdminPrincipal admin, AdminTriviaSetUpsertRequest request) {
+	return adminAuthService.requireAdmin(admin)
 		.then(Mono.defer(() -> {
 		    log.info("🔧 upsertSet - Request: id={}, title={}, active={}", 
 			    request.getId(), request.getTitle(), request.getActive());
@@ -109,27 +122,29 @@ public class AdminTriviaManagementService {
 					.active(row.get("is_active") == null ? null : Boolean.valueOf(String.valueOf(row.get("is_active"))))
 					.build());
 		    }
-		}));
+		}).transform(this::invalidatingAnswerKey));
     }
 
-    public Mono<List<AdminTriviaQuestionDto>> listQuestions(String accessToken, String setId) {
-	return adminAuthService.requireAdmin(accessToken)
+    public Mono<List<AdminTriviaQuestionDto>> listQuestions(AdminPrincipal admin, String setId) {
+	return adminAuthService.requireAdmin(admin)
 		.then(fetchQuestionsInternal(setId));
     }
 
-    public Mono<AdminTriviaQuestionDto> createQuestion(String accessToken, AdminTriviaQuestionUpsertRequest request) {
-	return adminAuthService.requireAdmin(accessToken)
-		.then(upsertQuestionInternal(request, true));
+    public Mono<AdminTriviaQuestionDto> createQuestion(AdminPrincipal admin, AdminTriviaQuestionUpsertRequest request) {
+	return adminAuthService.requireAdmin(admin)
+		.then(upsertQuestionInternal(request, true)
+			.transform(this::invalidatingAnswerKey));
     }
 
-    public Mono<AdminTriviaQuestionDto> updateQuestion(String accessToken, String questionId, AdminTriviaQuestionUpsertRequest request) {
+    public Mono<AdminTriviaQuestionDto> updateQuestion(AdminPrincipal admin, String questionId, AdminTriviaQuestionUpsertRequest request) {
 	request.setQuestionId(questionId);
-	return adminAuthService.requireAdmin(accessToken)
-		.then(upsertQuestionInternal(request, false));
+	return adminAuthService.requireAdmin(admin)
+		.then(upsertQuestionInternal(request, false)
+			.transform(this::invalidatingAnswerKey));
     }
 
-    public Mono<Void> deleteQuestion(String accessToken, String questionId) {
-	return adminAuthService.requireAdmin(accessToken)
+    public Mono<Void> deleteQuestion(AdminPrincipal admin, String questionId) {
+	return adminAuthService.requireAdmin(admin)
 		.then(Mono.defer(() -> {
 		    log.info("Eliminando pregunta {}", questionId);
 		    
@@ -178,139 +193,61 @@ public class AdminTriviaManagementService {
 				return Mono.error(new RuntimeException("Error eliminando la pregunta: " + ex.getResponseBodyAsString()));
 			    });
 
-		    return deleteAnswers.then(deleteOptions).then(deleteQuestion);
+		    // Aunque falle a mitad, el catálogo en memoria ya no es fiable
+		    return deleteAnswers.then(deleteOptions).then(deleteQuestion)
+			    .transform(this::invalidatingAnswerKey);
 		}));
     }
 
 
-    public Mono<List<AdminLeaderboardRowDto>> getLeaderboard(String accessToken, int limit) {
-	int fetchLimit = Math.min(2000, Math.max(limit * 5, 200));
-	return adminAuthService.requireAdmin(accessToken)
-		.then(clients.getDbAdmin().get()
-			.uri(uriBuilder -> uriBuilder
-				.path("/trivia_attempts")
-				.queryParam("select", "id,user_id,score_percent,completed_at")
-				.queryParam("order", "completed_at.desc")
-				.queryParam("limit", fetchLimit)
+    public Mono<List<AdminLeaderboardRowDto>> getLeaderboard(AdminPrincipal admin, int limit) {
+	// Servido desde la foto compartida: ninguna llamada a Supabase por petición
+	return adminAuthService.requireAdmin(admin)
+		.then(leaderboard.current())
+		.map(snapshot -> snapshot.byAverage().stream()
+			.limit(Math.max(0, limit))
+			.map(row -> AdminLeaderboardRowDto.builder()
+				.userId(row.userId())
+				.email(row.email())
+				.fullName(row.fullName())
+				.avgScore(row.avgScore())
+				.bestScore(row.bestScore())
+				.attempts(row.attempts())
 				.build())
-			.retrieve()
-			.bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
-			.flatMap(rows -> {
-			    Map<String, List<Map<String, Object>>> grouped = rows.stream()
-				    .filter(row -> row.get("user_id") != null)
-				    .collect(Collectors.groupingBy(row -> (String) row.get("user_id")));
-
-			    List<Map<String, Object>> stats = grouped.entrySet().stream()
-				    .map(entry -> {
-					List<Map<String, Object>> attempts = entry.getValue();
-					double avg = attempts.stream().mapToDouble(a -> toDouble(a.get("score_percent"))).average().orElse(0);
-					double best = attempts.stream().mapToDouble(a -> toDouble(a.get("score_percent"))).max().orElse(0);
-					Map<String, Object> stat = new HashMap<>();
-					stat.put("user_id", entry.getKey());
-					stat.put("avg_score", avg);
-					stat.put("best_score", best);
-					stat.put("attempts", attempts.size());
-					return stat;
-				    })
-				    .sorted(Comparator
-					    .comparingDouble((Map<String, Object> m) -> (double) m.get("avg_score")).reversed()
-					    .thenComparingDouble(m -> (double) m.get("best_score")).reversed())
-				    .limit(limit)
-				    .collect(Collectors.toList());
-
-			    return enrichWithProfiles(stats)
-				    .map(profileMap -> stats.stream()
-					    .map(stat -> {
-						String userId = (String) stat.get("user_id");
-						Map<String, Object> profile = profileMap.getOrDefault(userId, Collections.emptyMap());
-						return AdminLeaderboardRowDto.builder()
-							.userId(userId)
-							.email((String) profile.get("email"))
-							.fullName((String) profile.get("full_name"))
-							.avgScore((double) stat.get("avg_score"))
-							.bestScore((double) stat.get("best_score"))
-							.attempts(((Number) stat.get("attempts")).intValue())
-							.build();
-					    })
-					    .collect(Collectors.toList()));
-			}));
+			.collect(Collectors.toList()));
     }
 
-    public Mono<AdminUserProgressDto> getUserProgress(String accessToken, String targetUserId) {
-	return adminAuthService.requireAdmin(accessToken)
+    public Mono<AdminUserProgressDto> getUserProgress(AdminPrincipal admin, String targetUserId) {
+	return adminAuthService.requireAdmin(admin)
 		.then(fetchUserProgress(targetUserId));
     }
 
-    public Mono<List<AdminUserProgressDto>> getCohortProgress(String accessToken, int limit) {
-	int fetchLimit = Math.min(2000, Math.max(limit * 5, 200));
-	return adminAuthService.requireAdmin(accessToken)
-		.then(clients.getDbAdmin().get()
-			.uri(uriBuilder -> uriBuilder
-				.path("/trivia_attempts")
-				.queryParam("select", "id,user_id,score_percent,completed_at")
-				.queryParam("order", "completed_at.desc")
-				.queryParam("limit", fetchLimit)
-				.build())
-			.retrieve()
-			.bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
-			.flatMap(rows -> {
-			    Map<String, List<Map<String, Object>>> grouped = rows.stream()
-				    .filter(row -> row.get("user_id") != null)
-				    .collect(Collectors.groupingBy(row -> (String) row.get("user_id")));
-
-			    List<Map<String, Object>> stats = grouped.entrySet().stream()
-				    .map(entry -> {
-					List<Map<String, Object>> attempts = entry.getValue();
-					double avg = attempts.stream().mapToDouble(a -> toDouble(a.get("score_percent"))).average().orElse(0);
-					double best = attempts.stream().mapToDouble(a -> toDouble(a.get("score_percent"))).max().orElse(0);
-					Instant last = attempts.stream()
-					    .map(a -> (String) a.get("completed_at"))
-					    .filter(Objects::nonNull)
-					    .map(Instant::parse)
-					    .max(Comparator.naturalOrder())
-					    .orElse(null);
-					Map<String, Object> stat = new HashMap<>();
-					stat.put("user_id", entry.getKey());
-					stat.put("avg_score", avg);
-					stat.put("best_score", best);
-					stat.put("attempts", attempts.size());
-					stat.put("last_attempt_at", last);
-					return stat;
-				    })
-				    .sorted(Comparator
-					    .comparingInt((Map<String, Object> m) -> ((Number) m.get("attempts")).intValue()).reversed()
-					    .thenComparingDouble(m -> (double) m.get("avg_score")).reversed())
-				    .limit(limit)
-				    .collect(Collectors.toList());
-
-			    return enrichWithProfiles(stats)
-				.flatMap(profileMap -> Flux.fromIterable(stats)
-					.flatMap(stat -> fetchAccuracy((String) stat.get("user_id"))
-						.map(acc -> buildProgressRow(stat, profileMap.getOrDefault((String) stat.get("user_id"), Collections.emptyMap()), acc)))
-					.collectList());
-			}));
+    public Mono<List<AdminUserProgressDto>> getCohortProgress(AdminPrincipal admin, int limit) {
+	return adminAuthService.requireAdmin(admin)
+		.then(Mono.defer(() -> {
+		    Timer.Sample sample = Timer.start();
+		    return leaderboard.current()
+			    .flatMap(snapshot -> {
+				List<LeaderboardSnapshots.Row> rows = snapshot.byActivity().stream().limit(Math.max(0, limit)).toList();
+				return fetchAccuracies(rows.stream().map(LeaderboardSnapshots.Row::userId).toList())
+					.map(accuracy -> rows.stream()
+						.map(row -> buildProgressRow(row, accuracy.getOrDefault(row.userId(), 0.0)))
+						.collect(Collectors.toList()));
+			    })
+			    .doOnSuccess(list -> sample.stop(meterRegistry.timer("admin.cohort.report")));
+		}));
     }
 
-    private Mono<Map<String, Map<String, Object>>> enrichWithProfiles(List<Map<String, Object>> rows) {
-	if (rows.isEmpty()) {
-	    return Mono.just(Collections.<String, Map<String, Object>>emptyMap());
-	}
-	String inParam = rows.stream()
-		.map(row -> (String) row.get("user_id"))
-		.filter(Objects::nonNull)
-		.distinct()
-		.map(id -> "\"" + id + "\"")
-		.collect(Collectors.joining(","));
-	return clients.getDbAdmin().get()
-		.uri(uriBuilder -> uriBuilder
-			.path("/usuarios")
-			.queryParam("select", "id,full_name,email")
-			.queryParam("id", "in.(" + inParam + ")")
-			.build())
-		.retrieve()
-		.bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
-		.map(list -> list.stream()
-			.collect(Collectors.toMap(row -> (String) row.get("id"), row -> row)));
+    /**
+     * Invalida las claves de respuesta antes de emitir el resultado de una escritura del
+     * catálogo: quien reciba la respuesta ya no puede corregir con la clave anterior. Un error o
+     * una cancelación también invalidan, porque la escritura pudo llegar a la base.
+     */
+    private <T> Mono<T> invalidatingAnswerKey(Mono<T> write) {
+	return write
+		.doOnSuccess(v -> answerKey.invalidate())
+		.doOnError(ex -> answerKey.invalidate())
+		.doOnCancel(answerKey::invalidate);
     }
 
     private Mono<AdminUserProgressDto> fetchUserProgress(String userId) {
@@ -337,14 +274,14 @@ public class AdminTriviaManagementService {
 		    List<Map<String, Object>> attempts = tuple.getT1();
 		    Map<String, Object> profile = tuple.getT2().isEmpty() ? Collections.emptyMap() : tuple.getT2().get(0);
 		    if (attempts.isEmpty()) {
-			return fetchAccuracy(userId).map(accuracy -> AdminUserProgressDto.builder()
+			return Mono.just(AdminUserProgressDto.builder()
 				.userId(userId)
 				.email((String) profile.get("email"))
 				.fullName((String) profile.get("full_name"))
 				.totalAttempts(0)
 				.avgScore(0)
 				.bestScore(0)
-				.accuracy(accuracy)
+				.accuracy(0.0)
 				.lastAttemptAt(null)
 				.build());
 		    }
@@ -356,7 +293,11 @@ public class AdminTriviaManagementService {
 			    .map(Instant::parse)
 			    .max(Comparator.naturalOrder())
 			    .orElse(null);
-		    return fetchAccuracy(userId).map(accuracy -> AdminUserProgressDto.builder()
+		    // Las respuestas se piden por los ids ya leídos, sin volver a recorrer los intentos
+		    Flux<String> attemptIds = Flux.fromIterable(attempts)
+			    .map(a -> (String) a.get("id"))
+			    .filter(Objects::nonNull);
+		    return accuracyOf(attemptIds).map(accuracy -> AdminUserProgressDto.builder()
 			    .userId(userId)
 			    .email((String) profile.get("email"))
 			    .fullName((String) profile.get("full_name"))
@@ -369,58 +310,77 @@ public class AdminTriviaManagementService {
 		});
     }
 
-    private Mono<Double> fetchAccuracy(String userId) {
-	return clients.getDbAdmin().get()
-		.uri(uriBuilder -> uriBuilder
-			.path("/trivia_attempts")
-			.queryParam("select", "id")
-			.queryParam("user_id", "eq." + userId)
-			.build())
-		.retrieve()
-		.bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
-		.flatMap(attempts -> {
-		    if (attempts.isEmpty()) {
-			return Mono.just(0.0);
-		    }
-		    String inParam = attempts.stream()
-			    .map(a -> (String) a.get("id"))
-			    .filter(Objects::nonNull)
-			    .map(id -> "\"" + id + "\"")
-			    .collect(Collectors.joining(","));
-		    if (inParam.isBlank()) {
-			return Mono.just(0.0);
-		    }
-		    return clients.getDbAdmin().get()
-			    .uri(uriBuilder -> uriBuilder
-				    .path("/trivia_answers")
-				    .queryParam("select", "is_correct")
-				    .queryParam("attempt_id", "in.(" + inParam + ")")
-				    .build())
-			    .retrieve()
-			    .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
-			    .map(list -> {
-				if (list.isEmpty()) return 0.0;
-				long correct = list.stream()
-					.filter(m -> Boolean.TRUE.equals(m.get("is_correct")))
-					.count();
-				return (double) correct / list.size();
-			    });
+    private Mono<Double> accuracyOf(Flux<String> attemptIds) {
+	return historyStreams.byIds(attemptIds, "trivia_answers", "attempt_id", "is_correct")
+		.reduceWith(() -> new long[2], (acc, m) -> {
+		    acc[0]++;
+		    if (Boolean.TRUE.equals(m.get("is_correct"))) acc[1]++;
+		    return acc;
 		})
+		.map(acc -> acc[0] == 0 ? 0.0 : (double) acc[1] / acc[0])
 		.onErrorResume(ex -> Mono.just(0.0));
     }
 
-	private AdminUserProgressDto buildProgressRow(Map<String, Object> statsRow, Map<String, Object> profile, Double accuracy) {
-	String userId = (String) statsRow.get("user_id");
-	Instant last = statsRow.get("last_attempt_at") instanceof Instant inst ? inst : null;
+    /**
+     * Precisión de varios usuarios con un número acotado de consultas: el agregado
+     * {@code trivia_accuracy} por tramos de usuarios, o si no está disponible, intentos y
+     * respuestas en bloque por tramos de ids.
+     */
+    private Mono<Map<String, Double>> fetchAccuracies(List<String> userIds) {
+	if (userIds.isEmpty()) return Mono.just(Map.of());
+	SupabaseProperties.HistoryPaging paging = clients.getProps().getHistoryPaging();
+	return Flux.fromIterable(userIds)
+		.buffer(Math.max(1, paging.getChunkSize()))
+		.flatMap(chunk -> clients.getDbAdmin().post()
+			.uri("/rpc/trivia_accuracy")
+			.bodyValue(Map.of("p_user_ids", chunk))
+			.retrieve()
+			.bodyToFlux(new ParameterizedTypeReference<Map<String, Object>>() {}),
+			Math.max(1, paging.getConcurrency()))
+		.collectMap(row -> String.valueOf(row.get("user_id")),
+			row -> ratio(row.get("correct"), row.get("answered")))
+		.onErrorResume(ex -> {
+		    log.warn("trivia_accuracy no disponible, se calcula en bloque: {}", ex.getMessage());
+		    return streamAccuracies(userIds);
+		});
+    }
+
+    private Mono<Map<String, Double>> streamAccuracies(List<String> userIds) {
+	return historyStreams.byIds(Flux.fromIterable(userIds), "trivia_attempts", "user_id", "id,user_id")
+		.filter(a -> a.get("id") != null && a.get("user_id") != null)
+		.collectMap(a -> (String) a.get("id"), a -> (String) a.get("user_id"))
+		.flatMap(owners -> historyStreams.byIds(Flux.fromIterable(owners.keySet()), "trivia_answers", "attempt_id", "attempt_id,is_correct")
+			.reduceWith(() -> new HashMap<String, long[]>(), (acc, m) -> {
+			    String owner = owners.get(String.valueOf(m.get("attempt_id")));
+			    if (owner == null) return acc;
+			    long[] c = acc.computeIfAbsent(owner, k -> new long[2]);
+			    c[0]++;
+			    if (Boolean.TRUE.equals(m.get("is_correct"))) c[1]++;
+			    return acc;
+			}))
+		.map(acc -> {
+		    Map<String, Double> out = new HashMap<>();
+		    acc.forEach((userId, c) -> out.put(userId, c[0] == 0 ? 0.0 : (double) c[1] / c[0]));
+		    return out;
+		})
+		.onErrorResume(ex -> Mono.just(Map.of()));
+    }
+
+    private double ratio(Object correct, Object answered) {
+	double total = toDouble(answered);
+	return total == 0 ? 0.0 : toDouble(correct) / total;
+    }
+
+    private AdminUserProgressDto buildProgressRow(LeaderboardSnapshots.Row row, Double accuracy) {
 	return AdminUserProgressDto.builder()
-		.userId(userId)
-		.email((String) profile.get("email"))
-		.fullName((String) profile.get("full_name"))
-		.totalAttempts(((Number) statsRow.getOrDefault("attempts", 0)).intValue())
-		.avgScore(toDouble(statsRow.get("avg_score")))
-		.bestScore(toDouble(statsRow.get("best_score")))
+		.userId(row.userId())
+		.email(row.email())
+		.fullName(row.fullName())
+		.totalAttempts(row.attempts())
+		.avgScore(row.avgScore())
+		.bestScore(row.bestScore())
 		.accuracy(accuracy == null ? 0.0 : accuracy)
-		.lastAttemptAt(last)
+		.lastAttemptAt(row.lastAttemptAt())
 		.build();
     }
 
@@ -645,52 +605,10 @@ public class AdminTriviaManagementService {
 	});
     }
 
-    public Mono<List<AdminTriviaHistoryDto>> getUserHistory(String token, String userId, int days) {
-	return adminAuthService.requireAdmin(token)
-		.flatMap(valid -> clients.getDbAdmin().get()
-			.uri(uriBuilder -> uriBuilder
-				.path("/trivia_attempts")
-				.queryParam("select", "completed_at,score_percent")
-				.queryParam("user_id", "eq." + userId)
-				.queryParam("completed_at", "not.is.null")
-				.queryParam("order", "completed_at.asc")
-				.build())
-			.retrieve()
-			.bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
-			.map(attempts -> {
-			    if (attempts.isEmpty()) return List.of();
-			    
-			    // Agrupar por fecha
-			    java.time.Instant cutoff = java.time.Instant.now().minus(days, java.time.temporal.ChronoUnit.DAYS);
-			    Map<java.time.LocalDate, List<Double>> byDate = attempts.stream()
-				    .filter(a -> {
-					String completedStr = (String) a.get("completed_at");
-					if (completedStr == null) return false;
-					java.time.Instant completed = java.time.Instant.parse(completedStr);
-					return completed.isAfter(cutoff);
-				    })
-				    .collect(java.util.stream.Collectors.groupingBy(
-					    a -> java.time.Instant.parse((String) a.get("completed_at"))
-						    .atZone(java.time.ZoneId.systemDefault())
-						    .toLocalDate(),
-					    java.util.stream.Collectors.mapping(
-						    a -> toDouble(a.get("score_percent")),
-						    java.util.stream.Collectors.toList()
-					    )
-				    ));
-			    
-			    return byDate.entrySet().stream()
-				    .map(entry -> AdminTriviaHistoryDto.builder()
-					    .date(entry.getKey())
-					    .avgScore(entry.getValue().stream()
-						    .mapToDouble(Double::doubleValue)
-						    .average()
-						    .orElse(0))
-					    .attempts(entry.getValue().size())
-					    .build())
-				    .sorted(java.util.Comparator.comparing(AdminTriviaHistoryDto::getDate))
-				    .collect(java.util.stream.Collectors.toList());
-			}));
+    public Mono<List<AdminTriviaHistoryDto>> getUserHistory(AdminPrincipal admin, String userId, int days) {
+	// Serie diaria precalculada: O(días) sin recorrer los intentos del usuario
+	return adminAuthService.requireAdmin(admin)
+		.then(dailyScores.history(userId, days));
     }
 
     private double toDouble(Object value) {
@@ -2,21 +2,18 @@ package org.uniproject.SaviaU.service.auth;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.uniproject.SaviaU.config.SupabaseClients;
 import org.uniproject.SaviaU.dto.*;
 import org.uniproject.SaviaU.security.util.JwtUtil;
+import org.uniproject.SaviaU.service.admin.AdminDirectory;
 import reactor.core.publisher.Mono;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
 import java.util.Map;
-import org.springframework.core.ParameterizedTypeReference;
+import java.util.Optional;
 
 @Slf4j
 @Service
@@ -24,6 +21,7 @@ import org.springframework.core.ParameterizedTypeReference;
 public class AuthService {
 
     private final SupabaseClients clients;
+    private final AdminDirectory adminDirectory;
 
     public Mono<LoginResponse> login(LoginRequest loginRequest) {
         Map<String, String> authData = Map.of(
@@ -31,56 +29,26 @@ public class AuthService {
                 "password", loginRequest.getPassword()
         );
 
-        return clients.getAuthPublic().post()
+        // El rol admin se resuelve desde memoria en paralelo al password grant;
+        // si falla la consulta admin, devolvemos login normal sin adminToken
+        Mono<Optional<AdminDirectory.AdminEntry>> adminMono = adminDirectory.findByEmail(loginRequest.getEmail())
+                .onErrorResume(ex -> Mono.just(Optional.empty()));
+
+        Mono<LoginResponse> grantMono = clients.getAuthPublic().post()
                 .uri("/token?grant_type=password")
                 .bodyValue(authData)
                 .retrieve()
                 .bodyToMono(Map.class)
-                .map(this::mapAuthResponseToLoginResponse)
-                .flatMap(lr -> {
+                .map(this::mapAuthResponseToLoginResponse);
+
+        return Mono.zip(grantMono, adminMono)
+                .map(tuple -> {
+                    LoginResponse lr = tuple.getT1();
                     String uid = lr.getUser() != null ? lr.getUser().getId() : null;
                     String email = lr.getUser() != null ? lr.getUser().getEmail() : loginRequest.getEmail();
                     lr.setAppToken(generateAppToken(uid, email));
-
-                    // Consultar si el usuario es administrador y activo en admin_users
-                    Mono<List<Map<String, Object>>> adminRowsMono = clients.getDbAdmin().get()
-                            .uri(uriBuilder -> uriBuilder
-                                    .path("/admin_users")
-                                    .queryParam("select", "id,email,is_active")
-                                    .queryParam("email", "eq." + email)
-                                    .build())
-                            .retrieve()
-                            .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {});
-
-                    return adminRowsMono
-                            .map(rows -> {
-                                try {
-                                    if (rows != null && !rows.isEmpty()) {
-                                        Map<String, Object> row = rows.get(0);
-                                        boolean isActive = row.get("is_active") == null ? true : Boolean.valueOf(String.valueOf(row.get("is_active")));
-                                        if (isActive) {
-                                            String subject = (uid != null && !uid.isBlank()) ? uid : email;
-                                            String adminToken = JwtUtil.generateHs256Token(
-                                                    subject,
-                                                    email,
-                                                    "admin",
-                                                    "savia-u-admin",
-                                                    7200,
-                                                    clients.getProps().getJwtSecret()
-                                            );
-                                            lr.setAdminToken(adminToken);
-                                            if (lr.getUser() != null) {
-                                                lr.getUser().setDiagnosticCompleted(Boolean.TRUE);
-                                            }
-                                        }
-                                    }
-                                } catch (Exception ignored) {}
-                                return lr;
-                            })
-                            .onErrorResume(ex -> {
-                                // Si falla la consulta admin, devolvemos login normal sin adminToken
-                                return Mono.just(lr);
-                            });
+                    applyAdminRole(lr, uid, email, tuple.getT2());
+                    return lr;
                 })
                 .doOnSuccess(r -> log.info("Usuario autenticado: {}", loginRequest.getEmail()))
                 .onErrorResume(WebClientResponseException.class, ex -> {
@@ -164,15 +132,9 @@ public class AuthService {
     }
 
     public Mono<LoginResponse> finishGoogleLogin(GoogleFinishRequest request) {
-        WebClient userClient = WebClient.builder()
-                .baseUrl(clients.getProps().getUrl() + "/auth/v1")
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .defaultHeader("apikey", clients.getProps().getAnonKey())
-                .defaultHeader("Authorization", "Bearer " + request.getAccessToken())
-                .build();
-
-    return userClient.get()
+    return clients.getAuthPublic().get()
         .uri("/user")
+        .headers(clients.userBearer(request.getAccessToken()))
         .retrieve()
         .bodyToMono(Map.class)
         .flatMap(userResp -> {
@@ -197,40 +159,13 @@ public class AuthService {
                             .user(ui)
                             .build();
                     lr.setAppToken(generateAppToken(id, email));
-                    // Consultar admin_users para marcar adminToken y diagnosticCompleted si aplica
-                    Mono<List<Map<String, Object>>> adminRowsMono = clients.getDbAdmin().get()
-                            .uri(uriBuilder -> uriBuilder
-                                    .path("/admin_users")
-                                    .queryParam("select", "id,email,is_active")
-                                    .queryParam("email", "eq." + email)
-                                    .build())
-                            .retrieve()
-                            .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {});
-
-                    return adminRowsMono.map(rows -> {
-                        try {
-                            if (rows != null && !rows.isEmpty()) {
-                                Map<String, Object> row = rows.get(0);
-                                boolean isActive = row.get("is_active") == null ? true : Boolean.valueOf(String.valueOf(row.get("is_active")));
-                                if (isActive) {
-                                    String subject = (id != null && !id.isBlank()) ? id : email;
-                                    String adminToken = JwtUtil.generateHs256Token(
-                                            subject,
-                                            email,
-                                            "admin",
-                                            "savia-u-admin",
-                                            7200,
-                                            clients.getProps().getJwtSecret()
-                                    );
-                                    lr.setAdminToken(adminToken);
-                                    if (lr.getUser() != null) {
-                                        lr.getUser().setDiagnosticCompleted(Boolean.TRUE);
-                                    }
-                                }
-                            }
-                        } catch (Exception ignored) {}
-                        return lr;
-                    }).onErrorResume(e -> Mono.just(lr));
+                    // Marcar adminToken y diagnosticCompleted si aplica (directorio en memoria)
+                    return adminDirectory.findByEmail(email)
+                            .map(admin -> {
+                                applyAdminRole(lr, id, email, admin);
+                                return lr;
+                            })
+                            .onErrorResume(e -> Mono.just(lr));
                 })
                 .doOnError(e -> log.error("Error al finalizar login con Google: {}", e.getMessage()));
     }
@@ -260,6 +195,25 @@ public class AuthService {
                 });
     }
 
+    private void applyAdminRole(LoginResponse lr, String uid, String email, Optional<AdminDirectory.AdminEntry> admin) {
+        if (admin.isEmpty() || !admin.get().active()) return;
+        try {
+            String subject = (uid != null && !uid.isBlank()) ? uid : email;
+            String adminToken = JwtUtil.generateHs256Token(
+                    subject,
+                    email,
+                    "admin",
+                    "savia-u-admin",
+                    7200,
+                    clients.getProps().getJwtSecret()
+            );
+            lr.setAdminToken(adminToken);
+            if (lr.getUser() != null) {
+                lr.getUser().setDiagnosticCompleted(Boolean.TRUE);
+            }
+        } catch (Exception ignored) {}
+    }
+
     private String generateAppToken(String userId, String email) {
         String subject = (userId != null && !userId.isBlank()) ? userId : email;
         return JwtUtil.generateHs256Token(
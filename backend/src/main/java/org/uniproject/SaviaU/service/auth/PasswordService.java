@@ -34,9 +34,10 @@ public class PasswordService {
     }
 
     public Mono<String> applyPasswordReset(PasswordApplyRequest request) {
-        return clients.buildUserAuthClient(request.getAccessToken())
+        return clients.getAuthPublic()
                 .put()
                 .uri("/user")
+                .headers(clients.userBearer(request.getAccessToken()))
                 .bodyValue(Map.of("password", request.getNewPassword()))
                 .retrieve()
                 .bodyToMono(String.class)
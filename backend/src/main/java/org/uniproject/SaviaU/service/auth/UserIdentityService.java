@@ -0,0 +1,188 @@
+package org.uniproject.SaviaU.service.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Service;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.security.util.JwtUtil;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resuelve el usuario de Supabase a partir de su access token.
+ * <p>
+ * Primero intenta validar el JWT HS256 localmente con {@code supabase.jwtSecret}; solo si no
+ * puede (otro algoritmo, otra firma, claims inesperados) consulta {@code /auth/v1/user}.
+ * Localmente solo se aceptan sesiones emitidas por Supabase Auth ({@code iss} del proyecto,
+ * {@code aud=authenticated}, {@code sub} UUID): los tokens propios de la app ({@code iss=savia-u})
+ * comparten secreto pero no son sesiones de Supabase.
+ * Los usuarios resueltos se guardan en una caché acotada indexada por el hash del token,
+ * con una vida que nunca supera la expiración del propio token.
+ */
+@Slf4j
+@Service
+public class UserIdentityService {
+
+    private static final String AUTHENTICATED_ROLE = "authenticated";
+    private static final String AUTHENTICATED_AUDIENCE = "authenticated";
+
+    private final SupabaseClients clients;
+    // Emisor de los access tokens de Supabase Auth: <supabase.url>/auth/v1
+    private final String supabaseIssuer;
+    private final Cache<String, CachedUser> cache;
+    private final long ttlSeconds;
+
+    public UserIdentityService(SupabaseClients clients) {
+        this.clients = clients;
+        String url = clients.getProps().getUrl();
+        this.supabaseIssuer = url == null || url.isBlank() ? null : url.replaceAll("/+$", "") + "/auth/v1";
+        SupabaseProperties.IdentityCache cfg = clients.getProps().getIdentityCache();
+        this.ttlSeconds = Math.max(1, cfg.getTtlSeconds());
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()))
+                .expireAfter(new Expiry<String, CachedUser>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedUser value, long currentTime) {
+                        return remainingNanos(value);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedUser value, long currentTime, long currentDuration) {
+                        return remainingNanos(value);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedUser value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Devuelve el usuario con la misma forma básica que {@code /auth/v1/user}
+     * ({@code id}, {@code email}, {@code role}, metadatos). Falla si el token no es válido.
+     */
+    public Mono<Map<String, Object>> resolveUser(String accessToken) {
+        if (accessToken == null || accessToken.isBlank()) {
+            return Mono.error(new RuntimeException("Token inválido"));
+        }
+        String key = hash(accessToken);
+        CachedUser cached = cache.getIfPresent(key);
+        if (cached != null && cached.expiresAt().isAfter(Instant.now())) {
+            return Mono.just(cached.user());
+        }
+
+        Map<String, Object> claims = verifyLocally(accessToken);
+        if (claims != null) {
+            Map<String, Object> user = userFromClaims(claims);
+            cache.put(key, new CachedUser(user, expiryFor(claims)));
+            return Mono.just(user);
+        }
+
+        return fetchRemote(accessToken)
+                .doOnNext(user -> cache.put(key, new CachedUser(user, Instant.now().plusSeconds(ttlSeconds))));
+    }
+
+    /** Descarta la identidad cacheada de un token (p. ej. tras cerrar sesión). */
+    public void evict(String accessToken) {
+        if (accessToken != null) cache.invalidate(hash(accessToken));
+    }
+
+    private Map<String, Object> verifyLocally(String accessToken) {
+        String secret = clients.getProps().getJwtSecret();
+        if (secret == null || secret.isBlank() || supabaseIssuer == null) return null;
+        try {
+            Map<String, Object> claims = JwtUtil.validateHs256AndGetClaims(accessToken, secret);
+            if (!supabaseIssuer.equals(claims.get("iss"))) return null;
+            if (!hasAudience(claims.get("aud"))) return null;
+            if (!AUTHENTICATED_ROLE.equals(String.valueOf(claims.get("role")))) return null;
+            if (!isUuid(claims.get("sub"))) return null;
+            return claims;
+        } catch (RuntimeException ex) {
+            // Token firmado con otra clave/algoritmo o expirado: que decida Supabase
+            log.debug("Validación local del token no concluyente: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean hasAudience(Object aud) {
+        if (aud instanceof List<?> list) return list.contains(AUTHENTICATED_AUDIENCE);
+        return AUTHENTICATED_AUDIENCE.equals(aud);
+    }
+
+    private static boolean isUuid(Object sub) {
+        if (!(sub instanceof String s) || s.length() != 36) return false;
+        try {
+            UUID.fromString(s);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private Mono<Map<String, Object>> fetchRemote(String accessToken) {
+        return clients.getAuthPublic()
+                .get()
+                .uri("/user")
+                .headers(clients.userBearer(accessToken))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .flatMap(user -> {
+                    if (user.get("id") == null) return Mono.error(new RuntimeException("Token inválido"));
+                    return Mono.just(Collections.unmodifiableMap(user));
+                });
+    }
+
+    private Map<String, Object> userFromClaims(Map<String, Object> claims) {
+        Map<String, Object> user = new HashMap<>();
+        user.put("id", String.valueOf(claims.get("sub")));
+        user.put("email", claims.get("email"));
+        user.put("phone", claims.get("phone"));
+        user.put("role", claims.get("role"));
+        user.put("aud", claims.get("aud"));
+        user.put("user_metadata", claims.get("user_metadata"));
+        user.put("app_metadata", claims.get("app_metadata"));
+        return Collections.unmodifiableMap(user);
+    }
+
+    private Instant expiryFor(Map<String, Object> claims) {
+        Instant max = Instant.now().plusSeconds(ttlSeconds);
+        if (claims.get("exp") instanceof Number exp) {
+            Instant tokenExp = Instant.ofEpochSecond(exp.longValue());
+            return tokenExp.isBefore(max) ? tokenExp : max;
+        }
+        return max;
+    }
+
+    private static long remainingNanos(CachedUser value) {
+        long millis = value.expiresAt().toEpochMilli() - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private record CachedUser(Map<String, Object> user, Instant expiresAt) {}
+}
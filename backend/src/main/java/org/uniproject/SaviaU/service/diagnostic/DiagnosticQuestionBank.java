@@ -0,0 +1,219 @@
+package org.uniproject.SaviaU.service.diagnostic;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.dto.DiagnosticQuestionDto;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Banco de preguntas del diagnóstico en memoria.
+ * <p>
+ * Guarda las preguntas activas con sus opciones (lo que ve el estudiante) y los índices
+ * opción → (pregunta, es correcta) y pregunta → tema, de modo que {@code submit} califica sin
+ * leer {@code diagnostic_options} ni {@code diagnostic_questions}. El banco no se edita desde
+ * el panel: se revalida en segundo plano pasado {@code supabase.diagnostic-bank.ttl-seconds}.
+ * La {@link #version()} solo cambia cuando una carga trae contenido distinto del publicado.
+ */
+@Slf4j
+@Component
+public class DiagnosticQuestionBank {
+
+    private static final int PAGE_SIZE = 1000;
+    // Separación mínima entre recargas provocadas por una opción desconocida
+    private static final long MISS_RELOAD_INTERVAL_MS = 5_000;
+
+    private final SupabaseClients clients;
+    // Sube con cada invalidación; una carga que empezó antes no reemplaza a una más nueva
+    private final AtomicLong generation = new AtomicLong();
+    // Arranca en la hora de inicio para que una versión no se repita entre reinicios
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis());
+    private final AtomicReference<Bank> bank = new AtomicReference<>();
+    private final AtomicReference<Mono<Bank>> inFlight = new AtomicReference<>();
+
+    public DiagnosticQuestionBank(SupabaseClients clients) {
+        this.clients = clients;
+    }
+
+    public record OptionKey(String optionId, String questionId, boolean correct) {}
+
+    public record Question(String id, String prompt, String topic, String difficulty, boolean active,
+                           List<Option> options) {}
+
+    public record Option(String id, String text) {}
+
+    /** Vista inmutable del banco para una versión concreta. */
+    public record Bank(long version,
+                       long generation,
+                       List<Question> active,
+                       Map<String, OptionKey> options,
+                       Map<String, Question> questions,
+                       Instant loadedAt) {
+
+        public OptionKey option(String optionId) {
+            return optionId == null ? null : options.get(optionId);
+        }
+
+        public String topicOf(String questionId) {
+            Question q = questionId == null ? null : questions.get(questionId);
+            return q == null ? null : q.topic();
+        }
+
+        /** Preguntas activas en el formato público (sin revelar la opción correcta). */
+        public List<DiagnosticQuestionDto> toDtos() {
+            List<DiagnosticQuestionDto> out = new ArrayList<>(active.size());
+            for (Question q : active) {
+                out.add(DiagnosticQuestionDto.builder()
+                        .id(q.id())
+                        .prompt(q.prompt())
+                        .topic(q.topic())
+                        .difficulty(q.difficulty())
+                        .options(q.options().stream()
+                                .map(o -> DiagnosticQuestionDto.Option.builder().id(o.id()).text(o.text()).build())
+                                .toList())
+                        .build());
+            }
+            return out;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        current().subscribe(b -> log.info("Banco de diagnóstico cargado: {} preguntas activas, {} opciones (v{})",
+                        b.active().size(), b.options().size(), b.version()),
+                ex -> log.warn("No se pudo cargar el banco de diagnóstico: {}", ex.getMessage()));
+    }
+
+    /** Versión del banco publicado; la primera vez espera la carga. */
+    public Mono<Long> version() {
+        return current().map(Bank::version);
+    }
+
+    /** Banco vigente; si venció se sirve igual y se recarga en segundo plano. */
+    public Mono<Bank> current() {
+        Bank b = bank.get();
+        if (b == null) return reload();
+        if (b.generation() != generation.get()) {
+            // Invalidado: se espera la recarga; si falla, se sigue calificando con el anterior
+            return reload().onErrorResume(ex -> Mono.just(b));
+        }
+        long ttlSeconds = Math.max(1, clients.getProps().getDiagnosticBank().getTtlSeconds());
+        if (b.loadedAt().plusSeconds(ttlSeconds).isBefore(Instant.now())) {
+            reload().subscribe(v -> {}, ex -> log.warn("Error recargando el banco de diagnóstico: {}", ex.getMessage()));
+        }
+        return Mono.just(b);
+    }
+
+    /**
+     * Como {@link #current()}, pero si alguna opción no aparece fuerza una recarga (como mucho
+     * una vez por intervalo) por si la pregunta se creó después de la última carga.
+     */
+    public Mono<Bank> forOptions(Collection<String> optionIds) {
+        return current().flatMap(b -> {
+            boolean missing = optionIds.stream().anyMatch(id -> id != null && !b.options().containsKey(id));
+            if (!missing || b.loadedAt().plusMillis(MISS_RELOAD_INTERVAL_MS).isAfter(Instant.now())) return Mono.just(b);
+            invalidate();
+            return current();
+        });
+    }
+
+    /** Marca el banco actual como obsoleto; la siguiente consulta espera una recarga. */
+    public void invalidate() {
+        generation.incrementAndGet();
+        inFlight.set(null);
+    }
+
+    private Mono<Bank> reload() {
+        while (true) {
+            Mono<Bank> running = inFlight.get();
+            if (running != null) return running;
+            AtomicReference<Mono<Bank>> self = new AtomicReference<>();
+            long gen = generation.get();
+            Mono<Bank> load = fetch()
+                    .map(content -> publish(gen, content))
+                    .doFinally(sig -> inFlight.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(load);
+            if (inFlight.compareAndSet(null, load)) return load;
+        }
+    }
+
+    private Bank publish(long gen, Content content) {
+        return bank.updateAndGet(prev -> {
+            if (prev != null && prev.generation() > gen) return prev;
+            boolean same = prev != null && prev.active().equals(content.active())
+                    && prev.options().equals(content.options()) && prev.questions().equals(content.questions());
+            long version = same ? prev.version() : versions.incrementAndGet();
+            return new Bank(version, gen, content.active(), content.options(), content.questions(), Instant.now());
+        });
+    }
+
+    private record Content(List<Question> active, Map<String, OptionKey> options, Map<String, Question> questions) {}
+
+    private Mono<Content> fetch() {
+        Mono<List<Map<String, Object>>> questionsMono = fetchAll("/diagnostic_questions", "id,prompt,topic,difficulty,is_active");
+        Mono<List<Map<String, Object>>> optionsMono = fetchAll("/diagnostic_options", "id,question_id,text,is_correct");
+
+        return Mono.zip(questionsMono, optionsMono).map(tuple -> {
+            Map<String, OptionKey> options = new HashMap<>();
+            Map<String, List<Option>> optionsByQuestion = new HashMap<>();
+            for (Map<String, Object> o : tuple.getT2()) {
+                if (o.get("id") == null || o.get("question_id") == null) continue;
+                String optionId = String.valueOf(o.get("id"));
+                String questionId = String.valueOf(o.get("question_id"));
+                options.put(optionId, new OptionKey(optionId, questionId, Boolean.TRUE.equals(o.get("is_correct"))));
+                optionsByQuestion.computeIfAbsent(questionId, k -> new ArrayList<>())
+                        .add(new Option(optionId, o.get("text") == null ? null : String.valueOf(o.get("text"))));
+            }
+
+            Map<String, Question> questions = new HashMap<>();
+            List<Question> active = new ArrayList<>();
+            for (Map<String, Object> q : tuple.getT1()) {
+                if (q.get("id") == null) continue;
+                String id = String.valueOf(q.get("id"));
+                boolean isActive = Boolean.TRUE.equals(q.get("is_active"));
+                Question question = new Question(id,
+                        q.get("prompt") == null ? null : String.valueOf(q.get("prompt")),
+                        q.get("topic") == null ? null : String.valueOf(q.get("topic")),
+                        q.get("difficulty") == null ? null : String.valueOf(q.get("difficulty")),
+                        isActive,
+                        List.copyOf(optionsByQuestion.getOrDefault(id, List.of())));
+                questions.put(id, question);
+                if (isActive) active.add(question);
+            }
+
+            return new Content(List.copyOf(active), Map.copyOf(options), Map.copyOf(questions));
+        });
+    }
+
+    // PostgREST limita las filas por respuesta; se pagina hasta recibir una página incompleta
+    private Mono<List<Map<String, Object>>> fetchAll(String path, String select) {
+        return Flux.range(0, Integer.MAX_VALUE)
+                .concatMap(page -> Mono.defer(() -> clients.getDbAdmin().get()
+                        .uri(uriBuilder -> uriBuilder
+                                .path(path)
+                                .queryParam("select", select)
+                                .queryParam("order", "id.asc")
+                                .queryParam("limit", PAGE_SIZE)
+                                .queryParam("offset", (long) page * PAGE_SIZE)
+                                .build())
+                        .retrieve()
+                        .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})), 1)
+                .takeUntil(rows -> rows.size() < PAGE_SIZE)
+                .concatMapIterable(rows -> rows)
+                .collectList();
+    }
+}
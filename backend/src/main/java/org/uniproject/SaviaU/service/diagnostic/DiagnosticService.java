@@ -14,7 +14,9 @@ import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import org.uniproject.SaviaU.service.auth.UserIdentityService;
 import org.uniproject.SaviaU.service.progress.ProgressService;
+import org.uniproject.SaviaU.service.progress.TopicMasteryStore;
 import org.uniproject.SaviaU.dto.AwardResultDto;
 
 @Slf4j
@@ -24,54 +26,17 @@ public class DiagnosticService {
 
     private final SupabaseClients clients;
     private final ProgressService progressService;
+    private final UserIdentityService identityService;
+    private final TopicMasteryStore masteryStore;
+    private final DiagnosticQuestionBank questionBank;
 
-    public Mono<List<DiagnosticQuestionDto>> getQuestions() {
-        Mono<List<Map>> qMono = clients.getDbAdmin().get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/diagnostic_questions")
-                        .queryParam("select", "id,prompt,topic,difficulty,is_active")
-                        .queryParam("is_active", "eq.true")
-                        .build())
-                .retrieve()
-                .bodyToFlux(Map.class)
-                .collectList();
-
-        return qMono.flatMap(qList -> {
-            if (qList.isEmpty()) return Mono.just(List.of());
-            List<String> qIds = qList.stream().map(m -> (String) m.get("id")).collect(Collectors.toList());
-            String inParam = "in.(" + String.join(",", qIds) + ")";
-            Mono<List<Map>> oMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/diagnostic_options")
-                            .queryParam("select", "id,question_id,text")
-                            .queryParam("question_id", inParam)
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
+    /** Versión del banco de preguntas publicado; la usa la caché de respuestas. */
+    public Mono<Long> catalogVersion() {
+        return questionBank.version();
+    }
 
-            return oMono.map(opts -> {
-                Map<String, List<Map>> byQ = opts.stream().collect(Collectors.groupingBy(m -> (String) m.get("question_id")));
-                List<DiagnosticQuestionDto> dto = new ArrayList<>();
-                for (Map q : qList) {
-                    String qid = (String) q.get("id");
-                    List<DiagnosticQuestionDto.Option> oDto = byQ.getOrDefault(qid, List.of()).stream()
-                            .map(o -> DiagnosticQuestionDto.Option.builder()
-                                    .id((String) o.get("id"))
-                                    .text((String) o.get("text"))
-                                    .build())
-                            .collect(Collectors.toList());
-                    dto.add(DiagnosticQuestionDto.builder()
-                            .id(qid)
-                            .prompt((String) q.get("prompt"))
-                            .topic((String) q.get("topic"))
-                            .difficulty((String) q.get("difficulty"))
-                            .options(oDto)
-                            .build());
-                }
-                return dto;
-            });
-        });
+    public Mono<List<DiagnosticQuestionDto>> getQuestions() {
+        return questionBank.current().map(DiagnosticQuestionBank.Bank::toDtos);
     }
 
     public Mono<Map<String, Object>> getStatus(String accessToken) {
@@ -129,42 +94,22 @@ public class DiagnosticService {
                 return Mono.error(new RuntimeException("No hay respuestas"));
             }
             List<String> optionIds = request.getAnswers().stream().map(DiagnosticSubmitRequest.Answer::getOptionId).toList();
-            String optIn = "in.(" + String.join(",", optionIds) + ")";
-
-            Mono<List<Map>> selectedOptsMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/diagnostic_options")
-                            .queryParam("select", "id,question_id,is_correct")
-                            .queryParam("id", optIn)
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
-
-            Set<String> qIds = new HashSet<>(request.getAnswers().stream().map(DiagnosticSubmitRequest.Answer::getQuestionId).toList());
-            String qIn = "in.(" + String.join(",", qIds) + ")";
-            Mono<List<Map>> questionsMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/diagnostic_questions")
-                            .queryParam("select", "id,topic")
-                            .queryParam("id", qIn)
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
 
-            return Mono.zip(selectedOptsMono, questionsMono).flatMap(tuple -> {
-                List<Map> selected = tuple.getT1();
-                Map<String, Map> optById = selected.stream().collect(Collectors.toMap(m -> (String) m.get("id"), m -> m));
-                Map<String, String> qTopic = tuple.getT2().stream().collect(Collectors.toMap(m -> (String) m.get("id"), m -> (String) m.get("topic")));
+            // Calificación contra el banco en memoria: solo quedan las escrituras
+            return questionBank.forOptions(optionIds).flatMap(bank -> {
+                Map<String, String> qTopic = new HashMap<>();
+                for (DiagnosticSubmitRequest.Answer ans : request.getAnswers()) {
+                    String topic = bank.topicOf(ans.getQuestionId());
+                    if (topic != null) qTopic.put(ans.getQuestionId(), topic);
+                }
 
                 int total = request.getAnswers().size();
                 int correct = 0;
                 Map<String, Integer> topicCorrect = new HashMap<>();
 
                 for (DiagnosticSubmitRequest.Answer ans : request.getAnswers()) {
-                    Map o = optById.get(ans.getOptionId());
-                    boolean isCorrect = o != null && Boolean.TRUE.equals(o.get("is_correct"));
+                    DiagnosticQuestionBank.OptionKey o = bank.option(ans.getOptionId());
+                    boolean isCorrect = o != null && o.correct();
                     if (isCorrect) {
                         correct++;
                         String topic = qTopic.get(ans.getQuestionId());
@@ -203,14 +148,16 @@ public class DiagnosticService {
                     String attemptId = (String) attempt.get("id");
                     List<Map<String, Object>> answersRows = new ArrayList<>();
                     for (DiagnosticSubmitRequest.Answer ans : request.getAnswers()) {
-                        Map o = optById.get(ans.getOptionId());
-                        boolean isCorrect = o != null && Boolean.TRUE.equals(o.get("is_correct"));
+                        DiagnosticQuestionBank.OptionKey o = bank.option(ans.getOptionId());
+                        boolean isCorrect = o != null && o.correct();
                         answersRows.add(Map.of(
                                 "attempt_id", attemptId,
                                 "question_id", ans.getQuestionId(),
                                 "selected_option_id", ans.getOptionId(),
                                 "is_correct", isCorrect
                         ));
+                        // Antes de registrar la actividad, para que las insignias de maestría lo vean
+                        masteryStore.apply(userIdFinal, qTopic.get(ans.getQuestionId()), 1, isCorrect ? 1 : 0);
                     }
 
                     Mono<String> insertAnswers = clients.getDbAdmin().post()
@@ -242,6 +189,7 @@ public class DiagnosticService {
                     metadata.put("level", levelFinal);
                     metadata.put("totalQuestions", totalFinal);
                     metadata.put("correct", correctFinal);
+                    metadata.put("topics", new ArrayList<>(new TreeSet<>(qTopic.values())));
 
                     Mono<AwardResultDto> record = progressService
                             .recordActivityForUserId(userIdFinal, "DIAGNOSTIC_COMPLETED", metadata)
@@ -308,26 +256,14 @@ public class DiagnosticService {
                                 .completedAt(Instant.parse((String) attempt.get("completed_at")))
                                 .build());
                     }
-                    String qIn = "in.(" + String.join(",", qIds) + ")";
-                    Mono<List<Map>> qMono = clients.getDbAdmin().get()
-                            .uri(uriBuilder -> uriBuilder
-                                    .path("/diagnostic_questions")
-                                    .queryParam("select", "id,topic")
-                                    .queryParam("id", qIn)
-                                    .build())
-                            .retrieve()
-                            .bodyToFlux(Map.class)
-                            .collectList();
-
-                    return qMono.map(qList -> {
-                        Map<String, String> qTopic = qList.stream().collect(Collectors.toMap(m -> (String) m.get("id"), m -> (String) m.get("topic")));
+                    return questionBank.current().map(bank -> {
                         Map<String, Integer> topicCorrect = new HashMap<>();
                         int correct = 0;
                         for (Map a : ansList) {
                             boolean isC = Boolean.TRUE.equals(a.get("is_correct"));
                             if (isC) {
                                 correct++;
-                                String topic = qTopic.get((String) a.get("question_id"));
+                                String topic = bank.topicOf((String) a.get("question_id"));
                                 if (topic != null) topicCorrect.put(topic, topicCorrect.getOrDefault(topic, 0) + 1);
                             }
                         }
@@ -349,8 +285,8 @@ public class DiagnosticService {
         });
     }
 
-    private Mono<Map> getUserFromToken(String accessToken) {
-        return clients.buildUserAuthClient(accessToken).get().uri("/user").retrieve().bodyToMono(Map.class);
+    private Mono<Map<String, Object>> getUserFromToken(String accessToken) {
+        return identityService.resolveUser(accessToken);
     }
 
     private List<String> recommendTopics(Map<String, Integer> topicCorrect) {
@@ -0,0 +1,181 @@
+package org.uniproject.SaviaU.service.profile;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.service.progress.HistoryStreams;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fotos inmutables del leaderboard, compartidas por el ranking de estudiantes y los tableros
+ * de administración.
+ * <p>
+ * Cada reconstrucción toma el ranking de {@link RankingEngine}, une los perfiles de
+ * {@code usuarios} (solo los que faltan; todos cada {@code profile-refresh-ms}) y precalcula
+ * los tres órdenes que se sirven. La foto nueva se publica con un intercambio atómico: las
+ * lecturas nunca ven una foto a medio construir ni hacen llamadas a Supabase.
+ */
+@Slf4j
+@Component
+public class LeaderboardSnapshots {
+
+    /** Fila de la foto: agregados de intentos completados más el perfil. */
+    public record Row(String userId, String fullName, String email, int attempts, double avgScore,
+                      double bestScore, double rankingScore, Instant lastAttemptAt) {}
+
+    /**
+     * Foto publicada. {@code byRanking} sigue la fórmula de ranking, {@code byAverage} el
+     * promedio (desempate por mejor puntaje) y {@code byActivity} la cantidad de intentos
+     * (desempate por promedio). Van hasta {@code rebuild-ms} por detrás de los intentos; la
+     * posición y la ventana de un usuario salen en vivo de {@link RankingEngine} y solo toman
+     * de aquí el perfil.
+     */
+    public record Snapshot(long version, Instant builtAt, List<Row> byRanking, List<Row> byAverage,
+                           List<Row> byActivity, Map<String, Integer> rankIndex) {
+
+        /** Índice del usuario en {@code byRanking} (rank - 1), o -1 si no figura. */
+        public int indexOf(String userId) {
+            return userId == null ? -1 : rankIndex.getOrDefault(userId, -1);
+        }
+
+        /** Fila del usuario en {@code byRanking}, o null si no figura. */
+        public Row row(String userId) {
+            int index = indexOf(userId);
+            return index < 0 ? null : byRanking.get(index);
+        }
+    }
+
+    private record Profile(String fullName, String email) {}
+
+    // Ambos órdenes son descendentes en las dos claves. Las consultas originales encadenaban
+    // reversed() dos veces, lo que invertía el comparador completo (promedio ascendente en el
+    // leaderboard, menos intentos primero en la cohorte) y el límite se quedaba con los últimos.
+    private static final Comparator<Row> BY_AVERAGE = Comparator.comparingDouble(Row::avgScore).reversed()
+            .thenComparing(Comparator.comparingDouble(Row::bestScore).reversed());
+    private static final Comparator<Row> BY_ACTIVITY = Comparator.comparingInt(Row::attempts).reversed()
+            .thenComparing(Comparator.comparingDouble(Row::avgScore).reversed());
+
+    private final RankingEngine rankingEngine;
+    private final HistoryStreams historyStreams;
+    private final SupabaseProperties.Leaderboard cfg;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final AtomicReference<Mono<Snapshot>> inFlight = new AtomicReference<>();
+    private final Timer rebuildTimer;
+
+    // Solo los modifica la reconstrucción en curso (una a la vez)
+    private volatile Map<String, Profile> profiles = Map.of();
+    private volatile Instant profilesLoadedAt = Instant.EPOCH;
+
+    public LeaderboardSnapshots(SupabaseClients clients, RankingEngine rankingEngine,
+                                HistoryStreams historyStreams, MeterRegistry registry) {
+        this.rankingEngine = rankingEngine;
+        this.historyStreams = historyStreams;
+        this.cfg = clients.getProps().getLeaderboard();
+        this.rebuildTimer = Timer.builder("leaderboard.snapshot.rebuild")
+                .description("Duración de cada reconstrucción de la foto del leaderboard")
+                .register(registry);
+        Gauge.builder("leaderboard.snapshot.age.seconds", current, ref -> {
+                    Snapshot s = ref.get();
+                    return s == null ? -1 : Duration.between(s.builtAt(), Instant.now()).toMillis() / 1000.0;
+                })
+                .description("Antigüedad de la foto publicada del leaderboard")
+                .register(registry);
+    }
+
+    /** Foto publicada; la primera vez espera a que se construya. */
+    public Mono<Snapshot> current() {
+        Snapshot s = current.get();
+        return s != null ? Mono.just(s) : rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${supabase.leaderboard.rebuild-ms:15000}")
+    public void refresh() {
+        Snapshot s = current.get();
+        boolean profilesDue = profilesLoadedAt.plusMillis(cfg.getProfileRefreshMs()).isBefore(Instant.now());
+        // Sin intentos nuevos ni perfiles vencidos no hay nada que reconstruir
+        if (s != null && s.version() == rankingEngine.version() && !profilesDue) return;
+        rebuild().subscribe(v -> {}, ex -> log.warn("No se pudo reconstruir el leaderboard: {}", ex.getMessage()));
+    }
+
+    private Mono<Snapshot> rebuild() {
+        while (true) {
+            Mono<Snapshot> running = inFlight.get();
+            if (running != null) return running;
+            AtomicReference<Mono<Snapshot>> self = new AtomicReference<>();
+            Mono<Snapshot> build = build()
+                    .doOnNext(current::set)
+                    .doFinally(sig -> inFlight.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(build);
+            if (inFlight.compareAndSet(null, build)) return build;
+        }
+    }
+
+    private Mono<Snapshot> build() {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start();
+            return rankingEngine.table()
+                    .flatMap(table -> loadProfiles(table.standings()).map(p -> assemble(table, p)))
+                    .doOnNext(s -> sample.stop(rebuildTimer));
+        });
+    }
+
+    private Mono<Map<String, Profile>> loadProfiles(List<RankingEngine.Standing> standings) {
+        boolean full = profilesLoadedAt.plusMillis(cfg.getProfileRefreshMs()).isBefore(Instant.now());
+        Map<String, Profile> known = full ? Map.of() : profiles;
+        List<String> missing = standings.stream()
+                .map(RankingEngine.Standing::userId)
+                .filter(id -> !known.containsKey(id))
+                .toList();
+        if (missing.isEmpty()) return Mono.just(known);
+
+        Instant startedAt = Instant.now();
+        return historyStreams.byIds(Flux.fromIterable(missing), "usuarios", "id", "id,full_name,email")
+                .collectList()
+                .map(rows -> {
+                    Map<String, Profile> next = new HashMap<>(known);
+                    for (Map<String, Object> row : rows) {
+                        next.put(String.valueOf(row.get("id")), new Profile((String) row.get("full_name"), (String) row.get("email")));
+                    }
+                    // Usuarios sin fila en usuarios: no volver a pedirlos en cada reconstrucción
+                    missing.forEach(id -> next.putIfAbsent(id, new Profile(null, null)));
+                    Map<String, Profile> published = Map.copyOf(next);
+                    profiles = published;
+                    if (full) profilesLoadedAt = startedAt;
+                    return published;
+                });
+    }
+
+    private static Snapshot assemble(RankingEngine.Table table, Map<String, Profile> profiles) {
+        List<Row> byRanking = new ArrayList<>(table.standings().size());
+        Map<String, Integer> rankIndex = new HashMap<>();
+        for (RankingEngine.Standing s : table.standings()) {
+            Profile p = profiles.getOrDefault(s.userId(), new Profile(null, null));
+            Row row = new Row(s.userId(), p.fullName(), p.email(), s.totalQuizzes(), s.averageScore(),
+                    s.bestScore(), s.rankingScore(), s.lastAttemptAt());
+            rankIndex.put(s.userId(), byRanking.size());
+            byRanking.add(row);
+        }
+        List<Row> byAverage = new ArrayList<>(byRanking);
+        byAverage.sort(BY_AVERAGE);
+        List<Row> byActivity = new ArrayList<>(byRanking);
+        byActivity.sort(BY_ACTIVITY);
+        return new Snapshot(table.version(), Instant.now(), List.copyOf(byRanking), List.copyOf(byAverage),
+                List.copyOf(byActivity), Map.copyOf(rankIndex));
+    }
+}
@@ -8,10 +8,10 @@ import org.springframework.web.reactive.function.client.WebClientResponseExcepti
 import org.uniproject.SaviaU.config.SupabaseClients;
 import org.uniproject.SaviaU.dto.OnboardRequest;
 import org.uniproject.SaviaU.dto.UserRankingDto;
+import org.uniproject.SaviaU.service.auth.UserIdentityService;
 import reactor.core.publisher.Mono;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -19,16 +19,16 @@ import java.util.stream.Collectors;
 public class OnboardingService {
 
     private final SupabaseClients clients;
+    private final UserIdentityService identityService;
+    private final LeaderboardSnapshots leaderboard;
+    private final RankingEngine rankingEngine;
+
+    private static final int MAX_RANKING_LIMIT = 2000;
+    private static final int MAX_RANKING_RADIUS = 50;
 
     public Mono<String> onboard(OnboardRequest request) {
-        return clients.buildUserAuthClient(request.getAccessToken())
-                .get()
-                .uri("/user")
-                .retrieve()
-                .bodyToMono(Map.class)
-                .flatMap(userResp -> {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> user = (Map<String, Object>) userResp;
+        return identityService.resolveUser(request.getAccessToken())
+                .flatMap(user -> {
                     String id = (String) user.get("id");
                     String email = (String) user.get("email");
                     if (id == null || email == null) {
@@ -58,14 +58,8 @@ public class OnboardingService {
     }
 
     public Mono<Map<String, Object>> profileStatus(String accessToken) {
-        return clients.buildUserAuthClient(accessToken)
-                .get()
-                .uri("/user")
-                .retrieve()
-                .bodyToMono(Map.class)
-                .flatMap(userResp -> {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> user = (Map<String, Object>) userResp;
+        return identityService.resolveUser(accessToken)
+                .flatMap(user -> {
                     String id = (String) user.get("id");
                     String email = (String) user.get("email");
                     if (id == null) return Mono.error(new RuntimeException("Token inválido"));
@@ -115,14 +109,8 @@ public class OnboardingService {
 
     // Nuevo: obtener el perfil guardado del usuario
     public Mono<Map<String, Object>> getProfile(String accessToken) {
-        return clients.buildUserAuthClient(accessToken)
-                .get()
-                .uri("/user")
-                .retrieve()
-                .bodyToMono(Map.class)
-                .flatMap(userResp -> {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> user = (Map<String, Object>) userResp;
+        return identityService.resolveUser(accessToken)
+                .flatMap(user -> {
                     String id = (String) user.get("id");
                     String email = (String) user.get("email");
                     if (id == null) return Mono.error(new RuntimeException("Token inválido"));
@@ -169,139 +157,74 @@ public class OnboardingService {
      * - 40% del promedio de puntaje (avg_score)
      * - 30% del mejor puntaje (best_score)
      * - 30% basado en la cantidad de quizzes completados (normalizado)
+     * Se sirve desde la foto publicada de {@link LeaderboardSnapshots}, que considera todos los
+     * intentos completados y va hasta {@code rebuild-ms} por detrás de ellos.
      */
     public Mono<List<UserRankingDto>> getUserRanking(String accessToken, int limit) {
-        int fetchLimit = Math.min(2000, Math.max(limit * 5, 500));
-        
-        // Primero validamos el token
-        return clients.buildUserAuthClient(accessToken)
-                .get()
-                .uri("/user")
-                .retrieve()
-                .bodyToMono(Map.class)
-                .flatMap(user -> {
-                    // Obtenemos todos los intentos de trivia
-                    return clients.getDbAdmin().get()
-                            .uri(uriBuilder -> uriBuilder
-                                    .path("/trivia_attempts")
-                                    .queryParam("select", "id,user_id,score_percent,completed_at")
-                                    .queryParam("order", "completed_at.desc")
-                                    .queryParam("limit", fetchLimit)
-                                    .build())
-                            .retrieve()
-                            .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
-                            .flatMap(rows -> {
-                                // Agrupamos por usuario y calculamos estadísticas
-                                Map<String, List<Map<String, Object>>> grouped = rows.stream()
-                                        .filter(row -> row.get("user_id") != null)
-                                        .collect(Collectors.groupingBy(row -> (String) row.get("user_id")));
-
-                                // Calculamos el máximo de quizzes para normalizar
-                                int maxQuizzes = grouped.values().stream()
-                                        .mapToInt(List::size)
-                                        .max()
-                                        .orElse(1);
+        return identityService.resolveUser(accessToken)
+                .flatMap(user -> leaderboard.current())
+                .map(snapshot -> {
+                    List<LeaderboardSnapshots.Row> rows = snapshot.byRanking();
+                    int n = Math.min(Math.max(0, Math.min(limit, MAX_RANKING_LIMIT)), rows.size());
+                    return toRankingDtos(rows, 0, n);
+                });
+    }
 
-                                // Creamos las estadísticas por usuario
-                                List<Map<String, Object>> stats = grouped.entrySet().stream()
-                                        .map(entry -> {
-                                            List<Map<String, Object>> attempts = entry.getValue();
-                                            
-                                            double avg = attempts.stream()
-                                                    .mapToDouble(a -> toDouble(a.get("score_percent")))
-                                                    .average()
-                                                    .orElse(0);
-                                            
-                                            double best = attempts.stream()
-                                                    .mapToDouble(a -> toDouble(a.get("score_percent")))
-                                                    .max()
-                                                    .orElse(0);
-                                            
-                                            int totalQuizzes = attempts.size();
-                                            
-                                            // Fórmula de ranking balanceada:
-                                            // 40% promedio + 30% mejor puntaje + 30% cantidad normalizada
-                                            double normalizedCount = (double) totalQuizzes / maxQuizzes * 100;
-                                            double rankingScore = (avg * 0.4) + (best * 0.3) + (normalizedCount * 0.3);
-                                            
-                                            Map<String, Object> stat = new HashMap<>();
-                                            stat.put("user_id", entry.getKey());
-                                            stat.put("avg_score", avg);
-                                            stat.put("best_score", best);
-                                            stat.put("total_quizzes", totalQuizzes);
-                                            stat.put("ranking_score", rankingScore);
-                                            return stat;
-                                        })
-                                        .sorted(Comparator
-                                                .comparingDouble((Map<String, Object> m) -> (double) m.get("ranking_score"))
-                                                .reversed())
-                                        .limit(limit)
-                                        .collect(Collectors.toList());
+    /**
+     * Posición de un usuario (por defecto, el dueño del token) sin descargar el ranking completo.
+     * Sale del {@link RankingEngine} en O(log n), así que refleja un {@code finish} al instante;
+     * nombre y correo se toman de la foto publicada.
+     */
+    public Mono<UserRankingDto> getUserPosition(String accessToken, String userId) {
+        return identityService.resolveUser(accessToken)
+                .flatMap(user -> Mono.zip(
+                        rankingEngine.standing(userId != null ? userId : (String) user.get("id")),
+                        leaderboard.current()))
+                .flatMap(tuple -> Mono.justOrEmpty(tuple.getT1()).map(s -> toRankingDto(s, tuple.getT2())));
+    }
 
-                                // Enriquecemos con información de perfil
-                                return enrichWithProfiles(stats)
-                                        .map(profileMap -> {
-                                            List<UserRankingDto> ranking = new ArrayList<>();
-                                            int rank = 1;
-                                            for (Map<String, Object> stat : stats) {
-                                                String userId = (String) stat.get("user_id");
-                                                Map<String, Object> profile = profileMap.getOrDefault(userId, Collections.emptyMap());
-                                                
-                                                ranking.add(UserRankingDto.builder()
-                                                        .rank(rank++)
-                                                        .userId(userId)
-                                                        .fullName((String) profile.get("full_name"))
-                                                        .email((String) profile.get("email"))
-                                                        .totalQuizzes(((Number) stat.get("total_quizzes")).intValue())
-                                                        .averageScore((double) stat.get("avg_score"))
-                                                        .bestScore((double) stat.get("best_score"))
-                                                        .rankingScore((double) stat.get("ranking_score"))
-                                                        .build());
-                                            }
-                                            return ranking;
-                                        });
-                            });
-                });
+    /** Usuarios alrededor de la posición de un usuario (por defecto, el dueño del token), al instante. */
+    public Mono<List<UserRankingDto>> getRankingAround(String accessToken, String userId, int radius) {
+        int r = Math.min(Math.max(0, radius), MAX_RANKING_RADIUS);
+        return identityService.resolveUser(accessToken)
+                .flatMap(user -> Mono.zip(
+                        rankingEngine.around(userId != null ? userId : (String) user.get("id"), r),
+                        leaderboard.current()))
+                .map(tuple -> tuple.getT1().stream()
+                        .map(s -> toRankingDto(s, tuple.getT2()))
+                        .toList());
     }
 
-    private Mono<Map<String, Map<String, Object>>> enrichWithProfiles(List<Map<String, Object>> stats) {
-        if (stats.isEmpty()) {
-            return Mono.just(Collections.emptyMap());
-        }
-        
-        List<String> userIds = stats.stream()
-                .map(m -> (String) m.get("user_id"))
-                .collect(Collectors.toList());
-        
-        String inUsers = "in.(" + String.join(",", userIds) + ")";
-        
-        return clients.getDbAdmin().get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/usuarios")
-                        .queryParam("select", "id,email,full_name")
-                        .queryParam("id", inUsers)
-                        .build())
-                .retrieve()
-                .bodyToFlux(Map.class)
-                .collectList()
-                .map(profiles -> {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Map<String, Object>> result = profiles.stream()
-                            .collect(Collectors.toMap(
-                                    p -> (String) p.get("id"),
-                                    p -> (Map<String, Object>) p
-                            ));
-                    return result;
-                });
+    private static UserRankingDto toRankingDto(RankingEngine.Standing standing, LeaderboardSnapshots.Snapshot snapshot) {
+        // Un usuario que aún no está en la foto sale sin nombre ni correo hasta la siguiente
+        LeaderboardSnapshots.Row profile = snapshot.row(standing.userId());
+        return UserRankingDto.builder()
+                .rank(standing.rank())
+                .userId(standing.userId())
+                .fullName(profile == null ? null : profile.fullName())
+                .email(profile == null ? null : profile.email())
+                .totalQuizzes(standing.totalQuizzes())
+                .averageScore(standing.averageScore())
+                .bestScore(standing.bestScore())
+                .rankingScore(standing.rankingScore())
+                .build();
     }
 
-    private double toDouble(Object val) {
-        if (val == null) return 0.0;
-        if (val instanceof Number) return ((Number) val).doubleValue();
-        try {
-            return Double.parseDouble(String.valueOf(val));
-        } catch (NumberFormatException e) {
-            return 0.0;
+    private static List<UserRankingDto> toRankingDtos(List<LeaderboardSnapshots.Row> rows, int from, int to) {
+        List<UserRankingDto> ranking = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            LeaderboardSnapshots.Row row = rows.get(i);
+            ranking.add(UserRankingDto.builder()
+                    .rank(i + 1)
+                    .userId(row.userId())
+                    .fullName(row.fullName())
+                    .email(row.email())
+                    .totalQuizzes(row.attempts())
+                    .averageScore(row.avgScore())
+                    .bestScore(row.bestScore())
+                    .rankingScore(row.rankingScore())
+                    .build());
         }
+        return ranking;
     }
 }
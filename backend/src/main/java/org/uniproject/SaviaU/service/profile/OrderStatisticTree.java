@@ -0,0 +1,168 @@
+package org.uniproject.SaviaU.service.profile;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Árbol de estadísticos de orden (treap con tamaños de subárbol): inserción, borrado,
+ * posición de un elemento y elemento en una posición en O(log n) esperado.
+ * No es seguro para hilos; quien lo usa debe sincronizar.
+ */
+final class OrderStatisticTree<T> {
+
+    private static final class Node<T> {
+        final T value;
+        final int priority;
+        Node<T> left;
+        Node<T> right;
+        int size = 1;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    private final Comparator<? super T> order;
+    private final SplittableRandom random = new SplittableRandom(0x5A71A);
+    private Node<T> root;
+
+    OrderStatisticTree(Comparator<? super T> order) {
+        this.order = order;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    void insert(T value) {
+        root = insert(root, new Node<>(value, random.nextInt()));
+    }
+
+    boolean remove(T value) {
+        int before = size(root);
+        root = remove(root, value);
+        return size(root) < before;
+    }
+
+    /** Posición (desde 0) de {@code value}, o -1 si no está. */
+    int indexOf(T value) {
+        int index = 0;
+        Node<T> n = root;
+        while (n != null) {
+            int c = order.compare(value, n.value);
+            if (c == 0) return index + size(n.left);
+            if (c < 0) {
+                n = n.left;
+            } else {
+                index += size(n.left) + 1;
+                n = n.right;
+            }
+        }
+        return -1;
+    }
+
+    /** Elemento en la posición {@code index} (desde 0). */
+    T get(int index) {
+        Node<T> n = root;
+        while (n != null) {
+            int leftSize = size(n.left);
+            if (index < leftSize) {
+                n = n.left;
+            } else if (index == leftSize) {
+                return n.value;
+            } else {
+                index -= leftSize + 1;
+                n = n.right;
+            }
+        }
+        throw new IndexOutOfBoundsException(index);
+    }
+
+    /** Elementos en [from, to), en orden. */
+    List<T> range(int from, int to) {
+        List<T> out = new ArrayList<>(Math.max(0, to - from));
+        collect(root, Math.max(0, from), Math.min(to, size()), 0, out);
+        return out;
+    }
+
+    private void collect(Node<T> n, int from, int to, int offset, List<T> out) {
+        if (n == null || from >= to) return;
+        int index = offset + size(n.left);
+        if (from < index) collect(n.left, from, to, offset, out);
+        if (index >= from && index < to) out.add(n.value);
+        if (to > index + 1) collect(n.right, from, to, index + 1, out);
+    }
+
+    private Node<T> insert(Node<T> n, Node<T> fresh) {
+        if (n == null) return fresh;
+        if (order.compare(fresh.value, n.value) < 0) {
+            n.left = insert(n.left, fresh);
+            if (n.left.priority > n.priority) n = rotateRight(n);
+        } else {
+            n.right = insert(n.right, fresh);
+            if (n.right.priority > n.priority) n = rotateLeft(n);
+        }
+        update(n);
+        return n;
+    }
+
+    private Node<T> remove(Node<T> n, T value) {
+        if (n == null) return null;
+        int c = order.compare(value, n.value);
+        if (c < 0) {
+            n.left = remove(n.left, value);
+        } else if (c > 0) {
+            n.right = remove(n.right, value);
+        } else {
+            return merge(n.left, n.right);
+        }
+        update(n);
+        return n;
+    }
+
+    private Node<T> merge(Node<T> a, Node<T> b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private Node<T> rotateRight(Node<T> n) {
+        Node<T> l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private Node<T> rotateLeft(Node<T> n) {
+        Node<T> r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    private static <T> int size(Node<T> n) {
+        return n == null ? 0 : n.size;
+    }
+
+    private static <T> void update(Node<T> n) {
+        n.size = 1 + size(n.left) + size(n.right);
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.web.reactive.function.client.WebClientResponseExcepti
 import org.uniproject.SaviaU.config.SupabaseClients;
 import org.uniproject.SaviaU.config.SupabaseProperties;
 import org.uniproject.SaviaU.dto.ProfileUpdateRequest;
+import org.uniproject.SaviaU.service.auth.UserIdentityService;
 import reactor.core.publisher.Mono;
 import org.springframework.core.io.buffer.DataBufferUtils;
 
@@ -30,6 +31,7 @@ public class ProfileService {
     );
 
     private final SupabaseClients clients;
+    private final UserIdentityService identityService;
 
     public Mono<Map<String, Object>> getProfile(String accessToken) {
         return getUserFromToken(accessToken)
@@ -225,13 +227,8 @@ public class ProfileService {
     }
 
     private Mono<Map<String, Object>> getUserFromToken(String accessToken) {
-        return clients.buildUserAuthClient(accessToken)
-                .get()
-                .uri("/user")
-                .retrieve()
-                .bodyToMono(Map.class)
-                .flatMap(userResp -> {
-                    @SuppressWarnings("unchecked") Map<String, Object> user = (Map<String, Object>) userResp;
+        return identityService.resolveUser(accessToken)
+                .flatMap(user -> {
                     String id = (String) user.get("id");
                     if (id == null) return Mono.error(new RuntimeException("Token inválido"));
                     return Mono.just(user);
@@ -0,0 +1,318 @@
+package org.uniproject.SaviaU.service.profile;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ranking global de trivia en memoria.
+ * <p>
+ * Mantiene por usuario los agregados de sus intentos completados (cantidad, suma y mejor
+ * puntaje) y un árbol de estadísticos de orden por {@code rankingScore}, de modo que top-N,
+ * la posición de un usuario y la ventana alrededor de él cuestan O(log n + k). Se arranca con
+ * un recorrido completo de {@code trivia_attempts} y luego lo alimenta cada {@code finish}.
+ * <p>
+ * La fórmula normaliza la cantidad de quizzes contra una referencia: el máximo global en la
+ * última reescala. Que el líder sume un quiz no toca las claves de los demás (por encima de la
+ * referencia la cantidad cuenta como 100); la referencia se iguala al máximo, reconstruyendo
+ * el árbol en O(n log n), como mucho una vez cada {@code supabase.ranking.rescale-ms}.
+ */
+@Slf4j
+@Component
+public class RankingEngine {
+
+    /** Posición de un usuario en el ranking (rank desde 1). */
+    public record Standing(int rank, String userId, int totalQuizzes, double averageScore,
+                           double bestScore, double rankingScore, Instant lastAttemptAt) {}
+
+    /** Ranking completo en orden, con la versión del estado del que salió. */
+    public record Table(long version, List<Standing> standings) {}
+
+    private static final class Agg {
+        int count;
+        double sum;
+        Instant lastAt;
+        // Puntaje vigente de cada intento (multiconjunto): el mejor baja si se re-finaliza a menos
+        final TreeMap<Double, Integer> scores = new TreeMap<>();
+
+        void add(double score, Instant at) {
+            count++;
+            sum += score;
+            scores.merge(score, 1, Integer::sum);
+            touch(at);
+        }
+
+        void replace(double previousScore, double score, Instant at) {
+            sum += score - previousScore;
+            scores.computeIfPresent(previousScore, (k, n) -> n > 1 ? n - 1 : null);
+            scores.merge(score, 1, Integer::sum);
+            touch(at);
+        }
+
+        double best() {
+            return scores.isEmpty() ? 0 : scores.lastKey();
+        }
+
+        void touch(Instant at) {
+            if (at != null && (lastAt == null || at.isAfter(lastAt))) lastAt = at;
+        }
+    }
+
+    private record Key(String userId, double score) {}
+
+    private record Completion(String userId, String attemptId, Double previousScore, double score, Instant at) {}
+
+    private static final Comparator<Key> ORDER = Comparator.comparingDouble(Key::score).reversed()
+            .thenComparing(Key::userId);
+
+    private final SupabaseClients clients;
+    private final int pageSize;
+    private final long rescaleMs;
+
+    // Estado protegido por el monitor de esta instancia
+    private Map<String, Agg> aggs = new HashMap<>();
+    private final Map<String, Key> keys = new HashMap<>();
+    private final OrderStatisticTree<Key> tree = new OrderStatisticTree<>(ORDER);
+    private int maxQuizzes;
+    // Referencia con la que están calculadas las claves del árbol
+    private int scale;
+    private Instant rescaledAt = Instant.EPOCH;
+    private boolean dirty = true;
+    private boolean bootstrapped;
+    private long version;
+    private final List<Completion> buffered = new ArrayList<>();
+
+    // Intentos completados durante el arranque, para no contarlos dos veces
+    private final Set<String> bufferedIds = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Mono<Void>> loading = new AtomicReference<>();
+
+    public RankingEngine(SupabaseClients clients) {
+        this.clients = clients;
+        this.pageSize = Math.max(1, clients.getProps().getRanking().getPageSize());
+        this.rescaleMs = Math.max(0, clients.getProps().getRanking().getRescaleMs());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        ready().subscribe(v -> {}, ex -> log.warn("No se pudo cargar el ranking al iniciar: {}", ex.getMessage()));
+    }
+
+    /**
+     * Registra un intento finalizado. {@code previousScore} es el puntaje anterior si el intento
+     * ya estaba finalizado (se reemplaza en lugar de sumar un quiz más).
+     */
+    public void onAttemptCompleted(String userId, String attemptId, Double previousScore, double score, Instant completedAt) {
+        if (userId == null) return;
+        synchronized (this) {
+            if (!bootstrapped) {
+                bufferedIds.add(attemptId);
+                buffered.add(new Completion(userId, attemptId, previousScore, score, completedAt));
+                return;
+            }
+            apply(userId, previousScore, score, completedAt);
+        }
+    }
+
+    /** Versión del estado: cambia con cada intento aplicado, con la carga inicial y al reescalar. */
+    public synchronized long version() {
+        // Aplica una reescala vencida aunque nadie haya leído el ranking desde entonces
+        if (bootstrapped) refresh();
+        return version;
+    }
+
+    /** Copia del ranking completo en orden (O(n)). */
+    public Mono<Table> table() {
+        return ready().then(Mono.fromCallable(() -> {
+            synchronized (this) {
+                refresh();
+                return new Table(version, standings(0, tree.size()));
+            }
+        }));
+    }
+
+    public Mono<List<Standing>> top(int limit) {
+        return ready().then(Mono.fromCallable(() -> {
+            synchronized (this) {
+                refresh();
+                return standings(0, Math.max(0, limit));
+            }
+        }));
+    }
+
+    public Mono<Optional<Standing>> standing(String userId) {
+        return ready().then(Mono.fromCallable(() -> {
+            synchronized (this) {
+                refresh();
+                Key key = keys.get(userId);
+                if (key == null) return Optional.<Standing>empty();
+                int index = tree.indexOf(key);
+                return Optional.of(toStanding(index, key));
+            }
+        }));
+    }
+
+    /** Usuarios en las posiciones [rank - radius, rank + radius]; vacío si el usuario no figura. */
+    public Mono<List<Standing>> around(String userId, int radius) {
+        return ready().then(Mono.fromCallable(() -> {
+            synchronized (this) {
+                refresh();
+                Key key = keys.get(userId);
+                if (key == null) return List.<Standing>of();
+                int index = tree.indexOf(key);
+                int r = Math.max(0, radius);
+                return standings(Math.max(0, index - r), index + r + 1);
+            }
+        }));
+    }
+
+    private List<Standing> standings(int from, int to) {
+        List<Key> slice = tree.range(from, to);
+        List<Standing> out = new ArrayList<>(slice.size());
+        for (int i = 0; i < slice.size(); i++) out.add(toStanding(from + i, slice.get(i)));
+        return out;
+    }
+
+    private Standing toStanding(int index, Key key) {
+        Agg a = aggs.get(key.userId());
+        return new Standing(index + 1, key.userId(), a.count, a.count == 0 ? 0 : a.sum / a.count, a.best(), key.score(), a.lastAt);
+    }
+
+    private void apply(String userId, Double previousScore, double score, Instant at) {
+        version++;
+        Agg a = aggs.computeIfAbsent(userId, k -> new Agg());
+        if (previousScore != null && a.count > 0) {
+            // Re-finalización: cambia el puntaje del intento, no la cantidad
+            a.replace(previousScore, score, at);
+        } else {
+            a.add(score, at);
+        }
+        maxQuizzes = Math.max(maxQuizzes, a.count);
+        if (dirty) return;
+        Key old = keys.get(userId);
+        if (old != null) tree.remove(old);
+        Key fresh = new Key(userId, score(a));
+        keys.put(userId, fresh);
+        tree.insert(fresh);
+    }
+
+    private void refresh() {
+        boolean rescale = maxQuizzes != scale && !rescaledAt.plusMillis(rescaleMs).isAfter(Instant.now());
+        if (!dirty && !rescale) return;
+        if (!dirty) version++;
+        tree.clear();
+        keys.clear();
+        maxQuizzes = aggs.values().stream().mapToInt(a -> a.count).max().orElse(0);
+        scale = maxQuizzes;
+        rescaledAt = Instant.now();
+        aggs.forEach((userId, a) -> {
+            Key key = new Key(userId, score(a));
+            keys.put(userId, key);
+            tree.insert(key);
+        });
+        dirty = false;
+    }
+
+    // 40% promedio + 30% mejor puntaje + 30% cantidad normalizada contra la referencia
+    private double score(Agg a) {
+        double avg = a.count == 0 ? 0 : a.sum / a.count;
+        double normalizedCount = scale == 0 ? 0 : (double) Math.min(a.count, scale) / scale * 100;
+        return (avg * 0.4) + (a.best() * 0.3) + (normalizedCount * 0.3);
+    }
+
+    private Mono<Void> ready() {
+        while (true) {
+            Mono<Void> current = loading.get();
+            if (current != null) return current;
+            AtomicReference<Mono<Void>> self = new AtomicReference<>();
+            Mono<Void> load = scan()
+                    // Si falla, la próxima lectura lo reintenta
+                    .doOnError(ex -> loading.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(load);
+            if (loading.compareAndSet(null, load)) return load;
+        }
+    }
+
+    private Mono<Void> scan() {
+        Map<String, Agg> scanned = new HashMap<>();
+        // Intentos con finalizaciones en el buffer que el recorrido ya leyó -> puntaje leído
+        Map<String, Double> seen = new HashMap<>();
+        return page(null)
+                .expand(rows -> rows.size() < pageSize
+                        ? Mono.empty()
+                        : page(String.valueOf(rows.get(rows.size() - 1).get("id"))))
+                .doOnNext(rows -> {
+                    for (Map<String, Object> row : rows) {
+                        Object userId = row.get("user_id");
+                        if (userId == null) continue;
+                        String attemptId = String.valueOf(row.get("id"));
+                        double score = toDouble(row.get("score_percent"));
+                        if (bufferedIds.contains(attemptId)) seen.put(attemptId, score);
+                        Object completedAt = row.get("completed_at");
+                        scanned.computeIfAbsent(String.valueOf(userId), k -> new Agg())
+                                .add(score, completedAt == null ? null : Instant.parse(String.valueOf(completedAt)));
+                    }
+                })
+                .then(Mono.fromRunnable(() -> {
+                    synchronized (this) {
+                        aggs = scanned;
+                        dirty = true;
+                        // Si el recorrido ya contó el intento pudo leer un puntaje anterior a la última
+                        // finalización: queda la última del buffer, como reemplazo del leído
+                        Map<String, Completion> latest = new HashMap<>();
+                        for (Completion c : buffered) {
+                            if (seen.containsKey(c.attemptId())) latest.put(c.attemptId(), c);
+                            else apply(c.userId(), c.previousScore(), c.score(), c.at());
+                        }
+                        latest.values().forEach(c -> apply(c.userId(), seen.get(c.attemptId()), c.score(), c.at()));
+                        buffered.clear();
+                        bufferedIds.clear();
+                        bootstrapped = true;
+                        version++;
+                        refresh();
+                        log.info("Ranking cargado: {} usuarios", aggs.size());
+                    }
+                }));
+    }
+
+    private Mono<List<Map<String, Object>>> page(String afterId) {
+        return Mono.defer(() -> clients.getDbAdmin().get()
+                .uri(uriBuilder -> {
+                    uriBuilder.path("/trivia_attempts")
+                            .queryParam("select", "id,user_id,score_percent,completed_at")
+                            .queryParam("completed_at", "not.is.null")
+                            .queryParam("order", "id.asc")
+                            .queryParam("limit", pageSize);
+                    if (afterId != null) uriBuilder.queryParam("id", "gt." + afterId);
+                    return uriBuilder.build();
+                })
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {}));
+    }
+
+    private static double toDouble(Object val) {
+        if (val instanceof Number n) return n.doubleValue();
+        if (val == null) return 0.0;
+        try {
+            return Double.parseDouble(String.valueOf(val));
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.uniproject.SaviaU.service.progress;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contadores de actividades por usuario y tipo.
+ * <p>
+ * Al registrar una actividad la copia en memoria se adelanta ({@link #applyAppended}) para que
+ * el resumen de quien acaba de actuar ya la incluya. El drenado del diario inserta y avanza
+ * {@code user_activity_counters} en una sola transacción ({@code record_activities}) y
+ * sustituye lo adelantado por los valores devueltos ({@link #applyStored}); si una entrada
+ * resulta repetida en la base, el usuario se olvida ({@link #forget}) y se relee.
+ * Leer las estadísticas cuesta, en el peor caso, una fila por tipo; los tipos sin contador
+ * (usuarios anteriores a la tabla) se resuelven con una petición HEAD {@code count=exact}
+ * sobre {@code user_activities}, sin descargar filas.
+ */
+@Slf4j
+@Component
+public class ActivityCounterStore {
+
+    public static final String TRIVIA_COMPLETED = "TRIVIA_COMPLETED";
+    public static final String DIAGNOSTIC_COMPLETED = "DIAGNOSTIC_COMPLETED";
+    public static final String NEWS_READ = "NEWS_READ";
+    private static final List<String> TRACKED = List.of(TRIVIA_COMPLETED, DIAGNOSTIC_COMPLETED, NEWS_READ);
+
+    private final SupabaseClients clients;
+    private final Cache<String, Map<String, Integer>> cache;
+    // dedupe_key ya adelantados: un reintento con la misma clave no vuelve a sumar
+    private final Cache<String, Boolean> appended;
+
+    public ActivityCounterStore(SupabaseClients clients) {
+        this.clients = clients;
+        SupabaseProperties.ActivityCounters cfg = clients.getProps().getActivityCounters();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, cfg.getTtlSeconds())))
+                .build();
+        this.appended = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, cfg.getTtlSeconds())))
+                .build();
+    }
+
+    /** Conteos de los tipos seguidos (TRIVIA_COMPLETED, DIAGNOSTIC_COMPLETED, NEWS_READ). */
+    public Mono<Map<String, Integer>> counts(String userId) {
+        Map<String, Integer> cached = cache.getIfPresent(userId);
+        if (cached != null) return Mono.just(cached);
+        return load(userId).doOnNext(counts -> cache.put(userId, counts));
+    }
+
+    /** Suma una actividad recién registrada en el diario; solo toca usuarios ya en memoria. */
+    public void applyAppended(String userId, String type, String dedupeKey) {
+        if (!TRACKED.contains(type)) return;
+        if (appended.asMap().putIfAbsent(dedupeKey, Boolean.TRUE) != null) return;
+        cache.asMap().computeIfPresent(userId, (k, current) -> {
+            Map<String, Integer> next = new HashMap<>(current);
+            next.merge(type, 1, Integer::sum);
+            return Map.copyOf(next);
+        });
+    }
+
+    /** Descarta los contadores en memoria del usuario; la próxima lectura los trae de la base. */
+    public void forget(String userId) {
+        cache.invalidate(userId);
+    }
+
+    /** Valor persistido de un contador tras una entrega; solo toca usuarios ya en memoria. */
+    public void applyStored(String userId, String type, int count) {
+        if (!TRACKED.contains(type)) return;
+        cache.asMap().computeIfPresent(userId, (k, current) -> {
+            Map<String, Integer> next = new HashMap<>(current);
+            next.put(type, count);
+            return Map.copyOf(next);
+        });
+    }
+
+    private Mono<Map<String, Integer>> load(String userId) {
+        Mono<Map<String, Integer>> stored = clients.getDbAdmin().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/user_activity_counters")
+                        .queryParam("select", "type,count")
+                        .queryParam("user_id", "eq." + userId)
+                        .build())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                .map(rows -> {
+                    Map<String, Integer> out = new HashMap<>();
+                    for (Map<String, Object> row : rows) {
+                        if (row.get("count") instanceof Number n) out.put(String.valueOf(row.get("type")), n.intValue());
+                    }
+                    return out;
+                })
+                // Sin la tabla de contadores (esquema sin migrar) se cuenta todo con HEAD
+                .onErrorResume(ex -> Mono.just(new HashMap<>()));
+
+        return stored.flatMap(found -> Flux.fromIterable(TRACKED)
+                .filter(type -> !found.containsKey(type))
+                .flatMap(type -> countExact(userId, type).map(c -> Map.entry(type, c)))
+                .collectList()
+                .map(extra -> {
+                    Map<String, Integer> out = new HashMap<>();
+                    for (String type : TRACKED) out.put(type, found.getOrDefault(type, 0));
+                    extra.forEach(e -> out.put(e.getKey(), e.getValue()));
+                    return Map.copyOf(out);
+                }));
+    }
+
+    private Mono<Integer> countExact(String userId, String type) {
+        return clients.getDbAdmin().head()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/user_activities")
+                        .queryParam("select", "id")
+                        .queryParam("user_id", "eq." + userId)
+                        .queryParam("type", "eq." + type)
+                        .build())
+                .header("Prefer", "count=exact")
+                .retrieve()
+                .toBodilessEntity()
+                .map(ActivityCounterStore::totalFromContentRange);
+    }
+
+    // Content-Range: "0-24/25" o "*/0"
+    private static int totalFromContentRange(ResponseEntity<Void> resp) {
+        String range = resp.getHeaders().getFirst("Content-Range");
+        if (range == null) return 0;
+        int slash = range.lastIndexOf('/');
+        if (slash < 0 || slash == range.length() - 1) return 0;
+        try {
+            return Integer.parseInt(range.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
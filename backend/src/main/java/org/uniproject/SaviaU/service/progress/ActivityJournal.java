@@ -0,0 +1,247 @@
+package org.uniproject.SaviaU.service.progress;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Diario local y durable de actividades pendientes de enviar a {@code user_activities}.
+ * <p>
+ * {@link #append} escribe una línea JSON en {@code journal.jsonl} y completa cuando la línea
+ * está sincronizada en disco. Un único hilo agrupa las escrituras que llegan mientras hace
+ * {@code fsync}, así varias peticiones comparten una misma sincronización. {@link #drain}
+ * rota el diario a un segmento {@code .drain}, lo entrega al manejador y solo lo borra si
+ * este termina bien: la entrega es al menos una vez y los duplicados se descartan aguas abajo.
+ */
+@Slf4j
+@Component
+public class ActivityJournal {
+
+    private static final String ACTIVE = "journal.jsonl";
+    private static final String SEGMENT_SUFFIX = ".drain";
+
+    /** Actividad registrada; {@code dedupeKey} identifica el evento entre reintentos. */
+    public record Entry(String id, String userId, String type, Map<String, Object> metadata,
+                        String dedupeKey, String createdAt) {}
+
+    private record Append(byte[] line, MonoSink<Void> sink) {}
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SupabaseProperties.ActivityOutbox cfg;
+    private final Path dir;
+    private final Object fileLock = new Object();
+    private final LinkedBlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+    private final AtomicLong segmentSeq = new AtomicLong(System.currentTimeMillis());
+    private final Thread writer;
+    private FileChannel channel;
+    private long activeBytes;
+    private volatile boolean running = true;
+
+    public ActivityJournal(SupabaseClients clients) {
+        this.cfg = clients.getProps().getActivityOutbox();
+        this.dir = Path.of(cfg.getDir());
+        try {
+            Files.createDirectories(dir);
+            openActive();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el diario de actividades en " + dir, e);
+        }
+        this.writer = new Thread(this::writeLoop, "activity-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Nueva entrada con id propio; la clave de deduplicación por defecto es ese id. */
+    public static Entry entry(String userId, String type, Map<String, Object> metadata, String dedupeKey) {
+        String id = UUID.randomUUID().toString();
+        return new Entry(id, userId, type, metadata, dedupeKey != null ? dedupeKey : id, Instant.now().toString());
+    }
+
+    /** Completa cuando la entrada está en disco (tras {@code fsync}). */
+    public Mono<Void> append(Entry entry) {
+        return Mono.<Void>create(sink -> {
+                    byte[] line;
+                    try {
+                        line = (mapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        sink.error(e);
+                        return;
+                    }
+                    if (!running) {
+                        sink.error(new RuntimeException("Diario de actividades cerrado"));
+                        return;
+                    }
+                    appends.add(new Append(line, sink));
+                })
+                .timeout(Duration.ofMillis(Math.max(1, cfg.getAppendTimeoutMs())))
+                .onErrorMap(TimeoutException.class, ex -> new RuntimeException("Servicio ocupado, intenta de nuevo"));
+    }
+
+    /**
+     * Entrega las entradas pendientes (segmentos previos y el diario activo) al manejador, en
+     * tandas de {@code batch-size}. Un segmento se borra solo cuando todas sus tandas se
+     * entregaron; si una falla, el segmento queda para el próximo drenado.
+     */
+    public Mono<Void> drain(Function<List<Entry>, Mono<Void>> handler) {
+        return Mono.fromCallable(() -> {
+                    rotate();
+                    try (Stream<Path> files = Files.list(dir)) {
+                        return files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(Flux::fromIterable)
+                .concatMap(segment -> deliver(segment, handler))
+                .then();
+    }
+
+    @PreDestroy
+    public void close() {
+        // Sin interrumpir: una interrupción a mitad de write() cerraría el canal
+        running = false;
+        try {
+            writer.join(2_000);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (fileLock) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("No se pudo cerrar el diario de actividades: {}", e.getMessage());
+            }
+        }
+    }
+
+    private Mono<Void> deliver(Path segment, Function<List<Entry>, Mono<Void>> handler) {
+        // Lectura y borrado de archivos fuera de los hilos de red
+        return Mono.fromCallable(() -> read(segment))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(entries -> Flux.fromIterable(entries)
+                        .buffer(Math.max(1, cfg.getBatchSize())))
+                .concatMap(handler)
+                .then(Mono.<Void>fromRunnable(() -> {
+                    try {
+                        Files.deleteIfExists(segment);
+                    } catch (IOException e) {
+                        log.warn("No se pudo borrar el segmento {}: {}", segment, e.getMessage());
+                    }
+                }).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private List<Entry> read(Path segment) throws IOException {
+        List<Entry> out = new ArrayList<>();
+        for (String line : Files.readAllLines(segment, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) continue;
+            try {
+                out.add(mapper.readValue(line, Entry.class));
+            } catch (IOException e) {
+                // Línea truncada por una caída a mitad de escritura: nunca se confirmó al cliente
+                log.warn("Línea inválida en {} descartada: {}", segment.getFileName(), e.getMessage());
+            }
+        }
+        return out;
+    }
+
+    private void rotate() throws IOException {
+        synchronized (fileLock) {
+            if (activeBytes == 0) return;
+            channel.close();
+            Path target = dir.resolve(String.format("journal-%015d%s", segmentSeq.incrementAndGet(), SEGMENT_SUFFIX));
+            Files.move(dir.resolve(ACTIVE), target, StandardCopyOption.ATOMIC_MOVE);
+            openActive();
+        }
+    }
+
+    private void openActive() throws IOException {
+        channel = FileChannel.open(dir.resolve(ACTIVE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeBytes = channel.size();
+    }
+
+    private void writeLoop() {
+        List<Append> batch = new ArrayList<>();
+        while (running || !appends.isEmpty()) {
+            try {
+                Append first = appends.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                // Todo lo que llegó durante el fsync anterior viaja en la misma sincronización
+                appends.drainTo(batch);
+                if (write(batch)) {
+                    batch.forEach(a -> a.sink().success());
+                } else {
+                    batch.forEach(a -> a.sink().error(new RuntimeException("No se pudo registrar la actividad")));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        appends.forEach(a -> a.sink().error(new RuntimeException("Diario de actividades cerrado")));
+    }
+
+    /**
+     * Escribe y sincroniza una tanda. Si falla, el diario se recorta a su tamaño anterior: una
+     * línea a medias se pegaría a la siguiente entrada confirmada y ambas se descartarían al
+     * leer, y lo que no llegó a sincronizarse no debe entregarse cuando el cliente ya recibió
+     * un error.
+     */
+    private boolean write(List<Append> batch) {
+        synchronized (fileLock) {
+            long start = activeBytes;
+            try {
+                long written = 0;
+                for (Append a : batch) {
+                    ByteBuffer buf = ByteBuffer.wrap(a.line());
+                    while (buf.hasRemaining()) channel.write(buf);
+                    written += a.line().length;
+                }
+                channel.force(false);
+                activeBytes = start + written;
+                return true;
+            } catch (IOException e) {
+                log.error("Error escribiendo el diario de actividades: {}", e.getMessage());
+                try {
+                    channel.truncate(start);
+                    channel.force(false);
+                } catch (IOException te) {
+                    log.error("No se pudo recortar el diario de actividades: {}", te.getMessage());
+                }
+                activeBytes = start;
+                return false;
+            }
+        }
+    }
+}
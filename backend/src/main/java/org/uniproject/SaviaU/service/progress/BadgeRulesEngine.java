@@ -0,0 +1,320 @@
+package org.uniproject.SaviaU.service.progress;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.dto.AwardResultDto;
+import org.uniproject.SaviaU.dto.BadgeDto;
+import org.uniproject.SaviaU.dto.TopicProgressDto;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Motor incremental de insignias.
+ * <p>
+ * El catálogo de {@code badges} activas se compila una vez en reglas indexadas por el tipo de
+ * actividad que puede cambiarlas (y, para {@code TOPIC_MASTERY}, por tema). Por usuario se
+ * guarda un bitset con las insignias ya obtenidas. Ante un evento solo se evalúan las reglas
+ * alcanzables que el usuario aún no tiene; si no queda ninguna, el evento no hace lecturas
+ * a Supabase. Los conteos salen de {@link ActivityCounterStore} y el progreso por tema solo
+ * se pide cuando hay una regla de maestría candidata.
+ */
+@Slf4j
+@Component
+public class BadgeRulesEngine {
+
+    private static final AwardResultDto NONE = AwardResultDto.builder().awarded(List.of()).build();
+
+    private final SupabaseClients clients;
+    private final ActivityCounterStore counterStore;
+    private final Duration catalogTtl;
+    private final AtomicReference<Catalog> catalog = new AtomicReference<>();
+    private final AtomicReference<Mono<Catalog>> inFlight = new AtomicReference<>();
+    private final AtomicLong catalogVersions = new AtomicLong();
+    private final Cache<String, Owned> owned;
+
+    public BadgeRulesEngine(SupabaseClients clients, ActivityCounterStore counterStore) {
+        this.clients = clients;
+        this.counterStore = counterStore;
+        SupabaseProperties.Badges cfg = clients.getProps().getBadges();
+        this.catalogTtl = Duration.ofSeconds(Math.max(1, cfg.getCatalogTtlSeconds()));
+        this.owned = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getOwnedCacheSize()))
+                .expireAfterAccess(Duration.ofSeconds(Math.max(1, cfg.getOwnedTtlSeconds())))
+                .build();
+    }
+
+    private enum Kind { COUNT, TOPIC_MASTERY }
+
+    private record Rule(int bit, Kind kind, String counterType, int threshold, String topic, BadgeDto badge) {}
+
+    /** Reglas compiladas; {@code version} solo cambia si cambian las reglas (y con ellas los bits). */
+    private record Catalog(long version,
+                           List<Rule> rules,
+                           Map<String, Integer> bitByBadgeId,
+                           Map<String, List<Rule>> byActivity,
+                           Map<String, List<Rule>> masteryByTopic,
+                           Instant loadedAt) {
+
+        Catalog withVersion(long v) {
+            return new Catalog(v, rules, bitByBadgeId, byActivity, masteryByTopic, loadedAt);
+        }
+    }
+
+    /** Insignias obtenidas por un usuario, como bits sobre una versión concreta del catálogo. */
+    private static final class Owned {
+        private final long catalogVersion;
+        private final BitSet bits;
+
+        Owned(long catalogVersion, BitSet bits) {
+            this.catalogVersion = catalogVersion;
+            this.bits = bits;
+        }
+
+        synchronized boolean has(int bit) { return bits.get(bit); }
+        synchronized void add(int bit) { bits.set(bit); }
+    }
+
+    /**
+     * Evalúa las reglas que un evento puede cambiar y otorga las que se cumplan.
+     *
+     * @param topics progreso por tema, solo se invoca si hay alguna regla de maestría candidata
+     */
+    public Mono<AwardResultDto> onActivity(String userId, String type, Map<String, Object> metadata,
+                                           Supplier<Mono<List<TopicProgressDto>>> topics) {
+        return Mono.defer(this::currentCatalog).flatMap(cat -> {
+            List<Rule> reachable = reachableRules(cat, type, metadata);
+            if (reachable.isEmpty()) return Mono.just(NONE);
+
+            return ownedBy(userId, cat).flatMap(state -> {
+                List<Rule> candidates = reachable.stream().filter(r -> !state.has(r.bit())).toList();
+                if (candidates.isEmpty()) return Mono.just(NONE);
+
+                boolean needsCounts = candidates.stream().anyMatch(r -> r.kind() == Kind.COUNT);
+                boolean needsTopics = candidates.stream().anyMatch(r -> r.kind() == Kind.TOPIC_MASTERY);
+                Mono<Map<String, Integer>> countsMono = needsCounts ? counterStore.counts(userId) : Mono.just(Map.of());
+                Mono<List<TopicProgressDto>> topicsMono = needsTopics ? topics.get() : Mono.just(List.of());
+
+                return Mono.zip(countsMono, topicsMono).flatMap(t -> {
+                    List<Rule> toAward = new ArrayList<>();
+                    for (Rule r : candidates) {
+                        if (satisfied(r, t.getT1(), t.getT2())) toAward.add(r);
+                    }
+                    if (toAward.isEmpty()) return Mono.just(NONE);
+                    return award(userId, state, toAward);
+                });
+            });
+        });
+    }
+
+    private List<Rule> reachableRules(Catalog cat, String type, Map<String, Object> metadata) {
+        List<Rule> out = new ArrayList<>(cat.byActivity().getOrDefault(type, List.of()));
+        // La maestría cambia con cualquier respuesta calificada (trivia o diagnóstico)
+        if (ActivityCounterStore.TRIVIA_COMPLETED.equals(type) || ActivityCounterStore.DIAGNOSTIC_COMPLETED.equals(type)) {
+            Collection<?> touched = metadata != null && metadata.get("topics") instanceof Collection<?> c ? c : null;
+            if (touched == null) {
+                cat.masteryByTopic().values().forEach(out::addAll);
+            } else {
+                for (Object topic : touched) {
+                    if (topic != null) out.addAll(cat.masteryByTopic().getOrDefault(normalize(String.valueOf(topic)), List.of()));
+                }
+            }
+        }
+        return out;
+    }
+
+    private static boolean satisfied(Rule r, Map<String, Integer> counts, List<TopicProgressDto> topics) {
+        if (r.kind() == Kind.COUNT) {
+            return counts.getOrDefault(r.counterType(), 0) >= r.threshold();
+        }
+        for (TopicProgressDto tp : topics) {
+            if (tp.getTopic() != null && r.topic().equals(normalize(tp.getTopic()))) {
+                return tp.getPercent() >= r.threshold();
+            }
+        }
+        return false;
+    }
+
+    private Mono<AwardResultDto> award(String userId, Owned state, List<Rule> toAward) {
+        List<Map<String, Object>> rows = toAward.stream()
+                .map(r -> Map.<String, Object>of("user_id", userId, "badge_id", r.badge().getId()))
+                .toList();
+
+        return clients.getDbAdmin().post()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/user_badges")
+                        .queryParam("on_conflict", "user_id,badge_id")
+                        .build())
+                .header("Prefer", "resolution=ignore-duplicates,return=minimal")
+                .bodyValue(rows)
+                .retrieve()
+                .toBodilessEntity()
+                .map(resp -> {
+                    toAward.forEach(r -> state.add(r.bit()));
+                    List<BadgeDto> awarded = toAward.stream().map(Rule::badge).toList();
+                    return AwardResultDto.builder().awarded(awarded).build();
+                })
+                // Sin marcar como obtenidas: el error llega al drenado y la tanda se reintenta
+                .doOnError(ex -> log.warn("No se pudieron otorgar insignias a {}: {}", userId, ex.getMessage()));
+    }
+
+    private Mono<Owned> ownedBy(String userId, Catalog cat) {
+        Owned cached = owned.getIfPresent(userId);
+        if (cached != null && cached.catalogVersion == cat.version()) return Mono.just(cached);
+        return clients.getDbAdmin().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/user_badges")
+                        .queryParam("select", "badge_id")
+                        .queryParam("user_id", "eq." + userId)
+                        .build())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                .map(rows -> {
+                    BitSet bits = new BitSet(cat.rules().size());
+                    for (Map<String, Object> row : rows) {
+                        Integer bit = cat.bitByBadgeId().get(String.valueOf(row.get("badge_id")));
+                        if (bit != null) bits.set(bit);
+                    }
+                    Owned state = new Owned(cat.version(), bits);
+                    owned.put(userId, state);
+                    return state;
+                });
+    }
+
+    private Mono<Catalog> currentCatalog() {
+        Catalog c = catalog.get();
+        if (c != null) {
+            // Catálogo vencido: se sirve el actual y se recarga en segundo plano
+            if (c.loadedAt().plus(catalogTtl).isBefore(Instant.now())) {
+                reloadCatalog().subscribe(v -> {}, ex -> log.warn("Error recargando insignias: {}", ex.getMessage()));
+            }
+            return Mono.just(c);
+        }
+        return reloadCatalog();
+    }
+
+    private Mono<Catalog> reloadCatalog() {
+        while (true) {
+            Mono<Catalog> running = inFlight.get();
+            if (running != null) return running;
+            AtomicReference<Mono<Catalog>> self = new AtomicReference<>();
+            Mono<Catalog> load = fetchCatalog()
+                    .map(this::publish)
+                    .doFinally(sig -> inFlight.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(load);
+            if (inFlight.compareAndSet(null, load)) return load;
+        }
+    }
+
+    private Catalog publish(Catalog fresh) {
+        return catalog.updateAndGet(prev -> {
+            // Mismas reglas que el publicado: se conserva la versión y los bitsets en caché siguen valiendo
+            boolean same = prev != null && prev.rules().equals(fresh.rules());
+            return fresh.withVersion(same ? prev.version() : catalogVersions.incrementAndGet());
+        });
+    }
+
+    private Mono<Catalog> fetchCatalog() {
+        return Mono.defer(() -> clients.getDbAdmin().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/badges")
+                        .queryParam("select", "id,code,name,description,icon_url,criteria_type,criteria_value,is_active")
+                        .queryParam("is_active", "eq.true")
+                        // Orden estable: el índice de cada regla es su bit en los bitsets en caché
+                        .queryParam("order", "id.asc")
+                        .build())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                .map(BadgeRulesEngine::compile));
+    }
+
+    private static Catalog compile(List<Map<String, Object>> badges) {
+        List<Rule> rules = new ArrayList<>();
+        Map<String, Integer> bitByBadgeId = new HashMap<>();
+        Map<String, List<Rule>> byActivity = new HashMap<>();
+        Map<String, List<Rule>> masteryByTopic = new HashMap<>();
+        Set<String> unknownTypes = new HashSet<>();
+
+        for (Map<String, Object> b : badges) {
+            String id = b.get("id") == null ? null : String.valueOf(b.get("id"));
+            if (id == null) continue;
+            String type = (String) b.get("criteria_type");
+            Object value = b.get("criteria_value");
+            BadgeDto dto = BadgeDto.builder()
+                    .id(id)
+                    .code((String) b.get("code"))
+                    .name((String) b.get("name"))
+                    .description((String) b.get("description"))
+                    .iconUrl((String) b.get("icon_url"))
+                    .awardedAt(null)
+                    .build();
+            int bit = rules.size();
+            Rule rule;
+            if ("TRIVIA_COMPLETED_COUNT".equals(type)) {
+                rule = new Rule(bit, Kind.COUNT, ActivityCounterStore.TRIVIA_COMPLETED, getJsonInt(value, "count", 1), null, dto);
+            } else if ("DIAGNOSTIC_COMPLETED".equals(type)) {
+                rule = new Rule(bit, Kind.COUNT, ActivityCounterStore.DIAGNOSTIC_COMPLETED, 1, null, dto);
+            } else if ("NEWS_READ_COUNT".equals(type)) {
+                rule = new Rule(bit, Kind.COUNT, ActivityCounterStore.NEWS_READ, getJsonInt(value, "count", 5), null, dto);
+            } else if ("TOPIC_MASTERY".equals(type)) {
+                String topic = getJsonString(value, "topic");
+                if (topic == null) continue;
+                rule = new Rule(bit, Kind.TOPIC_MASTERY, null, getJsonInt(value, "threshold", 80), normalize(topic), dto);
+            } else {
+                if (type != null) unknownTypes.add(type);
+                continue;
+            }
+            rules.add(rule);
+            bitByBadgeId.put(id, bit);
+            if (rule.kind() == Kind.COUNT) {
+                byActivity.computeIfAbsent(rule.counterType(), k -> new ArrayList<>()).add(rule);
+            } else {
+                masteryByTopic.computeIfAbsent(rule.topic(), k -> new ArrayList<>()).add(rule);
+            }
+        }
+        if (!unknownTypes.isEmpty()) log.warn("Tipos de criterio de insignia no soportados: {}", unknownTypes);
+        return new Catalog(0, List.copyOf(rules), Map.copyOf(bitByBadgeId), Map.copyOf(byActivity), Map.copyOf(masteryByTopic), Instant.now());
+    }
+
+    private static String normalize(String topic) {
+        return topic.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static int getJsonInt(Object json, String key, int def) {
+        if (json instanceof Map) {
+            Object v = ((Map<?, ?>) json).get(key);
+            if (v instanceof Number) return ((Number) v).intValue();
+            if (v != null) {
+                try { return Integer.parseInt(String.valueOf(v)); } catch (Exception ignored) {}
+            }
+        }
+        return def;
+    }
+
+    private static String getJsonString(Object json, String key) {
+        if (json instanceof Map) {
+            Object v = ((Map<?, ?>) json).get(key);
+            return v == null ? null : String.valueOf(v);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,184 @@
+package org.uniproject.SaviaU.service.progress;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.dto.admin.AdminTriviaHistoryDto;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Serie diaria de puntajes de trivia por usuario, mantenida de forma incremental.
+ * <p>
+ * Cada intento finalizado suma {@code (intentos, suma de puntajes)} al día local en que
+ * terminó (zona {@code supabase.daily-scores.zone}). En memoria cada usuario tiene un buffer
+ * circular de {@code retention-days} posiciones indexado por día, de modo que leer una ventana
+ * cuesta O(días). Los deltas se vuelcan por lotes a {@code user_daily_scores} con
+ * {@code apply_daily_scores} a través de {@link DeltaBuffer}.
+ */
+@Slf4j
+@Component
+public class DailyScoreStore {
+
+    private final SupabaseClients clients;
+    private final Cache<String, Series> cache;
+    private final int retentionDays;
+    private final ZoneId zone;
+
+    // Deltas aún no persistidos: usuario -> (día epoch -> [intentos, suma])
+    private final DeltaBuffer<Integer> pending;
+
+    public DailyScoreStore(SupabaseClients clients) {
+        this.clients = clients;
+        SupabaseProperties.DailyScores cfg = clients.getProps().getDailyScores();
+        this.retentionDays = Math.max(1, cfg.getRetentionDays());
+        this.zone = cfg.getZone() == null || cfg.getZone().isBlank() ? ZoneId.of("UTC") : ZoneId.of(cfg.getZone());
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, cfg.getTtlSeconds())))
+                .build();
+        this.pending = new DeltaBuffer<>("la serie diaria", 2, Duration.ofSeconds(5), this::write);
+    }
+
+    /** Buffer circular de un usuario: la posición de un día es {@code día mod capacidad}. */
+    private static final class Series {
+        private final int[] day;
+        private final int[] attempts;
+        private final double[] sum;
+
+        Series(int capacity) {
+            day = new int[capacity];
+            attempts = new int[capacity];
+            sum = new double[capacity];
+            Arrays.fill(day, Integer.MIN_VALUE);
+        }
+
+        synchronized void add(int epochDay, int dAttempts, double dSum) {
+            int i = Math.floorMod(epochDay, day.length);
+            if (day[i] != epochDay) {
+                // Un día más viejo que el que ocupa la posición quedó fuera de la retención
+                if (day[i] > epochDay) return;
+                day[i] = epochDay;
+                attempts[i] = 0;
+                sum[i] = 0;
+            }
+            attempts[i] += dAttempts;
+            sum[i] += dSum;
+        }
+
+        synchronized List<AdminTriviaHistoryDto> window(int fromDay, int toDay) {
+            List<AdminTriviaHistoryDto> out = new ArrayList<>();
+            for (int d = fromDay; d <= toDay; d++) {
+                int i = Math.floorMod(d, day.length);
+                if (day[i] != d || attempts[i] <= 0) continue;
+                out.add(AdminTriviaHistoryDto.builder()
+                        .date(LocalDate.ofEpochDay(d))
+                        .attempts(attempts[i])
+                        .avgScore(sum[i] / attempts[i])
+                        .build());
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Registra un intento finalizado. Si el intento ya estaba finalizado, su puntaje y fecha
+     * anteriores ({@code previousAt}, {@code previousScore}) se descuentan de su día.
+     */
+    public void onAttemptCompleted(String userId, Instant previousAt, Double previousScore, Instant at, double score) {
+        if (userId == null || at == null) return;
+        if (previousAt != null && previousScore != null) apply(userId, epochDay(previousAt), -1, -previousScore);
+        apply(userId, epochDay(at), 1, score);
+    }
+
+    /** Días con intentos en los últimos {@code days} días (incluido hoy), en orden. */
+    public Mono<List<AdminTriviaHistoryDto>> history(String userId, int days) {
+        int today = epochDay(Instant.now());
+        int from = today - Math.min(Math.max(0, days), retentionDays - 1);
+        Series cached = cache.getIfPresent(userId);
+        if (cached != null) return Mono.just(cached.window(from, today));
+        return pending.load(userId, load(userId, today), (s, deltas) -> {
+            Series prev = cache.asMap().putIfAbsent(userId, s);
+            if (prev != null) return prev;
+            // Intentos finalizados que aún no llegaron a la tabla
+            deltas.forEach((day, d) -> s.add(day, (int) d[0], d[1]));
+            return s;
+        }).map(s -> s.window(from, today));
+    }
+
+    @Scheduled(fixedDelayString = "${supabase.daily-scores.flush-ms:1000}")
+    public void flush() {
+        pending.flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        pending.drain(Duration.ofSeconds(5));
+    }
+
+    private void apply(String userId, int epochDay, int dAttempts, double dSum) {
+        pending.add(userId, epochDay, new double[]{dAttempts, dSum}, () -> {
+            Series s = cache.getIfPresent(userId);
+            if (s != null) s.add(epochDay, dAttempts, dSum);
+        });
+    }
+
+    private Mono<Void> write(UUID batchId, Map<String, Map<Integer, double[]>> batch) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        batch.forEach((userId, deltas) -> deltas.forEach((day, d) -> {
+            if (d[0] == 0 && d[1] == 0) return;
+            rows.add(Map.of("user_id", userId, "day", LocalDate.ofEpochDay(day).toString(),
+                    "attempts", (int) d[0], "score_sum", d[1]));
+        }));
+        if (rows.isEmpty()) return Mono.empty();
+        return clients.getDbAdmin().post()
+                .uri("/rpc/apply_daily_scores")
+                .bodyValue(Map.of("p_batch_id", batchId, "p_rows", rows))
+                .retrieve()
+                .toBodilessEntity()
+                .then();
+    }
+
+    private Mono<Series> load(String userId, int today) {
+        String from = LocalDate.ofEpochDay(today - retentionDays + 1).toString();
+        return Mono.defer(() -> clients.getDbAdmin().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/user_daily_scores")
+                        .queryParam("select", "day,attempts,score_sum")
+                        .queryParam("user_id", "eq." + userId)
+                        .queryParam("day", "gte." + from)
+                        .build())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {}))
+                .map(rows -> {
+                    Series s = new Series(retentionDays);
+                    for (Map<String, Object> row : rows) {
+                        Object day = row.get("day");
+                        if (day == null) continue;
+                        s.add((int) LocalDate.parse(String.valueOf(day)).toEpochDay(),
+                                row.get("attempts") instanceof Number n ? n.intValue() : 0,
+                                row.get("score_sum") instanceof Number n ? n.doubleValue() : 0);
+                    }
+                    return s;
+                });
+    }
+
+    private int epochDay(Instant at) {
+        return (int) at.atZone(zone).toLocalDate().toEpochDay();
+    }
+}
@@ -0,0 +1,200 @@
+package org.uniproject.SaviaU.service.progress;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Deltas por usuario pendientes de volcar a una tabla de acumulados (dominio por tema, serie
+ * diaria de puntajes).
+ * <p>
+ * Los deltas se suman en memoria por {@code (usuario, clave)} y {@link #flush()} los envía en
+ * un lote con id propio. Un lote sacado de la cola queda "sin confirmar" hasta que la llamada
+ * termina bien; si falla por un error transitorio se reenvía tal cual, con el mismo id, y la
+ * función SQL lo ignora si ya se había aplicado (la escritura pudo llegar aunque la respuesta
+ * no). Solo hay un lote sin confirmar a la vez.
+ * <p>
+ * {@link #load} nunca lee la tabla con un lote sin confirmar ni deja que empiece un volcado
+ * mientras lee: así lo leído contiene exactamente los lotes confirmados, y lo que falta son
+ * los deltas que siguen en cola, que se suman al resultado bajo el mismo lock con el que
+ * {@link #add} los registra.
+ * <p>
+ * Los volcados tienen preferencia: uno que llega durante una lectura queda en espera, no deja
+ * empezar lecturas nuevas y se lanza cuando termina la última en curso, de modo que un flujo
+ * continuo de lecturas no lo aplaza indefinidamente.
+ *
+ * @param <K> clave del acumulado dentro de un usuario (id de tema, día)
+ */
+@Slf4j
+final class DeltaBuffer<K> {
+
+    /** Envía un lote; {@code batchId} identifica el lote entre reintentos. */
+    @FunctionalInterface
+    interface Writer<K> {
+        Mono<Void> write(UUID batchId, Map<String, Map<K, double[]>> batch);
+    }
+
+    /** Suma los deltas en cola de un usuario a lo recién leído y lo publica (bajo el lock). */
+    @FunctionalInterface
+    interface Merge<K, T> {
+        T merge(T loaded, Map<K, double[]> pending);
+    }
+
+    private static final Duration POLL = Duration.ofMillis(20);
+
+    private final String name;
+    private final int width;
+    private final Duration waitTimeout;
+    private final Writer<K> writer;
+
+    private final Object lock = new Object();
+    private Map<String, Map<K, double[]>> pending = new HashMap<>();
+    private UUID unconfirmedId;
+    private Map<String, Map<K, double[]>> unconfirmed;
+    private boolean flushing;
+    // Un volcado llegó durante una lectura y se lanza al terminar la última
+    private boolean flushWaiting;
+    private int activeReads;
+
+    DeltaBuffer(String name, int width, Duration waitTimeout, Writer<K> writer) {
+        this.name = name;
+        this.width = width;
+        this.waitTimeout = waitTimeout;
+        this.writer = writer;
+    }
+
+    /** Encola un delta; {@code mirror} aplica el mismo delta a la copia en memoria, bajo el lock. */
+    void add(String userId, K key, double[] delta, Runnable mirror) {
+        synchronized (lock) {
+            double[] d = pending.computeIfAbsent(userId, k -> new HashMap<>()).computeIfAbsent(key, k -> new double[width]);
+            for (int i = 0; i < width; i++) d[i] += delta[i];
+            mirror.run();
+        }
+    }
+
+    /**
+     * Lee los acumulados de un usuario con {@code read} cuando no hay lotes sin confirmar y
+     * les suma lo que sigue en cola con {@code merge}.
+     */
+    <T> Mono<T> load(String userId, Mono<T> read, Merge<K, T> merge) {
+        return Mono.defer(() -> tryBeginRead() ? Mono.just(Boolean.TRUE) : Mono.<Boolean>empty())
+                .repeatWhenEmpty(attempts -> attempts.delayElements(POLL))
+                .timeout(waitTimeout)
+                .onErrorMap(TimeoutException.class, ex -> new RuntimeException("Servicio ocupado, intenta de nuevo"))
+                .flatMap(started -> read
+                        .map(loaded -> {
+                            synchronized (lock) {
+                                Map<K, double[]> deltas = pending.get(userId);
+                                return merge.merge(loaded, deltas == null ? Map.of() : deltas);
+                            }
+                        })
+                        .doFinally(sig -> endRead()));
+    }
+
+    /** Envía el lote sin confirmar o, si no hay, saca la cola actual como lote nuevo. */
+    void flush() {
+        UUID batchId;
+        Map<String, Map<K, double[]>> batch;
+        synchronized (lock) {
+            if (flushing) return;
+            if (activeReads > 0) {
+                flushWaiting = true;
+                return;
+            }
+            flushWaiting = false;
+            if (unconfirmed == null) {
+                if (pending.isEmpty()) return;
+                unconfirmedId = UUID.randomUUID();
+                unconfirmed = pending;
+                pending = new HashMap<>();
+            }
+            flushing = true;
+            batchId = unconfirmedId;
+            batch = unconfirmed;
+        }
+        writer.write(batchId, batch)
+                .doOnSuccess(v -> confirm(batchId))
+                .onErrorResume(ex -> {
+                    if (isTransient(ex)) {
+                        log.warn("No se pudo volcar {} ({} usuarios), se reintentará el mismo lote: {}", name, batch.size(), ex.getMessage());
+                    } else {
+                        log.error("Lote de {} rechazado ({} usuarios), se descarta: {}", name, batch.size(), ex.getMessage());
+                        confirm(batchId);
+                    }
+                    return Mono.empty();
+                })
+                .doFinally(sig -> {
+                    synchronized (lock) {
+                        flushing = false;
+                    }
+                })
+                .subscribe();
+    }
+
+    /** Vuelca todo lo pendiente (lote sin confirmar y cola) esperando como mucho {@code timeout}. */
+    void drain(Duration timeout) {
+        try {
+            Mono.defer(() -> {
+                        flush();
+                        return isDrained() ? Mono.just(Boolean.TRUE) : Mono.<Boolean>empty();
+                    })
+                    .repeatWhenEmpty(attempts -> attempts.delayElements(POLL))
+                    .timeout(timeout)
+                    .block();
+        } catch (RuntimeException ex) {
+            log.warn("No se pudo volcar {} al apagar: {}", name, ex.getMessage());
+        }
+    }
+
+    boolean isDrained() {
+        synchronized (lock) {
+            return !flushing && unconfirmed == null && pending.isEmpty();
+        }
+    }
+
+    private boolean tryBeginRead() {
+        synchronized (lock) {
+            if (flushing || unconfirmed != null || flushWaiting) {
+                // Reenviar cuanto antes el lote pendiente de confirmación
+                if (!flushing && !flushWaiting) flushLater();
+                return false;
+            }
+            activeReads++;
+            return true;
+        }
+    }
+
+    private void endRead() {
+        synchronized (lock) {
+            activeReads--;
+            if (activeReads == 0 && flushWaiting) flushLater();
+        }
+    }
+
+    private void flushLater() {
+        Mono.fromRunnable(this::flush).subscribeOn(Schedulers.boundedElastic()).subscribe();
+    }
+
+    private void confirm(UUID batchId) {
+        synchronized (lock) {
+            if (batchId.equals(unconfirmedId)) {
+                unconfirmedId = null;
+                unconfirmed = null;
+            }
+        }
+    }
+
+    private static boolean isTransient(Throwable ex) {
+        if (ex instanceof WebClientResponseException w) {
+            return w.getStatusCode().is5xxServerError() || w.getStatusCode().value() == 429;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package org.uniproject.SaviaU.service.progress;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Lectura en streaming del historial de un usuario.
+ * <p>
+ * Los intentos se paginan por keyset ({@code id=gt.<último>}, {@code order=id.asc}) y las filas
+ * hijas se piden en tramos acotados de ids con concurrencia limitada, de modo que ninguna URL
+ * crece con el historial y quien consume puede ir acumulando las filas según llegan de
+ * {@code bodyToFlux} en lugar de reunirlas primero en una lista.
+ */
+@Component
+public class HistoryStreams {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> ROW = new ParameterizedTypeReference<>() {};
+
+    private final SupabaseClients clients;
+    private final SupabaseProperties.HistoryPaging cfg;
+
+    public HistoryStreams(SupabaseClients clients) {
+        this.clients = clients;
+        this.cfg = clients.getProps().getHistoryPaging();
+    }
+
+    /** Filas de {@code table} del usuario, página a página; {@code select} debe incluir {@code id}. */
+    public Flux<Map<String, Object>> byUser(String table, String select, String userId) {
+        int size = Math.max(1, cfg.getPageSize());
+        // Solo una página en memoria; una página incompleta indica que no hay más
+        return page(table, select, userId, null, size)
+                .expand(rows -> rows.size() < size
+                        ? Mono.empty()
+                        : page(table, select, userId, String.valueOf(rows.get(rows.size() - 1).get("id")), size))
+                .flatMapIterable(rows -> rows);
+    }
+
+    private Mono<List<Map<String, Object>>> page(String table, String select, String userId, String afterId, int size) {
+        return clients.getDbAdmin().get()
+                .uri(uriBuilder -> {
+                    uriBuilder.path("/" + table)
+                            .queryParam("select", select)
+                            .queryParam("user_id", "eq." + userId)
+                            .queryParam("order", "id.asc")
+                            .queryParam("limit", size);
+                    if (afterId != null) uriBuilder.queryParam("id", "gt." + afterId);
+                    return uriBuilder.build();
+                })
+                .retrieve()
+                .bodyToFlux(ROW)
+                .collectList();
+    }
+
+    /**
+     * Filas de {@code table} cuyo {@code column} está entre {@code ids}, pedidas en tramos de
+     * {@code chunk-size} ids con a lo sumo {@code concurrency} peticiones a la vez.
+     */
+    public Flux<Map<String, Object>> byIds(Flux<String> ids, String table, String column, String select) {
+        return ids.buffer(Math.max(1, cfg.getChunkSize()))
+                .flatMap(chunk -> inChunk(chunk, table, column, select), Math.max(1, cfg.getConcurrency()));
+    }
+
+    private Flux<Map<String, Object>> inChunk(List<String> chunk, String table, String column, String select) {
+        String inParam = chunk.stream().map(id -> "\"" + id + "\"").collect(Collectors.joining(","));
+        return clients.getDbAdmin().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/" + table)
+                        .queryParam("select", select)
+                        .queryParam(column, "in.(" + inParam + ")")
+                        .build())
+                .retrieve()
+                .bodyToFlux(ROW);
+    }
+}
@@ -0,0 +1,97 @@
+package org.uniproject.SaviaU.service.progress;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.dto.ProgressOverviewDto;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caché por usuario de {@code /api/progress/overview}.
+ * <p>
+ * Las rutas que cambian el progreso llaman a {@link #invalidate}: el registro de actividad
+ * (tema y contadores ya adelantados en memoria) y, de nuevo, el drenado del diario una vez
+ * persistidos los contadores y otorgadas las insignias, que cubren el {@code finish} de trivia
+ * y el {@code submit} de diagnóstico. Las insignias de una actividad aparecen, por tanto, tras
+ * ese drenado y no en la respuesta inmediata.
+ * <p>
+ * Cada invalidación toma un sello de un reloj global y una carga solo se guarda si ningún
+ * sello de su usuario es posterior a su inicio, así una carga empezada antes de actuar nunca
+ * queda guardada como resumen vigente. Los sellos por usuario están acotados; al expulsar uno, su valor pasa
+ * a ser el mínimo para todos los usuarios olvidados, de modo que olvidar solo puede hacer que
+ * una carga no se guarde, nunca que una obsoleta pase por vigente.
+ */
+@Component
+public class ProgressOverviewCache {
+
+    private final Cache<String, ProgressOverviewDto> cache;
+    private final AtomicLong clock = new AtomicLong();
+    private final Cache<String, Long> invalidatedAt;
+    // Sello más alto entre los usuarios expulsados de invalidatedAt
+    private final AtomicLong forgottenUpTo = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    public ProgressOverviewCache(SupabaseClients clients, MeterRegistry registry) {
+        SupabaseProperties.OverviewCache cfg = clients.getProps().getOverviewCache();
+        Duration ttl = Duration.ofSeconds(Math.max(1, cfg.getTtlSeconds()));
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()))
+                .expireAfterWrite(ttl)
+                .build();
+        // El listener de expulsión corre de forma síncrona: el mínimo sube antes de que el sello desaparezca
+        this.invalidatedAt = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()) * 2L)
+                .expireAfterWrite(ttl.multipliedBy(2))
+                .evictionListener((String userId, Long stamp, RemovalCause cause) -> {
+                    if (stamp != null) forgottenUpTo.accumulateAndGet(stamp, Math::max);
+                })
+                .build();
+        this.hits = Counter.builder("progress.overview.cache")
+                .tag("result", "hit")
+                .description("Resúmenes de progreso servidos desde memoria")
+                .register(registry);
+        this.misses = Counter.builder("progress.overview.cache")
+                .tag("result", "miss")
+                .description("Resúmenes de progreso calculados contra Supabase")
+                .register(registry);
+        Gauge.builder("progress.overview.cache.size", cache, Cache::estimatedSize)
+                .description("Usuarios con resumen de progreso en memoria")
+                .register(registry);
+    }
+
+    public Mono<ProgressOverviewDto> get(String userId, Supplier<Mono<ProgressOverviewDto>> loader) {
+        ProgressOverviewDto cached = cache.getIfPresent(userId);
+        if (cached != null) {
+            hits.increment();
+            return Mono.just(cached);
+        }
+        misses.increment();
+        long startedAt = clock.get();
+        return loader.get().doOnNext(overview -> cache.asMap().compute(userId, (k, current) ->
+                // Serializado con el remove de invalidate(): o se ve su sello o se borra después
+                lastInvalidation(userId) <= startedAt ? overview : current));
+    }
+
+    public void invalidate(String userId) {
+        if (userId == null) return;
+        // Primero el sello: una carga en curso ya no podrá guardar su resultado
+        invalidatedAt.put(userId, clock.incrementAndGet());
+        cache.asMap().remove(userId);
+    }
+
+    private long lastInvalidation(String userId) {
+        Long stamp = invalidatedAt.getIfPresent(userId);
+        return Math.max(stamp == null ? 0 : stamp, forgottenUpTo.get());
+    }
+}
@@ -2,13 +2,17 @@ package org.uniproject.SaviaU.service.progress;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.uniproject.SaviaU.config.SupabaseClients;
 import org.uniproject.SaviaU.dto.*;
+import org.uniproject.SaviaU.service.auth.UserIdentityService;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -17,23 +21,33 @@ import java.util.stream.Collectors;
 public class ProgressService {
 
     private final SupabaseClients clients;
+    private final UserIdentityService identityService;
+    private final ActivityCounterStore counterStore;
+    private final BadgeRulesEngine badgeRules;
+    private final TopicMasteryStore masteryStore;
+    private final HistoryStreams historyStreams;
+    private final ActivityJournal activityJournal;
+    private final ProgressOverviewCache overviewCache;
+    private final AtomicBoolean draining = new AtomicBoolean();
 
-    private Mono<Map> getUserFromToken(String accessToken) {
-        return clients.buildUserAuthClient(accessToken).get().uri("/user").retrieve().bodyToMono(Map.class);
+    private Mono<Map<String, Object>> getUserFromToken(String accessToken) {
+        return identityService.resolveUser(accessToken);
     }
 
     public Mono<ProgressOverviewDto> getOverview(String accessToken) {
         return getUserFromToken(accessToken).flatMap(user -> {
             String userId = (String) user.get("id");
-            Mono<InteractionStatsDto> statsMono = getInteractionStats(userId);
-            Mono<List<TopicProgressDto>> topicsMono = getTopicProgress(userId);
-            Mono<List<BadgeDto>> badgesMono = getUserBadgesByUserId(userId);
-            return Mono.zip(statsMono, topicsMono, badgesMono)
-                    .map(t -> ProgressOverviewDto.builder()
-                            .stats(t.getT1())
-                            .topics(t.getT2())
-                            .badges(t.getT3())
-                            .build());
+            return overviewCache.get(userId, () -> {
+                Mono<InteractionStatsDto> statsMono = getInteractionStats(userId);
+                Mono<List<TopicProgressDto>> topicsMono = getTopicProgress(userId);
+                Mono<List<BadgeDto>> badgesMono = getUserBadgesByUserId(userId);
+                return Mono.zip(statsMono, topicsMono, badgesMono)
+                        .map(t -> ProgressOverviewDto.builder()
+                                .stats(t.getT1())
+                                .topics(t.getT2())
+                                .badges(t.getT3())
+                                .build());
+            });
         });
     }
 
@@ -79,139 +93,26 @@ public class ProgressService {
     }
 
     public Mono<InteractionStatsDto> getInteractionStats(String userId) {
-        Mono<Integer> triviaC = countActivities(userId, "TRIVIA_COMPLETED");
-        Mono<Integer> diagC = countActivities(userId, "DIAGNOSTIC_COMPLETED");
-        Mono<Integer> newsC = countActivities(userId, "NEWS_READ");
-        return Mono.zip(triviaC, diagC, newsC)
-                .map(t -> InteractionStatsDto.builder()
-                        .triviaCompleted(t.getT1())
-                        .diagnosticsCompleted(t.getT2())
-                        .newsRead(t.getT3())
+        return counterStore.counts(userId)
+                .map(c -> InteractionStatsDto.builder()
+                        .triviaCompleted(c.getOrDefault(ActivityCounterStore.TRIVIA_COMPLETED, 0))
+                        .diagnosticsCompleted(c.getOrDefault(ActivityCounterStore.DIAGNOSTIC_COMPLETED, 0))
+                        .newsRead(c.getOrDefault(ActivityCounterStore.NEWS_READ, 0))
                         .build());
     }
 
-    private Mono<Integer> countActivities(String userId, String type) {
-        return clients.getDbAdmin().get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/user_activities")
-                        .queryParam("select", "id")
-                        .queryParam("user_id", "eq." + userId)
-                        .queryParam("type", "eq." + type)
-                        .build())
-                .retrieve()
-                .bodyToFlux(Map.class)
-                .collectList()
-                .map(List::size);
-    }
-
     public Mono<List<TopicProgressDto>> getTopicProgress(String userId) {
-        // 1) Trivias
-        Mono<List<Map>> attemptsMono = clients.getDbAdmin().get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/trivia_attempts")
-                        .queryParam("select", "id")
-                        .queryParam("user_id", "eq." + userId)
-                        .build())
-                .retrieve()
-                .bodyToFlux(Map.class)
-                .collectList();
-
-        Mono<Map<String, int[]>> triviaAgg = attemptsMono.flatMap(attempts -> {
-            if (attempts.isEmpty()) return Mono.just(new HashMap<>());
-            List<String> attemptIds = attempts.stream().map(m -> (String) m.get("id")).toList();
-            String inAttempts = "in.(" + String.join(",", attemptIds) + ")";
-            Mono<List<Map>> ansMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/trivia_answers")
-                            .queryParam("select", "question_id,is_correct")
-                            .queryParam("attempt_id", inAttempts)
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
-            return ansMono.flatMap(ans -> {
-                if (ans.isEmpty()) return Mono.just(new HashMap<>());
-                Set<String> qIds = ans.stream().map(m -> (String) m.get("question_id")).collect(Collectors.toSet());
-                String inQ = "in.(" + String.join(",", qIds) + ")";
-                Mono<List<Map>> qMono = clients.getDbAdmin().get()
-                        .uri(uriBuilder -> uriBuilder
-                                .path("/trivia_questions")
-                                .queryParam("select", "id,topic")
-                                .queryParam("id", inQ)
-                                .build())
-                        .retrieve()
-                        .bodyToFlux(Map.class)
-                        .collectList();
-                return qMono.map(qList -> {
-                    Map<String, String> qTopic = qList.stream().collect(Collectors.toMap(m -> (String) m.get("id"), m -> (String) m.get("topic")));
-                    Map<String, int[]> agg = new HashMap<>(); // topic -> [answered, correct]
-                    for (Map a : ans) {
-                        String qid = (String) a.get("question_id");
-                        String topic = qTopic.get(qid);
-                        if (topic == null) continue;
-                        agg.putIfAbsent(topic, new int[]{0, 0});
-                        int[] v = agg.get(topic);
-                        v[0] += 1;
-                        if (Boolean.TRUE.equals(a.get("is_correct"))) v[1] += 1;
-                    }
-                    return agg;
+        // Sin la tabla user_topic_mastery (esquema sin migrar) se recalcula desde las respuestas
+        return masteryStore.progress(userId)
+                .onErrorResume(ex -> {
+                    log.warn("Dominio por tema no disponible para {}, recalculando: {}", userId, ex.getMessage());
+                    return computeTopicProgress(userId);
                 });
-            });
-        });
-
-        // 2) Diagnósticos
-        Mono<List<Map>> dAttemptsMono = clients.getDbAdmin().get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/diagnostic_attempts")
-                        .queryParam("select", "id")
-                        .queryParam("user_id", "eq." + userId)
-                        .build())
-                .retrieve()
-                .bodyToFlux(Map.class)
-                .collectList();
+    }
 
-        Mono<Map<String, int[]>> diagAgg = dAttemptsMono.flatMap(attempts -> {
-            if (attempts.isEmpty()) return Mono.just(new HashMap<>());
-            List<String> attemptIds = attempts.stream().map(m -> (String) m.get("id")).toList();
-            String inAttempts = "in.(" + String.join(",", attemptIds) + ")";
-            Mono<List<Map>> ansMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/diagnostic_answers")
-                            .queryParam("select", "question_id,is_correct")
-                            .queryParam("attempt_id", inAttempts)
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
-            return ansMono.flatMap(ans -> {
-                if (ans.isEmpty()) return Mono.just(new HashMap<>());
-                Set<String> qIds = ans.stream().map(m -> (String) m.get("question_id")).collect(Collectors.toSet());
-                String inQ = "in.(" + String.join(",", qIds) + ")";
-                Mono<List<Map>> qMono = clients.getDbAdmin().get()
-                        .uri(uriBuilder -> uriBuilder
-                                .path("/diagnostic_questions")
-                                .queryParam("select", "id,topic")
-                                .queryParam("id", inQ)
-                                .build())
-                        .retrieve()
-                        .bodyToFlux(Map.class)
-                        .collectList();
-                return qMono.map(qList -> {
-                    Map<String, String> qTopic = qList.stream().collect(Collectors.toMap(m -> (String) m.get("id"), m -> (String) m.get("topic")));
-                    Map<String, int[]> agg = new HashMap<>();
-                    for (Map a : ans) {
-                        String qid = (String) a.get("question_id");
-                        String topic = qTopic.get(qid);
-                        if (topic == null) continue;
-                        agg.putIfAbsent(topic, new int[]{0, 0});
-                        int[] v = agg.get(topic);
-                        v[0] += 1;
-                        if (Boolean.TRUE.equals(a.get("is_correct"))) v[1] += 1;
-                    }
-                    return agg;
-                });
-            });
-        });
+    private Mono<List<TopicProgressDto>> computeTopicProgress(String userId) {
+        Mono<Map<String, int[]>> triviaAgg = streamTopicAgg(userId, "trivia_attempts", "trivia_answers", "trivia_questions");
+        Mono<Map<String, int[]>> diagAgg = streamTopicAgg(userId, "diagnostic_attempts", "diagnostic_answers", "diagnostic_questions");
 
         return Mono.zip(triviaAgg, diagAgg).map(t -> {
             Map<String, int[]> total = new HashMap<>(t.getT1());
@@ -237,126 +138,137 @@ public class ProgressService {
         });
     }
 
+    /**
+     * topic -> [answered, correct] leyendo intentos por keyset y respuestas por tramos de ids.
+     * Lo que se retiene es un acumulado por pregunta, acotado por el banco y no por el historial.
+     */
+    private Mono<Map<String, int[]>> streamTopicAgg(String userId, String attemptsTable, String answersTable, String questionsTable) {
+        Flux<String> attemptIds = historyStreams.byUser(attemptsTable, "id", userId)
+                .map(m -> String.valueOf(m.get("id")));
+
+        return historyStreams.byIds(attemptIds, answersTable, "attempt_id", "question_id,is_correct")
+                .reduceWith(HashMap<String, int[]>::new, (byQuestion, a) -> {
+                    int[] v = byQuestion.computeIfAbsent((String) a.get("question_id"), k -> new int[]{0, 0});
+                    v[0] += 1;
+                    if (Boolean.TRUE.equals(a.get("is_correct"))) v[1] += 1;
+                    return byQuestion;
+                })
+                .flatMap(byQuestion -> {
+                    if (byQuestion.isEmpty()) return Mono.just(new HashMap<String, int[]>());
+                    return historyStreams.byIds(Flux.fromIterable(byQuestion.keySet()), questionsTable, "id", "id,topic")
+                            .reduceWith(HashMap<String, int[]>::new, (agg, q) -> {
+                                String topic = (String) q.get("topic");
+                                int[] v = byQuestion.get((String) q.get("id"));
+                                if (topic == null || v == null) return agg;
+                                int[] t = agg.computeIfAbsent(topic, k -> new int[]{0, 0});
+                                t[0] += v[0];
+                                t[1] += v[1];
+                                return agg;
+                            });
+                });
+    }
+
+    /**
+     * Actividad enviada por el cliente. Con {@code eventId} un reintento tras un error (la
+     * entrada pudo quedar registrada aunque la respuesta fallara) no cuenta dos veces; sin él
+     * cada llamada es un evento nuevo.
+     */
     public Mono<AwardResultDto> recordActivity(RecordActivityRequest request) {
-        return getUserFromToken(request.getAccessToken()).flatMap(user -> recordActivityForUserId((String) user.get("id"), request.getType(), request.getMetadata()));
+        return getUserFromToken(request.getAccessToken()).flatMap(user -> {
+            String userId = (String) user.get("id");
+            String eventId = request.getEventId();
+            // El usuario forma parte de la clave: un id de otro cliente no puede tapar este evento
+            String dedupeKey = eventId == null || eventId.isBlank() ? null : request.getType() + ":" + userId + ":" + eventId;
+            return record(userId, request.getType(), request.getMetadata(), dedupeKey);
+        });
     }
 
+    /** Actividad generada por el backend; las de un intento se identifican por su {@code attemptId}. */
     public Mono<AwardResultDto> recordActivityForUserId(String userId, String type, Map<String, Object> metadata) {
-        Map<String, Object> body = new HashMap<>();
-        body.put("user_id", userId);
-        body.put("type", type);
-        if (metadata != null) body.put("metadata", metadata);
-        Mono<String> insertAct = clients.getDbAdmin().post()
-                .uri("/user_activities")
-                .header("Prefer", "return=minimal")
-                .bodyValue(body)
-                .retrieve()
-                .bodyToMono(String.class)
-                .onErrorResume(WebClientResponseException.class, ex -> Mono.just(""));
-
-        return insertAct.then(awardBadgesIfAny(userId));
+        Object attemptId = metadata == null ? null : metadata.get("attemptId");
+        return record(userId, type, metadata, attemptId == null ? null : type + ":" + attemptId);
     }
 
-    private Mono<AwardResultDto> awardBadgesIfAny(String userId) {
-        // Cargar catálogo de insignias activas y las ya obtenidas por el usuario
-        Mono<List<Map>> allBadgesMono = clients.getDbAdmin().get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/badges")
-                        .queryParam("select", "id,code,name,description,icon_url,criteria_type,criteria_value,is_active")
-                        .queryParam("is_active", "eq.true")
-                        .build())
-                .retrieve()
-                .bodyToFlux(Map.class)
-                .collectList();
-        Mono<List<Map>> userBadgesMono = clients.getDbAdmin().get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/user_badges")
-                        .queryParam("select", "badge_id")
-                        .queryParam("user_id", "eq." + userId)
-                        .build())
-                .retrieve()
-                .bodyToFlux(Map.class)
-                .collectList();
-
-        return Mono.zip(allBadgesMono, userBadgesMono, getInteractionStats(userId), getTopicProgress(userId))
-                .flatMap(tuple -> {
-                    List<Map> allBadges = tuple.getT1();
-                    Set<String> owned = tuple.getT2().stream().map(m -> (String) m.get("badge_id")).collect(Collectors.toSet());
-                    InteractionStatsDto stats = tuple.getT3();
-                    List<TopicProgressDto> topics = tuple.getT4();
-
-                    List<Map> toAward = new ArrayList<>();
-                    for (Map b : allBadges) {
-                        String id = (String) b.get("id");
-                        if (owned.contains(id)) continue;
-                        String type = (String) b.get("criteria_type");
-                        Object value = b.get("criteria_value");
-                        if ("TRIVIA_COMPLETED_COUNT".equals(type)) {
-                            int needed = getJsonInt(value, "count", 1);
-                            if (stats.getTriviaCompleted() >= needed) toAward.add(b);
-                        } else if ("DIAGNOSTIC_COMPLETED".equals(type)) {
-                            if (stats.getDiagnosticsCompleted() >= 1) toAward.add(b);
-                        } else if ("NEWS_READ_COUNT".equals(type)) {
-                            int needed = getJsonInt(value, "count", 5);
-                            if (stats.getNewsRead() >= needed) toAward.add(b);
-                        } else if ("TOPIC_MASTERY".equals(type)) {
-                            String topic = getJsonString(value, "topic");
-                            int thr = getJsonInt(value, "threshold", 80);
-                            if (topic != null) {
-                                Optional<TopicProgressDto> tp = topics.stream().filter(t -> topic.equalsIgnoreCase(t.getTopic())).findFirst();
-                                if (tp.isPresent() && tp.get().getPercent() >= thr) toAward.add(b);
-                            }
-                        }
-                    }
-
-                    if (toAward.isEmpty()) return Mono.just(AwardResultDto.builder().awarded(List.of()).build());
-
-                    // Insertar user_badges para cada insignia a otorgar
-                    List<Map<String, Object>> rows = toAward.stream().map(b -> Map.of(
-                            "user_id", userId,
-                            "badge_id", b.get("id")
-                    )).collect(Collectors.toList());
-
-                    Mono<String> insert = clients.getDbAdmin().post()
-                            .uri(uriBuilder -> uriBuilder
-                                    .path("/user_badges")
-                                    .queryParam("on_conflict", "user_id,badge_id")
-                                    .build())
-                            .header("Prefer", "return=minimal")
-                            .bodyValue(rows)
-                            .retrieve()
-                            .bodyToMono(String.class)
-                            .onErrorResume(WebClientResponseException.class, ex -> Mono.just(""));
+    /**
+     * Registra la actividad en el diario local y responde en cuanto está en disco. El contador
+     * en memoria se adelanta en ese momento, así el resumen siguiente ya la cuenta; la inserción
+     * en {@code user_activities}, los contadores persistidos y las insignias los resuelve
+     * {@link #drainActivities()}, y las insignias nuevas aparecen tras ese drenado.
+     */
+    private Mono<AwardResultDto> record(String userId, String type, Map<String, Object> metadata, String dedupeKey) {
+        ActivityJournal.Entry entry = ActivityJournal.entry(userId, type, metadata, dedupeKey);
+        return activityJournal.append(entry)
+                .doOnSuccess(v -> {
+                    counterStore.applyAppended(userId, type, entry.dedupeKey());
+                    // El tema (dominio por tema) y el contador ya cambiaron en memoria
+                    overviewCache.invalidate(userId);
+                })
+                .thenReturn(AwardResultDto.builder().awarded(List.of()).build());
+    }
 
-                    List<BadgeDto> awarded = toAward.stream().map(b -> BadgeDto.builder()
-                            .id((String) b.get("id"))
-                            .code((String) b.get("code"))
-                            .name((String) b.get("name"))
-                            .description((String) b.get("description"))
-                            .iconUrl((String) b.get("icon_url"))
-                            .awardedAt(null)
-                            .build()).collect(Collectors.toList());
+    @Scheduled(fixedDelayString = "${supabase.activity-outbox.drain-ms:1000}")
+    public void drainActivities() {
+        if (!draining.compareAndSet(false, true)) return;
+        drainPending()
+                .doFinally(sig -> draining.set(false))
+                .subscribe(v -> {}, ex -> log.warn("Actividades pendientes se reintentarán: {}", ex.getMessage()));
+    }
 
-                    return insert.thenReturn(AwardResultDto.builder().awarded(awarded).build());
-                });
+    Mono<Void> drainPending() {
+        return activityJournal.drain(this::deliverActivities);
     }
 
-    private int getJsonInt(Object json, String key, int def) {
-        if (json instanceof Map) {
-            Object v = ((Map<?, ?>) json).get(key);
-            if (v instanceof Number) return ((Number) v).intValue();
-            if (v != null) {
-                try { return Integer.parseInt(String.valueOf(v)); } catch (Exception ignored) {}
-            }
-        }
-        return def;
+    /**
+     * Entrega una tanda del diario con {@code record_activities}, que inserta las filas nuevas
+     * (mismo {@code dedupe_key} se ignora) y avanza sus contadores en la misma transacción. Las
+     * insignias se evalúan después para todas las entradas de la tanda, hayan sido insertadas
+     * ahora o en un intento anterior: otorgarlas es idempotente, y si la evaluación falla la
+     * tanda se reintenta sin volver a contar nada.
+     */
+    private Mono<Void> deliverActivities(List<ActivityJournal.Entry> entries) {
+        // Un insert masivo no puede tocar dos veces la misma fila
+        Map<String, ActivityJournal.Entry> byKey = new LinkedHashMap<>();
+        entries.forEach(e -> byKey.putIfAbsent(e.dedupeKey(), e));
+        List<Map<String, Object>> rows = byKey.values().stream().map(e -> {
+            Map<String, Object> row = new HashMap<>();
+            row.put("user_id", e.userId());
+            row.put("type", e.type());
+            row.put("metadata", e.metadata());
+            row.put("dedupe_key", e.dedupeKey());
+            row.put("created_at", e.createdAt());
+            return row;
+        }).toList();
+        Set<String> users = new LinkedHashSet<>();
+        byKey.values().forEach(e -> users.add(e.userId()));
+
+        return clients.getDbAdmin().post()
+                .uri("/rpc/record_activities")
+                .bodyValue(Map.of("p_rows", rows))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                .flatMap(counters -> {
+                    // Solo vienen los (usuario, tipo) con filas nuevas, ya con su valor persistido
+                    Set<String> stored = new HashSet<>();
+                    counters.forEach(c -> {
+                        if (c.get("count") instanceof Number n) {
+                            counterStore.applyStored(String.valueOf(c.get("user_id")), String.valueOf(c.get("type")), n.intValue());
+                            stored.add(c.get("user_id") + "|" + c.get("type"));
+                        }
+                    });
+                    // Entradas que la base ya tenía: lo adelantado al registrarlas pudo sobrar
+                    byKey.values().stream()
+                            .filter(e -> !stored.contains(e.userId() + "|" + e.type()))
+                            .forEach(e -> counterStore.forget(e.userId()));
+                    return Flux.fromIterable(byKey.values())
+                            .concatMap(e -> awardBadgesIfAny(e.userId(), e.type(), e.metadata()))
+                            .then();
+                })
+                // Contadores e insignias ya reflejan la tanda: fuera los resúmenes afectados
+                .doFinally(sig -> users.forEach(overviewCache::invalidate));
     }
 
-    private String getJsonString(Object json, String key) {
-        if (json instanceof Map) {
-            Object v = ((Map<?, ?>) json).get(key);
-            return v == null ? null : String.valueOf(v);
-        }
-        return null;
+    private Mono<AwardResultDto> awardBadgesIfAny(String userId, String type, Map<String, Object> metadata) {
+        // Solo se evalúan las reglas que este tipo de actividad puede cambiar
+        return badgeRules.onActivity(userId, type, metadata, () -> getTopicProgress(userId));
     }
 }
@@ -0,0 +1,176 @@
+package org.uniproject.SaviaU.service.progress;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.dto.TopicProgressDto;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dominio por tema y usuario, mantenido de forma incremental.
+ * <p>
+ * Cada respuesta calificada (trivia o diagnóstico) aplica un delta {@code answered/correct}
+ * sobre contadores primitivos indexados por un id de tema internado. Los deltas se acumulan
+ * y se vuelcan por lotes a {@code user_topic_mastery} con {@code apply_topic_mastery}, de modo
+ * que leer el progreso cuesta una fila por tema en lugar del historial completo de respuestas.
+ * La cola, los reintentos y la lectura consistente con los volcados viven en {@link DeltaBuffer}.
+ */
+@Slf4j
+@Component
+public class TopicMasteryStore {
+
+    private final SupabaseClients clients;
+    private final Cache<String, Mastery> cache;
+
+    // Temas internados: nombre -> id y id -> nombre
+    private final Map<String, Integer> topicIds = new ConcurrentHashMap<>();
+    private volatile String[] topicNames = new String[0];
+
+    // Deltas aún no persistidos: usuario -> (id de tema -> [answered, correct])
+    private final DeltaBuffer<Integer> pending;
+
+    public TopicMasteryStore(SupabaseClients clients) {
+        this.clients = clients;
+        SupabaseProperties.TopicMastery cfg = clients.getProps().getTopicMastery();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, cfg.getTtlSeconds())))
+                .build();
+        this.pending = new DeltaBuffer<>("dominio por tema", 2, Duration.ofSeconds(5), this::write);
+    }
+
+    /** Contadores de un usuario: posiciones = id de tema internado. */
+    private static final class Mastery {
+        private int[] answered = new int[8];
+        private int[] correct = new int[8];
+
+        synchronized void add(int topicId, int dAnswered, int dCorrect) {
+            if (topicId >= answered.length) {
+                int size = Math.max(topicId + 1, answered.length * 2);
+                answered = Arrays.copyOf(answered, size);
+                correct = Arrays.copyOf(correct, size);
+            }
+            answered[topicId] += dAnswered;
+            correct[topicId] += dCorrect;
+        }
+
+        synchronized List<TopicProgressDto> snapshot(String[] names) {
+            List<TopicProgressDto> out = new ArrayList<>();
+            for (int id = 0; id < answered.length && id < names.length; id++) {
+                if (answered[id] <= 0) continue;
+                out.add(TopicProgressDto.builder()
+                        .topic(names[id])
+                        .totalAnswered(answered[id])
+                        .correct(correct[id])
+                        .percent(correct[id] * 100.0 / answered[id])
+                        .build());
+            }
+            out.sort(Comparator.comparing(TopicProgressDto::getTopic));
+            return out;
+        }
+    }
+
+    /**
+     * Aplica el delta de una respuesta calificada. Para respuestas que reemplazan a otra del
+     * mismo intento, {@code dAnswered} es 0 y {@code dCorrect} puede ser -1, 0 o 1.
+     */
+    public void apply(String userId, String topic, int dAnswered, int dCorrect) {
+        if (userId == null || topic == null || (dAnswered == 0 && dCorrect == 0)) return;
+        int topicId = intern(topic);
+        pending.add(userId, topicId, new double[]{dAnswered, dCorrect}, () -> {
+            Mastery m = cache.getIfPresent(userId);
+            if (m != null) m.add(topicId, dAnswered, dCorrect);
+        });
+    }
+
+    /** Progreso por tema del usuario, ordenado por tema. */
+    public Mono<List<TopicProgressDto>> progress(String userId) {
+        Mastery cached = cache.getIfPresent(userId);
+        if (cached != null) return Mono.just(cached.snapshot(topicNames));
+        return pending.load(userId, load(userId), (m, deltas) -> {
+            Mastery prev = cache.asMap().putIfAbsent(userId, m);
+            if (prev != null) return prev;
+            // Deltas calificados que aún no llegaron a la tabla
+            deltas.forEach((topicId, d) -> m.add(topicId, (int) d[0], (int) d[1]));
+            return m;
+        }).map(m -> m.snapshot(topicNames));
+    }
+
+    @Scheduled(fixedDelayString = "${supabase.topic-mastery.flush-ms:1000}")
+    public void flush() {
+        pending.flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        pending.drain(Duration.ofSeconds(5));
+    }
+
+    private Mono<Void> write(UUID batchId, Map<String, Map<Integer, double[]>> batch) {
+        String[] names = topicNames;
+        List<Map<String, Object>> rows = new ArrayList<>();
+        batch.forEach((userId, deltas) -> deltas.forEach((topicId, d) -> {
+            if (d[0] == 0 && d[1] == 0) return;
+            rows.add(Map.of("user_id", userId, "topic", names[topicId], "answered", (int) d[0], "correct", (int) d[1]));
+        }));
+        if (rows.isEmpty()) return Mono.empty();
+        return clients.getDbAdmin().post()
+                .uri("/rpc/apply_topic_mastery")
+                .bodyValue(Map.of("p_batch_id", batchId, "p_rows", rows))
+                .retrieve()
+                .toBodilessEntity()
+                .then();
+    }
+
+    private Mono<Mastery> load(String userId) {
+        return clients.getDbAdmin().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/user_topic_mastery")
+                        .queryParam("select", "topic,answered,correct")
+                        .queryParam("user_id", "eq." + userId)
+                        .build())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})
+                .map(rows -> {
+                    Mastery m = new Mastery();
+                    for (Map<String, Object> row : rows) {
+                        Object topic = row.get("topic");
+                        if (topic == null) continue;
+                        m.add(intern(String.valueOf(topic)), toInt(row.get("answered")), toInt(row.get("correct")));
+                    }
+                    return m;
+                });
+    }
+
+    private int intern(String topic) {
+        Integer id = topicIds.get(topic);
+        if (id != null) return id;
+        synchronized (topicIds) {
+            return topicIds.computeIfAbsent(topic, k -> {
+                String[] names = Arrays.copyOf(topicNames, topicNames.length + 1);
+                names[names.length - 1] = k;
+                topicNames = names;
+                return names.length - 1;
+            });
+        }
+    }
+
+    private static int toInt(Object v) {
+        return v instanceof Number n ? n.intValue() : 0;
+    }
+}
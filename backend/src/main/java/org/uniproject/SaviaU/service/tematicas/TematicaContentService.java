@@ -15,25 +15,42 @@ import org.uniproject.SaviaU.dto.TematicaResourceDto;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+/**
+ * Contenido público de temáticas servido desde memoria.
+ * <p>
+ * Todas las áreas se cargan con una sola consulta embebida y se guardan decodificadas. Pasado
+ * {@code supabase.tematicas.ttl-seconds} se siguen sirviendo mientras se revalidan en segundo
+ * plano; las ediciones de administración llaman a {@link #invalidate()} para que la siguiente
+ * lectura ya vea el cambio.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class TematicaContentService {
 
-    private static final String SUMMARY_SELECT = String.join(",",
+    private static final String RESOURCE_SELECT = String.join(",",
             "id",
-            "name",
-            "summary",
-            "accent_color",
-            "hero_image",
-            "tagline",
-            "tematicas_learning_focus(label)",
-            "tematicas_resources(id)"
+            "area_id",
+            "title",
+            "short_description",
+            "detail_description",
+            "image_url",
+            "format",
+            "estimated_time",
+            "fun_fact",
+            "deep_dive",
+            "tematicas_resource_sources(source)"
     );
 
     private static final String FULL_SELECT = String.join(",",
@@ -44,29 +61,32 @@ public class TematicaContentService {
             "hero_image",
             "tagline",
             "tematicas_learning_focus(label)",
-            "tematicas_resources("
-                    + String.join(",",
-                    "id",
-                    "area_id",
-                    "title",
-                    "short_description",
-                    "detail_description",
-                    "image_url",
-                    "format",
-                    "estimated_time",
-                    "fun_fact",
-                    "deep_dive",
-                    "tematicas_resource_sources(source)")
-                    + ")"
+            "tematicas_resources(" + RESOURCE_SELECT + ")"
     );
 
     private static final ParameterizedTypeReference<List<AreaRow>> AREA_LIST_TYPE = new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<List<ResourceRow>> RESOURCE_LIST_TYPE = new ParameterizedTypeReference<>() {};
 
     private final SupabaseClients supabaseClients;
 
+    /**
+     * Contenido decodificado de todas las temáticas. {@code generation} es la invalidación
+     * vigente cuando empezó la carga; {@code version} cambia solo si el contenido cambió.
+     * Los recursos se indexan por id y por temática para abrir uno sin recorrer su área.
+     */
+    private record Catalog(long version, long generation, Instant loadedAt, List<AreaRow> areas,
+                           Map<String, AreaRow> byId, Map<String, ResourceRow> resources,
+                           Map<String, List<String>> resourceIdsByArea) {}
+
+    private final AtomicReference<Catalog> catalog = new AtomicReference<>();
+    private final AtomicReference<Mono<Catalog>> inFlight = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+    // Arranca en la hora de inicio para que una versión no se repita entre reinicios
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis());
+
     public Mono<List<TematicaAreaSummaryDto>> listAreas() {
-        return fetchAreas(SUMMARY_SELECT, null)
-                .map(rows -> rows.stream()
+        return currentCatalog()
+                .map(cat -> cat.areas().stream()
                         .map(this::mapToSummary)
                         .collect(Collectors.toList()));
     }
@@ -77,42 +97,135 @@ public class TematicaContentService {
     }
 
     public Mono<TematicaResourceDto> getResource(String areaId, String resourceId) {
-        return fetchSingleArea(areaId)
-                .switchIfEmpty(Mono.error(new RuntimeException("Temática no encontrada")))
-                .flatMap(area -> area.getResources().stream()
-                        .filter(r -> Objects.equals(r.getId(), resourceId))
-                        .findFirst()
-                        .map(Mono::just)
-                        .orElseGet(() -> Mono.error(new RuntimeException("Recurso no encontrado"))));
+        Catalog c = catalog.get();
+        if (c == null || c.generation() != generation.get()) {
+            // Sin contenido vigente en memoria: se pide solo ese recurso
+            return loadResource(resourceId)
+                    .filter(r -> Objects.equals(r.areaId(), areaId))
+                    .map(this::mapToResource)
+                    .switchIfEmpty(Mono.error(new RuntimeException("Recurso no encontrado")));
+        }
+        if (!c.resourceIdsByArea().containsKey(areaId)) {
+            return Mono.error(new RuntimeException("Temática no encontrada"));
+        }
+        ResourceRow row = c.resources().get(resourceId);
+        if (row == null || !Objects.equals(row.areaId(), areaId)) {
+            return Mono.error(new RuntimeException("Recurso no encontrado"));
+        }
+        return Mono.just(mapToResource(row));
+    }
+
+    /** Lee un recurso directamente de Supabase, sin pasar por el contenido en memoria. */
+    public Mono<TematicaResourceDto> fetchResource(String resourceId) {
+        return loadResource(resourceId)
+                .map(this::mapToResource)
+                .switchIfEmpty(Mono.error(new RuntimeException("Recurso no encontrado")));
+    }
+
+    /** Versión del contenido publicado; cambia cuando una recarga trae contenido distinto. */
+    public Mono<Long> version() {
+        return currentCatalog().map(Catalog::version);
+    }
+
+    /** Descarta el contenido en memoria: la siguiente lectura espera la recarga. */
+    public void invalidate() {
+        generation.incrementAndGet();
+        inFlight.set(null);
     }
 
     private Mono<TematicaAreaDto> fetchSingleArea(String id) {
-        return fetchAreas(FULL_SELECT, id)
-                .map(rows -> rows.stream().findFirst())
-                .flatMap(optional -> optional.map(row -> Mono.just(mapToArea(row))).orElseGet(Mono::empty));
+        return currentCatalog()
+                .flatMap(cat -> Mono.justOrEmpty(cat.byId().get(id)))
+                .map(this::mapToArea);
+    }
+
+    private Mono<Catalog> currentCatalog() {
+        Catalog c = catalog.get();
+        if (c == null) return reload();
+        if (c.generation() != generation.get()) {
+            // Invalidado por una edición: se espera el contenido nuevo; si falla, se sirve el anterior
+            return reload().onErrorResume(ex -> Mono.just(c));
+        }
+        long ttlSeconds = Math.max(1, supabaseClients.getProps().getTematicas().getTtlSeconds());
+        if (c.loadedAt().plusSeconds(ttlSeconds).isBefore(Instant.now())) {
+            // Vencido: se sirve el actual y se revalida en segundo plano
+            reload().subscribe(v -> {}, ex -> log.warn("Error recargando temáticas: {}", ex.getMessage()));
+        }
+        return Mono.just(c);
+    }
+
+    private Mono<Catalog> reload() {
+        while (true) {
+            Mono<Catalog> running = inFlight.get();
+            if (running != null) return running;
+            long gen = generation.get();
+            AtomicReference<Mono<Catalog>> self = new AtomicReference<>();
+            Mono<Catalog> load = fetchAreas()
+                    .map(rows -> publish(gen, rows))
+                    .doFinally(sig -> inFlight.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(load);
+            if (inFlight.compareAndSet(null, load)) return load;
+        }
+    }
+
+    private Catalog publish(long gen, List<AreaRow> rows) {
+        Map<String, AreaRow> byId = new HashMap<>();
+        Map<String, ResourceRow> resources = new HashMap<>();
+        Map<String, List<String>> resourceIdsByArea = new HashMap<>();
+        for (AreaRow row : rows) {
+            byId.put(row.id(), row);
+            List<String> ids = new ArrayList<>();
+            for (ResourceRow resource : safeList(row.resources())) {
+                if (resource.id() == null) continue;
+                resources.put(resource.id(), resource);
+                ids.add(resource.id());
+            }
+            resourceIdsByArea.put(row.id(), List.copyOf(ids));
+        }
+        return catalog.updateAndGet(prev -> {
+            if (prev != null && prev.generation() > gen) return prev;
+            long version = prev != null && prev.areas().equals(rows) ? prev.version() : versions.incrementAndGet();
+            return new Catalog(version, gen, Instant.now(), List.copyOf(rows), Map.copyOf(byId),
+                    Map.copyOf(resources), Map.copyOf(resourceIdsByArea));
+        });
     }
 
-    private Mono<List<AreaRow>> fetchAreas(String select, String areaId) {
-        WebClient client = supabaseClients.getDbAdmin();
-        return client.get()
-                .uri(builder -> buildAreasUri(builder, select, areaId))
-                .retrieve()
-                .bodyToMono(AREA_LIST_TYPE)
+    private Mono<ResourceRow> loadResource(String resourceId) {
+        return Mono.defer(() -> supabaseClients.getDbAdmin().get()
+                        .uri(builder -> builder
+                                .path("/tematicas_resources")
+                                .queryParam("select", RESOURCE_SELECT)
+                                .queryParam("id", "eq." + resourceId)
+                                .build())
+                        .retrieve()
+                        .bodyToMono(RESOURCE_LIST_TYPE))
                 .onErrorResume(ex -> {
-                    log.error("Error consultando temáticas en Supabase", ex);
-                    return Mono.error(new RuntimeException("No se pudieron cargar las temáticas desde Supabase"));
-                });
+                    log.error("Error consultando el recurso {} en Supabase", resourceId, ex);
+                    return Mono.error(new RuntimeException("No se pudo cargar el recurso desde Supabase"));
+                })
+                .flatMap(rows -> Mono.justOrEmpty(rows.stream().findFirst()));
     }
 
-    private URI buildAreasUri(UriBuilder builder, String select, String areaId) {
-        UriBuilder uriBuilder = builder
+    private Mono<List<AreaRow>> fetchAreas() {
+        return Mono.defer(() -> {
+            WebClient client = supabaseClients.getDbAdmin();
+            return client.get()
+                    .uri(builder -> buildAreasUri(builder, FULL_SELECT))
+                    .retrieve()
+                    .bodyToMono(AREA_LIST_TYPE);
+        }).onErrorResume(ex -> {
+            log.error("Error consultando temáticas en Supabase", ex);
+            return Mono.error(new RuntimeException("No se pudieron cargar las temáticas desde Supabase"));
+        });
+    }
+
+    private URI buildAreasUri(UriBuilder builder, String select) {
+        return builder
                 .path("/tematicas_areas")
                 .queryParam("select", select)
-                .queryParam("order", "name.asc");
-        if (areaId != null) {
-            uriBuilder.queryParam("id", "eq." + areaId);
-        }
-        return uriBuilder.build();
+                .queryParam("order", "name.asc")
+                .build();
     }
 
     private TematicaAreaSummaryDto mapToSummary(AreaRow row) {
@@ -0,0 +1,184 @@
+package org.uniproject.SaviaU.service.trivia;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Clave de respuestas de las trivias en memoria.
+ * <p>
+ * Mantiene opción → (pregunta, set, es correcta, explicación) y pregunta → (opción correcta,
+ * tema), de modo que calificar una respuesta no necesita consultar {@code trivia_options}
+ * ni {@code trivia_questions}. Las preguntas solo cambian desde
+ * {@code AdminTriviaManagementService}, que llama a {@link #invalidate()} tras cada alta,
+ * edición o borrado; cada invalidación incrementa {@link #version()}.
+ */
+@Slf4j
+@Component
+public class TriviaAnswerKey {
+
+    private static final int PAGE_SIZE = 1000;
+    // Separación mínima entre recargas provocadas por una opción desconocida
+    private static final long MISS_RELOAD_INTERVAL_MS = 5_000;
+
+    private final SupabaseClients clients;
+    private final AtomicLong version = new AtomicLong(1);
+    private final AtomicReference<Catalog> catalog = new AtomicReference<>();
+    private final AtomicReference<Mono<Catalog>> inFlight = new AtomicReference<>();
+
+    public TriviaAnswerKey(SupabaseClients clients) {
+        this.clients = clients;
+    }
+
+    public record OptionKey(String optionId, String questionId, String setId, boolean correct, String explanation) {}
+
+    public record QuestionKey(String questionId, String setId, String topic, String correctOptionId) {}
+
+    /** Vista inmutable del catálogo para una versión concreta. */
+    public record Catalog(long version,
+                          Map<String, OptionKey> options,
+                          Map<String, QuestionKey> questions,
+                          Map<String, List<QuestionKey>> questionsBySet,
+                          Instant loadedAt) {
+
+        public OptionKey option(String optionId) {
+            return optionId == null ? null : options.get(optionId);
+        }
+
+        public QuestionKey question(String questionId) {
+            return questionId == null ? null : questions.get(questionId);
+        }
+
+        public List<QuestionKey> questionsOfSet(String setId) {
+            return setId == null ? List.of() : questionsBySet.getOrDefault(setId, List.of());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        current().subscribe(c -> log.info("Clave de trivias cargada: {} preguntas, {} opciones (v{})",
+                        c.questions().size(), c.options().size(), c.version()),
+                ex -> log.warn("No se pudo cargar la clave de trivias: {}", ex.getMessage()));
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    /** Catálogo vigente; lo carga (una sola vez para todos los que esperan) si aún no existe. */
+    public Mono<Catalog> current() {
+        Catalog c = catalog.get();
+        if (c != null && c.version() == version.get()) return Mono.just(c);
+        return reload();
+    }
+
+    /**
+     * Como {@link #current()}, pero si la opción no aparece fuerza una recarga (como mucho una
+     * vez por intervalo) por si la pregunta se creó fuera del panel de administración.
+     */
+    public Mono<Catalog> forOption(String optionId) {
+        return current().flatMap(c -> {
+            if (optionId == null || c.options().containsKey(optionId)) return Mono.just(c);
+            if (c.loadedAt().plusMillis(MISS_RELOAD_INTERVAL_MS).isAfter(Instant.now())) return Mono.just(c);
+            invalidate();
+            return current();
+        });
+    }
+
+    /** Descarta el catálogo actual; la siguiente consulta lo vuelve a cargar con una versión nueva. */
+    public void invalidate() {
+        version.incrementAndGet();
+        catalog.set(null);
+        inFlight.set(null);
+    }
+
+    private Mono<Catalog> reload() {
+        while (true) {
+            Mono<Catalog> running = inFlight.get();
+            if (running != null) return running;
+            long target = version.get();
+            AtomicReference<Mono<Catalog>> self = new AtomicReference<>();
+            Mono<Catalog> load = fetch(target)
+                    .doOnNext(c -> {
+                        // Una invalidación durante la carga deja este resultado obsoleto
+                        if (version.get() == target) catalog.set(c);
+                    })
+                    .doFinally(sig -> inFlight.compareAndSet(self.get(), null))
+                    .cache();
+            self.set(load);
+            if (inFlight.compareAndSet(null, load)) return load;
+        }
+    }
+
+    private Mono<Catalog> fetch(long target) {
+        Mono<List<Map<String, Object>>> questionsMono = fetchAll("/trivia_questions", "id,set_id,topic");
+        Mono<List<Map<String, Object>>> optionsMono = fetchAll("/trivia_options", "id,question_id,is_correct,explanation");
+
+        return Mono.zip(questionsMono, optionsMono).map(tuple -> {
+            Map<String, Map<String, Object>> questionRows = new HashMap<>();
+            for (Map<String, Object> q : tuple.getT1()) {
+                if (q.get("id") != null) questionRows.put(String.valueOf(q.get("id")), q);
+            }
+
+            Map<String, OptionKey> options = new HashMap<>();
+            Map<String, String> correctByQuestion = new HashMap<>();
+            for (Map<String, Object> o : tuple.getT2()) {
+                if (o.get("id") == null || o.get("question_id") == null) continue;
+                String optionId = String.valueOf(o.get("id"));
+                String questionId = String.valueOf(o.get("question_id"));
+                Map<String, Object> q = questionRows.get(questionId);
+                String setId = q == null || q.get("set_id") == null ? null : String.valueOf(q.get("set_id"));
+                boolean correct = Boolean.TRUE.equals(o.get("is_correct"));
+                String explanation = o.get("explanation") == null ? null : String.valueOf(o.get("explanation"));
+                options.put(optionId, new OptionKey(optionId, questionId, setId, correct, explanation));
+                if (correct) correctByQuestion.putIfAbsent(questionId, optionId);
+            }
+
+            Map<String, QuestionKey> questions = new HashMap<>();
+            Map<String, List<QuestionKey>> bySet = new HashMap<>();
+            for (Map.Entry<String, Map<String, Object>> e : questionRows.entrySet()) {
+                Map<String, Object> q = e.getValue();
+                String setId = q.get("set_id") == null ? null : String.valueOf(q.get("set_id"));
+                String topic = q.get("topic") == null ? null : String.valueOf(q.get("topic"));
+                QuestionKey key = new QuestionKey(e.getKey(), setId, topic, correctByQuestion.get(e.getKey()));
+                questions.put(e.getKey(), key);
+                if (setId != null) bySet.computeIfAbsent(setId, k -> new ArrayList<>()).add(key);
+            }
+            Map<String, List<QuestionKey>> bySetCopy = new HashMap<>();
+            bySet.forEach((k, v) -> bySetCopy.put(k, List.copyOf(v)));
+
+            return new Catalog(target, Map.copyOf(options), Map.copyOf(questions), Map.copyOf(bySetCopy), Instant.now());
+        });
+    }
+
+    // PostgREST limita las filas por respuesta; se pagina hasta recibir una página incompleta
+    private Mono<List<Map<String, Object>>> fetchAll(String path, String select) {
+        return Flux.range(0, Integer.MAX_VALUE)
+                .concatMap(page -> Mono.defer(() -> clients.getDbAdmin().get()
+                        .uri(uriBuilder -> uriBuilder
+                                .path(path)
+                                .queryParam("select", select)
+                                .queryParam("order", "id.asc")
+                                .queryParam("limit", PAGE_SIZE)
+                                .queryParam("offset", (long) page * PAGE_SIZE)
+                                .build())
+                        .retrieve()
+                        .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {})), 1)
+                .takeUntil(rows -> rows.size() < PAGE_SIZE)
+                .concatMapIterable(rows -> rows)
+                .collectList();
+    }
+}
@@ -0,0 +1,295 @@
+package org.uniproject.SaviaU.service.trivia;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escritura diferida y por lotes de {@code trivia_answers}.
+ * <p>
+ * {@code answer()} encola la fila y responde en cuanto la calificación está lista; las filas de
+ * todos los usuarios se agrupan en upserts masivos que se lanzan al llenar un lote o al vencer
+ * la ventana de tiempo. La cola es acotada: si se llena, quien encola espera a que haya hueco.
+ * Cada fila lleva un número de secuencia y {@link #barrier(String)} espera a que todo lo
+ * encolado hasta ese momento esté persistido, para que {@code finish()} cierre el intento con
+ * las respuestas ya escritas.
+ * <p>
+ * Ninguna respuesta se pierde en silencio: si Supabase no está disponible (5xx, 429, red) el
+ * lote se conserva y se reintenta en el siguiente vaciado, sin avanzar la secuencia persistida.
+ * Solo se descartan filas que Supabase rechaza (4xx); quedan anotadas por intento y la barrera
+ * de ese intento falla hasta que la pregunta se vuelve a responder.
+ */
+@Slf4j
+@Component
+public class TriviaAnswerWriter {
+
+    private static final String ON_CONFLICT = "attempt_id,question_id";
+
+    private final SupabaseClients clients;
+    private final SupabaseProperties.AnswerWriter cfg;
+    private final LinkedBlockingQueue<Pending> queue;
+    private final Object enqueueLock = new Object();
+    private final AtomicLong lastSeq = new AtomicLong();
+    private final AtomicLong barrierTarget = new AtomicLong();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final Sinks.Many<Long> persisted = Sinks.many().replay().latest();
+    private volatile long persistedSeq;
+    // Lote que no se pudo escribir por un error transitorio; se reintenta antes que la cola
+    private volatile Stalled stalled;
+    // Preguntas rechazadas por Supabase, por intento
+    private final Map<String, Set<String>> lost = new ConcurrentHashMap<>();
+
+    private final DistributionSummary batchSize;
+    private final Timer flushTimer;
+    private final Counter dropped;
+
+    public TriviaAnswerWriter(SupabaseClients clients, MeterRegistry registry) {
+        this.clients = clients;
+        this.cfg = clients.getProps().getAnswerWriter();
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, cfg.getQueueCapacity()));
+        Gauge.builder("trivia.answers.queue.depth", queue, LinkedBlockingQueue::size)
+                .description("Respuestas de trivia pendientes de persistir")
+                .register(registry);
+        this.batchSize = DistributionSummary.builder("trivia.answers.batch.size")
+                .description("Filas por upsert masivo de trivia_answers")
+                .register(registry);
+        this.flushTimer = Timer.builder("trivia.answers.flush")
+                .description("Duración de cada upsert masivo de trivia_answers")
+                .register(registry);
+        this.dropped = Counter.builder("trivia.answers.dropped")
+                .description("Respuestas rechazadas por Supabase y descartadas")
+                .register(registry);
+        persisted.tryEmitNext(0L);
+    }
+
+    private record Pending(long seq, String key, Map<String, Object> row) {}
+
+    /** Filas pendientes de un lote y la secuencia que queda persistida cuando se escriban. */
+    private record Stalled(List<Pending> rows, long maxSeq) {}
+
+    /**
+     * Encola una fila de {@code trivia_answers}. Completa en cuanto la fila está en cola; si la
+     * cola está llena, espera (forzando vaciados) hasta que haya hueco o venza el plazo.
+     */
+    public Mono<Void> enqueue(Map<String, Object> row) {
+        return enqueueAll(List.of(row));
+    }
+
+    /**
+     * Encola varias filas de forma contigua (todas o ninguna), de modo que viajan juntas en
+     * el mismo upsert masivo salvo que superen el tamaño de lote.
+     */
+    public Mono<Void> enqueueAll(List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) return Mono.empty();
+        if (rows.size() > cfg.getQueueCapacity()) {
+            return Mono.error(new RuntimeException("Demasiadas respuestas en una sola petición"));
+        }
+        return Mono.defer(() -> offer(rows) ? Mono.just(Boolean.TRUE) : Mono.<Boolean>empty())
+                .repeatWhenEmpty(attempts -> attempts
+                        .doOnNext(i -> flush())
+                        .delayElements(Duration.ofMillis(20)))
+                .timeout(Duration.ofMillis(Math.max(1, cfg.getEnqueueTimeoutMs())))
+                .onErrorMap(TimeoutException.class, ex -> new RuntimeException("Servicio ocupado, intenta de nuevo"))
+                .doOnNext(ok -> {
+                    if (queue.size() >= cfg.getBatchSize()) flush();
+                })
+                .then();
+    }
+
+    /**
+     * Espera a que todas las filas encoladas hasta ahora estén persistidas. Falla si vence el
+     * plazo o si alguna respuesta del intento fue rechazada, para que el cliente reintente en
+     * vez de cerrar el intento con respuestas que no están en {@code trivia_answers}.
+     */
+    public Mono<Void> barrier(String attemptId) {
+        return awaitPersisted().then(Mono.defer(() -> {
+            Set<String> rejected = attemptId == null ? null : lost.get(attemptId);
+            if (rejected == null || rejected.isEmpty()) return Mono.empty();
+            return Mono.error(new RuntimeException("No se pudieron guardar algunas respuestas, respóndelas de nuevo"));
+        }));
+    }
+
+    @Scheduled(fixedDelayString = "${supabase.answer-writer.flush-window-ms:200}")
+    public void flush() {
+        if ((queue.isEmpty() && stalled == null) || !flushing.compareAndSet(false, true)) return;
+        drainLoop()
+                .doFinally(sig -> {
+                    flushing.set(false);
+                    // Lote lleno o barrera esperando: no aguardar a la próxima ventana, salvo
+                    // que Supabase acabe de fallar (entonces se reintenta en la siguiente)
+                    if (stalled == null && (queue.size() >= cfg.getBatchSize() || barrierTarget.get() > persistedSeq)) flush();
+                })
+                .subscribe(v -> {}, ex -> log.error("[TRIVIA] Error vaciando respuestas: {}", ex.getMessage()));
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        try {
+            awaitPersisted().block(Duration.ofMillis(Math.max(1, cfg.getBarrierTimeoutMs())));
+        } catch (RuntimeException ex) {
+            log.warn("No se pudieron persistir respuestas pendientes al apagar: {}", ex.getMessage());
+        }
+    }
+
+    private Mono<Void> awaitPersisted() {
+        long target = lastSeq.get();
+        if (persistedSeq >= target) return Mono.empty();
+        barrierTarget.accumulateAndGet(target, Math::max);
+        flush();
+        return persisted.asFlux()
+                .filter(seq -> seq >= target)
+                .next()
+                .then()
+                .timeout(Duration.ofMillis(Math.max(1, cfg.getBarrierTimeoutMs())))
+                .onErrorMap(TimeoutException.class, ex -> {
+                    log.warn("[TRIVIA] Barrera de respuestas vencida (pendientes={})", queue.size());
+                    return new RuntimeException("No se pudieron guardar tus respuestas, intenta de nuevo");
+                });
+    }
+
+    private boolean offer(List<Map<String, Object>> rows) {
+        // La secuencia se asigna junto con la inserción para que el orden de la cola la respete
+        synchronized (enqueueLock) {
+            // Solo se encola bajo este lock y el vaciado solo libera hueco: las ofertas no fallan
+            if (queue.remainingCapacity() < rows.size()) return false;
+            long seq = lastSeq.get();
+            for (Map<String, Object> row : rows) {
+                String key = row.get("attempt_id") + "|" + row.get("question_id");
+                queue.offer(new Pending(++seq, key, row));
+                // La nueva respuesta sustituye a la que Supabase rechazó
+                Set<String> rejected = lost.get(String.valueOf(row.get("attempt_id")));
+                if (rejected != null) rejected.remove(String.valueOf(row.get("question_id")));
+            }
+            lastSeq.set(seq);
+            return true;
+        }
+    }
+
+    private Mono<Void> drainLoop() {
+        return Mono.defer(() -> {
+            Stalled batch = stalled;
+            stalled = null;
+            if (batch == null) {
+                List<Pending> drained = new ArrayList<>(cfg.getBatchSize());
+                queue.drainTo(drained, Math.max(1, cfg.getBatchSize()));
+                if (drained.isEmpty()) return Mono.empty();
+                batch = coalesce(drained);
+            }
+            // Si Supabase no responde el lote queda retenido y el bucle se detiene
+            return writeBatch(batch).flatMap(settled -> settled ? drainLoop() : Mono.empty());
+        });
+    }
+
+    private Stalled coalesce(List<Pending> batch) {
+        // Un upsert no puede tocar dos veces la misma fila: gana la respuesta más reciente
+        Map<String, Pending> coalesced = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            coalesced.remove(p.key());
+            coalesced.put(p.key(), p);
+        }
+        return new Stalled(new ArrayList<>(coalesced.values()), batch.get(batch.size() - 1).seq());
+    }
+
+    /** Escribe el lote; emite false si queda retenido por un error transitorio. */
+    private Mono<Boolean> writeBatch(Stalled batch) {
+        List<Map<String, Object>> rows = batch.rows().stream().map(Pending::row).toList();
+        Timer.Sample sample = Timer.start();
+
+        return withRetries(upsert(rows))
+                .thenReturn(Boolean.TRUE)
+                .onErrorResume(ex -> {
+                    if (isTransient(ex)) {
+                        log.warn("[TRIVIA] Upsert de {} respuestas falló, se conservan para reintentar: {}", rows.size(), ex.getMessage());
+                        stalled = batch;
+                        return Mono.just(Boolean.FALSE);
+                    }
+                    // Una fila inválida rechaza el lote completo: se aíslan fila a fila
+                    log.error("[TRIVIA] Upsert masivo de {} respuestas rechazado, reintentando fila a fila: {}", rows.size(), ex.getMessage());
+                    return writeRowByRow(batch, 0);
+                })
+                .doOnNext(settled -> {
+                    if (!settled) return;
+                    persistedSeq = batch.maxSeq();
+                    persisted.tryEmitNext(batch.maxSeq());
+                })
+                .doFinally(sig -> {
+                    sample.stop(flushTimer);
+                    batchSize.record(rows.size());
+                });
+    }
+
+    private Mono<Boolean> writeRowByRow(Stalled batch, int from) {
+        if (from >= batch.rows().size()) return Mono.just(Boolean.TRUE);
+        Pending p = batch.rows().get(from);
+        return withRetries(upsert(List.of(p.row())))
+                .thenReturn(Boolean.TRUE)
+                .onErrorResume(e -> {
+                    if (isTransient(e)) return Mono.just(Boolean.FALSE);
+                    reject(p, e);
+                    return Mono.just(Boolean.TRUE);
+                })
+                .flatMap(done -> {
+                    if (done) return writeRowByRow(batch, from + 1);
+                    stalled = new Stalled(batch.rows().subList(from, batch.rows().size()), batch.maxSeq());
+                    return Mono.just(Boolean.FALSE);
+                });
+    }
+
+    private void reject(Pending p, Throwable ex) {
+        dropped.increment();
+        String attemptId = String.valueOf(p.row().get("attempt_id"));
+        String questionId = String.valueOf(p.row().get("question_id"));
+        lost.computeIfAbsent(attemptId, k -> ConcurrentHashMap.newKeySet()).add(questionId);
+        log.error("[TRIVIA] Respuesta rechazada attempt={} question={}: {}", attemptId, questionId, ex.getMessage());
+    }
+
+    private Mono<Void> withRetries(Mono<Void> write) {
+        return write.retryWhen(Retry.backoff(Math.max(0, cfg.getMaxRetries()), Duration.ofMillis(100))
+                .filter(TriviaAnswerWriter::isTransient)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private Mono<Void> upsert(List<Map<String, Object>> rows) {
+        return clients.getDbAdmin().post()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/trivia_answers")
+                        .queryParam("on_conflict", ON_CONFLICT)
+                        .build())
+                .header("Prefer", "resolution=merge-duplicates,return=minimal")
+                .bodyValue(rows)
+                .retrieve()
+                .toBodilessEntity()
+                .then();
+    }
+
+    private static boolean isTransient(Throwable ex) {
+        if (ex instanceof WebClientResponseException w) {
+            return w.getStatusCode().is5xxServerError() || w.getStatusCode().value() == 429;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,193 @@
+package org.uniproject.SaviaU.service.trivia;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Intentos de trivia vivos en memoria.
+ * <p>
+ * {@code start()} registra el intento que acaba de insertar (dueño, set, inicio) y a partir de
+ * ahí {@code answer}, {@code finish} y {@code getResult} validan y puntúan sobre esta copia en
+ * vez de releer {@code trivia_attempts} y {@code trivia_answers}. Las entradas caducan por
+ * inactividad; si un intento no está (reinicio del nodo, expulsión) se reconstruye desde la
+ * base de datos.
+ */
+@Slf4j
+@Component
+public class TriviaAttemptStore {
+
+    private final SupabaseClients clients;
+    private final Cache<String, AttemptSession> sessions;
+
+    public TriviaAttemptStore(SupabaseClients clients) {
+        this.clients = clients;
+        SupabaseProperties.TriviaSession cfg = clients.getProps().getTriviaSession();
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cfg.getMaxSize()))
+                .expireAfterAccess(Duration.ofMinutes(Math.max(1, cfg.getTtlMinutes())))
+                .build();
+    }
+
+    /** Estado de un intento: respuestas marcadas en bitmaps indexados por orden de llegada. */
+    public static final class AttemptSession {
+        public static final int NOT_ANSWERED = -1;
+        public static final int WAS_WRONG = 0;
+        public static final int WAS_CORRECT = 1;
+
+        private final String attemptId;
+        private final String userId;
+        private final String setId;
+        private final Instant startedAt;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> questionIds = new ArrayList<>();
+        private final BitSet answered = new BitSet();
+        private final BitSet correct = new BitSet();
+        private int correctCount;
+        private Instant completedAt;
+        private Double scorePercent;
+
+        AttemptSession(String attemptId, String userId, String setId, Instant startedAt) {
+            this.attemptId = attemptId;
+            this.userId = userId;
+            this.setId = setId;
+            this.startedAt = startedAt;
+        }
+
+        public String attemptId() { return attemptId; }
+        public String userId() { return userId; }
+        public String setId() { return setId; }
+        public Instant startedAt() { return startedAt; }
+
+        public synchronized Instant completedAt() { return completedAt; }
+        public synchronized Double scorePercent() { return scorePercent; }
+        public synchronized boolean isCompleted() { return completedAt != null; }
+        public synchronized int correctCount() { return correctCount; }
+        public synchronized int answeredCount() { return answered.cardinality(); }
+
+        /**
+         * Registra (o reemplaza, como el upsert por attempt_id,question_id) una respuesta.
+         *
+         * @return estado previo de la pregunta: {@link #NOT_ANSWERED}, {@link #WAS_WRONG} o {@link #WAS_CORRECT}
+         */
+        public synchronized int record(String questionId, boolean isCorrect) {
+            int bit = index.computeIfAbsent(questionId, k -> {
+                questionIds.add(k);
+                return questionIds.size() - 1;
+            });
+            int previous = !answered.get(bit) ? NOT_ANSWERED : correct.get(bit) ? WAS_CORRECT : WAS_WRONG;
+            if (previous == WAS_CORRECT) correctCount--;
+            answered.set(bit);
+            correct.set(bit, isCorrect);
+            if (isCorrect) correctCount++;
+            return previous;
+        }
+
+        public synchronized void complete(Instant at, Double score) {
+            this.completedAt = at;
+            this.scorePercent = score;
+        }
+
+        /** Aciertos por tema; {@code topicOf} devuelve null para preguntas que no cuentan. */
+        public synchronized Map<String, Integer> topicCorrect(Function<String, String> topicOf) {
+            Map<String, Integer> out = new HashMap<>();
+            for (int bit = correct.nextSetBit(0); bit >= 0; bit = correct.nextSetBit(bit + 1)) {
+                String topic = topicOf.apply(questionIds.get(bit));
+                if (topic != null) out.merge(topic, 1, Integer::sum);
+            }
+            return out;
+        }
+    }
+
+    /** Registra un intento recién creado por {@code start()}. */
+    public AttemptSession register(String attemptId, String userId, String setId, Instant startedAt) {
+        AttemptSession session = new AttemptSession(attemptId, userId, setId, startedAt);
+        sessions.put(attemptId, session);
+        return session;
+    }
+
+    /** Intento en memoria o, si no está, reconstruido desde trivia_attempts y trivia_answers. */
+    public Mono<AttemptSession> get(String attemptId) {
+        if (attemptId == null || attemptId.isBlank()) {
+            return Mono.error(new RuntimeException("Intento no encontrado"));
+        }
+        AttemptSession cached = sessions.getIfPresent(attemptId);
+        if (cached != null) return Mono.just(cached);
+        return load(attemptId)
+                .map(loaded -> {
+                    // Si otra petición lo cargó a la vez, gana la primera copia
+                    AttemptSession prev = sessions.asMap().putIfAbsent(attemptId, loaded);
+                    return prev != null ? prev : loaded;
+                });
+    }
+
+    private Mono<AttemptSession> load(String attemptId) {
+        Mono<List<Map<String, Object>>> attemptMono = clients.getDbAdmin().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/trivia_attempts")
+                        .queryParam("select", "id,user_id,set_id,started_at,completed_at,score_percent")
+                        .queryParam("id", "eq." + attemptId)
+                        .build())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+
+        Mono<List<Map<String, Object>>> answersMono = clients.getDbAdmin().get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/trivia_answers")
+                        .queryParam("select", "question_id,is_correct")
+                        .queryParam("attempt_id", "eq." + attemptId)
+                        .build())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+
+        return Mono.zip(attemptMono, answersMono).flatMap(tuple -> {
+            List<Map<String, Object>> attempts = tuple.getT1();
+            if (attempts.isEmpty()) return Mono.error(new RuntimeException("Intento no encontrado"));
+            Map<String, Object> row = attempts.get(0);
+            AttemptSession session = new AttemptSession(
+                    attemptId,
+                    row.get("user_id") == null ? null : String.valueOf(row.get("user_id")),
+                    row.get("set_id") == null ? null : String.valueOf(row.get("set_id")),
+                    parseInstant(row.get("started_at")));
+            for (Map<String, Object> a : tuple.getT2()) {
+                if (a.get("question_id") == null) continue;
+                session.record(String.valueOf(a.get("question_id")), Boolean.TRUE.equals(a.get("is_correct")));
+            }
+            Instant completedAt = parseInstant(row.get("completed_at"));
+            if (completedAt != null) {
+                // Sin score_percent guardado, el llamador lo recalcula con el total del set
+                session.complete(completedAt, row.get("score_percent") instanceof Number n ? n.doubleValue() : null);
+            }
+            log.debug("Intento {} reconstruido desde la base de datos", attemptId);
+            return Mono.just(session);
+        });
+    }
+
+    private static Instant parseInstant(Object raw) {
+        if (raw == null) return null;
+        try {
+            return OffsetDateTime.parse(String.valueOf(raw)).toInstant();
+        } catch (Exception e) {
+            try {
+                return Instant.parse(String.valueOf(raw));
+            } catch (Exception ignored) {
+                return null;
+            }
+        }
+    }
+}
@@ -6,13 +6,19 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.uniproject.SaviaU.config.SupabaseClients;
 import org.uniproject.SaviaU.dto.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import org.uniproject.SaviaU.service.auth.UserIdentityService;
 import org.uniproject.SaviaU.service.progress.ProgressService;
+import org.uniproject.SaviaU.service.profile.RankingEngine;
+import org.uniproject.SaviaU.service.progress.HistoryStreams;
+import org.uniproject.SaviaU.service.progress.DailyScoreStore;
+import org.uniproject.SaviaU.service.progress.TopicMasteryStore;
 
 @Slf4j
 @Service
@@ -20,15 +26,26 @@ import org.uniproject.SaviaU.service.progress.ProgressService;
 @SuppressWarnings("rawtypes")
 public class TriviaService {
 
+    private static final int MAX_BATCH_ANSWERS = 100;
+
     private final SupabaseClients clients;
     private final ProgressService progressService;
+    private final UserIdentityService identityService;
+    private final TriviaAnswerKey answerKey;
+    private final TriviaAttemptStore attemptStore;
+    private final TriviaAnswerWriter answerWriter;
+    private final TopicMasteryStore masteryStore;
+    private final HistoryStreams historyStreams;
+    private final RankingEngine rankingEngine;
+    private final DailyScoreStore dailyScores;
+
+    private Mono<Map<String, Object>> getUserFromToken(String accessToken) {
+        return identityService.resolveUser(accessToken);
+    }
 
-    private Mono<Map> getUserFromToken(String accessToken) {
-        return clients.buildUserAuthClient(accessToken)
-                .get()
-                .uri("/user")
-                .retrieve()
-                .bodyToMono(Map.class);
+    /** Versión del catálogo de sets y preguntas; la sube cada cambio de administración. */
+    public long catalogVersion() {
+        return answerKey.version();
     }
 
     public Mono<List<TriviaSetDto>> getSets() {
@@ -134,11 +151,15 @@ public class TriviaService {
                         .retrieve()
                         .bodyToMono(List.class)
                         .map(l -> (Map) l.get(0))
-                        .map(row -> TriviaStartResponse.builder()
-                                .attemptId((String) row.get("id"))
-                                .setId((String) row.get("set_id"))
-                                .startedAt((String) row.get("started_at"))
-                                .build());
+                        .map(row -> {
+                            // El intento queda vivo en memoria para answer/finish/getResult
+                            attemptStore.register((String) row.get("id"), userId, request.getSetId(), now);
+                            return TriviaStartResponse.builder()
+                                    .attemptId((String) row.get("id"))
+                                    .setId((String) row.get("set_id"))
+                                    .startedAt((String) row.get("started_at"))
+                                    .build();
+                        });
             });
         });
     }
@@ -146,214 +167,197 @@ public class TriviaService {
     public Mono<TriviaAnswerResponse> answer(TriviaAnswerRequest request) {
         return getUserFromToken(request.getAccessToken()).flatMap(user -> {
             String userId = (String) user.get("id");
-            Mono<List<Map>> attemptMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/trivia_attempts")
-                            .queryParam("select", "id,user_id,set_id,completed_at")
-                            .queryParam("id", "eq." + request.getAttemptId())
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
+            // Opción, pregunta y opción correcta salen de la clave en memoria
+            Mono<TriviaAnswerKey.Catalog> keyMono = answerKey.forOption(request.getSelectedOptionId());
+
+            return Mono.zip(attemptStore.get(request.getAttemptId()), keyMono).flatMap(tuple -> {
+                TriviaAttemptStore.AttemptSession attempt = tuple.getT1();
+                TriviaAnswerKey.Catalog key = tuple.getT2();
+                if (key.option(request.getSelectedOptionId()) == null) return Mono.error(new RuntimeException("Opción inválida"));
+                if (!Objects.equals(userId, attempt.userId())) return Mono.error(new RuntimeException("No autorizado"));
+                if (attempt.isCompleted()) return Mono.error(new RuntimeException("El intento ya fue finalizado"));
+
+                Graded graded = grade(attempt, key, request.getQuestionId(), request.getSelectedOptionId());
+                if (graded == null) return Mono.error(new RuntimeException("Pregunta inválida"));
+
+                // Se responde en cuanto la fila está en cola; TriviaAnswerWriter la persiste por lotes.
+                // El intento y el dominio solo cuentan la respuesta si llegó a encolarse
+                return answerWriter.enqueue(graded.row())
+                        .then(Mono.fromRunnable(() -> record(attempt, key, graded)))
+                        .thenReturn(graded.response());
+            });
+        });
+    }
 
-            Mono<List<Map>> optMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/trivia_options")
-                            .queryParam("select", "id,question_id,is_correct,explanation")
-                            .queryParam("id", "eq." + request.getSelectedOptionId())
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
+    /**
+     * Califica varias respuestas de un mismo intento en una sola pasada y las persiste juntas.
+     * Si alguna es inválida no se registra ninguna.
+     */
+    public Mono<List<TriviaAnswerResponse>> answerBatch(TriviaBatchAnswerRequest request) {
+        List<TriviaBatchAnswerRequest.Answer> answers = Optional.ofNullable(request.getAnswers()).orElse(List.of());
+        if (answers.isEmpty()) return Mono.error(new RuntimeException("Sin respuestas"));
+        if (answers.size() > MAX_BATCH_ANSWERS) return Mono.error(new RuntimeException("Demasiadas respuestas en una sola petición"));
 
-            return Mono.zip(attemptMono, optMono).flatMap(tuple -> {
-                List<Map> attempts = tuple.getT1();
-                List<Map> options = tuple.getT2();
+        return getUserFromToken(request.getAccessToken()).flatMap(user -> {
+            String userId = (String) user.get("id");
+            // Una sola recarga de la clave basta aunque falten varias opciones
+            Mono<TriviaAnswerKey.Catalog> keyMono = answerKey.current().flatMap(key -> answers.stream()
+                    .map(TriviaBatchAnswerRequest.Answer::getSelectedOptionId)
+                    .filter(id -> id != null && key.option(id) == null)
+                    .findFirst()
+                    .map(answerKey::forOption)
+                    .orElse(Mono.just(key)));
+
+            return Mono.zip(attemptStore.get(request.getAttemptId()), keyMono).flatMap(tuple -> {
+                TriviaAttemptStore.AttemptSession attempt = tuple.getT1();
+                TriviaAnswerKey.Catalog key = tuple.getT2();
+                if (!Objects.equals(userId, attempt.userId())) return Mono.error(new RuntimeException("No autorizado"));
+                if (attempt.isCompleted()) return Mono.error(new RuntimeException("El intento ya fue finalizado"));
+
+                List<Graded> graded = new ArrayList<>(answers.size());
+                for (TriviaBatchAnswerRequest.Answer a : answers) {
+                    if (key.option(a.getSelectedOptionId()) == null) {
+                        return Mono.error(new RuntimeException("Opción inválida: " + a.getSelectedOptionId()));
+                    }
+                    Graded g = grade(attempt, key, a.getQuestionId(), a.getSelectedOptionId());
+                    if (g == null) return Mono.error(new RuntimeException("Pregunta inválida: " + a.getQuestionId()));
+                    graded.add(g);
+                }
 
-                if (attempts.isEmpty()) return Mono.error(new RuntimeException("Intento no encontrado"));
-                if (options.isEmpty()) return Mono.error(new RuntimeException("Opción inválida"));
+                List<Map<String, Object>> rows = new ArrayList<>(graded.size());
+                List<TriviaAnswerResponse> responses = new ArrayList<>(graded.size());
+                for (Graded g : graded) {
+                    rows.add(g.row());
+                    responses.add(g.response());
+                }
+                return answerWriter.enqueueAll(rows)
+                        .then(Mono.fromRunnable(() -> graded.forEach(g -> record(attempt, key, g))))
+                        .thenReturn(responses);
+            });
+        });
+    }
 
-                Map attempt = attempts.get(0);
-                Map opt = options.get(0);
+    private record Graded(Map<String, Object> row, TriviaAnswerResponse response) {}
+
+    /** Marca la respuesta en el intento y aplica al dominio por tema solo lo que cambió. */
+    private void record(TriviaAttemptStore.AttemptSession attempt, TriviaAnswerKey.Catalog key, Graded graded) {
+        String questionId = graded.response().getQuestionId();
+        boolean isCorrect = graded.response().isCorrect();
+        int previous = attempt.record(questionId, isCorrect);
+        TriviaAnswerKey.QuestionKey q = key.question(questionId);
+        if (q == null || q.topic() == null) return;
+        int dAnswered = previous == TriviaAttemptStore.AttemptSession.NOT_ANSWERED ? 1 : 0;
+        int dCorrect = (isCorrect ? 1 : 0) - (previous == TriviaAttemptStore.AttemptSession.WAS_CORRECT ? 1 : 0);
+        masteryStore.apply(attempt.userId(), q.topic(), dAnswered, dCorrect);
+    }
 
-                String attemptUserId = attempt.get("user_id") == null ? null : String.valueOf(attempt.get("user_id"));
-                if (!Objects.equals(userId, attemptUserId)) return Mono.error(new RuntimeException("No autorizado"));
-                if (attempt.get("completed_at") != null) return Mono.error(new RuntimeException("El intento ya fue finalizado"));
+    /** Califica una respuesta contra la clave en memoria; null si la pregunta no existe. */
+    private Graded grade(TriviaAttemptStore.AttemptSession attempt, TriviaAnswerKey.Catalog key,
+                         String payloadQuestionId, String selectedOptionId) {
+        TriviaAnswerKey.OptionKey opt = key.option(selectedOptionId);
+        String questionIdFromOption = opt.questionId();
+        if (payloadQuestionId != null && !Objects.equals(payloadQuestionId, questionIdFromOption)) {
+            log.warn("[TRIVIA] questionId inconsistente. payload={}, derivada={}", payloadQuestionId, questionIdFromOption);
+        }
 
-                String questionIdFromOption = opt.get("question_id") == null ? null : String.valueOf(opt.get("question_id"));
-                if (questionIdFromOption == null) return Mono.error(new RuntimeException("Pregunta inválida"));
-                if (request.getQuestionId() != null && !Objects.equals(request.getQuestionId(), questionIdFromOption)) {
-                    log.warn("[TRIVIA] questionId inconsistente. payload={}, derivada={}", request.getQuestionId(), questionIdFromOption);
-                }
+        TriviaAnswerKey.QuestionKey q = key.question(questionIdFromOption);
+        if (q == null) return null;
+        String setFromAttempt = attempt.setId();
+        if (!Objects.equals(setFromAttempt, q.setId())) {
+            log.warn("[TRIVIA] Pregunta {} pertenece a set {} pero el intento es {}. Se continuará para no bloquear al usuario.",
+                    questionIdFromOption, q.setId(), setFromAttempt);
+        }
 
-                Mono<List<Map>> qMono = clients.getDbAdmin().get()
-                        .uri(uriBuilder -> uriBuilder
-                                .path("/trivia_questions")
-                                .queryParam("select", "id,set_id,topic")
-                                .queryParam("id", "eq." + questionIdFromOption)
-                                .build())
-                        .retrieve()
-                        .bodyToFlux(Map.class)
-                        .collectList();
-
-                return qMono.flatMap(questions -> {
-                    if (questions.isEmpty()) return Mono.error(new RuntimeException("Pregunta inválida"));
-                    Map q = questions.get(0);
-                    String setFromAttempt = attempt.get("set_id") == null ? null : String.valueOf(attempt.get("set_id"));
-                    String setFromQuestion = q.get("set_id") == null ? null : String.valueOf(q.get("set_id"));
-                                        if (!Objects.equals(setFromAttempt, setFromQuestion)) {
-                                                log.warn("[TRIVIA] Pregunta {} pertenece a set {} pero el intento es {}. Se continuará para no bloquear al usuario.",
-                                                                questionIdFromOption, setFromQuestion, setFromAttempt);
-                                        }
-
-                    String explanation = opt.get("explanation") == null ? null : String.valueOf(opt.get("explanation"));
-
-                    Mono<List<Map>> correctOptMono = clients.getDbAdmin().get()
-                            .uri(uriBuilder -> uriBuilder
-                                    .path("/trivia_options")
-                                    .queryParam("select", "id,is_correct")
-                                    .queryParam("question_id", "eq." + questionIdFromOption)
-                                    .queryParam("is_correct", "eq.true")
-                                    .build())
-                            .retrieve()
-                            .bodyToFlux(Map.class)
-                            .collectList();
-
-                    return correctOptMono.flatMap(corr -> {
-                        String correctOptionId = corr.isEmpty() ? null : String.valueOf(corr.get(0).get("id"));
-                        boolean computedIsCorrect = Objects.equals(correctOptionId, request.getSelectedOptionId())
-                                || Boolean.TRUE.equals(opt.get("is_correct"));
-
-                        Map<String, Object> answerRow = new HashMap<>();
-                        answerRow.put("attempt_id", request.getAttemptId());
-                        answerRow.put("question_id", questionIdFromOption);
-                        answerRow.put("selected_option_id", request.getSelectedOptionId());
-                        answerRow.put("is_correct", computedIsCorrect);
-
-                        TriviaAnswerResponse response = TriviaAnswerResponse.builder()
-                                .attemptId(request.getAttemptId())
-                                .questionId(questionIdFromOption)
-                                .selectedOptionId(request.getSelectedOptionId())
-                                .correct(computedIsCorrect)
-                                .explanation(explanation)
-                                .correctOptionId(correctOptionId)
-                                .build();
-
-                        return clients.getDbAdmin().post()
-                                .uri(uriBuilder -> uriBuilder
-                                        .path("/trivia_answers")
-                                        .queryParam("on_conflict", "attempt_id,question_id")
-                                        .build())
-                                .header("Prefer", "resolution=merge-duplicates,return=minimal")
-                                .bodyValue(answerRow)
-                                .retrieve()
-                                .bodyToMono(String.class)
-                                .onErrorResume(WebClientResponseException.class, ex -> Mono.just(""))
-                                .defaultIfEmpty("")
-                                .map(__ -> response);
-                    });
-                });
-            });
-        });
+        String correctOptionId = q.correctOptionId();
+        boolean computedIsCorrect = Objects.equals(correctOptionId, selectedOptionId) || opt.correct();
+
+        Map<String, Object> answerRow = new HashMap<>();
+        answerRow.put("attempt_id", attempt.attemptId());
+        answerRow.put("question_id", questionIdFromOption);
+        answerRow.put("selected_option_id", selectedOptionId);
+        answerRow.put("is_correct", computedIsCorrect);
+
+        TriviaAnswerResponse response = TriviaAnswerResponse.builder()
+                .attemptId(attempt.attemptId())
+                .questionId(questionIdFromOption)
+                .selectedOptionId(selectedOptionId)
+                .correct(computedIsCorrect)
+                .explanation(opt.explanation())
+                .correctOptionId(correctOptionId)
+                .build();
+        return new Graded(answerRow, response);
     }
 
     public Mono<TriviaResultDto> finish(TriviaFinishRequest request) {
         return getUserFromToken(request.getAccessToken()).flatMap(user -> {
             String userId = (String) user.get("id");
-            Mono<List<Map>> attemptMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/trivia_attempts")
-                            .queryParam("select", "id,user_id,set_id,started_at,completed_at")
-                            .queryParam("id", "eq." + request.getAttemptId())
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
-
-            return attemptMono.flatMap(list -> {
-                if (list.isEmpty()) return Mono.error(new RuntimeException("Intento no encontrado"));
-                Map attempt = list.get(0);
-                if (!Objects.equals(userId, attempt.get("user_id"))) return Mono.error(new RuntimeException("No autorizado"));
-                String setId = (String) attempt.get("set_id");
 
-                Mono<List<Map>> answersMono = clients.getDbAdmin().get()
-                        .uri(uriBuilder -> uriBuilder
-                                .path("/trivia_answers")
-                                .queryParam("select", "question_id,is_correct")
-                                .queryParam("attempt_id", "eq." + request.getAttemptId())
-                                .build())
-                        .retrieve()
-                        .bodyToFlux(Map.class)
-                        .collectList();
+            return Mono.zip(attemptStore.get(request.getAttemptId()), answerKey.current()).flatMap(tuple -> {
+                TriviaAttemptStore.AttemptSession attempt = tuple.getT1();
+                TriviaAnswerKey.Catalog key = tuple.getT2();
+                if (!Objects.equals(userId, attempt.userId())) return Mono.error(new RuntimeException("No autorizado"));
+                String setId = attempt.setId();
+
+                // Puntaje calculado en memoria con las respuestas registradas en el intento
+                Map<String, String> qTopic = topicsOfSet(key, setId);
+                int totalQuestions = key.questionsOfSet(setId).size();
+                int correct = attempt.correctCount();
+                Map<String, Integer> topicCorrect = attempt.topicCorrect(qTopic::get);
+                double score = totalQuestions == 0 ? 0.0 : (correct * 100.0 / totalQuestions);
+                Instant now = Instant.now();
 
-                Mono<List<Map>> questionsMono = clients.getDbAdmin().get()
+                Mono<String> updateAttempt = clients.getDbAdmin().patch()
                         .uri(uriBuilder -> uriBuilder
-                                .path("/trivia_questions")
-                                .queryParam("select", "id,topic")
-                                .queryParam("set_id", "eq." + setId)
+                                .path("/trivia_attempts")
+                                .queryParam("id", "eq." + request.getAttemptId())
                                 .build())
+                        .header("Prefer", "return=minimal")
+                        .bodyValue(Map.of(
+                                "completed_at", now.toString(),
+                                "score_percent", score
+                        ))
                         .retrieve()
-                        .bodyToFlux(Map.class)
-                        .collectList();
-
-                return Mono.zip(answersMono, questionsMono).flatMap(tuple -> {
-                    List<Map> ans = tuple.getT1();
-                    List<Map> qList = tuple.getT2();
-                    Map<String, String> qTopic = qList.stream().collect(Collectors.toMap(m -> (String) m.get("id"), m -> (String) m.get("topic")));
-                    int totalQuestions = qList.size();
-                    int correct = 0;
-                    Map<String, Integer> topicCorrect = new HashMap<>();
-                    for (Map a : ans) {
-                        boolean isC = Boolean.TRUE.equals(a.get("is_correct"));
-                        if (isC) {
-                            correct++;
-                            String qid = (String) a.get("question_id");
-                            String topic = qTopic.get(qid);
-                            if (topic != null) topicCorrect.put(topic, topicCorrect.getOrDefault(topic, 0) + 1);
-                        }
-                    }
-                    double score = totalQuestions == 0 ? 0.0 : (correct * 100.0 / totalQuestions);
-                    Instant now = Instant.now();
-
-                    Mono<String> updateAttempt = clients.getDbAdmin().patch()
-                            .uri(uriBuilder -> uriBuilder
-                                    .path("/trivia_attempts")
-                                    .queryParam("id", "eq." + request.getAttemptId())
-                                    .build())
-                            .header("Prefer", "return=minimal")
-                            .bodyValue(Map.of(
-                                    "completed_at", now.toString(),
-                                    "score_percent", score
-                            ))
-                            .retrieve()
-                            .bodyToMono(String.class)
-                            .onErrorResume(WebClientResponseException.class, ex -> Mono.just(""));
-
-                    TriviaResultDto result = TriviaResultDto.builder()
-                            .attemptId((String) attempt.get("id"))
-                            .userId(userId)
-                            .setId(setId)
-                            .scorePercent(score)
-                            .totalCorrect(correct)
-                            .totalQuestions(totalQuestions)
-                            .completedAt(now)
-                            .topicBreakdown(topicCorrect)
-                            .recommendedTopics(recommendTopics(topicCorrect))
-                            .build();
-
-                    Map<String, Object> metadata = new HashMap<>();
-                    metadata.put("attemptId", request.getAttemptId());
-                    metadata.put("setId", setId);
-                    metadata.put("score", score);
-                    metadata.put("totalQuestions", totalQuestions);
-                    metadata.put("correct", correct);
-
-                    Mono<AwardResultDto> record = progressService
-                            .recordActivityForUserId(userId, "TRIVIA_COMPLETED", metadata)
-                            .onErrorResume(ex -> Mono.just(AwardResultDto.builder().awarded(List.of()).build()));
-
-                    return updateAttempt.then(record).thenReturn(result);
-                });
+                        .bodyToMono(String.class)
+                        .onErrorResume(WebClientResponseException.class, ex -> Mono.just(""));
+
+                TriviaResultDto result = TriviaResultDto.builder()
+                        .attemptId(attempt.attemptId())
+                        .userId(userId)
+                        .setId(setId)
+                        .scorePercent(score)
+                        .totalCorrect(correct)
+                        .totalQuestions(totalQuestions)
+                        .completedAt(now)
+                        .topicBreakdown(topicCorrect)
+                        .recommendedTopics(recommendTopics(topicCorrect))
+                        .build();
+
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("attemptId", request.getAttemptId());
+                metadata.put("setId", setId);
+                metadata.put("score", score);
+                metadata.put("totalQuestions", totalQuestions);
+                metadata.put("correct", correct);
+                // Temas tocados: el motor de insignias solo evalúa la maestría de estos
+                metadata.put("topics", new ArrayList<>(new TreeSet<>(qTopic.values())));
+
+                Mono<AwardResultDto> record = progressService
+                        .recordActivityForUserId(userId, "TRIVIA_COMPLETED", metadata)
+                        .onErrorResume(ex -> Mono.just(AwardResultDto.builder().awarded(List.of()).build()));
+
+                // Cerrar el intento solo cuando sus respuestas ya están escritas. La copia en memoria,
+                // el ranking y la serie diaria cambian solo si trivia_attempts quedó cerrado
+                return answerWriter.barrier(attempt.attemptId())
+                        .then(updateAttempt)
+                        .then(Mono.fromRunnable(() -> {
+                            Double previousScore = attempt.isCompleted() ? attempt.scorePercent() : null;
+                            Instant previousAt = attempt.completedAt();
+                            attempt.complete(now, score);
+                            rankingEngine.onAttemptCompleted(userId, attempt.attemptId(), previousScore, score, now);
+                            dailyScores.onAttemptCompleted(userId, previousAt, previousScore, now, score);
+                        }))
+                        .then(record)
+                        .thenReturn(result);
             });
         });
     }
@@ -361,70 +365,29 @@ public class TriviaService {
     public Mono<TriviaResultDto> getResult(String accessToken, String attemptId) {
         return getUserFromToken(accessToken).flatMap(user -> {
             String userId = (String) user.get("id");
-            Mono<List<Map>> attemptMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/trivia_attempts")
-                            .queryParam("select", "id,user_id,set_id,completed_at,score_percent")
-                            .queryParam("id", "eq." + attemptId)
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
 
-            return attemptMono.flatMap(list -> {
-                if (list.isEmpty()) return Mono.error(new RuntimeException("Intento no encontrado"));
-                Map attempt = list.get(0);
-                if (!Objects.equals(userId, attempt.get("user_id"))) return Mono.error(new RuntimeException("No autorizado"));
-                String setId = (String) attempt.get("set_id");
-
-                Mono<List<Map>> ansMono = clients.getDbAdmin().get()
-                        .uri(uriBuilder -> uriBuilder
-                                .path("/trivia_answers")
-                                .queryParam("select", "question_id,is_correct")
-                                .queryParam("attempt_id", "eq." + attemptId)
-                                .build())
-                        .retrieve()
-                        .bodyToFlux(Map.class)
-                        .collectList();
-                Mono<List<Map>> qMono = clients.getDbAdmin().get()
-                        .uri(uriBuilder -> uriBuilder
-                                .path("/trivia_questions")
-                                .queryParam("select", "id,topic")
-                                .queryParam("set_id", "eq." + setId)
-                                .build())
-                        .retrieve()
-                        .bodyToFlux(Map.class)
-                        .collectList();
-
-                return Mono.zip(ansMono, qMono).map(tuple -> {
-                    List<Map> ans = tuple.getT1();
-                    List<Map> qList = tuple.getT2();
-                    Map<String, String> qTopic = qList.stream().collect(Collectors.toMap(m -> (String) m.get("id"), m -> (String) m.get("topic")));
-                    int totalQuestions = qList.size();
-                    int correct = 0;
-                    Map<String, Integer> topicCorrect = new HashMap<>();
-                    for (Map a : ans) {
-                        boolean isC = Boolean.TRUE.equals(a.get("is_correct"));
-                        if (isC) {
-                            correct++;
-                            String topic = qTopic.get((String) a.get("question_id"));
-                            if (topic != null) topicCorrect.put(topic, topicCorrect.getOrDefault(topic, 0) + 1);
-                        }
-                    }
-                    double score = totalQuestions == 0 ? 0.0 : (correct * 100.0 / totalQuestions);
-                    Instant completedAt = attempt.get("completed_at") == null ? null : Instant.parse((String) attempt.get("completed_at"));
-                    return TriviaResultDto.builder()
-                            .attemptId((String) attempt.get("id"))
-                            .userId(userId)
-                            .setId(setId)
-                            .scorePercent(attempt.get("score_percent") == null ? score : ((Number) attempt.get("score_percent")).doubleValue())
-                            .totalCorrect(correct)
-                            .totalQuestions(totalQuestions)
-                            .completedAt(completedAt)
-                            .topicBreakdown(topicCorrect)
-                            .recommendedTopics(recommendTopics(topicCorrect))
-                            .build();
-                });
+            return Mono.zip(attemptStore.get(attemptId), answerKey.current()).map(tuple -> {
+                TriviaAttemptStore.AttemptSession attempt = tuple.getT1();
+                TriviaAnswerKey.Catalog key = tuple.getT2();
+                if (!Objects.equals(userId, attempt.userId())) throw new RuntimeException("No autorizado");
+                String setId = attempt.setId();
+
+                Map<String, String> qTopic = topicsOfSet(key, setId);
+                int totalQuestions = key.questionsOfSet(setId).size();
+                int correct = attempt.correctCount();
+                Map<String, Integer> topicCorrect = attempt.topicCorrect(qTopic::get);
+                double score = totalQuestions == 0 ? 0.0 : (correct * 100.0 / totalQuestions);
+                return TriviaResultDto.builder()
+                        .attemptId(attempt.attemptId())
+                        .userId(userId)
+                        .setId(setId)
+                        .scorePercent(attempt.scorePercent() == null ? score : attempt.scorePercent())
+                        .totalCorrect(correct)
+                        .totalQuestions(totalQuestions)
+                        .completedAt(attempt.completedAt())
+                        .topicBreakdown(topicCorrect)
+                        .recommendedTopics(recommendTopics(topicCorrect))
+                        .build();
             });
         });
     }
@@ -432,89 +395,60 @@ public class TriviaService {
     public Mono<TriviaStatsDto> getStats(String accessToken) {
         return getUserFromToken(accessToken).flatMap(user -> {
             String userId = (String) user.get("id");
-            Mono<List<Map>> attemptsMono = clients.getDbAdmin().get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/trivia_attempts")
-                            .queryParam("select", "id,user_id,completed_at,score_percent")
-                            .queryParam("user_id", "eq." + userId)
-                            .build())
-                    .retrieve()
-                    .bodyToFlux(Map.class)
-                    .collectList();
-
-            return attemptsMono.flatMap(attempts -> {
-                int totalAttempts = attempts.size();
-                double avg = attempts.stream()
-                        .mapToDouble(m -> toDouble(m.get("score_percent")))
-                        .average().orElse(0.0);
-                double best = attempts.stream()
-                        .mapToDouble(m -> toDouble(m.get("score_percent")))
-                        .max().orElse(0.0);
-                Instant lastAt = attempts.stream()
-                        .map(m -> (String) m.get("completed_at"))
-                        .filter(Objects::nonNull)
-                        .map(Instant::parse)
-                        .max(Comparator.naturalOrder())
-                        .orElse(null);
-
-                // Cargar respuestas de todos los intentos del usuario
-                if (attempts.isEmpty()) {
-                    return Mono.just(TriviaStatsDto.builder()
+            // Intentos por keyset y respuestas por tramos: se acumulan según llegan
+            StatsAccumulator acc = new StatsAccumulator();
+            Flux<String> attemptIds = historyStreams
+                    .byUser("trivia_attempts", "id,completed_at,score_percent", userId)
+                    .doOnNext(m -> acc.addAttempt(toDouble(m.get("score_percent")), (String) m.get("completed_at")))
+                    .map(m -> String.valueOf(m.get("id")));
+
+            return historyStreams.byIds(attemptIds, "trivia_answers", "attempt_id", "is_correct")
+                    .doOnNext(a -> acc.addAnswer(Boolean.TRUE.equals(a.get("is_correct"))))
+                    .then(Mono.fromSupplier(() -> TriviaStatsDto.builder()
                             .userId(userId)
-                            .totalAttempts(0)
-                            .avgScore(0.0)
-                            .bestScore(0.0)
-                            .lastAttemptAt(null)
-                            .totalQuestionsAnswered(0)
-                            .totalCorrect(0)
-                            .build());
-                }
-                Mono<List<Map>> ansMono;
-                if (attempts.size() == 1) {
-                    String attemptId = String.valueOf(attempts.get(0).get("id"));
-                    ansMono = clients.getDbAdmin().get()
-                            .uri(uriBuilder -> uriBuilder
-                                    .path("/trivia_answers")
-                                    .queryParam("select", "is_correct,attempt_id")
-                                    .queryParam("attempt_id", "eq." + attemptId)
-                                    .build())
-                            .retrieve()
-                            .bodyToFlux(Map.class)
-                            .collectList();
-                } else {
-                    String orParam = attempts.stream()
-                            .map(m -> String.valueOf(m.get("id")))
-                            .map(id -> "attempt_id.eq." + id)
-                            .collect(Collectors.joining(","));
-                    String orWrapped = "(" + orParam + ")";
-                    ansMono = clients.getDbAdmin().get()
-                            .uri(uriBuilder -> uriBuilder
-                                    .path("/trivia_answers")
-                                    .queryParam("select", "is_correct,attempt_id")
-                                    .queryParam("or", orWrapped)
-                                    .build())
-                            .retrieve()
-                            .bodyToFlux(Map.class)
-                            .collectList();
-                }
-
-                return ansMono.map(ans -> {
-                    int totalAns = ans.size();
-                    int totalCorrect = (int) ans.stream().filter(a -> Boolean.TRUE.equals(a.get("is_correct"))).count();
-                    return TriviaStatsDto.builder()
-                            .userId(userId)
-                            .totalAttempts(totalAttempts)
-                            .avgScore(avg)
-                            .bestScore(best)
-                            .lastAttemptAt(lastAt)
-                            .totalQuestionsAnswered(totalAns)
-                            .totalCorrect(totalCorrect)
-                            .build();
-                });
-            });
+                            .totalAttempts(acc.attempts)
+                            .avgScore(acc.attempts == 0 ? 0.0 : acc.scoreSum / acc.attempts)
+                            .bestScore(acc.attempts == 0 ? 0.0 : acc.best)
+                            .lastAttemptAt(acc.lastAt)
+                            .totalQuestionsAnswered(acc.answered)
+                            .totalCorrect(acc.correct)
+                            .build()));
         });
     }
 
+    /** Totales de getStats; cada contador lo actualiza un único flujo secuencial. */
+    private static final class StatsAccumulator {
+        private int attempts;
+        private double scoreSum;
+        private double best = Double.NEGATIVE_INFINITY;
+        private Instant lastAt;
+        private int answered;
+        private int correct;
+
+        void addAttempt(double score, String completedAt) {
+            attempts++;
+            scoreSum += score;
+            best = Math.max(best, score);
+            if (completedAt != null) {
+                Instant at = Instant.parse(completedAt);
+                if (lastAt == null || at.isAfter(lastAt)) lastAt = at;
+            }
+        }
+
+        void addAnswer(boolean isCorrect) {
+            answered++;
+            if (isCorrect) correct++;
+        }
+    }
+
+    private Map<String, String> topicsOfSet(TriviaAnswerKey.Catalog key, String setId) {
+        Map<String, String> qTopic = new HashMap<>();
+        for (TriviaAnswerKey.QuestionKey q : key.questionsOfSet(setId)) {
+            if (q.topic() != null) qTopic.put(q.questionId(), q.topic());
+        }
+        return qTopic;
+    }
+
     private List<String> recommendTopics(Map<String, Integer> topicCorrect) {
         if (topicCorrect == null || topicCorrect.isEmpty()) return List.of();
         int min = topicCorrect.values().stream().min(Integer::compare).orElse(0);
@@ -0,0 +1,108 @@
+package org.uniproject.SaviaU.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.uniproject.SaviaU.controller.tematicas.TematicaController;
+import org.uniproject.SaviaU.dto.TematicaAreaSummaryDto;
+import org.uniproject.SaviaU.service.tematicas.TematicaContentService;
+import org.uniproject.SaviaU.support.SupabaseStub;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedResponseCacheTest {
+
+    private EncodedResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new EncodedResponseCache(new ObjectMapper(),
+                SupabaseStub.clients(SupabaseStub.props(SupabaseStub.CLOSED_URL)), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void serializesOncePerVersion() throws IOException {
+        AtomicInteger builds = new AtomicInteger();
+        List<String> body = List.of("clima ".repeat(50));
+
+        EncodedResponseCache.Encoded first = cache.get("k", 1, () -> Mono.fromCallable(() -> {
+            builds.incrementAndGet();
+            return body;
+        })).block(Duration.ofSeconds(5));
+        EncodedResponseCache.Encoded again = cache.get("k", 1, () -> Mono.error(new IllegalStateException())).block(Duration.ofSeconds(5));
+        assertSame(first, again);
+        assertEquals(1, builds.get());
+
+        assertEquals(new ObjectMapper().writeValueAsString(body), new String(first.identity(), StandardCharsets.UTF_8));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(first.gzip()))) {
+            assertArrayEquals(first.identity(), in.readAllBytes());
+        }
+
+        // Otra versión con el mismo contenido: se vuelve a serializar pero el ETag no cambia
+        EncodedResponseCache.Encoded bumped = cache.get("k", 2, () -> Mono.just(body)).block(Duration.ofSeconds(5));
+        assertNotSame(first, bumped);
+        assertEquals(first.etag(), bumped.etag());
+    }
+
+    @Test
+    void errorsAreNotCached() {
+        assertThrows(RuntimeException.class,
+                () -> cache.get("k", 1, () -> Mono.error(new RuntimeException("caído"))).block(Duration.ofSeconds(5)));
+        assertEquals("[]", new String(cache.get("k", 1, () -> Mono.just(List.of())).block(Duration.ofSeconds(5)).identity(),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void controllerWritesPreEncodedBytesAndRevalidates() {
+        TematicaContentService service = Mockito.mock(TematicaContentService.class);
+        Mockito.when(service.version()).thenReturn(Mono.just(7L));
+        Mockito.when(service.listAreas()).thenReturn(Mono.just(List.of(TematicaAreaSummaryDto.builder().id("a1").name("Agua").build())));
+        WebTestClient client = WebTestClient.bindToController(new TematicaController(service, cache)).build();
+
+        String etag = client.get().uri("/api/tematicas/areas")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType("application/json")
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .expectBody()
+                .jsonPath("$[0].id").isEqualTo("a1")
+                .returnResult()
+                .getResponseHeaders().getETag();
+        assertNotNull(etag);
+        Mockito.verify(service, Mockito.times(1)).listAreas();
+
+        client.get().uri("/api/tematicas/areas").exchange().expectStatus().isOk().expectHeader().valueEquals(HttpHeaders.ETAG, etag);
+        Mockito.verify(service, Mockito.times(1)).listAreas();
+
+        // Revalidación con el ETag vigente: 304 sin cuerpo
+        client.get().uri("/api/tematicas/areas")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, etag)
+                .expectHeader().valueEquals(HttpHeaders.CACHE_CONTROL, "no-cache, public")
+                .expectBody().isEmpty();
+
+        // Una edición que cambia el contenido sube la versión y el ETag deja de validar
+        Mockito.when(service.version()).thenReturn(Mono.just(8L));
+        Mockito.when(service.listAreas()).thenReturn(Mono.just(List.of(TematicaAreaSummaryDto.builder().id("a1").name("Aire").build())));
+        client.get().uri("/api/tematicas/areas")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$[0].name").isEqualTo("Aire");
+    }
+}
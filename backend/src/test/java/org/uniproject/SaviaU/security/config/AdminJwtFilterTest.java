@@ -0,0 +1,78 @@
+package org.uniproject.SaviaU.security.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.security.admin.AdminPrincipal;
+import org.uniproject.SaviaU.security.admin.AdminTokenVerifier;
+import org.uniproject.SaviaU.security.util.JwtUtil;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdminJwtFilterTest {
+
+    private static final String SECRET = "test-secret-0123456789-0123456789";
+
+    private final AdminTokenVerifier verifier = new AdminTokenVerifier(props());
+    private final AdminJwtFilter filter = new AdminJwtFilter(verifier);
+
+    @Test
+    void verifiedPrincipalIsPublishedOnTheRequest() throws Exception {
+        String token = JwtUtil.generateHs256Token("admin-1", "a@b.co", "admin", "savia-u-admin", 600, SECRET);
+        MockHttpServletRequest request = adminRequest(token);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        AdminPrincipal principal = (AdminPrincipal) request.getAttribute(AdminPrincipal.REQUEST_ATTRIBUTE);
+        assertNotNull(chain.getRequest());
+        assertEquals("admin-1", principal.subject());
+        assertEquals("a@b.co", principal.email());
+        // Un segundo uso del token sale de la caché con la misma identidad
+        assertSame(principal, verifier.verify(token));
+    }
+
+    @Test
+    void nonAdminRoleIsRejectedBeforeTheController() throws Exception {
+        String token = JwtUtil.generateHs256Token("user-1", "u@b.co", "authenticated", "savia-u", 600, SECRET);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(adminRequest(token), response, chain);
+
+        assertEquals(401, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void cachedSignatureWithOtherPayloadIsNotTrusted() {
+        String token = JwtUtil.generateHs256Token("admin-1", "a@b.co", "admin", "savia-u-admin", 600, SECRET);
+        verifier.verify(token);
+        String[] parts = token.split("\\.");
+        String other = JwtUtil.generateHs256Token("admin-2", "x@b.co", "admin", "savia-u-admin", 600, SECRET).split("\\.")[1];
+
+        assertThrows(RuntimeException.class, () -> verifier.verify(parts[0] + "." + other + "." + parts[2]));
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        String token = JwtUtil.generateHs256Token("admin-1", "a@b.co", "admin", "savia-u-admin", -60, SECRET);
+
+        assertThrows(RuntimeException.class, () -> verifier.verify(token));
+    }
+
+    private static MockHttpServletRequest adminRequest(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/admin/trivia/leaderboard");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+
+    private static SupabaseProperties props() {
+        SupabaseProperties props = SupabaseStub.props(SupabaseStub.CLOSED_URL);
+        props.setJwtSecret(SECRET);
+        return props;
+    }
+}
@@ -0,0 +1,85 @@
+package org.uniproject.SaviaU.security.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "test-secret-0123456789-0123456789";
+
+    @Test
+    void roundTripKeepsClaims() {
+        String token = JwtUtil.generateHs256Token("sub-1", "a@b.co", "admin", "savia-u-admin", 600, SECRET);
+
+        Map<String, Object> claims = JwtUtil.validateHs256AndGetClaims(token, SECRET);
+
+        assertEquals("sub-1", claims.get("sub"));
+        assertEquals("a@b.co", claims.get("email"));
+        assertEquals("admin", claims.get("role"));
+        assertEquals("savia-u-admin", claims.get("iss"));
+    }
+
+    @Test
+    void rejectsTamperedPayload() {
+        String token = JwtUtil.generateHs256Token("sub-1", "a@b.co", "authenticated", "savia-u", 600, SECRET);
+        String[] parts = token.split("\\.");
+        String forged = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"sub\":\"sub-1\",\"role\":\"admin\"}".getBytes(StandardCharsets.UTF_8));
+
+        RuntimeException ex = assertThrows(RuntimeException.class,
+                () -> JwtUtil.validateHs256AndGetClaims(parts[0] + "." + forged + "." + parts[2], SECRET));
+        assertEquals("Firma inválida", ex.getMessage());
+    }
+
+    @Test
+    void rejectsOtherSecret() {
+        String token = JwtUtil.generateHs256Token("sub-1", null, "admin", "savia-u-admin", 600, "other-secret");
+
+        assertThrows(RuntimeException.class, () -> JwtUtil.validateHs256AndGetClaims(token, SECRET));
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        String token = JwtUtil.generateHs256Token("sub-1", null, "admin", "savia-u-admin", -10, SECRET);
+
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> JwtUtil.validateHs256AndGetClaims(token, SECRET));
+        assertEquals("Token expirado", ex.getMessage());
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        for (String bad : new String[]{"", "abc", "a.b", "a.b.c.d", ".b.c", "a..c", "a.b.!!!"}) {
+            assertThrows(RuntimeException.class, () -> JwtUtil.validateHs256AndGetClaims(bad, SECRET), bad);
+        }
+    }
+
+    @Test
+    void signatureHasSingleEncoding() {
+        String token = JwtUtil.generateHs256Token("sub-1", null, "admin", "savia-u-admin", 600, SECRET);
+        int dot = token.lastIndexOf('.');
+        String head = token.substring(0, dot + 1);
+        String sig = token.substring(dot + 1);
+        assertEquals(sig, Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Base64.getUrlDecoder().decode(sig)));
+
+        // Relleno, alfabeto estándar y bits sobrantes en el último carácter: mismos bytes, otro texto
+        String padded = head + sig + "=";
+        String standard = head + sig.replace('-', '+').replace('_', '/');
+        char last = sig.charAt(sig.length() - 1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        String trailing = head + sig.substring(0, sig.length() - 1) + alphabet.charAt(alphabet.indexOf(last) ^ 1);
+
+        assertThrows(RuntimeException.class, () -> JwtUtil.validateHs256AndGetClaims(padded, SECRET));
+        assertThrows(RuntimeException.class, () -> JwtUtil.validateHs256AndGetClaims(trailing, SECRET));
+        if (!standard.equals(token)) {
+            assertThrows(RuntimeException.class, () -> JwtUtil.validateHs256AndGetClaims(standard, SECRET));
+        }
+        assertThrows(RuntimeException.class,
+                () -> JwtUtil.validateHs256AndGetClaims(head + sig.substring(0, 42) + "+", SECRET));
+    }
+}
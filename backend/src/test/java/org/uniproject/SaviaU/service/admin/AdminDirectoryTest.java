@@ -0,0 +1,79 @@
+package org.uniproject.SaviaU.service.admin;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdminDirectoryTest {
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    private final List<Map<String, Object>> admins = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        stub.on("/rest/v1/admin_users", req -> List.copyOf(admins));
+    }
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void lookupsAfterTheFirstLoadAreServedFromMemory() {
+        admins.add(admin("a1", "Ana@Savia.co", null));
+        admins.add(admin("a2", "off@savia.co", false));
+        AdminDirectory directory = directory(5_000);
+
+        Optional<AdminDirectory.AdminEntry> ana = directory.findByEmail(" ana@savia.co ").block(Duration.ofSeconds(5));
+        Optional<AdminDirectory.AdminEntry> off = directory.findByEmail("OFF@savia.co").block(Duration.ofSeconds(5));
+        Optional<AdminDirectory.AdminEntry> none = directory.findByEmail("nadie@savia.co").block(Duration.ofSeconds(5));
+
+        assertEquals("a1", ana.orElseThrow().id());
+        // is_active nulo cuenta como activo
+        assertTrue(ana.get().active());
+        assertFalse(off.orElseThrow().active());
+        assertTrue(none.isEmpty());
+        assertEquals(1, stub.requests("/rest/v1/admin_users").size());
+    }
+
+    @Test
+    void unknownEmailAtLoginReloadsAtMostOncePerInterval() {
+        AdminDirectory directory = directory(60_000);
+        assertTrue(directory.findByEmailFresh("nuevo@savia.co").block(Duration.ofSeconds(5)).isEmpty());
+
+        // Alta reciente, pero dentro del intervalo: no se vuelve a pedir la tabla
+        admins.add(admin("a3", "nuevo@savia.co", true));
+        assertTrue(directory.findByEmailFresh("nuevo@savia.co").block(Duration.ofSeconds(5)).isEmpty());
+        assertEquals(1, stub.requests("/rest/v1/admin_users").size());
+
+        AdminDirectory eager = directory(0);
+        assertEquals("a3", eager.findByEmailFresh("nuevo@savia.co").block(Duration.ofSeconds(5)).orElseThrow().id());
+    }
+
+    private AdminDirectory directory(long missRefreshIntervalMs) {
+        SupabaseProperties props = stub.props();
+        props.getAdminDirectory().setMissRefreshIntervalMs(missRefreshIntervalMs);
+        return new AdminDirectory(SupabaseStub.clients(props));
+    }
+
+    private static Map<String, Object> admin(String id, String email, Boolean active) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("email", email);
+        row.put("full_name", "Admin " + id);
+        row.put("is_active", active);
+        return row;
+    }
+}
@@ -0,0 +1,90 @@
+package org.uniproject.SaviaU.service.admin;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.dto.TematicaAreaDto;
+import org.uniproject.SaviaU.dto.admin.AdminTematicaAreaUpsertRequest;
+import org.uniproject.SaviaU.security.admin.AdminPrincipal;
+import org.uniproject.SaviaU.service.tematicas.TematicaContentService;
+import org.uniproject.SaviaU.support.SupabaseStub;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+class AdminTematicaManagementServiceTest {
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    // Fila de tematicas_areas simulada
+    private final AtomicReference<String> name = new AtomicReference<>("Antes");
+    private TematicaContentService content;
+    private AdminTematicaManagementService service;
+
+    @BeforeEach
+    void setUp() {
+        stub.on("/rest/v1/tematicas_areas", req -> {
+            if ("PATCH".equals(req.method())) name.set(String.valueOf(req.json(Map.class).get("name")));
+            return List.of(area());
+        });
+        stub.on("/rest/v1/tematicas_learning_focus", req -> null);
+        SupabaseClients clients = SupabaseStub.clients(stub.props());
+        AdminAuthService auth = Mockito.mock(AdminAuthService.class);
+        Mockito.when(auth.requireAdmin((AdminPrincipal) any())).thenReturn(Mono.empty());
+        content = new TematicaContentService(clients);
+        service = new AdminTematicaManagementService(clients, auth, content);
+    }
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void upsertReturnsTheEditedAreaAndLaterReadsSeeIt() {
+        // Contenido ya en memoria antes de la edición
+        assertEquals("Antes", content.getArea("a1").block(Duration.ofSeconds(5)).getName());
+
+        AdminTematicaAreaUpsertRequest request = new AdminTematicaAreaUpsertRequest();
+        request.setId("a1");
+        request.setName("Después");
+        TematicaAreaDto saved = service.upsertArea(admin(), request).block(Duration.ofSeconds(5));
+
+        assertEquals("Después", saved.getName());
+        assertEquals("Después", content.getArea("a1").block(Duration.ofSeconds(5)).getName());
+    }
+
+    @Test
+    void deleteInvalidatesBeforeCompleting() {
+        assertEquals("Antes", content.getArea("a1").block(Duration.ofSeconds(5)).getName());
+        stub.on("/rest/v1/tematicas_resources", req -> null);
+        stub.on("/rest/v1/tematicas_resource_sources", req -> null);
+
+        name.set("Renombrada fuera");
+        service.deleteResource(admin(), "r1").block(Duration.ofSeconds(5));
+
+        // La lectura justo después del borrado ya no sirve el contenido anterior
+        assertEquals("Renombrada fuera", content.getArea("a1").block(Duration.ofSeconds(5)).getName());
+    }
+
+    private Map<String, Object> area() {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", "a1");
+        row.put("name", name.get());
+        row.put("tematicas_learning_focus", List.of());
+        row.put("tematicas_resources", List.of());
+        return row;
+    }
+
+    private static AdminPrincipal admin() {
+        return null;
+    }
+}
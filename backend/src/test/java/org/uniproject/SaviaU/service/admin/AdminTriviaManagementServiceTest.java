@@ -0,0 +1,123 @@
+package org.uniproject.SaviaU.service.admin;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.dto.admin.AdminTriviaSetUpsertRequest;
+import org.uniproject.SaviaU.dto.admin.AdminUserProgressDto;
+import org.uniproject.SaviaU.security.admin.AdminPrincipal;
+import org.uniproject.SaviaU.service.profile.LeaderboardSnapshots;
+import org.uniproject.SaviaU.service.progress.DailyScoreStore;
+import org.uniproject.SaviaU.service.progress.HistoryStreams;
+import org.uniproject.SaviaU.service.trivia.TriviaAnswerKey;
+import org.uniproject.SaviaU.support.SupabaseStub;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+class AdminTriviaManagementServiceTest {
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    private final AtomicBoolean rpcAvailable = new AtomicBoolean(true);
+    private TriviaAnswerKey answerKey;
+    private AdminTriviaManagementService service;
+
+    @BeforeEach
+    void setUp() {
+        stub.on("/rest/v1/rpc/trivia_accuracy", req -> {
+            if (!rpcAvailable.get()) return new SupabaseStub.Response(404, Map.of("message", "function not found"));
+            List<?> ids = (List<?>) req.json(Map.class).get("p_user_ids");
+            return ids.stream()
+                    .map(id -> Map.of("user_id", id, "answered", 4, "correct", "u1".equals(id) ? 3 : 1))
+                    .toList();
+        });
+        stub.on("/rest/v1/trivia_attempts", req -> List.of(
+                Map.of("id", "t1", "user_id", "u1"),
+                Map.of("id", "t2", "user_id", "u2")));
+        stub.on("/rest/v1/trivia_answers", req -> List.of(
+                Map.of("attempt_id", "t1", "is_correct", true),
+                Map.of("attempt_id", "t1", "is_correct", false),
+                Map.of("attempt_id", "t2", "is_correct", false)));
+        stub.on("/rest/v1/trivia_sets", req -> List.of(Map.of("id", "s1", "title", "Clima", "is_active", true)));
+
+        SupabaseProperties props = stub.props();
+        props.getHistoryPaging().setChunkSize(2);
+        SupabaseClients clients = SupabaseStub.clients(props);
+        AdminAuthService auth = Mockito.mock(AdminAuthService.class);
+        Mockito.when(auth.requireAdmin((AdminPrincipal) any())).thenReturn(Mono.empty());
+        LeaderboardSnapshots leaderboard = Mockito.mock(LeaderboardSnapshots.class);
+        List<LeaderboardSnapshots.Row> rows = List.of(row("u1"), row("u2"), row("u3"));
+        Mockito.when(leaderboard.current()).thenReturn(Mono.just(
+                new LeaderboardSnapshots.Snapshot(1, Instant.now(), rows, rows, rows, Map.of())));
+        answerKey = Mockito.spy(new TriviaAnswerKey(clients));
+        service = new AdminTriviaManagementService(clients, auth, answerKey,
+                new HistoryStreams(clients), leaderboard, new SimpleMeterRegistry(), Mockito.mock(DailyScoreStore.class));
+    }
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void cohortAccuracyUsesOneAggregateCallPerChunk() {
+        Map<String, Double> accuracy = accuracyByUser(service.getCohortProgress(admin(), 3).block(Duration.ofSeconds(5)));
+
+        assertEquals(Map.of("u1", 0.75, "u2", 0.25, "u3", 0.25), accuracy);
+        // Tres usuarios en tramos de dos: dos llamadas, ninguna lectura de intentos ni respuestas
+        assertEquals(2, stub.requests("/rest/v1/rpc/trivia_accuracy").size());
+        assertTrue(stub.requests("/rest/v1/trivia_attempts").isEmpty());
+        assertTrue(stub.requests("/rest/v1/trivia_answers").isEmpty());
+    }
+
+    @Test
+    void withoutTheAggregateAccuracyIsComputedInBulk() {
+        rpcAvailable.set(false);
+
+        Map<String, Double> accuracy = accuracyByUser(service.getCohortProgress(admin(), 3).block(Duration.ofSeconds(5)));
+
+        // u3 no tiene intentos: precisión 0
+        assertEquals(Map.of("u1", 0.5, "u2", 0.0, "u3", 0.0), accuracy);
+        assertEquals(2, stub.requests("/rest/v1/trivia_attempts").size());
+        assertEquals(1, stub.requests("/rest/v1/trivia_answers").size());
+    }
+
+    @Test
+    void catalogWriteInvalidatesTheAnswerKeyBeforeReplying() {
+        AdminTriviaSetUpsertRequest request = new AdminTriviaSetUpsertRequest();
+        request.setTitle("Clima");
+
+        // Quien recibe la respuesta ya no puede corregir con la clave anterior
+        String id = service.upsertSet(admin(), request)
+                .map(set -> {
+                    Mockito.verify(answerKey).invalidate();
+                    return set.getId();
+                })
+                .block(Duration.ofSeconds(5));
+        assertEquals("s1", id);
+    }
+
+    private static Map<String, Double> accuracyByUser(List<AdminUserProgressDto> report) {
+        return report.stream().collect(Collectors.toMap(AdminUserProgressDto::getUserId, AdminUserProgressDto::getAccuracy));
+    }
+
+    private static LeaderboardSnapshots.Row row(String userId) {
+        return new LeaderboardSnapshots.Row(userId, "Usuario " + userId, userId + "@savia.co", 1, 50, 50, 50, Instant.now());
+    }
+
+    private static AdminPrincipal admin() {
+        return null;
+    }
+}
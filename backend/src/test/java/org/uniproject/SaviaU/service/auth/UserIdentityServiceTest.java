@@ -0,0 +1,100 @@
+package org.uniproject.SaviaU.service.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.security.util.JwtUtil;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserIdentityServiceTest {
+
+    private static final String SECRET = "test-secret-0123456789-0123456789";
+    private static final String USER_ID = "6f1c2b1e-3a4d-4e5f-8a9b-0c1d2e3f4a5b";
+
+    private UserIdentityService service;
+
+    @BeforeEach
+    void setUp() {
+        // Puerto cerrado: cualquier fallback remoto falla de inmediato
+        SupabaseProperties props = SupabaseStub.props(SupabaseStub.CLOSED_URL);
+        props.setJwtSecret(SECRET);
+        service = new UserIdentityService(SupabaseStub.clients(props));
+    }
+
+    @Test
+    void resolvesAuthenticatedTokenLocally() {
+        String token = supabaseToken(claims(USER_ID));
+
+        Map<String, Object> user = service.resolveUser(token).block();
+
+        assertNotNull(user);
+        assertEquals(USER_ID, user.get("id"));
+        assertEquals("a@b.co", user.get("email"));
+        // Segunda resolución servida desde caché con el mismo resultado
+        assertSame(user, service.resolveUser(token).block());
+    }
+
+    @Test
+    void foreignSignatureFallsBackToRemote() {
+        String token = JwtUtil.forSecret("other-secret-0123456789-012345678").sign(claims(USER_ID));
+
+        assertThrows(RuntimeException.class, () -> service.resolveUser(token).block());
+    }
+
+    @Test
+    void appTokenIsNotAcceptedAsSupabaseSession() {
+        // Mismo secreto y rol que una sesión, pero emitido por la app (AuthService.generateAppToken)
+        String token = JwtUtil.generateHs256Token(USER_ID, "a@b.co", "authenticated", "savia-u", 600, SECRET);
+
+        assertThrows(RuntimeException.class, () -> service.resolveUser(token).block());
+    }
+
+    @Test
+    void supabaseClaimsAreRequiredLocally() {
+        Map<String, Object> noAudience = claims(USER_ID);
+        noAudience.remove("aud");
+        Map<String, Object> emailSubject = claims("a@b.co");
+        Map<String, Object> otherProject = claims(USER_ID);
+        otherProject.put("iss", "https://otro.supabase.co/auth/v1");
+
+        for (Map<String, Object> c : List.of(noAudience, emailSubject, otherProject)) {
+            assertThrows(RuntimeException.class, () -> service.resolveUser(supabaseToken(c)).block(), c.toString());
+        }
+    }
+
+    @Test
+    void nonStudentRoleIsNotAcceptedLocally() {
+        String token = JwtUtil.generateHs256Token("admin-1", "a@b.co", "admin", "savia-u-admin", 600, SECRET);
+
+        assertThrows(RuntimeException.class, () -> service.resolveUser(token).block());
+    }
+
+    @Test
+    void blankTokenIsRejected() {
+        assertThrows(RuntimeException.class, () -> service.resolveUser(" ").block());
+    }
+
+    private static Map<String, Object> claims(String sub) {
+        long now = Instant.now().getEpochSecond();
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("iss", SupabaseStub.CLOSED_URL + "/auth/v1");
+        claims.put("sub", sub);
+        claims.put("aud", "authenticated");
+        claims.put("role", "authenticated");
+        claims.put("email", "a@b.co");
+        claims.put("iat", now);
+        claims.put("exp", now + 600);
+        return claims;
+    }
+
+    private static String supabaseToken(Map<String, Object> claims) {
+        return JwtUtil.forSecret(SECRET).sign(claims);
+    }
+}
@@ -0,0 +1,73 @@
+package org.uniproject.SaviaU.service.diagnostic;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagnosticQuestionBankTest {
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    private final AtomicReference<String> prompt = new AtomicReference<>("¿Qué es el clima?");
+    private final AtomicBoolean down = new AtomicBoolean();
+    private DiagnosticQuestionBank bank;
+
+    @BeforeEach
+    void setUp() {
+        stub.on("/rest/v1/diagnostic_questions", req -> down.get()
+                ? new SupabaseStub.Response(503, Map.of())
+                : List.of(Map.of("id", "q1", "prompt", prompt.get(), "topic", "Clima", "difficulty", "baja", "is_active", true)));
+        stub.on("/rest/v1/diagnostic_options", req -> List.of(
+                Map.of("id", "o1", "question_id", "q1", "text", "A", "is_correct", true),
+                Map.of("id", "o2", "question_id", "q1", "text", "B", "is_correct", false)));
+        bank = new DiagnosticQuestionBank(SupabaseStub.clients(stub.props()));
+    }
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void firstVersionWaitsForTheLoad() {
+        long version = bank.version().block(Duration.ofSeconds(5));
+        assertNotEquals(0, version);
+        assertEquals(version, bank.current().block(Duration.ofSeconds(5)).version());
+        assertEquals(1, stub.requests("/rest/v1/diagnostic_questions").size());
+    }
+
+    @Test
+    void reloadWithSameContentKeepsTheVersion() {
+        long first = bank.version().block(Duration.ofSeconds(5));
+
+        bank.invalidate();
+        assertEquals(first, bank.version().block(Duration.ofSeconds(5)));
+        assertEquals(2, stub.requests("/rest/v1/diagnostic_questions").size());
+
+        prompt.set("¿Qué es el tiempo atmosférico?");
+        bank.invalidate();
+        long changed = bank.version().block(Duration.ofSeconds(5));
+        assertNotEquals(first, changed);
+        assertEquals("¿Qué es el tiempo atmosférico?", bank.current().block(Duration.ofSeconds(5)).active().get(0).prompt());
+    }
+
+    @Test
+    void failedReloadAfterInvalidationKeepsServingThePreviousBank() {
+        DiagnosticQuestionBank.Bank loaded = bank.current().block(Duration.ofSeconds(5));
+
+        down.set(true);
+        bank.invalidate();
+
+        DiagnosticQuestionBank.Bank served = bank.current().block(Duration.ofSeconds(5));
+        assertSame(loaded, served);
+        assertTrue(served.option("o1").correct());
+    }
+}
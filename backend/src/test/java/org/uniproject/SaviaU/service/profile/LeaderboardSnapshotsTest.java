@@ -0,0 +1,100 @@
+package org.uniproject.SaviaU.service.profile;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.dto.UserRankingDto;
+import org.uniproject.SaviaU.service.auth.UserIdentityService;
+import org.uniproject.SaviaU.service.progress.HistoryStreams;
+import org.uniproject.SaviaU.support.SupabaseStub;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardSnapshotsTest {
+
+    private static final Instant AT = Instant.parse("2025-03-14T10:00:00Z");
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    private final List<Map<String, Object>> attempts = new ArrayList<>();
+    private final List<Map<String, Object>> profiles = new ArrayList<>();
+    private RankingEngine engine;
+    private LeaderboardSnapshots snapshots;
+
+    @BeforeEach
+    void setUp() {
+        stub.on("/rest/v1/trivia_attempts", req -> List.copyOf(attempts));
+        stub.on("/rest/v1/usuarios", req -> List.copyOf(profiles));
+        SupabaseClients clients = SupabaseStub.clients(stub.props());
+        engine = new RankingEngine(clients);
+        snapshots = new LeaderboardSnapshots(clients, engine, new HistoryStreams(clients), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void averageAndActivityOrdersAreDescending() {
+        attempts("u1", 70, 90);      // 2 intentos, promedio 80, mejor 90
+        attempts("u2", 60, 100);     // 2 intentos, promedio 80, mejor 100
+        attempts("u3", 60, 60, 60);  // 3 intentos, promedio 60
+        attempts("u4", 100);         // 1 intento, promedio 100
+        attempts("u5", 50, 50);      // 2 intentos, promedio 50
+
+        LeaderboardSnapshots.Snapshot s = snapshots.current().block(Duration.ofSeconds(5));
+
+        // Promedio descendente, desempate por mejor puntaje descendente
+        assertEquals(List.of("u4", "u2", "u1", "u3", "u5"), ids(s.byAverage()));
+        // Intentos descendentes, desempate por promedio descendente (u1 y u2 empatan en ambos)
+        List<String> byActivity = ids(s.byActivity());
+        assertEquals("u3", byActivity.get(0));
+        assertEquals(List.of("u5", "u4"), byActivity.subList(3, 5));
+    }
+
+    @Test
+    void positionAndAroundReflectAFinishBeforeTheSnapshotIsRebuilt() {
+        attempts("u1", 90, 90);
+        attempts("u2", 50);
+        attempts("u3", 70);
+        profiles.add(Map.of("id", "u3", "full_name", "Usuaria Tres", "email", "u3@savia.co"));
+        UserIdentityService identity = Mockito.mock(UserIdentityService.class);
+        Mockito.when(identity.resolveUser("tok")).thenReturn(Mono.just(Map.of("id", "u3")));
+        OnboardingService service = new OnboardingService(SupabaseStub.clients(stub.props()), identity, snapshots, engine);
+
+        List<UserRankingDto> top = service.getUserRanking("tok", 10).block(Duration.ofSeconds(5));
+        assertEquals(List.of("u1", "u3", "u2"), top.stream().map(UserRankingDto::getUserId).toList());
+
+        // u2 supera a u3 en el motor; la foto publicada sigue igual hasta reconstruirse
+        engine.onAttemptCompleted("u2", "late", null, 100, AT);
+        UserRankingDto position = service.getUserPosition("tok", null).block(Duration.ofSeconds(5));
+        List<UserRankingDto> around = service.getRankingAround("tok", null, 1).block(Duration.ofSeconds(5));
+
+        assertEquals(3, position.getRank());
+        assertEquals("Usuaria Tres", position.getFullName());
+        assertEquals(List.of("u2", "u3"), around.stream().map(UserRankingDto::getUserId).toList());
+        assertEquals(2, snapshots.current().block(Duration.ofSeconds(5)).indexOf("u2"));
+        assertNull(service.getUserPosition("tok", "nobody").block(Duration.ofSeconds(5)));
+    }
+
+    private void attempts(String userId, double... scores) {
+        for (double score : scores) {
+            attempts.add(Map.of("id", userId + "-" + attempts.size(), "user_id", userId, "score_percent", score,
+                    "completed_at", AT.toString()));
+        }
+    }
+
+    private static List<String> ids(List<LeaderboardSnapshots.Row> rows) {
+        return rows.stream().map(LeaderboardSnapshots.Row::userId).toList();
+    }
+}
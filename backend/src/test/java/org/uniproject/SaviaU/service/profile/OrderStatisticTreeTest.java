@@ -0,0 +1,40 @@
+package org.uniproject.SaviaU.service.profile;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderStatisticTreeTest {
+
+    @Test
+    void matchesSortedListUnderRandomInsertsAndRemoves() {
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.reverseOrder());
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 2_000; i++) {
+            int v = random.nextInt(500);
+            if (random.nextInt(3) == 0 && expected.remove(Integer.valueOf(v))) {
+                assertTrue(tree.remove(v));
+            } else if (!expected.contains(v)) {
+                expected.add(v);
+                tree.insert(v);
+            }
+        }
+        expected.sort(Collections.reverseOrder());
+
+        assertEquals(expected.size(), tree.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), tree.get(i));
+            assertEquals(i, tree.indexOf(expected.get(i)));
+        }
+        assertEquals(expected.subList(3, 13), tree.range(3, 13));
+        assertEquals(-1, tree.indexOf(10_000));
+    }
+}
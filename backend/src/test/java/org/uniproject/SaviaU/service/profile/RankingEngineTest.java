@@ -0,0 +1,162 @@
+package org.uniproject.SaviaU.service.profile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RankingEngineTest {
+
+    private static final String U1 = "11111111-1111-1111-1111-111111111111";
+    private static final String U2 = "22222222-2222-2222-2222-222222222222";
+    private static final Instant AT = Instant.parse("2025-03-14T10:00:00Z");
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    // trivia_attempts simulada, en el orden del recorrido
+    private final List<Map<String, Object>> attempts = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void bootstrapAggregatesCompletedAttempts() {
+        attempt("a1", U1, 90);
+        attempt("a2", U1, 50);
+        attempt("a3", U2, 60);
+        serveAttempts(null);
+        RankingEngine engine = new RankingEngine(SupabaseStub.clients(stub.props()));
+
+        List<RankingEngine.Standing> top = engine.top(10).block(Duration.ofSeconds(5));
+        assertEquals(2, top.size());
+        assertEquals(U1, top.get(0).userId());
+        assertEquals(2, top.get(0).totalQuizzes());
+        assertEquals(70.0, top.get(0).averageScore(), 1e-9);
+        assertEquals(90.0, top.get(0).bestScore(), 1e-9);
+        assertEquals(2, top.get(1).rank());
+    }
+
+    @Test
+    void refinishReplacesTheAttemptScoreIncludingBest() {
+        attempt("a1", U1, 90);
+        attempt("a2", U1, 50);
+        serveAttempts(null);
+        RankingEngine engine = new RankingEngine(SupabaseStub.clients(stub.props()));
+        engine.top(1).block(Duration.ofSeconds(5));
+
+        // Como recalcular desde trivia_attempts: el mejor es el máximo de los puntajes vigentes
+        engine.onAttemptCompleted(U1, "a1", 90.0, 40, AT);
+
+        RankingEngine.Standing s = engine.standing(U1).block(Duration.ofSeconds(5)).orElseThrow();
+        assertEquals(2, s.totalQuizzes());
+        assertEquals(45.0, s.averageScore(), 1e-9);
+        assertEquals(50.0, s.bestScore(), 1e-9);
+    }
+
+    @Test
+    void completionsDuringBootstrapAreBufferedAndCountedOnce() throws Exception {
+        CountDownLatch scanning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        attempt("a1", U1, 80);
+        serveAttempts(() -> {
+            scanning.countDown();
+            release.await(5, TimeUnit.SECONDS);
+        });
+        RankingEngine engine = new RankingEngine(SupabaseStub.clients(stub.props()));
+        engine.warmUp();
+        assertTrue(scanning.await(5, TimeUnit.SECONDS));
+
+        // a2 llega a la tabla antes de que el recorrido la lea; a3 no
+        attempt("a2", U1, 60);
+        engine.onAttemptCompleted(U1, "a2", null, 60, AT);
+        engine.onAttemptCompleted(U2, "a3", null, 70, AT);
+        release.countDown();
+
+        RankingEngine.Standing s1 = engine.standing(U1).block(Duration.ofSeconds(5)).orElseThrow();
+        assertEquals(2, s1.totalQuizzes());
+        assertEquals(70.0, s1.averageScore(), 1e-9);
+        RankingEngine.Standing s2 = engine.standing(U2).block(Duration.ofSeconds(5)).orElseThrow();
+        assertEquals(1, s2.totalQuizzes());
+    }
+
+    @Test
+    void refinishDuringBootstrapKeepsTheNewScoreWhenScanReadTheOldOne() throws Exception {
+        CountDownLatch scanning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        attempt("a1", U1, 90);
+        attempt("a2", U1, 50);
+        serveAttempts(() -> {
+            scanning.countDown();
+            release.await(5, TimeUnit.SECONDS);
+        });
+        RankingEngine engine = new RankingEngine(SupabaseStub.clients(stub.props()));
+        engine.warmUp();
+        assertTrue(scanning.await(5, TimeUnit.SECONDS));
+
+        // El recorrido devuelve a1 con 90: la re-finalización a 40 no debe perderse
+        engine.onAttemptCompleted(U1, "a1", 90.0, 40, AT);
+        release.countDown();
+
+        RankingEngine.Standing s = engine.standing(U1).block(Duration.ofSeconds(5)).orElseThrow();
+        assertEquals(2, s.totalQuizzes());
+        assertEquals(45.0, s.averageScore(), 1e-9);
+        assertEquals(50.0, s.bestScore(), 1e-9);
+    }
+
+    @Test
+    void leaderGrowthRescalesAtMostOncePerInterval() {
+        attempt("a1", U1, 80);
+        attempt("a2", U1, 80);
+        attempt("a3", U2, 80);
+        serveAttempts(null);
+        RankingEngine engine = engine(60_000);
+        engine.top(1).block(Duration.ofSeconds(5));
+
+        // El líder pasa de 2 a 3 quizzes: la referencia sigue en 2 y nadie más cambia de clave
+        engine.onAttemptCompleted(U1, "a4", null, 80, AT);
+        RankingEngine.Standing leader = engine.standing(U1).block(Duration.ofSeconds(5)).orElseThrow();
+        RankingEngine.Standing other = engine.standing(U2).block(Duration.ofSeconds(5)).orElseThrow();
+        assertEquals(3, leader.totalQuizzes());
+        assertEquals(80 * 0.7 + 100 * 0.3, leader.rankingScore(), 1e-9);
+        assertEquals(80 * 0.7 + 50 * 0.3, other.rankingScore(), 1e-9);
+
+        // Vencido el intervalo, la referencia se iguala al máximo y cambia la versión
+        RankingEngine eager = engine(0);
+        eager.top(1).block(Duration.ofSeconds(5));
+        long before = eager.version();
+        eager.onAttemptCompleted(U1, "a4", null, 80, AT);
+        assertEquals(before + 2, eager.version());
+        assertEquals(80 * 0.7 + 100.0 / 3 * 0.3, eager.standing(U2).block(Duration.ofSeconds(5)).orElseThrow().rankingScore(), 1e-9);
+    }
+
+    private RankingEngine engine(long rescaleMs) {
+        var props = stub.props();
+        props.getRanking().setRescaleMs(rescaleMs);
+        return new RankingEngine(SupabaseStub.clients(props));
+    }
+
+    private void attempt(String id, String userId, double score) {
+        attempts.add(Map.of("id", id, "user_id", userId, "score_percent", score, "completed_at", AT.toString()));
+    }
+
+    private interface Hook {
+        void run() throws Exception;
+    }
+
+    private void serveAttempts(Hook beforeRead) {
+        stub.on("/rest/v1/trivia_attempts", req -> {
+            if (beforeRead != null) beforeRead.run();
+            return List.copyOf(attempts);
+        });
+    }
+}
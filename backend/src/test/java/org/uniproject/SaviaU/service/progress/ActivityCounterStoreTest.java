@@ -0,0 +1,84 @@
+package org.uniproject.SaviaU.service.progress;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivityCounterStoreTest {
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    private final List<Map<String, Object>> counters = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        stub.on("/rest/v1/user_activity_counters", req -> List.copyOf(counters));
+        // HEAD count=exact: el total llega solo en Content-Range
+        stub.on("/rest/v1/user_activities", req -> new SupabaseStub.Response(200, null,
+                Map.of("Content-Range", "NEWS_READ".equals(type(req)) ? "0-6/7" : "*/0")));
+    }
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void storedCountersAreReadOnceAndCached() {
+        counters.add(Map.of("type", "TRIVIA_COMPLETED", "count", 12));
+        counters.add(Map.of("type", "DIAGNOSTIC_COMPLETED", "count", 1));
+        counters.add(Map.of("type", "NEWS_READ", "count", 3));
+        ActivityCounterStore store = new ActivityCounterStore(SupabaseStub.clients(stub.props()));
+
+        Map<String, Integer> counts = store.counts("u1").block(Duration.ofSeconds(5));
+        store.counts("u1").block(Duration.ofSeconds(5));
+
+        assertEquals(Map.of("TRIVIA_COMPLETED", 12, "DIAGNOSTIC_COMPLETED", 1, "NEWS_READ", 3), counts);
+        assertEquals(1, stub.requests("/rest/v1/user_activity_counters").size());
+        assertTrue(stub.requests("/rest/v1/user_activities").isEmpty());
+    }
+
+    @Test
+    void typesWithoutCounterAreCountedWithHead() {
+        counters.add(Map.of("type", "TRIVIA_COMPLETED", "count", 2));
+        ActivityCounterStore store = new ActivityCounterStore(SupabaseStub.clients(stub.props()));
+
+        Map<String, Integer> counts = store.counts("u1").block(Duration.ofSeconds(5));
+
+        assertEquals(Map.of("TRIVIA_COMPLETED", 2, "DIAGNOSTIC_COMPLETED", 0, "NEWS_READ", 7), counts);
+        List<SupabaseStub.Request> heads = stub.requests("/rest/v1/user_activities");
+        assertEquals(2, heads.size());
+        assertTrue(heads.stream().allMatch(r -> "HEAD".equals(r.method()) && "eq.u1".equals(r.param("user_id"))));
+    }
+
+    @Test
+    void applyStoredOnlyUpdatesUsersInMemory() {
+        counters.add(Map.of("type", "TRIVIA_COMPLETED", "count", 2));
+        counters.add(Map.of("type", "DIAGNOSTIC_COMPLETED", "count", 0));
+        counters.add(Map.of("type", "NEWS_READ", "count", 0));
+        ActivityCounterStore store = new ActivityCounterStore(SupabaseStub.clients(stub.props()));
+        store.counts("u1").block(Duration.ofSeconds(5));
+
+        store.applyStored("u1", "TRIVIA_COMPLETED", 3);
+        store.applyStored("u1", "TRIVIA_ANSWER", 40);
+        store.applyStored("u2", "TRIVIA_COMPLETED", 9);
+
+        assertEquals(Map.of("TRIVIA_COMPLETED", 3, "DIAGNOSTIC_COMPLETED", 0, "NEWS_READ", 0),
+                store.counts("u1").block(Duration.ofSeconds(5)));
+        assertEquals(1, stub.requests("/rest/v1/user_activity_counters").size());
+        // u2 no estaba en memoria: se lee de la tabla, no del valor aplicado
+        assertEquals(2, store.counts("u2").block(Duration.ofSeconds(5)).get("TRIVIA_COMPLETED"));
+    }
+
+    private static String type(SupabaseStub.Request req) {
+        String type = req.param("type");
+        return type == null ? null : type.substring("eq.".length());
+    }
+}
@@ -0,0 +1,73 @@
+package org.uniproject.SaviaU.service.progress;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.support.SupabaseStub;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivityJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private SupabaseProperties props;
+    private ActivityJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        props = SupabaseStub.props(SupabaseStub.CLOSED_URL);
+        props.getActivityOutbox().setDir(dir.toString());
+        journal = newJournal();
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    void failedDeliveryIsRetriedOnNextDrain() {
+        journal.append(ActivityJournal.entry("u1", "TRIVIA_COMPLETED", Map.of("attemptId", "a1"), "TRIVIA_COMPLETED:a1"))
+                .block(Duration.ofSeconds(5));
+
+        assertThrows(RuntimeException.class, () -> journal.drain(batch -> Mono.error(new RuntimeException("caído")))
+                .block(Duration.ofSeconds(5)));
+
+        List<ActivityJournal.Entry> delivered = new ArrayList<>();
+        journal.drain(batch -> Mono.fromRunnable(() -> delivered.addAll(batch))).block(Duration.ofSeconds(5));
+        assertEquals(1, delivered.size());
+        assertEquals("TRIVIA_COMPLETED:a1", delivered.get(0).dedupeKey());
+
+        // Confirmado: no se vuelve a entregar
+        delivered.clear();
+        journal.drain(batch -> Mono.fromRunnable(() -> delivered.addAll(batch))).block(Duration.ofSeconds(5));
+        assertTrue(delivered.isEmpty());
+    }
+
+    @Test
+    void entriesSurviveRestart() {
+        journal.append(ActivityJournal.entry("u1", "NEWS_READ", null, null)).block(Duration.ofSeconds(5));
+        journal.close();
+
+        journal = newJournal();
+        List<ActivityJournal.Entry> delivered = new ArrayList<>();
+        journal.drain(batch -> Mono.fromRunnable(() -> delivered.addAll(batch))).block(Duration.ofSeconds(5));
+        assertEquals(1, delivered.size());
+        assertEquals(delivered.get(0).id(), delivered.get(0).dedupeKey());
+    }
+
+    private ActivityJournal newJournal() {
+        return new ActivityJournal(SupabaseStub.clients(props));
+    }
+}
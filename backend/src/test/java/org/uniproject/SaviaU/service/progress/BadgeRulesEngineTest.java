@@ -0,0 +1,114 @@
+package org.uniproject.SaviaU.service.progress;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.dto.AwardResultDto;
+import org.uniproject.SaviaU.support.SupabaseStub;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BadgeRulesEngineTest {
+
+    private static final String USER = "11111111-1111-1111-1111-111111111111";
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    private final List<Map<String, Object>> badges = new CopyOnWriteArrayList<>();
+    private BadgeRulesEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        badges.add(badge("b1", "trivia_5", 5));
+        stub.on("/rest/v1/badges", req -> {
+            List<Map<String, Object>> rows = new ArrayList<>(badges);
+            // Sin order, PostgREST no garantiza el orden: cada lectura llega al revés de la anterior
+            if ("id.asc".equals(req.param("order"))) {
+                rows.sort(Comparator.comparing(b -> (String) b.get("id")));
+            } else if (stub.requests("/rest/v1/badges").size() % 2 == 0) {
+                Collections.reverse(rows);
+            }
+            return rows;
+        });
+        stub.on("/rest/v1/user_badges", req -> List.of());
+        stub.on("/rest/v1/user_activity_counters", req -> List.of(
+                Map.of("type", ActivityCounterStore.TRIVIA_COMPLETED, "count", 1),
+                Map.of("type", ActivityCounterStore.DIAGNOSTIC_COMPLETED, "count", 0),
+                Map.of("type", ActivityCounterStore.NEWS_READ, "count", 0)));
+        SupabaseProperties props = stub.props();
+        props.getBadges().setCatalogTtlSeconds(1);
+        SupabaseClients clients = SupabaseStub.clients(props);
+        engine = new BadgeRulesEngine(clients, new ActivityCounterStore(clients));
+    }
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void catalogReloadWithSameRulesKeepsOwnedBadges() throws Exception {
+        assertTrue(onTriviaCompleted().getAwarded().isEmpty());
+        assertEquals(1L, ownedLoads());
+
+        reloadCatalog(2);
+        onTriviaCompleted();
+        assertEquals(1L, ownedLoads());
+    }
+
+    @Test
+    void catalogReloadInAnotherRowOrderKeepsOwnedBadges() throws Exception {
+        badges.add(badge("b2", "trivia_10", 10));
+        onTriviaCompleted();
+
+        reloadCatalog(2);
+        onTriviaCompleted();
+        assertEquals(1L, ownedLoads());
+    }
+
+    @Test
+    void catalogReloadWithChangedRulesReloadsOwnedBadges() throws Exception {
+        onTriviaCompleted();
+        badges.add(badge("b0", "first_trivia", 1));
+
+        reloadCatalog(2);
+        AwardResultDto result = onTriviaCompleted();
+        assertEquals(2L, ownedLoads());
+        assertEquals(List.of("first_trivia"), result.getAwarded().stream().map(b -> b.getCode()).toList());
+    }
+
+    private long ownedLoads() {
+        return stub.requests("/rest/v1/user_badges").stream().filter(r -> "GET".equals(r.method())).count();
+    }
+
+    private AwardResultDto onTriviaCompleted() {
+        return engine.onActivity(USER, ActivityCounterStore.TRIVIA_COMPLETED, Map.of(), () -> Mono.just(List.of()))
+                .block(Duration.ofSeconds(5));
+    }
+
+    // Deja vencer el catálogo y espera a que la recarga en segundo plano termine
+    private void reloadCatalog(int expectedLoads) throws InterruptedException {
+        Thread.sleep(1_100);
+        onTriviaCompleted();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stub.requests("/rest/v1/badges").size() < expectedLoads && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(expectedLoads, stub.requests("/rest/v1/badges").size());
+        Thread.sleep(50);
+    }
+
+    private static Map<String, Object> badge(String id, String code, int count) {
+        return Map.of("id", id, "code", code, "name", code, "criteria_type", "TRIVIA_COMPLETED_COUNT",
+                "criteria_value", Map.of("count", count), "is_active", true);
+    }
+}
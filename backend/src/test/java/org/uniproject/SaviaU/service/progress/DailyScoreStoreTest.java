@@ -0,0 +1,126 @@
+package org.uniproject.SaviaU.service.progress;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.dto.admin.AdminTriviaHistoryDto;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DailyScoreStoreTest {
+
+    private static final String USER = "11111111-1111-1111-1111-111111111111";
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    // user_daily_scores simulada: día -> [intentos, suma]
+    private final Map<String, double[]> table = new ConcurrentHashMap<>();
+    private final Set<String> appliedBatches = ConcurrentHashMap.newKeySet();
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void loadDuringFlushSeesTheBatchExactlyOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        serveTable();
+        stub.on("/rest/v1/rpc/apply_daily_scores", req -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return applyBatch(req);
+        });
+        DailyScoreStore store = new DailyScoreStore(SupabaseStub.clients(stub.props()));
+
+        store.onAttemptCompleted(USER, null, null, Instant.now(), 80);
+        store.flush();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        AtomicReference<List<AdminTriviaHistoryDto>> result = new AtomicReference<>();
+        store.history(USER, 7).subscribe(result::set);
+        Thread.sleep(100);
+        assertNull(result.get());
+        release.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (result.get() == null && System.nanoTime() < deadline) Thread.sleep(10);
+        assertNotNull(result.get());
+        assertEquals(1, result.get().size());
+        assertEquals(1, result.get().get(0).getAttempts());
+        assertEquals(80.0, result.get().get(0).getAvgScore(), 1e-9);
+    }
+
+    @Test
+    void failedButAppliedBatchIsResentWithSameIdAndCountedOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        serveTable();
+        stub.on("/rest/v1/rpc/apply_daily_scores", req -> {
+            applyBatch(req);
+            return calls.incrementAndGet() == 1 ? new SupabaseStub.Response(503, Map.of()) : null;
+        });
+        DailyScoreStore store = new DailyScoreStore(SupabaseStub.clients(stub.props()));
+
+        store.onAttemptCompleted(USER, null, null, Instant.now(), 60);
+        store.flush();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (calls.get() == 0 && System.nanoTime() < deadline) Thread.sleep(10);
+
+        List<AdminTriviaHistoryDto> history = store.history(USER, 7).block(Duration.ofSeconds(5));
+        assertEquals(1, history.get(0).getAttempts());
+        store.flushOnShutdown();
+
+        assertArrayEquals(new double[]{1, 60}, table.get(LocalDate.now(ZoneOffset.UTC).toString()));
+        List<SupabaseStub.Request> writes = stub.requests("/rest/v1/rpc/apply_daily_scores");
+        assertEquals(2, writes.size());
+        assertEquals(writes.get(0).json(Map.class).get("p_batch_id"), writes.get(1).json(Map.class).get("p_batch_id"));
+    }
+
+    @Test
+    void daysFollowTheSameZoneAsTheBackfill() {
+        serveTable();
+        stub.on("/rest/v1/rpc/apply_daily_scores", this::applyBatch);
+        DailyScoreStore store = new DailyScoreStore(SupabaseStub.clients(stub.props()));
+
+        // Por defecto los días son UTC, como la siembra de docs/trivia-schema.sql
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        store.onAttemptCompleted(USER, null, null, today.atStartOfDay(ZoneOffset.UTC).toInstant(), 50);
+        store.flushOnShutdown();
+
+        assertArrayEquals(new double[]{1, 50}, table.get(today.toString()));
+    }
+
+    private void serveTable() {
+        stub.on("/rest/v1/user_daily_scores", req -> {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            table.forEach((day, v) -> rows.add(Map.of("day", day, "attempts", (int) v[0], "score_sum", v[1])));
+            return rows;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object applyBatch(SupabaseStub.Request req) {
+        Map<String, Object> body = req.json(Map.class);
+        if (!appliedBatches.add(String.valueOf(body.get("p_batch_id")))) return null;
+        for (Map<String, Object> row : (List<Map<String, Object>>) body.get("p_rows")) {
+            double[] v = table.computeIfAbsent(String.valueOf(row.get("day")), k -> new double[2]);
+            v[0] += ((Number) row.get("attempts")).intValue();
+            v[1] += ((Number) row.get("score_sum")).doubleValue();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,76 @@
+package org.uniproject.SaviaU.service.progress;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.support.SupabaseStub;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryStreamsTest {
+
+    private SupabaseStub supabase;
+    private HistoryStreams streams;
+
+    @BeforeEach
+    void setUp() {
+        // PostgREST simulado: 7 intentos "a1".."a7" paginados con limit e id=gt.
+        supabase = SupabaseStub.start()
+                .on("/rest/v1/trivia_attempts", req -> {
+                    int limit = Integer.parseInt(req.param("limit"));
+                    String after = req.param("id");
+                    int from = after == null ? 1 : Integer.parseInt(after.substring("gt.a".length())) + 1;
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (int i = from; i <= 7 && rows.size() < limit; i++) rows.add(Map.of("id", "a" + i));
+                    return rows;
+                })
+                .on("/rest/v1/trivia_answers", req -> {
+                    String in = req.param("attempt_id");
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (String id : in.substring(4, in.length() - 1).split(",")) {
+                        rows.add(Map.of("attempt_id", id.replace("\"", "")));
+                    }
+                    return rows;
+                });
+
+        SupabaseProperties props = supabase.props();
+        props.getHistoryPaging().setPageSize(3);
+        props.getHistoryPaging().setChunkSize(2);
+        streams = new HistoryStreams(SupabaseStub.clients(props));
+    }
+
+    @AfterEach
+    void tearDown() {
+        supabase.close();
+    }
+
+    @Test
+    void byUserPagesWithKeysetUntilShortPage() {
+        List<String> ids = streams.byUser("trivia_attempts", "id", "u1")
+                .map(m -> (String) m.get("id"))
+                .collectList()
+                .block();
+
+        assertEquals(List.of("a1", "a2", "a3", "a4", "a5", "a6", "a7"), ids);
+        List<SupabaseStub.Request> queries = supabase.requests();
+        assertEquals(3, queries.size());
+        assertEquals("gt.a3", queries.get(1).param("id"));
+        assertEquals("gt.a6", queries.get(2).param("id"));
+    }
+
+    @Test
+    void byIdsSplitsIdsIntoBoundedChunks() {
+        Long rows = streams.byIds(Flux.just("a1", "a2", "a3", "a4", "a5"), "trivia_answers", "attempt_id", "is_correct")
+                .count()
+                .block();
+
+        assertEquals(5L, rows);
+        assertEquals(3, supabase.requests().size());
+    }
+}
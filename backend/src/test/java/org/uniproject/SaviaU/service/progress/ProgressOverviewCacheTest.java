@@ -0,0 +1,64 @@
+package org.uniproject.SaviaU.service.progress;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.dto.InteractionStatsDto;
+import org.uniproject.SaviaU.dto.ProgressOverviewDto;
+import org.uniproject.SaviaU.support.SupabaseStub;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressOverviewCacheTest {
+
+    @Test
+    void loadOverlappingAnInvalidationIsNotCached() {
+        ProgressOverviewCache cache = newCache(100);
+        AtomicInteger loads = new AtomicInteger();
+        Sinks.One<ProgressOverviewDto> slow = Sinks.one();
+
+        Mono<ProgressOverviewDto> stale = cache.get("u1", slow::asMono);
+        stale.subscribe();
+        // El drenado aplica contadores mientras la carga sigue en vuelo
+        cache.invalidate("u1");
+        slow.tryEmitValue(overview(1));
+
+        ProgressOverviewDto fresh = cache.get("u1", () -> Mono.fromCallable(() -> overview(loads.incrementAndGet() + 1)))
+                .block(Duration.ofSeconds(5));
+        assertEquals(2, fresh.getStats().getTriviaCompleted());
+        assertSame(fresh, cache.get("u1", () -> Mono.error(new IllegalStateException())).block(Duration.ofSeconds(5)));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void forgottenInvalidationStillRejectsStaleLoad() {
+        // Con max-size 1 solo se recuerdan dos sellos de invalidación
+        ProgressOverviewCache cache = newCache(1);
+        Sinks.One<ProgressOverviewDto> slow = Sinks.one();
+
+        cache.get("u1", slow::asMono).subscribe();
+        cache.invalidate("u1");
+        for (int i = 0; i < 200; i++) cache.invalidate("other-" + i);
+        slow.tryEmitValue(overview(1));
+
+        ProgressOverviewDto fresh = cache.get("u1", () -> Mono.just(overview(2))).block(Duration.ofSeconds(5));
+        assertEquals(2, fresh.getStats().getTriviaCompleted());
+    }
+
+    private static ProgressOverviewCache newCache(long maxSize) {
+        SupabaseProperties props = SupabaseStub.props(SupabaseStub.CLOSED_URL);
+        props.getOverviewCache().setMaxSize(maxSize);
+        return new ProgressOverviewCache(SupabaseStub.clients(props), new SimpleMeterRegistry());
+    }
+
+    private static ProgressOverviewDto overview(int triviaCompleted) {
+        return ProgressOverviewDto.builder()
+                .stats(InteractionStatsDto.builder().triviaCompleted(triviaCompleted).build())
+                .build();
+    }
+}
@@ -0,0 +1,161 @@
+package org.uniproject.SaviaU.service.progress;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.dto.RecordActivityRequest;
+import org.uniproject.SaviaU.service.auth.UserIdentityService;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressServiceTest {
+
+    @TempDir
+    Path dir;
+
+    // Estado de la base simulada: claves insertadas y contadores por usuario|tipo
+    private final Set<String> dedupeKeys = new HashSet<>();
+    private final Map<String, Long> counters = new HashMap<>();
+    private final AtomicInteger badgeFailures = new AtomicInteger();
+    private final UserIdentityService identity = Mockito.mock(UserIdentityService.class);
+    private SupabaseStub supabase;
+    private ActivityJournal journal;
+    private ProgressService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        supabase = SupabaseStub.start()
+                .on("/rest/v1/rpc/record_activities", req -> {
+                    List<Map<String, Object>> rows = (List<Map<String, Object>>) req.json(Map.class).get("p_rows");
+                    List<Map<String, Object>> touched = new ArrayList<>();
+                    synchronized (this) {
+                        for (Map<String, Object> row : rows) {
+                            if (!dedupeKeys.add((String) row.get("dedupe_key"))) continue;
+                            String key = row.get("user_id") + "|" + row.get("type");
+                            long count = counters.merge(key, 1L, Long::sum);
+                            touched.add(Map.of("user_id", row.get("user_id"), "type", row.get("type"), "count", count));
+                        }
+                    }
+                    return touched;
+                })
+                .on("/rest/v1/user_activity_counters", req -> counters.entrySet().stream()
+                        .map(e -> Map.of("type", e.getKey().split("\\|")[1], "count", e.getValue()))
+                        .toList())
+                .on("/rest/v1/user_activities", req -> List.of())
+                .on("/rest/v1/badges", req -> List.of(Map.of(
+                        "id", "b1", "code", "first_trivia", "name", "Primera Trivia",
+                        "criteria_type", "TRIVIA_COMPLETED_COUNT", "criteria_value", Map.of("count", 1),
+                        "is_active", true)))
+                .on("/rest/v1/user_badges", req -> {
+                    if ("GET".equals(req.method())) return List.of();
+                    if (badgeFailures.getAndDecrement() > 0) return new SupabaseStub.Response(503, Map.of("message", "caído"));
+                    return new SupabaseStub.Response(201, null);
+                });
+
+        SupabaseProperties props = supabase.props();
+        props.getActivityOutbox().setDir(dir.toString());
+        SupabaseClients clients = SupabaseStub.clients(props);
+        ActivityCounterStore counterStore = new ActivityCounterStore(clients);
+        journal = new ActivityJournal(clients);
+        service = new ProgressService(clients, identity, counterStore,
+                new BadgeRulesEngine(clients, counterStore), Mockito.mock(TopicMasteryStore.class),
+                Mockito.mock(HistoryStreams.class), journal,
+                new ProgressOverviewCache(clients, new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+        supabase.close();
+    }
+
+    @Test
+    void badgeFailureRetriesSegmentWithoutRecountingActivities() {
+        badgeFailures.set(1);
+        service.recordActivityForUserId("u1", "TRIVIA_COMPLETED", Map.of("attemptId", "a1")).block(Duration.ofSeconds(5));
+
+        // Filas y contador ya aplicados, pero la insignia falla: la tanda queda en el diario
+        assertThrows(RuntimeException.class, () -> service.drainPending().block(Duration.ofSeconds(5)));
+        assertEquals(1L, counters.get("u1|TRIVIA_COMPLETED"));
+
+        // El reintento no inserta ni cuenta nada nuevo, pero sí vuelve a otorgar la insignia
+        service.drainPending().block(Duration.ofSeconds(5));
+        assertEquals(1L, counters.get("u1|TRIVIA_COMPLETED"));
+        assertEquals(2, supabase.requests("/rest/v1/rpc/record_activities").size());
+        assertEquals(2, supabase.requests("/rest/v1/user_badges").stream().filter(r -> "POST".equals(r.method())).count());
+
+        // Confirmada: no se vuelve a entregar
+        service.drainPending().block(Duration.ofSeconds(5));
+        assertEquals(2, supabase.requests("/rest/v1/rpc/record_activities").size());
+    }
+
+    @Test
+    void repeatedAttemptActivityCountsOnce() {
+        service.recordActivityForUserId("u1", "TRIVIA_COMPLETED", Map.of("attemptId", "a1")).block(Duration.ofSeconds(5));
+        service.recordActivityForUserId("u1", "TRIVIA_COMPLETED", Map.of("attemptId", "a1")).block(Duration.ofSeconds(5));
+        service.recordActivityForUserId("u1", "NEWS_READ", null).block(Duration.ofSeconds(5));
+
+        service.drainPending().block(Duration.ofSeconds(5));
+
+        assertEquals(1L, counters.get("u1|TRIVIA_COMPLETED"));
+        assertEquals(1L, counters.get("u1|NEWS_READ"));
+        assertEquals(1, service.getInteractionStats("u1").block(Duration.ofSeconds(5)).getTriviaCompleted());
+    }
+
+    @Test
+    void clientRetryWithSameEventIdCountsOnce() {
+        Mockito.when(identity.resolveUser("tok-u1")).thenReturn(Mono.just(Map.of("id", "u1")));
+        Mockito.when(identity.resolveUser("tok-u2")).thenReturn(Mono.just(Map.of("id", "u2")));
+
+        // Reintento de la misma lectura, otra lectura y el mismo id enviado por otro usuario
+        service.recordActivity(news("tok-u1", "e1")).block(Duration.ofSeconds(5));
+        service.recordActivity(news("tok-u1", "e1")).block(Duration.ofSeconds(5));
+        service.recordActivity(news("tok-u1", "e2")).block(Duration.ofSeconds(5));
+        service.recordActivity(news("tok-u2", "e1")).block(Duration.ofSeconds(5));
+
+        service.drainPending().block(Duration.ofSeconds(5));
+
+        assertEquals(2L, counters.get("u1|NEWS_READ"));
+        assertEquals(1L, counters.get("u2|NEWS_READ"));
+    }
+
+    @Test
+    void statsCountARecordedActivityBeforeTheDrain() {
+        assertEquals(0, service.getInteractionStats("u1").block(Duration.ofSeconds(5)).getTriviaCompleted());
+
+        service.recordActivityForUserId("u1", "TRIVIA_COMPLETED", Map.of("attemptId", "a1")).block(Duration.ofSeconds(5));
+        service.recordActivityForUserId("u1", "TRIVIA_COMPLETED", Map.of("attemptId", "a1")).block(Duration.ofSeconds(5));
+
+        // Aún sin drenar: cuenta una vez, y el drenado deja el valor persistido
+        assertEquals(1, service.getInteractionStats("u1").block(Duration.ofSeconds(5)).getTriviaCompleted());
+        service.drainPending().block(Duration.ofSeconds(5));
+        assertEquals(1, service.getInteractionStats("u1").block(Duration.ofSeconds(5)).getTriviaCompleted());
+    }
+
+    private static RecordActivityRequest news(String token, String eventId) {
+        RecordActivityRequest request = new RecordActivityRequest();
+        request.setAccessToken(token);
+        request.setType("NEWS_READ");
+        request.setMetadata(Map.of("articleId", "n1"));
+        request.setEventId(eventId);
+        return request;
+    }
+}
@@ -0,0 +1,167 @@
+package org.uniproject.SaviaU.service.progress;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.dto.TopicProgressDto;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopicMasteryStoreTest {
+
+    private static final String USER = "11111111-1111-1111-1111-111111111111";
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    // user_topic_mastery simulada: tema -> [answered, correct]
+    private final Map<String, int[]> table = new ConcurrentHashMap<>();
+    private final Set<String> appliedBatches = ConcurrentHashMap.newKeySet();
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void loadDuringFlushSeesTheBatchExactlyOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        serveTable();
+        stub.on("/rest/v1/rpc/apply_topic_mastery", req -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return applyBatch(req);
+        });
+        TopicMasteryStore store = new TopicMasteryStore(SupabaseStub.clients(stub.props()));
+
+        store.apply(USER, "Clima", 1, 1);
+        store.flush();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // La carga empieza con el lote fuera de la cola y aún sin aplicar
+        AtomicReference<List<TopicProgressDto>> result = new AtomicReference<>();
+        store.progress(USER).subscribe(result::set);
+        Thread.sleep(100);
+        assertNull(result.get());
+        release.countDown();
+
+        waitFor(() -> result.get() != null);
+        assertEquals(1, result.get().size());
+        assertEquals(1, result.get().get(0).getTotalAnswered());
+        assertEquals(1, result.get().get(0).getCorrect());
+    }
+
+    @Test
+    void flushDuringAReadRunsWhenItEndsAndHoldsBackNewReads() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger reads = new AtomicInteger();
+        stub.on("/rest/v1/user_topic_mastery", req -> {
+            if (reads.incrementAndGet() == 1) {
+                reading.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            List<Map<String, Object>> rows = new ArrayList<>();
+            table.forEach((topic, v) -> rows.add(Map.of("topic", topic, "answered", v[0], "correct", v[1])));
+            return rows;
+        });
+        stub.on("/rest/v1/rpc/apply_topic_mastery", this::applyBatch);
+        TopicMasteryStore store = new TopicMasteryStore(SupabaseStub.clients(stub.props()));
+
+        store.apply(USER, "Clima", 1, 1);
+        store.progress(USER).subscribe();
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+        // El volcado espera a la lectura en curso y la siguiente lectura espera al volcado
+        store.flush();
+        AtomicReference<List<TopicProgressDto>> second = new AtomicReference<>();
+        store.progress(USER).subscribe(second::set);
+        Thread.sleep(100);
+        assertNull(second.get());
+        assertEquals(1, reads.get());
+        assertTrue(stub.requests("/rest/v1/rpc/apply_topic_mastery").isEmpty());
+
+        // Sin nadie que vuelva a llamar a flush(), el fin de la lectura lo lanza
+        release.countDown();
+        waitFor(() -> second.get() != null);
+        assertEquals(1, stub.requests("/rest/v1/rpc/apply_topic_mastery").size());
+        assertArrayEquals(new int[]{1, 1}, table.get("Clima"));
+        assertEquals(1, second.get().get(0).getTotalAnswered());
+    }
+
+    @Test
+    void failedButAppliedBatchIsResentWithSameIdAndCountedOnce() {
+        AtomicInteger calls = new AtomicInteger();
+        serveTable();
+        stub.on("/rest/v1/rpc/apply_topic_mastery", req -> {
+            applyBatch(req);
+            // La primera escritura llega a la tabla pero la respuesta se pierde
+            return calls.incrementAndGet() == 1 ? new SupabaseStub.Response(503, Map.of()) : null;
+        });
+        TopicMasteryStore store = new TopicMasteryStore(SupabaseStub.clients(stub.props()));
+
+        store.apply(USER, "Clima", 1, 0);
+        store.flush();
+        waitFor(() -> calls.get() == 1);
+        store.apply(USER, "Clima", 1, 1);
+
+        List<TopicProgressDto> progress = store.progress(USER).block(Duration.ofSeconds(5));
+        assertEquals(2, progress.get(0).getTotalAnswered());
+        assertEquals(1, progress.get(0).getCorrect());
+
+        store.flushOnShutdown();
+        assertArrayEquals(new int[]{2, 1}, table.get("Clima"));
+        List<SupabaseStub.Request> writes = stub.requests("/rest/v1/rpc/apply_topic_mastery");
+        assertEquals(3, writes.size());
+        assertEquals(batchId(writes.get(0)), batchId(writes.get(1)));
+        assertNotEquals(batchId(writes.get(1)), batchId(writes.get(2)));
+    }
+
+    private void serveTable() {
+        stub.on("/rest/v1/user_topic_mastery", req -> {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            table.forEach((topic, v) -> rows.add(Map.of("topic", topic, "answered", v[0], "correct", v[1])));
+            return rows;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object applyBatch(SupabaseStub.Request req) {
+        Map<String, Object> body = req.json(Map.class);
+        if (!appliedBatches.add(String.valueOf(body.get("p_batch_id")))) return null;
+        for (Map<String, Object> row : (List<Map<String, Object>>) body.get("p_rows")) {
+            int[] v = table.computeIfAbsent(String.valueOf(row.get("topic")), k -> new int[2]);
+            v[0] += ((Number) row.get("answered")).intValue();
+            v[1] += ((Number) row.get("correct")).intValue();
+        }
+        return null;
+    }
+
+    private static Object batchId(SupabaseStub.Request req) {
+        return req.json(Map.class).get("p_batch_id");
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condición no alcanzada a tiempo");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.uniproject.SaviaU.service.tematicas;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.dto.TematicaResourceDto;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TematicaContentServiceTest {
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    private TematicaContentService service;
+
+    @BeforeEach
+    void setUp() {
+        stub.on("/rest/v1/tematicas_areas", req -> List.of(
+                area("a1", resource("r1", "a1", "Agua")),
+                area("a2", resource("r2", "a2", "Clima"))));
+        stub.on("/rest/v1/tematicas_resources", req -> {
+            String id = req.param("id");
+            return "eq.r1".equals(id) ? List.of(resource("r1", "a1", "Agua")) : List.of();
+        });
+        service = new TematicaContentService(SupabaseStub.clients(stub.props()));
+    }
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void resourcesAreServedFromTheLoadedContent() {
+        service.listAreas().block(Duration.ofSeconds(5));
+
+        TematicaResourceDto r2 = service.getResource("a2", "r2").block(Duration.ofSeconds(5));
+
+        assertEquals("Clima", r2.getTitle());
+        assertEquals(List.of("Fuente r2"), r2.getSources());
+        assertEquals(1, stub.requests("/rest/v1/tematicas_areas").size());
+        assertTrue(stub.requests("/rest/v1/tematicas_resources").isEmpty());
+    }
+
+    @Test
+    void resourceOfAnotherAreaOrUnknownAreaIsNotFound() {
+        service.listAreas().block(Duration.ofSeconds(5));
+
+        RuntimeException wrongArea = assertThrows(RuntimeException.class,
+                () -> service.getResource("a1", "r2").block(Duration.ofSeconds(5)));
+        RuntimeException unknownArea = assertThrows(RuntimeException.class,
+                () -> service.getResource("zz", "r1").block(Duration.ofSeconds(5)));
+
+        assertEquals("Recurso no encontrado", wrongArea.getMessage());
+        assertEquals("Temática no encontrada", unknownArea.getMessage());
+    }
+
+    @Test
+    void withoutLoadedContentOnlyThatResourceIsFetched() {
+        TematicaResourceDto r1 = service.getResource("a1", "r1").block(Duration.ofSeconds(5));
+        RuntimeException wrongArea = assertThrows(RuntimeException.class,
+                () -> service.getResource("a2", "r1").block(Duration.ofSeconds(5)));
+
+        assertEquals("Agua", r1.getTitle());
+        assertEquals("Recurso no encontrado", wrongArea.getMessage());
+        assertTrue(stub.requests("/rest/v1/tematicas_areas").isEmpty());
+        assertEquals("eq.r1", stub.requests("/rest/v1/tematicas_resources").get(0).param("id"));
+    }
+
+    private static Map<String, Object> area(String id, Map<String, Object> resource) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("name", "Área " + id);
+        row.put("tematicas_learning_focus", List.of(Map.of("label", "Foco " + id)));
+        row.put("tematicas_resources", List.of(resource));
+        return row;
+    }
+
+    private static Map<String, Object> resource(String id, String areaId, String title) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("area_id", areaId);
+        row.put("title", title);
+        row.put("tematicas_resource_sources", List.of(Map.of("source", "Fuente " + id)));
+        return row;
+    }
+}
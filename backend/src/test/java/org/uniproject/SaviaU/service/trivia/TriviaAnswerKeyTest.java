@@ -0,0 +1,106 @@
+package org.uniproject.SaviaU.service.trivia;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TriviaAnswerKeyTest {
+
+    private final SupabaseStub stub = SupabaseStub.start();
+    private final List<Map<String, Object>> questions = new CopyOnWriteArrayList<>();
+    private final List<Map<String, Object>> options = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        stub.on("/rest/v1/trivia_questions", req -> List.copyOf(questions));
+        stub.on("/rest/v1/trivia_options", req -> List.copyOf(options));
+        questions.add(question("q1", "s1", "Clima"));
+        questions.add(question("q2", "s1", "Agua"));
+        options.add(option("o1", "q1", true, "Correcto"));
+        options.add(option("o2", "q1", false, null));
+        options.add(option("o3", "q2", true, null));
+    }
+
+    @AfterEach
+    void stop() {
+        stub.close();
+    }
+
+    @Test
+    void gradesFromMemoryAfterTheFirstLoad() {
+        TriviaAnswerKey key = new TriviaAnswerKey(SupabaseStub.clients(stub.props()));
+
+        TriviaAnswerKey.Catalog first = key.current().block(Duration.ofSeconds(5));
+        TriviaAnswerKey.Catalog again = key.forOption("o2").block(Duration.ofSeconds(5));
+
+        assertSame(first, again);
+        TriviaAnswerKey.OptionKey o1 = first.option("o1");
+        assertTrue(o1.correct());
+        assertEquals("s1", o1.setId());
+        assertEquals("Correcto", o1.explanation());
+        assertFalse(first.option("o2").correct());
+        assertEquals("o1", first.question("q1").correctOptionId());
+        assertEquals("Clima", first.question("q1").topic());
+        assertEquals(2, first.questionsOfSet("s1").size());
+        assertTrue(first.questionsOfSet("otro").isEmpty());
+        assertEquals(1, stub.requests("/rest/v1/trivia_questions").size());
+        assertEquals(1, stub.requests("/rest/v1/trivia_options").size());
+    }
+
+    @Test
+    void unknownOptionInsideTheIntervalDoesNotReload() {
+        TriviaAnswerKey key = new TriviaAnswerKey(SupabaseStub.clients(stub.props()));
+        key.current().block(Duration.ofSeconds(5));
+
+        TriviaAnswerKey.Catalog c = key.forOption("desconocida").block(Duration.ofSeconds(5));
+
+        assertNull(c.option("desconocida"));
+        assertEquals(1, stub.requests("/rest/v1/trivia_options").size());
+    }
+
+    @Test
+    void invalidateBumpsTheVersionAndReloadsOnce() {
+        TriviaAnswerKey key = new TriviaAnswerKey(SupabaseStub.clients(stub.props()));
+        TriviaAnswerKey.Catalog before = key.current().block(Duration.ofSeconds(5));
+        assertEquals(key.version(), before.version());
+
+        // Una edición desde el panel cambia la opción correcta
+        options.set(1, option("o2", "q1", true, null));
+        options.set(0, option("o1", "q1", false, null));
+        key.invalidate();
+
+        TriviaAnswerKey.Catalog after = key.current().block(Duration.ofSeconds(5));
+        key.current().block(Duration.ofSeconds(5));
+
+        assertEquals(before.version() + 1, after.version());
+        assertEquals(key.version(), after.version());
+        assertEquals("o2", after.question("q1").correctOptionId());
+        assertEquals(2, stub.requests("/rest/v1/trivia_options").size());
+    }
+
+    private static Map<String, Object> question(String id, String setId, String topic) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("set_id", setId);
+        row.put("topic", topic);
+        return row;
+    }
+
+    private static Map<String, Object> option(String id, String questionId, boolean correct, String explanation) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("question_id", questionId);
+        row.put("is_correct", correct);
+        row.put("explanation", explanation);
+        return row;
+    }
+}
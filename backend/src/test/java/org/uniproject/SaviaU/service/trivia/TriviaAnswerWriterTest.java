@@ -0,0 +1,122 @@
+package org.uniproject.SaviaU.service.trivia;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+import org.uniproject.SaviaU.support.SupabaseStub;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TriviaAnswerWriterTest {
+
+    private final List<List<Map<String, Object>>> batches = new CopyOnWriteArrayList<>();
+    // Estado con el que responde Supabase; 0 = normal
+    private final AtomicInteger outage = new AtomicInteger();
+    private SupabaseStub supabase;
+    private TriviaAnswerWriter writer;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // PostgREST simulado: guarda cada cuerpo recibido en /rest/v1/trivia_answers
+        supabase = SupabaseStub.start().on("/rest/v1/trivia_answers", req -> {
+            if (outage.get() != 0) return new SupabaseStub.Response(outage.get(), null);
+            List<Map<String, Object>> rows = req.json(List.class);
+            // Una opción inexistente viola la clave foránea y rechaza el upsert completo
+            if (rows.stream().anyMatch(r -> "o-borrada".equals(r.get("selected_option_id")))) {
+                return new SupabaseStub.Response(409, Map.of("message", "foreign key violation"));
+            }
+            batches.add(rows);
+            return new SupabaseStub.Response(201, null);
+        });
+
+        SupabaseProperties props = supabase.props();
+        props.getAnswerWriter().setBatchSize(50);
+        props.getAnswerWriter().setMaxRetries(0);
+        props.getAnswerWriter().setBarrierTimeoutMs(1_000);
+        registry = new SimpleMeterRegistry();
+        writer = new TriviaAnswerWriter(SupabaseStub.clients(props), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        supabase.close();
+    }
+
+    @Test
+    void barrierFlushesQueuedRowsInOneCoalescedUpsert() {
+        writer.enqueue(row("a1", "q1", "o1", false)).block();
+        writer.enqueue(row("a1", "q2", "o3", true)).block();
+        // Segunda respuesta a q1: debe sustituir a la primera dentro del mismo lote
+        writer.enqueue(row("a1", "q1", "o2", true)).block();
+        assertTrue(batches.isEmpty());
+
+        writer.barrier("a1").block(Duration.ofSeconds(5));
+
+        assertEquals(1, batches.size());
+        List<Map<String, Object>> rows = batches.get(0);
+        assertEquals(2, rows.size());
+        Map<String, Object> q1 = rows.stream().filter(r -> "q1".equals(r.get("question_id"))).findFirst().orElseThrow();
+        assertEquals("o2", q1.get("selected_option_id"));
+        assertEquals(0.0, registry.get("trivia.answers.queue.depth").gauge().value());
+    }
+
+    @Test
+    void barrierWithNothingPendingCompletesImmediately() {
+        writer.barrier("a1").block(Duration.ofSeconds(1));
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    void outageKeepsRowsQueuedAndFailsTheBarrier() {
+        outage.set(503);
+        writer.enqueue(row("a1", "q1", "o1", true)).block();
+
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> writer.barrier("a1").block(Duration.ofSeconds(5)));
+        assertEquals("No se pudieron guardar tus respuestas, intenta de nuevo", ex.getMessage());
+        assertTrue(batches.isEmpty());
+
+        // Al volver Supabase el mismo lote se escribe y la barrera del reintento pasa
+        outage.set(0);
+        writer.barrier("a1").block(Duration.ofSeconds(5));
+        assertEquals(1, batches.size());
+        assertEquals("q1", batches.get(0).get(0).get("question_id"));
+        assertEquals(0.0, registry.get("trivia.answers.dropped").counter().count());
+    }
+
+    @Test
+    void rejectedRowFailsOnlyItsAttemptUntilAnsweredAgain() {
+        writer.enqueue(row("a1", "q1", "o1", true)).block();
+        writer.enqueue(row("a1", "q2", "o-borrada", false)).block();
+        writer.enqueue(row("a2", "q1", "o1", true)).block();
+
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> writer.barrier("a1").block(Duration.ofSeconds(5)));
+        assertEquals("No se pudieron guardar algunas respuestas, respóndelas de nuevo", ex.getMessage());
+        writer.barrier("a2").block(Duration.ofSeconds(5));
+        // Las filas válidas del lote se escribieron una a una
+        assertEquals(2, batches.size());
+        assertEquals(1.0, registry.get("trivia.answers.dropped").counter().count());
+
+        // Responder de nuevo la pregunta rechazada desbloquea el intento
+        writer.enqueue(row("a1", "q2", "o3", true)).block();
+        writer.barrier("a1").block(Duration.ofSeconds(5));
+        assertEquals(3, batches.size());
+    }
+
+    private static Map<String, Object> row(String attemptId, String questionId, String optionId, boolean correct) {
+        return Map.of(
+                "attempt_id", attemptId,
+                "question_id", questionId,
+                "selected_option_id", optionId,
+                "is_correct", correct);
+    }
+}
@@ -0,0 +1,119 @@
+package org.uniproject.SaviaU.service.trivia;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.uniproject.SaviaU.dto.TriviaAnswerRequest;
+import org.uniproject.SaviaU.dto.TriviaAnswerResponse;
+import org.uniproject.SaviaU.dto.TriviaBatchAnswerRequest;
+import org.uniproject.SaviaU.dto.TriviaFinishRequest;
+import org.uniproject.SaviaU.service.auth.UserIdentityService;
+import org.uniproject.SaviaU.service.profile.RankingEngine;
+import org.uniproject.SaviaU.service.progress.DailyScoreStore;
+import org.uniproject.SaviaU.service.progress.HistoryStreams;
+import org.uniproject.SaviaU.service.progress.ProgressService;
+import org.uniproject.SaviaU.service.progress.TopicMasteryStore;
+import org.uniproject.SaviaU.support.SupabaseStub;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+class TriviaServiceTest {
+
+    private final TriviaAnswerKey answerKey = Mockito.mock(TriviaAnswerKey.class);
+    private final TriviaAnswerWriter answerWriter = Mockito.mock(TriviaAnswerWriter.class);
+    private final TopicMasteryStore masteryStore = Mockito.mock(TopicMasteryStore.class);
+    private final UserIdentityService identity = Mockito.mock(UserIdentityService.class);
+    private final RankingEngine rankingEngine = Mockito.mock(RankingEngine.class);
+    private final DailyScoreStore dailyScores = Mockito.mock(DailyScoreStore.class);
+    private TriviaAttemptStore attempts;
+    private TriviaService service;
+    private TriviaAttemptStore.AttemptSession attempt;
+
+    @BeforeEach
+    void setUp() {
+        var clients = SupabaseStub.clients(SupabaseStub.props(SupabaseStub.CLOSED_URL));
+        attempts = new TriviaAttemptStore(clients);
+        service = new TriviaService(clients, Mockito.mock(ProgressService.class), identity, answerKey, attempts,
+                answerWriter, masteryStore, Mockito.mock(HistoryStreams.class), rankingEngine, dailyScores);
+
+        // Set s1: q1 (clima, correcta o1) y q2 (agua, correcta o3)
+        TriviaAnswerKey.QuestionKey q1 = new TriviaAnswerKey.QuestionKey("q1", "s1", "clima", "o1");
+        TriviaAnswerKey.QuestionKey q2 = new TriviaAnswerKey.QuestionKey("q2", "s1", "agua", "o3");
+        TriviaAnswerKey.Catalog catalog = new TriviaAnswerKey.Catalog(1,
+                Map.of("o1", new TriviaAnswerKey.OptionKey("o1", "q1", "s1", true, null),
+                        "o2", new TriviaAnswerKey.OptionKey("o2", "q1", "s1", false, null),
+                        "o3", new TriviaAnswerKey.OptionKey("o3", "q2", "s1", true, null)),
+                Map.of("q1", q1, "q2", q2),
+                Map.of("s1", List.of(q1, q2)),
+                Instant.now());
+        Mockito.when(answerKey.current()).thenReturn(Mono.just(catalog));
+        Mockito.when(answerKey.forOption(any())).thenReturn(Mono.just(catalog));
+        Mockito.when(identity.resolveUser("tok")).thenReturn(Mono.just(Map.of("id", "u1")));
+        attempt = attempts.register("a1", "u1", "s1", Instant.now());
+    }
+
+    @Test
+    void answerCountsOnlyAfterEnqueue() {
+        Mockito.when(answerWriter.enqueue(anyMap())).thenReturn(Mono.error(new RuntimeException("Servicio ocupado, intenta de nuevo")));
+
+        assertThrows(RuntimeException.class, () -> service.answer(answer("o1")).block());
+        assertEquals(0, attempt.answeredCount());
+        Mockito.verifyNoInteractions(masteryStore);
+
+        // El reintento del cliente se cuenta una sola vez
+        Mockito.when(answerWriter.enqueue(anyMap())).thenReturn(Mono.empty());
+        TriviaAnswerResponse response = service.answer(answer("o1")).block();
+        assertTrue(response.isCorrect());
+        assertEquals(1, attempt.answeredCount());
+        assertEquals(1, attempt.correctCount());
+        Mockito.verify(masteryStore).apply("u1", "clima", 1, 1);
+    }
+
+    @Test
+    void rejectedBatchLeavesAttemptUntouched() {
+        Mockito.when(answerWriter.enqueueAll(anyList())).thenReturn(Mono.error(new RuntimeException("Servicio ocupado, intenta de nuevo")));
+        TriviaBatchAnswerRequest batch = new TriviaBatchAnswerRequest("tok", "a1", List.of(
+                new TriviaBatchAnswerRequest.Answer("q1", "o2"),
+                new TriviaBatchAnswerRequest.Answer("q2", "o3")));
+
+        assertThrows(RuntimeException.class, () -> service.answerBatch(batch).block());
+        assertEquals(0, attempt.answeredCount());
+        Mockito.verifyNoInteractions(masteryStore);
+
+        Mockito.when(answerWriter.enqueueAll(anyList())).thenReturn(Mono.empty());
+        assertEquals(2, service.answerBatch(batch).block().size());
+        assertEquals(2, attempt.answeredCount());
+        assertEquals(1, attempt.correctCount());
+    }
+
+    @Test
+    void failedFinishLeavesAttemptRankingAndDailyScoresUntouched() {
+        TriviaFinishRequest finish = new TriviaFinishRequest();
+        finish.setAccessToken("tok");
+        finish.setAttemptId("a1");
+
+        Mockito.when(answerWriter.barrier("a1")).thenReturn(Mono.error(new RuntimeException("No se pudieron guardar tus respuestas, intenta de nuevo")));
+        assertThrows(RuntimeException.class, () -> service.finish(finish).block());
+
+        // Respuestas escritas pero trivia_attempts inalcanzable: el PATCH falla
+        Mockito.when(answerWriter.barrier("a1")).thenReturn(Mono.empty());
+        assertThrows(RuntimeException.class, () -> service.finish(finish).block());
+
+        assertFalse(attempt.isCompleted());
+        Mockito.verifyNoInteractions(rankingEngine, dailyScores);
+    }
+
+    private static TriviaAnswerRequest answer(String optionId) {
+        TriviaAnswerRequest request = new TriviaAnswerRequest();
+        request.setAccessToken("tok");
+        request.setAttemptId("a1");
+        request.setSelectedOptionId(optionId);
+        return request;
+    }
+}
@@ -0,0 +1,152 @@
+package org.uniproject.SaviaU.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.uniproject.SaviaU.config.SupabaseClients;
+import org.uniproject.SaviaU.config.SupabaseProperties;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Supabase simulado para pruebas de servicios: un {@link HttpServer} local con rutas por
+ * prefijo que responde JSON, más la configuración mínima de {@link SupabaseProperties}.
+ * Sin rutas registradas sirve también como "Supabase caído" (responde 500).
+ */
+public final class SupabaseStub implements AutoCloseable {
+
+    /** URL a un puerto cerrado: cualquier llamada remota falla de inmediato. */
+    public static final String CLOSED_URL = "http://127.0.0.1:1";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Petición recibida, con la query ya decodificada. */
+    public record Request(String method, String path, String query, byte[] body) {
+
+        public String param(String name) {
+            if (query == null) return null;
+            for (String pair : query.split("&")) {
+                if (pair.startsWith(name + "=")) return pair.substring(name.length() + 1);
+            }
+            return null;
+        }
+
+        public <T> T json(Class<T> type) {
+            try {
+                return MAPPER.readValue(body, type);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** Respuesta con estado explícito; cualquier otro valor devuelto se sirve como JSON con 200. */
+    public record Response(int status, Object body, Map<String, String> headers) {
+
+        public Response(int status, Object body) {
+            this(status, body, Map.of());
+        }
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        Object handle(Request request) throws Exception;
+    }
+
+    private final HttpServer server;
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+
+    private SupabaseStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.start();
+    }
+
+    public static SupabaseStub start() {
+        try {
+            return new SupabaseStub();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Registra un manejador para las rutas que empiezan por {@code path} (p. ej. {@code /rest/v1/trivia_answers}). */
+    public SupabaseStub on(String path, Handler handler) {
+        server.createContext(path, exchange -> serve(exchange, handler));
+        return this;
+    }
+
+    public List<Request> requests() {
+        return requests;
+    }
+
+    public List<Request> requests(String path) {
+        return requests.stream().filter(r -> r.path().startsWith(path)).toList();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** Propiedades apuntando a este servidor. */
+    public SupabaseProperties props() {
+        return props(url());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    public static SupabaseProperties props(String url) {
+        SupabaseProperties props = new SupabaseProperties();
+        props.setUrl(url);
+        props.setAnonKey("anon");
+        props.setServiceRoleKey("service");
+        return props;
+    }
+
+    public static SupabaseClients clients(SupabaseProperties props) {
+        return new SupabaseClients(props, new ReactorClientHttpConnector());
+    }
+
+    private void serve(HttpExchange exchange, Handler handler) throws IOException {
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        Request request = new Request(
+                exchange.getRequestMethod(),
+                exchange.getRequestURI().getPath(),
+                rawQuery == null ? null : URLDecoder.decode(rawQuery, StandardCharsets.UTF_8),
+                exchange.getRequestBody().readAllBytes());
+        requests.add(request);
+        int status;
+        byte[] body;
+        Map<String, String> headers = Map.of();
+        try {
+            Object result = handler.handle(request);
+            Object payload = result;
+            status = 200;
+            if (result instanceof Response r) {
+                status = r.status();
+                payload = r.body();
+                headers = r.headers();
+            }
+            body = payload == null ? new byte[0] : MAPPER.writeValueAsBytes(payload);
+        } catch (Exception e) {
+            status = 500;
+            body = MAPPER.writeValueAsBytes(Map.of("message", String.valueOf(e.getMessage())));
+        }
+        if ("HEAD".equals(request.method())) body = new byte[0];
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        headers.forEach(exchange.getResponseHeaders()::add);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+}
@@ -59,9 +59,26 @@ export const getUserPosition = async (
   userId: string
 ): Promise<UserRanking | null> => {
   try {
-    // Obtener un ranking más amplio para encontrar al usuario
-    const ranking = await getUserRanking(accessToken, 100);
-    return ranking.find(user => user.userId === userId) || null;
+    const url = `${API_CONFIG.BASE_URL}/api/auth/ranking/position?accessToken=${encodeURIComponent(
+      accessToken
+    )}&userId=${encodeURIComponent(userId)}`;
+
+    const response = await fetch(url, {
+      method: 'GET',
+      headers: {
+        'Content-Type': 'application/json',
+      },
+    });
+
+    if (response.status === 404) {
+      return null;
+    }
+    if (!response.ok) {
+      throw new Error(`Error al obtener posición: ${response.status}`);
+    }
+
+    const data: UserRanking = await response.json();
+    return data;
   } catch (error) {
     console.error('Error en getUserPosition:', error);
     throw error;